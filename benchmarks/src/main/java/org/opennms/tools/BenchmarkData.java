@@ -0,0 +1,231 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2006-2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+package org.opennms.tools;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+
+import org.opennms.netmgt.config.threshd.Basethresholddef;
+import org.opennms.netmgt.config.threshd.Expression;
+import org.opennms.netmgt.config.threshd.Group;
+import org.opennms.netmgt.config.threshd.Threshold;
+
+/**
+ * The Class BenchmarkData.
+ * <p>Deterministic inputs for the benchmarks. The same seed always produces the same data.</p>
+ *
+ * @author <a href="mailto:agalue@opennms.org">Alejandro Galue</a>
+ */
+public class BenchmarkData {
+
+    /** The Constant SEED. */
+    public static final long SEED = 20150301L;
+
+    /** The Constant DS_TYPES. */
+    private static final String[] DS_TYPES = new String[] { "node", "if", "hrStorageIndex", "dskIndex", "ciscoEnvMonTemperatureStatusIndex" };
+
+    /** The Constant TYPES. */
+    private static final String[] TYPES = new String[] { "high", "low", "absoluteChange", "relativeChange", "rearmingAbsoluteChange" };
+
+    /** The Constant SEVERITIES. */
+    private static final String[] SEVERITIES = new String[] { "warning", "minor", "major", "critical" };
+
+    /** The random generator. */
+    private final Random random = new Random(SEED);
+
+    /**
+     * Creates a threshold.
+     *
+     * @param index the index of the threshold
+     * @return the threshold
+     */
+    public Threshold createThreshold(int index) {
+        Threshold t = new Threshold();
+        t.setDsName("metric" + (index % 50));
+        fill(t, index);
+        return t;
+    }
+
+    /**
+     * Creates an expression.
+     *
+     * @param index the index of the expression
+     * @return the expression
+     */
+    public Expression createExpression(int index) {
+        Expression e = new Expression();
+        e.setExpression("metric" + (index % 50) + " / metric" + ((index + 1) % 50) + " * 100.0");
+        fill(e, index);
+        return e;
+    }
+
+    /**
+     * Fills the common attributes of a definition.
+     *
+     * @param def the threshold definition
+     * @param index the index of the definition
+     */
+    private void fill(Basethresholddef def, int index) {
+        String type = TYPES[random.nextInt(TYPES.length)];
+        String uei = ThresholdEvent.BASE_UEI + "/server" + (index % 7) + "/purpose" + index + "/" + type + "/" + SEVERITIES[random.nextInt(SEVERITIES.length)];
+        def.setType(type);
+        def.setDsType(DS_TYPES[random.nextInt(DS_TYPES.length)]);
+        def.setDescription("Benchmark threshold " + index);
+        def.setValue(90.0);
+        def.setRearm(80.0);
+        def.setTrigger(2);
+        def.setTriggeredUEI(uei + "/exceeded");
+        if (!type.endsWith("Change") || type.startsWith("rearming")) {
+            def.setRearmedUEI(uei + "/rearmed");
+        }
+    }
+
+    /**
+     * Creates the groups.
+     *
+     * @param definitions the total number of definitions
+     * @param definitionsPerGroup the number of definitions per group
+     * @return the groups
+     */
+    public List<Group> createGroups(int definitions, int definitionsPerGroup) {
+        List<Group> groups = new ArrayList<Group>();
+        Group group = null;
+        for (int i = 0; i < definitions; i++) {
+            if (i % definitionsPerGroup == 0) {
+                group = new Group();
+                group.setName("group" + groups.size());
+                group.setRrdRepository("/opt/opennms/share/rrd/snmp/");
+                groups.add(group);
+            }
+            if (random.nextInt(4) == 0) {
+                group.addExpression(createExpression(i));
+            } else {
+                group.addThreshold(createThreshold(i));
+            }
+        }
+        return groups;
+    }
+
+    /**
+     * Creates the graph templates.
+     *
+     * @param count the number of graph templates
+     * @return the graph templates
+     */
+    public GraphTemplates createGraphTemplates(int count) {
+        List<GraphTemplate> templates = new ArrayList<GraphTemplate>(count);
+        for (int i = 0; i < count; i++) {
+            List<String> types = i % 3 == 0 ? null : Arrays.asList(i % 3 == 1 ? "interfaceSnmp" : "nodeSnmp");
+            templates.add(new GraphTemplate("report" + i, Arrays.asList("metric" + (i % 50), "metric" + ((i * 7) % 50)), types));
+        }
+        return new GraphTemplates(templates, new ArrayList<File>());
+    }
+
+    /**
+     * Creates a configuration with destination path and instance rules.
+     *
+     * @param rules the number of rules of each kind
+     * @return the configuration
+     */
+    public Properties createConfig(int rules) {
+        Properties config = new OrderedProperties();
+        config.setProperty("baseUei", ThresholdEvent.BASE_UEI);
+        config.setProperty("useComputedExpression", "true");
+        for (Map.Entry<String,String> e : createDestinationRules(rules).entrySet()) {
+            config.setProperty("destinationPath[" + e.getKey() + "]", e.getValue());
+        }
+        for (Map.Entry<String,String> e : createInstanceRules(rules).entrySet()) {
+            config.setProperty("instance[" + e.getKey() + "]", e.getValue());
+        }
+        return config;
+    }
+
+    /**
+     * Creates the destination path rules of the configuration.
+     *
+     * @param rules the number of rules
+     * @return the destination paths, indexed by UEI regular expression
+     */
+    public Map<String,String> createDestinationRules(int rules) {
+        Map<String,String> destinations = new LinkedHashMap<String,String>();
+        for (int i = 0; i < rules; i++) {
+            destinations.put(".*/server" + (i % 7) + "/purpose" + i + "/.*", "Team-" + i);
+        }
+        destinations.put(".*", "Email-Admin");
+        return destinations;
+    }
+
+    /**
+     * Creates the instance rules of the configuration.
+     *
+     * @param rules the number of rules
+     * @return the instance information, indexed by substring
+     */
+    public Map<String,String> createInstanceRules(int rules) {
+        Map<String,String> instances = new LinkedHashMap<String,String>();
+        for (int i = 0; i < rules; i++) {
+            instances.put(DS_TYPES[i % DS_TYPES.length] + i, "instance " + i + " <b>%parm[label]%</b>");
+        }
+        return instances;
+    }
+
+    /**
+     * Creates the UEIs used for lookups.
+     *
+     * @param count the number of UEIs
+     * @return the UEIs
+     */
+    public String[] createUeis(int count) {
+        String[] ueis = new String[count];
+        for (int i = 0; i < count; i++) {
+            ueis[i] = ThresholdEvent.BASE_UEI + "/server" + (i % 7) + "/purpose" + random.nextInt(count * 2) + "/high/major/exceeded";
+        }
+        return ueis;
+    }
+
+    /**
+     * Creates the resource types (ds-type attributes) used for lookups.
+     *
+     * @param count the number of resource types
+     * @return the resource types
+     */
+    public String[] createDsTypes(int count) {
+        String[] dsTypes = new String[count];
+        for (int i = 0; i < count; i++) {
+            dsTypes[i] = DS_TYPES[i % DS_TYPES.length] + random.nextInt(count * 2);
+        }
+        return dsTypes;
+    }
+
+}
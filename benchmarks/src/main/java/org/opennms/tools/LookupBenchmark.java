@@ -0,0 +1,160 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2006-2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+package org.opennms.tools;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The Class LookupBenchmark.
+ * <p>Measures the destination path and instance information lookups, with different numbers of rules.
+ * The <code>compile</code> benchmark measures the cost of building the processor (and its matchers),
+ * and the lookups measure the steady state over a rotating set of UEIs.</p>
+ * <p>The lookups are memoized per UEI (or resource type), so after the warmup the <code>get</code> benchmarks measure
+ * cache hits. The <code>find</code> benchmarks bypass the caches of the matcher and the resolver, to measure the
+ * matching itself.</p>
+ *
+ * @author <a href="mailto:agalue@opennms.org">Alejandro Galue</a>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LookupBenchmark {
+
+    /** The number of rules of each kind. */
+    @Param({ "10", "100", "1000" })
+    public int rules;
+
+    /** The threshold event processor. */
+    private ThresholdEventProcessor processor;
+
+    /** The destination path matcher. */
+    private DestinationPathMatcher destinationPathMatcher;
+
+    /** The instance resolver. */
+    private InstanceResolver instanceResolver;
+
+    /** The UEIs. */
+    private String[] ueis;
+
+    /** The resource types. */
+    private String[] dsTypes;
+
+    /** The position of the next lookup. */
+    private int next;
+
+    /**
+     * Sets up the benchmark.
+     */
+    @Setup
+    public void setUp() {
+        BenchmarkData data = new BenchmarkData();
+        processor = new ThresholdEventProcessor(data.createConfig(rules));
+        destinationPathMatcher = new DestinationPathMatcher(data.createDestinationRules(rules), DestinationPathMatcher.DEFAULT_DESTINATION_PATH);
+        instanceResolver = new InstanceResolver(data.createInstanceRules(rules), ThresholdEvent.INSTANCE_INFO);
+        ueis = data.createUeis(4096);
+        dsTypes = data.createDsTypes(4096);
+    }
+
+    /**
+     * Gets the position of the next lookup.
+     *
+     * @return the position
+     */
+    private int next() {
+        next = (next + 1) & (ueis.length - 1);
+        return next;
+    }
+
+    /**
+     * Looks up the destination path.
+     *
+     * @return the destination path
+     */
+    @Benchmark
+    public String getDestinationPath() {
+        return processor.getDestinationPath(ueis[next()]);
+    }
+
+    /**
+     * Looks up the instance information.
+     *
+     * @return the instance information
+     */
+    @Benchmark
+    public String getInstanceInfo() {
+        return processor.getInstanceInfo(dsTypes[next()]);
+    }
+
+    /**
+     * Finds the destination path, without the cache.
+     *
+     * @return the destination path
+     */
+    @Benchmark
+    public String findDestinationPath() {
+        return destinationPathMatcher.findDestinationPath(ueis[next()]);
+    }
+
+    /**
+     * Finds the instance information, without the cache.
+     *
+     * @return the instance information
+     */
+    @Benchmark
+    public String findInstanceInfo() {
+        return instanceResolver.findInstanceInfo(dsTypes[next()]);
+    }
+
+    /**
+     * Builds the processor and its matchers.
+     *
+     * @return the threshold event processor
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public ThresholdEventProcessor compile() {
+        return new ThresholdEventProcessor(new BenchmarkData().createConfig(rules));
+    }
+
+}
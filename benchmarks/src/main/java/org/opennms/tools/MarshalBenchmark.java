@@ -0,0 +1,153 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2006-2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+package org.opennms.tools;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.opennms.netmgt.config.notifications.Notification;
+import org.opennms.netmgt.config.threshd.Group;
+import org.opennms.netmgt.xml.eventconf.Event;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The Class MarshalBenchmark.
+ * <p>Measures the marshalling of the events (through the streaming writer) and notifications.xml.</p>
+ *
+ * @author <a href="mailto:agalue@opennms.org">Alejandro Galue</a>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MarshalBenchmark {
+
+    /** The number of threshold definitions. */
+    @Param({ "1000", "10000" })
+    public int definitions;
+
+    /** The events. */
+    private List<Event> events = new ArrayList<Event>();
+
+    /** The notifications. */
+    private List<Notification> notifications;
+
+    /** The temporary OpenNMS home. */
+    private File onmsHome;
+
+    /** The notifications template. */
+    private File template;
+
+    /**
+     * Sets up the benchmark.
+     *
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    @Setup
+    public void setUp() throws IOException {
+        BenchmarkData data = new BenchmarkData();
+        ThresholdEventProcessor processor = new ThresholdEventProcessor(data.createConfig(10));
+        GenerationResult result = new GenerationResult();
+        for (Group g : data.createGroups(definitions, 20)) {
+            result.add(processor.getGroupOutput(g, null));
+        }
+        events.addAll(result.getEvents());
+        notifications = result.getNotifications();
+        onmsHome = File.createTempFile("onms-benchmark", "");
+        onmsHome.delete();
+        new File(onmsHome, "etc").mkdirs();
+        template = new File(onmsHome, "notifications-template.xml");
+        FileUtils.writeStringToFile(template, "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<notifications>\n"
+                + "    <header>\n        <rev>1.2</rev>\n        <created>now</created>\n        <mstation>localhost</mstation>\n    </header>\n"
+                + "</notifications>\n", "UTF-8");
+    }
+
+    /**
+     * Removes the temporary files.
+     *
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    @TearDown
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(onmsHome);
+    }
+
+    /**
+     * Marshals the events, discarding the output.
+     *
+     * @return the number of events written
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    @Benchmark
+    public int writeEvents() throws IOException {
+        EventsWriter writer = new EventsWriter(new OutputStream() {
+            public void write(int b) {
+            }
+            public void write(byte[] b, int off, int len) {
+            }
+        });
+        try {
+            for (Event e : events) {
+                writer.write(e);
+            }
+        } finally {
+            writer.close();
+        }
+        return writer.getCount();
+    }
+
+    /**
+     * Marshals notifications.xml.
+     *
+     * @return the status of the output file
+     * @throws Exception the exception
+     */
+    @Benchmark
+    public OutputFile.Status writeNotifications() throws Exception {
+        return new NotificationsGenerator(null).writeNotifications(onmsHome, template, notifications);
+    }
+
+}
@@ -0,0 +1,120 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2006-2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+package org.opennms.tools;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.opennms.netmgt.config.notifications.Notification;
+import org.opennms.netmgt.config.threshd.Group;
+import org.opennms.netmgt.xml.eventconf.Events;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The Class ProcessorBenchmark.
+ * <p>Measures the generation of the events and the notifications of a whole configuration.</p>
+ *
+ * @author <a href="mailto:agalue@opennms.org">Alejandro Galue</a>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProcessorBenchmark {
+
+    /** The number of threshold definitions. */
+    @Param({ "100", "1000", "10000" })
+    public int definitions;
+
+    /** The groups. */
+    private List<Group> groups;
+
+    /** The graph templates. */
+    private GraphTemplates graphTemplates;
+
+    /** The threshold event processor. */
+    private ThresholdEventProcessor processor;
+
+    /**
+     * Sets up the benchmark.
+     */
+    @Setup
+    public void setUp() {
+        BenchmarkData data = new BenchmarkData();
+        groups = data.createGroups(definitions, 20);
+        graphTemplates = data.createGraphTemplates(500);
+        processor = new ThresholdEventProcessor(data.createConfig(50));
+    }
+
+    /**
+     * Generates the events.
+     *
+     * @return the events
+     */
+    @Benchmark
+    public Events getEvents() {
+        return processor.getEvents(groups, null);
+    }
+
+    /**
+     * Generates the notifications.
+     *
+     * @return the notifications
+     */
+    @Benchmark
+    public List<Notification> getNotifications() {
+        return processor.getNotifications(groups);
+    }
+
+    /**
+     * Generates the output of all the groups with graph templates (the path used by the generation session).
+     *
+     * @return the generation result
+     */
+    @Benchmark
+    public GenerationResult getGroupOutputs() {
+        GenerationResult result = new GenerationResult();
+        for (Group g : groups) {
+            result.add(processor.getGroupOutput(g, graphTemplates));
+        }
+        return result;
+    }
+
+}
@@ -0,0 +1,130 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2006-2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+package org.opennms.tools;
+
+import java.util.concurrent.TimeUnit;
+
+import org.opennms.netmgt.config.threshd.Basethresholddef;
+import org.opennms.netmgt.config.threshd.Expression;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The Class ThresholdEventBenchmark.
+ * <p>Measures the construction of a single threshold event, for thresholds and expressions,
+ * with and without graph templates.</p>
+ * <p>The analysis of the expressions is memoized by the {@link ExpressionCache}, so the <code>exceeded</code> and
+ * <code>rearmed</code> benchmarks measure cache hits. The <code>exceededUncached</code> benchmark uses a different
+ * expression on every invocation, to measure the analysis itself (thresholds are never analyzed, so it measures
+ * the same as <code>exceeded</code> for them).</p>
+ *
+ * @author <a href="mailto:agalue@opennms.org">Alejandro Galue</a>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ThresholdEventBenchmark {
+
+    /** The kind of definition. */
+    @Param({ "threshold", "expression" })
+    public String kind;
+
+    /** The number of graph templates (0 for no graph templates). */
+    @Param({ "0", "500" })
+    public int graphTemplates;
+
+    /** The threshold definition. */
+    private Basethresholddef def;
+
+    /** The graph index. */
+    private GraphIndex graphIndex;
+
+    /** The original expression. */
+    private String expression;
+
+    /** The sequence used to build unique expressions. */
+    private long sequence;
+
+    /**
+     * Sets up the benchmark.
+     */
+    @Setup
+    public void setUp() {
+        BenchmarkData data = new BenchmarkData();
+        def = kind.equals("threshold") ? data.createThreshold(1) : data.createExpression(1);
+        def.setType("high");
+        expression = def instanceof Expression ? ((Expression) def).getExpression() : null;
+        graphIndex = graphTemplates == 0 ? null : new GraphIndex(data.createGraphTemplates(graphTemplates), false);
+    }
+
+    /**
+     * Builds an exceeded event.
+     *
+     * @return the threshold event
+     */
+    @Benchmark
+    public ThresholdEvent exceeded() {
+        return new ThresholdEvent(def, ThresholdEvent.BASE_UEI, true, true, ThresholdEvent.INSTANCE_INFO, graphIndex);
+    }
+
+    /**
+     * Builds an exceeded event for an expression that has never been analyzed.
+     *
+     * @return the threshold event
+     */
+    @Benchmark
+    public ThresholdEvent exceededUncached() {
+        if (expression != null) {
+            ((Expression) def).setExpression(expression + " + " + (sequence++) + ".0 * 0");
+        }
+        return new ThresholdEvent(def, ThresholdEvent.BASE_UEI, true, true, ThresholdEvent.INSTANCE_INFO, graphIndex);
+    }
+
+    /**
+     * Builds a rearmed event.
+     *
+     * @return the threshold event
+     */
+    @Benchmark
+    public ThresholdEvent rearmed() {
+        return new ThresholdEvent(def, ThresholdEvent.BASE_UEI, false, true, ThresholdEvent.INSTANCE_INFO, graphIndex);
+    }
+
+}
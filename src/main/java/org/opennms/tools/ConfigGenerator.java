@@ -29,6 +29,8 @@ package org.opennms.tools;
 
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
 import java.net.URISyntaxException;
 import java.util.Properties;
 
@@ -48,19 +50,61 @@ public class ConfigGenerator {
     private static final String COMMAND_HELP =
             "Generate notifications.xml and " + EventsGenerator.EVENTS_FILENAME + " based on the thresholds defined on thresholds.xml\n\n" +
                     "Syntax: java -jar " + getJarName() + " \\\n" +
-                    "        --opennms-home <OpenNMS Home Directory> \\\n" +
+                    "        --opennms-home <OpenNMS Home Directory>|--fleet <OpenNMS Homes List or Directory> \\\n" +
                     "        [--config <Configuration Properties file>] \\\n" +
                     "        [--notifications <Template for notifications.xml>] \\\n" +
+                    "        [--skip-validation] \\\n" +
+                    "        [--cache|--cache-dir <Cache Directory>] \\\n" +
+                    "        [--watch] \\\n" +
+                    "        [--parallelism <Number of Threads>] \\\n" +
+                    "        [--merge preserve|replace] \\\n" +
+                    "        [--shard group|prefix|size:<Max Events>] \\\n" +
+                    "        [--notifications-merge skip|replace] \\\n" +
+                    "        [--http [<Host>:]<Port>] \\\n" +
+                    "        [--manifest] \\\n" +
+                    "        [--stats text|json] \\\n" +
                     "\n" +
                     "    -d|--opennms-home    OpenNMS Home Directory (example: /opt/opennms or /usr/share/opennms)\n" +
+                    "    -f|--fleet           Generate the files for many OpenNMS installations concurrently. It can be a text file\n" +
+                    "                         with one OpenNMS Home Directory per line, or a directory whose subdirectories are\n" +
+                    "                         OpenNMS Home Directories. Each one uses etc/" + FleetGenerator.CONFIG_FILENAME + " when\n" +
+                    "                         it exists, or the configuration passed with --config. It can't be used with --watch\n" +
+                    "                         or --cache-dir.\n" +
                     "    -c|--config          Configuration Properties file\n" +
                     "                         (if not passed, default settings will be used)\n" +
                     "    -n|--notifications   Template for notifications.xml, used as the base content.\n" +
                     "                         (if not passed, notifications.xml won't be generated)\n" +
+                    "    -s|--skip-validation Skip the validation of the content of thresholds.xml\n" +
+                    "    -k|--cache           Reuse the output of the unchanged threshold groups from previous runs\n" +
+                    "                         (the cache is stored on $OPENNMS_HOME/" + GroupCache.DEFAULT_DIRECTORY + ")\n" +
+                    "    -K|--cache-dir       Same as --cache, but using a custom directory to store the cache\n" +
+                    "    -w|--watch           Keep running, and regenerate the files when thresholds.xml, snmp-graph.properties,\n" +
+                    "                         the configuration file or the notifications template change\n" +
+                    "    -p|--parallelism     Number of threads used to process the threshold groups\n" +
+                    "                         (default: number of available processors; use 1 to process them sequentially)\n" +
+                    "    -m|--merge           Merge the generated events into the existing " + EventsGenerator.EVENTS_FILENAME + "\n" +
+                    "                         instead of replacing it. The events added manually are kept, and the existing\n" +
+                    "                         events with the UEI of a generated event are preserved or replaced\n" +
+                    "    -D|--shard           Split the events into several files instead of a single " + EventsGenerator.EVENTS_FILENAME + ":\n" +
+                    "                         one per threshold group, one per UEI segment after the base UEI, or files\n" +
+                    "                         with a maximum number of events. The entries on eventconf.xml are updated\n" +
+                    "    -M|--notifications-merge\n" +
+                    "                         What to do with the generated notifications whose name or UEI already exist\n" +
+                    "                         on the notifications template: skip them (default) or replace the existing ones\n" +
+                    "    -H|--http            Run an HTTP service that generates the events (/events) and the notifications\n" +
+                    "                         (/notifications) on demand, from an OpenNMS Home Directory (GET with ?home=<dir>)\n" +
+                    "                         or from the files of a multipart request (POST). It listens on the loopback interface\n" +
+                    "                         unless a host is specified. It can't be used with --opennms-home, --fleet or --watch\n" +
+                    "    -R|--manifest        Store the digest of each generated event and notification on\n" +
+                    "                         etc/" + GenerationManifest.MANIFEST_FILENAME + ", and report the definitions added, removed\n" +
+                    "                         or modified since the previous run (also stored on etc/" + GenerationManifest.CHANGES_FILENAME + ")\n" +
+                    "    -S|--stats           Print the wall time, CPU time and allocated bytes of each phase, the number of\n" +
+                    "                         groups, thresholds, expressions, events and notifications, and the hit rates of\n" +
+                    "                         the caches, as human-readable text or as a single line of JSON\n" +
                     "\n" +
                     "Warnings:\n" +
                     " - This tool requires at least OpenNMS 1.12.2\n" +
-                    " - Do not add any custom events on " + EventsGenerator.EVENTS_FILENAME + " they will be overriden\n";
+                    " - Do not add any custom events on " + EventsGenerator.EVENTS_FILENAME + " they will be overriden (unless --merge is used)\n";
 
     /**
      * The main method.
@@ -72,22 +116,67 @@ public class ConfigGenerator {
         opts.addOption("d", "opennms-home", true, "OpenNMS Home Directory (example: /opt/opennms or /usr/share/opennms)");
         opts.addOption("n", "notifications", true, "Template with basic content of notifications.xml");
         opts.addOption("c", "config", true, "Configuration File (optional)");
+        opts.addOption("s", "skip-validation", false, "Skip the validation of thresholds.xml (optional)");
+        opts.addOption("k", "cache", false, "Cache the output of the threshold groups (optional)");
+        opts.addOption("K", "cache-dir", true, "Directory for the cache of the threshold groups (optional)");
+        opts.addOption("w", "watch", false, "Regenerate the files when the inputs change (optional)");
+        opts.addOption("f", "fleet", true, "List or directory of OpenNMS Home Directories (optional)");
+        opts.addOption("p", "parallelism", true, "Number of threads used to process the threshold groups (optional)");
+        opts.addOption("m", "merge", true, "Merge policy for the existing events: preserve or replace (optional)");
+        opts.addOption("D", "shard", true, "Sharding of the events file: group, prefix or size:<Max Events> (optional)");
+        opts.addOption("M", "notifications-merge", true, "Policy for the notifications that exist on the template: skip or replace (optional)");
+        opts.addOption("H", "http", true, "Address of the HTTP service: [<Host>:]<Port> (optional)");
+        opts.addOption("R", "manifest", false, "Store the manifest and report the changes since the previous run (optional)");
+        opts.addOption("S", "stats", true, "Format of the generation statistics: text or json (optional)");
 
         File onmsHomeDir = null;
+        File fleet = null;
+        InetSocketAddress httpAddress = null;
         File configFile = null;
         File notificationsFile = null;
+        boolean validate = true;
+        boolean cache = false;
+        File cacheDir = null;
+        boolean watch = false;
+        boolean manifest = false;
+        int parallelism = Runtime.getRuntime().availableProcessors();
+        GenerationStats stats = GenerationStats.DISABLED;
+        EventsMerger.Policy mergePolicy = null;
+        EventsSharding sharding = null;
+        NotificationsMerger.Policy notificationsPolicy = NotificationsMerger.Policy.SKIP;
 
         GnuParser parser = new GnuParser();
         try {
             CommandLine cmd = parser.parse(opts, args);
-            if (cmd.hasOption('d')) {
+            if (cmd.hasOption('H')) {
+                try {
+                    httpAddress = GenerationServer.parseAddress(cmd.getOptionValue('H'));
+                } catch (IllegalArgumentException e) {
+                    printHelp("The address of the HTTP service must be [<Host>:]<Port>.");
+                    System.exit(1);
+                }
+                if (cmd.hasOption('d') || cmd.hasOption('f') || cmd.hasOption('w')) {
+                    printHelp("The HTTP service can't be combined with --opennms-home, --fleet or --watch.");
+                    System.exit(1);
+                }
+            } else if (cmd.hasOption('f')) {
+                fleet = new File(cmd.getOptionValue('f'));
+                if (!fleet.exists()) {
+                    printHelp("The list of OpenNMS Home Directories does not exist.");
+                    System.exit(1);
+                }
+                if (cmd.hasOption('d') || cmd.hasOption('w') || cmd.hasOption('K')) {
+                    printHelp("The fleet mode can't be combined with --opennms-home, --watch or --cache-dir.");
+                    System.exit(1);
+                }
+            } else if (cmd.hasOption('d')) {
                 onmsHomeDir = new File(cmd.getOptionValue('d'));
                 if (!onmsHomeDir.exists()) {
                     printHelp("OpenNMS Home Directory does not exist.");
                     System.exit(1);
                 }
             } else {
-                printHelp("You must specify an OpenNMS Home Directory");
+                printHelp("You must specify an OpenNMS Home Directory or a fleet");
                 System.exit(1);
             }
             if (cmd.hasOption('c')) {
@@ -104,38 +193,155 @@ public class ConfigGenerator {
                     System.exit(1);
                 }
             }
+            if (cmd.hasOption('s')) {
+                validate = false;
+            }
+            if (cmd.hasOption('K')) {
+                cacheDir = new File(cmd.getOptionValue('K'));
+            } else if (cmd.hasOption('k')) {
+                cache = true;
+                if (onmsHomeDir != null) {
+                    cacheDir = new File(onmsHomeDir, GroupCache.DEFAULT_DIRECTORY);
+                }
+            }
+            if (cmd.hasOption('w')) {
+                watch = true;
+            }
+            if (cmd.hasOption('R')) {
+                manifest = true;
+            }
+            if (cmd.hasOption('p')) {
+                try {
+                    parallelism = Integer.parseInt(cmd.getOptionValue('p'));
+                } catch (NumberFormatException e) {
+                    parallelism = 0;
+                }
+                if (parallelism < 1) {
+                    printHelp("The parallelism must be a positive number.");
+                    System.exit(1);
+                }
+            }
+            if (cmd.hasOption('m')) {
+                try {
+                    mergePolicy = EventsMerger.Policy.parse(cmd.getOptionValue('m'));
+                } catch (IllegalArgumentException e) {
+                    printHelp("The merge policy must be preserve or replace.");
+                    System.exit(1);
+                }
+            }
+            if (cmd.hasOption('D')) {
+                try {
+                    sharding = EventsSharding.parse(cmd.getOptionValue('D'));
+                } catch (IllegalArgumentException e) {
+                    printHelp("The sharding must be group, prefix or size:<Max Events> (greater than zero).");
+                    System.exit(1);
+                }
+            }
+            if (cmd.hasOption('M')) {
+                try {
+                    notificationsPolicy = NotificationsMerger.Policy.parse(cmd.getOptionValue('M'));
+                } catch (IllegalArgumentException e) {
+                    printHelp("The notifications merge policy must be skip or replace.");
+                    System.exit(1);
+                }
+            }
+            if (cmd.hasOption('S')) {
+                try {
+                    stats = new GenerationStats(GenerationStats.parseFormat(cmd.getOptionValue('S')));
+                } catch (IllegalArgumentException e) {
+                    printHelp("The format of the statistics must be text or json.");
+                    System.exit(1);
+                }
+            }
         } catch (ParseException e) {
             printHelp("Failed to parse command line options");
             System.exit(1);
         }
 
-        ThresholdEventProcessor eventProcessor = null;
-        if (configFile == null) {
-            eventProcessor = new ThresholdEventProcessor();
-        } else {
-            Properties config = new Properties();
+        if (httpAddress != null) {
+            try {
+                GenerationServer server = new GenerationServer(configFile, notificationsFile);
+                server.setValidate(validate);
+                server.setThreads(parallelism);
+                server.start(httpAddress);
+            } catch (Exception e) {
+                e.printStackTrace();
+                System.exit(1);
+            }
+            return;
+        }
+
+        if (fleet != null) {
             try {
-                config.load(new FileInputStream(configFile));
+                FleetGenerator generator = new FleetGenerator(configFile, notificationsFile);
+                generator.setValidate(validate);
+                generator.setCache(cache);
+                generator.setParallelism(parallelism);
+                generator.setStats(stats);
+                generator.setMergePolicy(mergePolicy);
+                generator.setSharding(sharding);
+                generator.setNotificationsPolicy(notificationsPolicy);
+                generator.setManifest(manifest);
+                if (!generator.generate(FleetGenerator.getHomes(fleet))) {
+                    System.exit(1);
+                }
             } catch (Exception e) {
-                printHelp("Can't parse configuration file, " + e.getMessage());
+                e.printStackTrace();
                 System.exit(1);
             }
-            eventProcessor = new ThresholdEventProcessor(config);
+            return;
         }
 
+        ThresholdEventProcessor eventProcessor = null;
         try {
-            System.setProperty("opennms.home", onmsHomeDir.getAbsolutePath());
-            EventsGenerator eventsGen = new EventsGenerator(eventProcessor);
-            eventsGen.generateThresholdEvents(onmsHomeDir);
-            if (notificationsFile != null) {
-                NotificationsGenerator notifGen = new NotificationsGenerator(eventProcessor);
-                notifGen.generateNotifications(onmsHomeDir, notificationsFile);
+            eventProcessor = createEventProcessor(configFile);
+            eventProcessor.setStats(stats);
+        } catch (Exception e) {
+            printHelp("Can't parse configuration file, " + e.getMessage());
+            System.exit(1);
+        }
+
+        try {
+            GenerationSession session = new GenerationSession(eventProcessor, onmsHomeDir);
+            session.setValidate(validate);
+            session.setCacheDirectory(cacheDir);
+            session.setParallelism(parallelism);
+            session.setMergePolicy(mergePolicy);
+            session.setSharding(sharding);
+            session.setNotificationsPolicy(notificationsPolicy);
+            session.setManifest(manifest);
+            if (watch) {
+                new ThresholdsWatcher(session, configFile, notificationsFile).watch();
+            } else {
+                session.generate(notificationsFile);
+                stats.report(System.out);
             }
         } catch (Exception e) {
             e.printStackTrace();
         }
     }
 
+    /**
+     * Creates the threshold event processor.
+     *
+     * @param configFile the configuration properties file (null to use the default settings)
+     * @return the threshold event processor
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public static ThresholdEventProcessor createEventProcessor(File configFile) throws IOException {
+        if (configFile == null) {
+            return new ThresholdEventProcessor();
+        }
+        Properties config = new OrderedProperties();
+        FileInputStream input = new FileInputStream(configFile);
+        try {
+            config.load(input);
+        } finally {
+            input.close();
+        }
+        return new ThresholdEventProcessor(config);
+    }
+
     /**
      * Prints the help.
      *
@@ -0,0 +1,122 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2006-2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+package org.opennms.tools;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The Class ContentPool.
+ * <p>Thread-safe canonicalizing pool for the content of the generated events and notifications. Most of the
+ * events share the same description, log message, alarm keys and notification texts, so each distinct string
+ * is kept only once, and all the events reference the same instance.</p>
+ * <p>Unlike {@link String#intern()}, the pool can be discarded with the result that uses it.</p>
+ *
+ * @author <a href="mailto:agalue@opennms.org">Alejandro Galue</a>
+ */
+public class ContentPool {
+
+    /** The canonical strings. */
+    private final ConcurrentMap<String,String> pool = new ConcurrentHashMap<String,String>();
+
+    /** The number of strings received. */
+    private final AtomicLong requests = new AtomicLong();
+
+    /** The number of characters received. */
+    private final AtomicLong requestedChars = new AtomicLong();
+
+    /** The number of characters of the canonical strings. */
+    private final AtomicLong uniqueChars = new AtomicLong();
+
+    /**
+     * Gets the canonical instance of a string.
+     *
+     * @param content the content (can be null)
+     * @return the canonical instance, or null if the content is null
+     */
+    public String canonicalize(String content) {
+        if (content == null) {
+            return null;
+        }
+        requests.incrementAndGet();
+        requestedChars.addAndGet(content.length());
+        String canonical = pool.putIfAbsent(content, content);
+        if (canonical == null) {
+            uniqueChars.addAndGet(content.length());
+            return content;
+        }
+        return canonical;
+    }
+
+    /**
+     * Gets the number of strings received.
+     *
+     * @return the number of strings
+     */
+    public long getRequests() {
+        return requests.get();
+    }
+
+    /**
+     * Gets the number of distinct strings.
+     *
+     * @return the number of distinct strings
+     */
+    public int getSize() {
+        return pool.size();
+    }
+
+    /**
+     * Gets the deduplication ratio.
+     *
+     * @return the fraction of the received characters that were duplicates (between 0 and 1)
+     */
+    public double getDedupRatio() {
+        long total = requestedChars.get();
+        return total == 0 ? 0 : 1 - (double) uniqueChars.get() / total;
+    }
+
+    /**
+     * Gets the approximate memory saved.
+     *
+     * @return the number of bytes of the duplicated characters
+     */
+    public long getSavedBytes() {
+        return 2 * (requestedChars.get() - uniqueChars.get());
+    }
+
+    /* (non-Javadoc)
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return String.format("%d strings, %d unique (%.1f%% deduplicated, %d KB saved)", getRequests(), getSize(), 100 * getDedupRatio(), getSavedBytes() / 1024);
+    }
+
+}
@@ -0,0 +1,165 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2006-2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+package org.opennms.tools;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The Class DestinationPathMatcher.
+ * <p>Resolves the destination path of the notifications from the <code>destinationPath[regex]</code> rules.
+ * The rules are compiled once into a single alternation, so each UEI is tested in one pass, and when several
+ * rules match the same UEI, the first one on declaration order wins. The results are memoized per UEI.</p>
+ * <p>When a rule uses back references, the rules can't be merged (the group numbers change), so they are
+ * evaluated one by one on declaration order instead. The same happens when the merged pattern is invalid
+ * although each rule is valid, for example when two rules define the same named group, or when a rule ends
+ * with a comment on comments mode.</p>
+ *
+ * @author <a href="mailto:agalue@opennms.org">Alejandro Galue</a>
+ */
+public class DestinationPathMatcher {
+
+    private static final Logger LOG = LoggerFactory.getLogger(DestinationPathMatcher.class);
+
+    /** The Constant DEFAULT_DESTINATION_PATH. */
+    public static final String DEFAULT_DESTINATION_PATH = "Email-Admin";
+
+    /** The Constant BACK_REFERENCE. */
+    private static final Pattern BACK_REFERENCE = Pattern.compile("\\\\(\\d|k<)");
+
+    /** The destination paths, on declaration order. */
+    private final List<String> destinations = new ArrayList<String>();
+
+    /** The compiled rules, on declaration order. */
+    private final List<Pattern> patterns = new ArrayList<Pattern>();
+
+    /** The group of each rule within the merged pattern. */
+    private int[] groups;
+
+    /** The merged pattern (null when the rules can't be merged). */
+    private Pattern mergedPattern;
+
+    /** The default destination path. */
+    private final String defaultDestination;
+
+    /** The memoized destination paths, indexed by UEI. */
+    private final ConcurrentMap<String,String> cache = new ConcurrentHashMap<String,String>();
+
+    /**
+     * Instantiates a new destination path matcher.
+     *
+     * @param rules the rules (regular expression to destination path) on declaration order
+     * @param defaultDestination the destination path used when no rule matches
+     */
+    public DestinationPathMatcher(Map<String,String> rules, String defaultDestination) {
+        this.defaultDestination = defaultDestination;
+        boolean mergeable = true;
+        for (Entry<String,String> rule : rules.entrySet()) {
+            try {
+                patterns.add(Pattern.compile(rule.getKey()));
+                destinations.add(rule.getValue());
+                if (BACK_REFERENCE.matcher(rule.getKey()).find()) {
+                    mergeable = false;
+                }
+            } catch (PatternSyntaxException e) {
+                LOG.error("Ignoring invalid destination path rule {}: {}", rule.getKey(), e.getDescription());
+            }
+        }
+        if (mergeable && !patterns.isEmpty()) {
+            groups = new int[patterns.size()];
+            StringBuilder regex = new StringBuilder();
+            int group = 1;
+            for (int i = 0; i < patterns.size(); i++) {
+                if (i > 0) {
+                    regex.append('|');
+                }
+                regex.append('(').append(patterns.get(i).pattern()).append(')');
+                groups[i] = group;
+                group += patterns.get(i).matcher("").groupCount() + 1;
+            }
+            try {
+                mergedPattern = Pattern.compile(regex.toString());
+            } catch (PatternSyntaxException e) {
+                LOG.debug("Evaluating the destination path rules one by one, as they can't be merged: {}", e.getDescription());
+                groups = null;
+            }
+        }
+    }
+
+    /**
+     * Gets the destination path.
+     *
+     * @param uei the Event UEI
+     * @return the destination path of the first matching rule, or the default destination path
+     */
+    public String getDestinationPath(String uei) {
+        String destination = cache.get(uei);
+        if (destination == null) {
+            destination = findDestinationPath(uei);
+            cache.putIfAbsent(uei, destination);
+        }
+        return destination;
+    }
+
+    /**
+     * Finds the destination path, without using the cache.
+     *
+     * @param uei the Event UEI
+     * @return the destination path
+     */
+    String findDestinationPath(String uei) {
+        if (mergedPattern != null) {
+            Matcher m = mergedPattern.matcher(uei);
+            if (m.matches()) {
+                for (int i = 0; i < groups.length; i++) {
+                    if (m.start(groups[i]) != -1) {
+                        return destinations.get(i);
+                    }
+                }
+            }
+            return defaultDestination;
+        }
+        for (int i = 0; i < patterns.size(); i++) {
+            if (patterns.get(i).matcher(uei).matches()) {
+                return destinations.get(i);
+            }
+        }
+        return defaultDestination;
+    }
+
+}
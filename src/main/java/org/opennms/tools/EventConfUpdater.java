@@ -0,0 +1,193 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2006-2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+package org.opennms.tools;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The Class EventConfUpdater.
+ * <p>Keeps the &lt;event-file&gt; entries of eventconf.xml in sync with the events files written by the generator.</p>
+ * <p>The file is edited as text, so the comments and the formatting are preserved: all the entries of
+ * Thresholds-Categorized.events.xml and its shards are removed, and the current ones are inserted where the
+ * first of them was (or before the first &lt;event-file&gt; when there were none). The entries inside XML
+ * comments are left untouched. The file is only replaced when its content changes.</p>
+ *
+ * @author <a href="mailto:agalue@opennms.org">Alejandro Galue</a>
+ */
+public class EventConfUpdater {
+
+    /** The Constant CHARSET. */
+    private static final Charset CHARSET = Charset.forName("UTF-8");
+
+    /** The Constant MANAGED_ENTRY (an entry for a file written by the generator, with its indentation and line break). */
+    private static final Pattern MANAGED_ENTRY = Pattern.compile("([ \\t]*)<event-file>\\s*events/Thresholds-Categorized(\\.[^<]+)?\\.events\\.xml\\s*</event-file>[ \\t]*(\\r?\\n)?");
+
+    /** The Constant FIRST_ENTRY. */
+    private static final Pattern FIRST_ENTRY = Pattern.compile("(?m)^([ \\t]*)<event-file>");
+
+    /** The Constant EVENTS_END. */
+    private static final Pattern EVENTS_END = Pattern.compile("(?m)^([ \\t]*)</events>");
+
+    /** The eventconf.xml file. */
+    private File eventConfFile;
+
+    /**
+     * Instantiates a new eventconf.xml updater.
+     *
+     * @param eventConfFile the eventconf.xml file
+     */
+    public EventConfUpdater(File eventConfFile) {
+        this.eventConfFile = eventConfFile;
+    }
+
+    /**
+     * Updates the entries of the events files written by the generator.
+     *
+     * @param fileNames the names of the events files (relative to etc/events)
+     * @return the status of eventconf.xml
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public OutputFile.Status update(List<String> fileNames) throws IOException {
+        String content = new String(Files.readAllBytes(eventConfFile.toPath()), CHARSET);
+        List<int[]> comments = getComments(content);
+        Matcher m = MANAGED_ENTRY.matcher(content);
+        int position = -1;
+        String indent = null;
+        String lineBreak = content.contains("\r\n") ? "\r\n" : "\n";
+        StringBuilder sb = new StringBuilder();
+        int last = 0;
+        while (m.find()) {
+            if (isCommented(comments, m.start())) {
+                continue;
+            }
+            sb.append(content, last, m.start());
+            last = m.end();
+            if (position < 0) {
+                indent = m.group(1);
+                position = sb.length();
+            }
+        }
+        sb.append(content, last, content.length());
+        if (position < 0) {
+            comments = getComments(sb);
+            Matcher first = find(FIRST_ENTRY, sb, comments);
+            if (first != null) {
+                position = first.start();
+                indent = first.group(1);
+            } else {
+                Matcher end = find(EVENTS_END, sb, comments);
+                if (end == null) {
+                    throw new IOException("Can't find the events section on " + eventConfFile);
+                }
+                position = end.start();
+                indent = end.group(1) + "  ";
+            }
+        }
+        StringBuilder entries = new StringBuilder();
+        for (String fileName : fileNames) {
+            entries.append(indent).append("<event-file>events/").append(fileName).append("</event-file>").append(lineBreak);
+        }
+        sb.insert(position, entries);
+
+        OutputFile output = new OutputFile(eventConfFile);
+        try {
+            OutputStream out = output.open();
+            try {
+                out.write(sb.toString().getBytes(CHARSET));
+                out.close();
+            } finally {
+                OutputFile.closeQuietly(out);
+            }
+            return output.commit();
+        } finally {
+            output.discard();
+        }
+    }
+
+    /**
+     * Gets the ranges of the comments of the content.
+     *
+     * @param content the content
+     * @return the ranges of the comments (start inclusive, end exclusive)
+     */
+    private List<int[]> getComments(CharSequence content) {
+        List<int[]> comments = new ArrayList<int[]>();
+        String text = content.toString();
+        int start = text.indexOf("<!--");
+        while (start >= 0) {
+            int end = text.indexOf("-->", start + 4);
+            end = end < 0 ? text.length() : end + 3;
+            comments.add(new int[] { start, end });
+            start = text.indexOf("<!--", end);
+        }
+        return comments;
+    }
+
+    /**
+     * Checks if a position of the content is inside a comment.
+     *
+     * @param comments the ranges of the comments
+     * @param index the position
+     * @return true, if the position is inside a comment
+     */
+    private boolean isCommented(List<int[]> comments, int index) {
+        for (int[] range : comments) {
+            if (index >= range[0] && index < range[1]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Finds the first match of a pattern outside the comments.
+     *
+     * @param pattern the pattern
+     * @param content the content
+     * @param comments the ranges of the comments
+     * @return the matcher positioned on the match, or null if there is none
+     */
+    private Matcher find(Pattern pattern, CharSequence content, List<int[]> comments) {
+        Matcher m = pattern.matcher(content);
+        while (m.find()) {
+            if (!isCommented(comments, m.start())) {
+                return m;
+            }
+        }
+        return null;
+    }
+
+}
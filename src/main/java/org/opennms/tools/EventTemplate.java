@@ -0,0 +1,168 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2006-2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+package org.opennms.tools;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The Class EventTemplate.
+ * <p>Compiled template for a threshold type and state. The source is split once into literal text, variables and
+ * optional sections, so rendering only appends the segments into a buffer of the expected size.</p>
+ *
+ * @author <a href="mailto:agalue@opennms.org">Alejandro Galue</a>
+ */
+public class EventTemplate {
+
+    /** The segments. */
+    private final Segment[] segments;
+
+    /** The length of the literal text. */
+    private final int literalLength;
+
+    /**
+     * The Class Segment.
+     */
+    private static final class Segment {
+
+        /** The literal text (null for variables and optional sections). */
+        private String text;
+
+        /** The variable (null for literal text and optional sections). */
+        private EventTemplates.Variable variable;
+
+        /** The optional section (null for literal text and variables). */
+        private EventTemplate optional;
+    }
+
+    /**
+     * Instantiates a new event template.
+     *
+     * @param source the template source, with the includes already expanded
+     * @throws IllegalArgumentException if the template is invalid
+     */
+    public EventTemplate(String source) throws IllegalArgumentException {
+        this(source, false);
+    }
+
+    /**
+     * Instantiates a new event template.
+     *
+     * @param source the template source, with the includes already expanded
+     * @param optional true if the source is the content of an optional section
+     * @throws IllegalArgumentException if the template is invalid
+     */
+    private EventTemplate(String source, boolean optional) throws IllegalArgumentException {
+        List<Segment> list = new ArrayList<Segment>();
+        int length = 0;
+        int pos = 0;
+        while (pos < source.length()) {
+            int variableStart = source.indexOf("${", pos);
+            int optionalStart = optional ? -1 : source.indexOf("[[", pos);
+            int next = variableStart == -1 ? optionalStart : (optionalStart == -1 ? variableStart : Math.min(variableStart, optionalStart));
+            if (next == -1) {
+                next = source.length();
+            }
+            if (next > pos) {
+                Segment s = new Segment();
+                s.text = source.substring(pos, next);
+                length += s.text.length();
+                list.add(s);
+            }
+            if (next == source.length()) {
+                break;
+            }
+            Segment s = new Segment();
+            if (next == variableStart) {
+                int end = source.indexOf('}', next);
+                if (end == -1) {
+                    throw new IllegalArgumentException("Unterminated variable on template: " + source);
+                }
+                s.variable = EventTemplates.Variable.fromName(source.substring(next + 2, end));
+                pos = end + 1;
+            } else {
+                int end = source.indexOf("]]", next + 2);
+                if (end == -1) {
+                    throw new IllegalArgumentException("Unterminated optional section on template: " + source);
+                }
+                s.optional = new EventTemplate(source.substring(next + 2, end), true);
+                length += s.optional.literalLength;
+                pos = end + 2;
+            }
+            list.add(s);
+        }
+        segments = list.toArray(new Segment[list.size()]);
+        literalLength = length;
+    }
+
+    /**
+     * Renders the template.
+     *
+     * @param values the values of the variables, indexed by the ordinal of {@link EventTemplates.Variable}
+     * @return the rendered text
+     */
+    public String render(String[] values) {
+        StringBuilder sb = new StringBuilder(literalLength + 256);
+        append(sb, values);
+        return sb.toString();
+    }
+
+    /**
+     * Appends the rendered template to a buffer.
+     *
+     * @param sb the buffer
+     * @param values the values of the variables
+     */
+    private void append(StringBuilder sb, String[] values) {
+        for (Segment s : segments) {
+            if (s.text != null) {
+                sb.append(s.text);
+            } else if (s.variable != null) {
+                sb.append(values[s.variable.ordinal()]);
+            } else if (s.optional.hasValues(values)) {
+                s.optional.append(sb, values);
+            }
+        }
+    }
+
+    /**
+     * Checks if all the variables of the template have a value.
+     *
+     * @param values the values of the variables
+     * @return true, if all the variables have a value
+     */
+    private boolean hasValues(String[] values) {
+        for (Segment s : segments) {
+            if (s.variable != null && values[s.variable.ordinal()] == null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+}
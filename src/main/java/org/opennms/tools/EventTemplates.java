@@ -0,0 +1,296 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2006-2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+package org.opennms.tools;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The Class EventTemplates.
+ * <p>Templates for the label, the log message and the description of the threshold events. The default templates
+ * are defined on event-templates.xml (a Java XML properties file), and any of them can be replaced through an
+ * external file with the same format.</p>
+ * <p>Each template can be specialized per threshold type and state by adding them as suffixes of its name. For
+ * example, for an exceeded high threshold, the entries <code>name.high.exceeded</code>, <code>name.high</code>,
+ * <code>name.exceeded</code> and <code>name</code> are tried in that order. The templates are compiled once per
+ * threshold type and state, when the templates are loaded.</p>
+ *
+ * @author <a href="mailto:agalue@opennms.org">Alejandro Galue</a>
+ */
+public class EventTemplates {
+
+    /** The Constant DEFAULT_TEMPLATES. */
+    public static final String DEFAULT_TEMPLATES = "/event-templates.xml";
+
+    /** The Constant LABEL. */
+    public static final String LABEL = "label";
+
+    /** The Constant LOG_MESSAGE. */
+    public static final String LOG_MESSAGE = "logmsg";
+
+    /** The Constant DESCRIPTION. */
+    public static final String DESCRIPTION = "descr";
+
+    /** The Constant THRESHOLD_TYPES. */
+    private static final String[] THRESHOLD_TYPES = new String[] { "high", "low", "absoluteChange", "relativeChange", "rearmingAbsoluteChange" };
+
+    /** The Constant MAX_INCLUDE_DEPTH. */
+    private static final int MAX_INCLUDE_DEPTH = 10;
+
+    /** The default templates. */
+    private static EventTemplates defaultTemplates;
+
+    /**
+     * The Enum Variable.
+     */
+    public enum Variable {
+
+        /** The threshold name (for example, High). */
+        THRESHOLD_NAME("thresholdName"),
+
+        /** The threshold name in lower case. */
+        THRESHOLD_NAME_LOWER("thresholdNameLower"),
+
+        /** The threshold parameter (for example, %parm[threshold]%). */
+        THRESHOLD_PARAM("thresholdParam"),
+
+        /** The threshold condition (exceeded or rearmed). */
+        CONDITION("condition"),
+
+        /** The threshold expression. */
+        EXPRESSION("expression"),
+
+        /** The threshold expression in lower case. */
+        EXPRESSION_LOWER("expressionLower"),
+
+        /** The event severity. */
+        SEVERITY("severity"),
+
+        /** The graph link. */
+        GRAPH_LINK("graphLink"),
+
+        /** The instance information (no value for node level thresholds). */
+        INSTANCE("instance"),
+
+        /** The threshold description (no value when the threshold doesn't have one). */
+        DESCRIPTION("description");
+
+        /** The variable name. */
+        private final String name;
+
+        /**
+         * Instantiates a new variable.
+         *
+         * @param name the variable name
+         */
+        private Variable(String name) {
+            this.name = name;
+        }
+
+        /**
+         * Gets the variable name.
+         *
+         * @return the variable name
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Gets a variable from its name.
+         *
+         * @param name the variable name
+         * @return the variable
+         * @throws IllegalArgumentException if the variable doesn't exist
+         */
+        public static Variable fromName(String name) throws IllegalArgumentException {
+            for (Variable v : values()) {
+                if (v.name.equals(name)) {
+                    return v;
+                }
+            }
+            throw new IllegalArgumentException("Unknown template variable " + name);
+        }
+    }
+
+    /** The template sources. */
+    private final Properties sources = new Properties();
+
+    /** The compiled templates, indexed by name, threshold type and state. */
+    private final ConcurrentMap<String,EventTemplate> templates = new ConcurrentHashMap<String,EventTemplate>();
+
+    /**
+     * Instantiates the default event templates.
+     *
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public EventTemplates() throws IOException {
+        this(null);
+    }
+
+    /**
+     * Instantiates new event templates.
+     *
+     * @param overrides the file with the templates that replace the default ones (can be null)
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public EventTemplates(File overrides) throws IOException {
+        InputStream input = getClass().getResourceAsStream(DEFAULT_TEMPLATES);
+        if (input == null) {
+            throw new IOException("Can't find " + DEFAULT_TEMPLATES);
+        }
+        try {
+            sources.loadFromXML(input);
+        } finally {
+            input.close();
+        }
+        if (overrides != null) {
+            Properties custom = new Properties();
+            input = new BufferedInputStream(new FileInputStream(overrides));
+            try {
+                custom.loadFromXML(input);
+            } finally {
+                input.close();
+            }
+            sources.putAll(custom);
+        }
+        try {
+            for (String thresholdId : THRESHOLD_TYPES) {
+                for (String name : new String[] { LABEL, LOG_MESSAGE, DESCRIPTION }) {
+                    getTemplate(name, thresholdId, true);
+                    getTemplate(name, thresholdId, false);
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Invalid event templates" + (overrides == null ? "" : " on " + overrides) + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Gets the default event templates.
+     *
+     * @return the default event templates
+     */
+    public static synchronized EventTemplates getDefault() {
+        if (defaultTemplates == null) {
+            try {
+                defaultTemplates = new EventTemplates();
+            } catch (IOException e) {
+                throw new IllegalStateException("Can't load the default event templates", e);
+            }
+        }
+        return defaultTemplates;
+    }
+
+    /**
+     * Gets a compiled template.
+     *
+     * @param name the template name
+     * @param thresholdId the threshold type
+     * @param exceeded true for exceeded events, false for rearmed events
+     * @return the compiled template
+     * @throws IllegalArgumentException if the template doesn't exist or is invalid
+     */
+    public EventTemplate getTemplate(String name, String thresholdId, boolean exceeded) throws IllegalArgumentException {
+        String state = exceeded ? "exceeded" : "rearmed";
+        String key = name + '|' + thresholdId + '|' + state;
+        EventTemplate template = templates.get(key);
+        if (template == null) {
+            template = new EventTemplate(expand(name, thresholdId, state, 0));
+            templates.putIfAbsent(key, template);
+        }
+        return template;
+    }
+
+    /**
+     * Gets the source of a template with its includes expanded.
+     *
+     * @param name the template name
+     * @param thresholdId the threshold type
+     * @param state the state
+     * @param depth the include depth
+     * @return the expanded source
+     * @throws IllegalArgumentException if the template or one of its includes doesn't exist
+     */
+    private String expand(String name, String thresholdId, String state, int depth) throws IllegalArgumentException {
+        if (depth > MAX_INCLUDE_DEPTH) {
+            throw new IllegalArgumentException("Too many nested includes on template " + name);
+        }
+        String source = getSource(name, thresholdId, state);
+        if (source == null) {
+            throw new IllegalArgumentException("Can't find template " + name + " for " + thresholdId + " " + state + " thresholds");
+        }
+        int start = source.indexOf("${#");
+        if (start == -1) {
+            return source;
+        }
+        StringBuilder sb = new StringBuilder();
+        int pos = 0;
+        while (start != -1) {
+            int end = source.indexOf('}', start);
+            if (end == -1) {
+                throw new IllegalArgumentException("Unterminated include on template " + name);
+            }
+            sb.append(source, pos, start);
+            sb.append(expand(source.substring(start + 3, end), thresholdId, state, depth + 1));
+            pos = end + 1;
+            start = source.indexOf("${#", pos);
+        }
+        sb.append(source, pos, source.length());
+        return sb.toString();
+    }
+
+    /**
+     * Gets the source of a template.
+     *
+     * @param name the template name
+     * @param thresholdId the threshold type
+     * @param state the state
+     * @return the source, or null if it doesn't exist
+     */
+    private String getSource(String name, String thresholdId, String state) {
+        String source = sources.getProperty(name + '.' + thresholdId + '.' + state);
+        if (source == null) {
+            source = sources.getProperty(name + '.' + thresholdId);
+        }
+        if (source == null) {
+            source = sources.getProperty(name + '.' + state);
+        }
+        if (source == null) {
+            source = sources.getProperty(name);
+        }
+        return source;
+    }
+
+}
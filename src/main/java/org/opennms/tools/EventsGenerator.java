@@ -29,14 +29,28 @@ package org.opennms.tools;
 
 import java.io.File;
 import java.io.FileNotFoundException;
-import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
-import org.opennms.core.xml.CastorUtils;
-import org.opennms.core.xml.JaxbUtils;
-import org.opennms.netmgt.config.threshd.ThresholdingConfig;
-import org.opennms.netmgt.dao.support.PropertiesGraphDao;
-import org.opennms.netmgt.xml.eventconf.Events;
-import org.springframework.core.io.FileSystemResource;
+import org.opennms.netmgt.xml.eventconf.Event;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * The Class EventsGenerator.
@@ -45,12 +59,33 @@ import org.springframework.core.io.FileSystemResource;
  */
 public class EventsGenerator {
 
+    /** The Constant LOG. */
+    private static final Logger LOG = LoggerFactory.getLogger(EventsGenerator.class);
+
+    /** The Constant CHARSET. */
+    private static final Charset CHARSET = Charset.forName("UTF-8");
+
     /** The Constant EVENTS_FILENAME. */
     public static final String EVENTS_FILENAME = "Thresholds-Categorized.events.xml";
 
+    /** The Constant TRACER. */
+    private static final GenerationTracer TRACER = GenerationTracer.getInstance();
+
     /** The UEI processor. */
     private ThresholdEventProcessor eventProcessor;
 
+    /** The validate flag for thresholds.xml. */
+    private boolean validate = true;
+
+    /** The merge policy (null to replace the events file). */
+    private EventsMerger.Policy mergePolicy;
+
+    /** The sharding of the events file (null to write a single file). */
+    private EventsSharding sharding;
+
+    /** The number of threads used to write the shards. */
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+
     /**
      * Instantiates a new threshold events generator.
      *
@@ -60,6 +95,49 @@ public class EventsGenerator {
         this.eventProcessor = eventProcessor;
     }
 
+    /**
+     * Sets the validate flag.
+     *
+     * @param validate true to validate the content of thresholds.xml
+     */
+    public void setValidate(boolean validate) {
+        this.validate = validate;
+    }
+
+    /**
+     * Sets the merge policy.
+     * <p>When set, the generated events are merged into the existing events file (see {@link EventsMerger}),
+     * instead of replacing it.</p>
+     *
+     * @param mergePolicy the merge policy (null to replace the events file)
+     */
+    public void setMergePolicy(EventsMerger.Policy mergePolicy) {
+        this.mergePolicy = mergePolicy;
+    }
+
+    /**
+     * Sets the sharding of the events file.
+     * <p>When set, the events are split into several files (see {@link EventsSharding}) instead of a single
+     * {@link #EVENTS_FILENAME}.</p>
+     *
+     * @param sharding the sharding (null to write a single file)
+     */
+    public void setSharding(EventsSharding sharding) {
+        this.sharding = sharding;
+    }
+
+    /**
+     * Sets the parallelism level.
+     *
+     * @param parallelism the number of threads used to write the shards
+     */
+    public void setParallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("The parallelism must be greater than zero");
+        }
+        this.parallelism = parallelism;
+    }
+
     /**
      * Generate threshold events.
      *
@@ -71,19 +149,266 @@ public class EventsGenerator {
         if (!thresholdsFile.exists()) {
             throw new FileNotFoundException(thresholdsFile.getAbsolutePath());
         }
-        ThresholdingConfig thresholdsConfig = CastorUtils.unmarshal(ThresholdingConfig.class, new FileSystemResource(thresholdsFile), true);
+        GenerationStats stats = getStats();
+        GenerationStats.Timer timer = stats.start(GenerationStats.GRAPH_TEMPLATES);
+        GraphTemplates graphTemplates;
+        try {
+            graphTemplates = getGraphTemplates(onmsHome);
+        } finally {
+            timer.stop();
+        }
 
-        File graphTemplatesFile = new File(onmsHome, "etc/snmp-graph.properties");
-        if (!graphTemplatesFile.exists()) {
-            throw new FileNotFoundException(graphTemplatesFile.getAbsolutePath());
+        Set<ThresholdEvent> thresholdEvents = null;
+        ThresholdsReader reader = new ThresholdsReader(thresholdsFile, validate);
+        reader.setStats(stats);
+        try {
+            thresholdEvents = eventProcessor.getThresholdEvents(reader, graphTemplates);
+        } finally {
+            reader.close();
         }
-        PropertiesGraphDao graphDao = new PropertiesGraphDao();
-        graphDao.loadProperties("performance", new FileSystemResource(graphTemplatesFile));
+        generateThresholdEvents(onmsHome, thresholdEvents);
+    }
+
+    /**
+     * Generate threshold events.
+     * <p>The events file is only replaced when its content has changed.</p>
+     *
+     * @param onmsHome the OpenNMS home directory
+     * @param thresholdEvents the threshold events
+     * @return the status of the events file
+     * @throws Exception the exception
+     */
+    public OutputFile.Status generateThresholdEvents(File onmsHome, Set<ThresholdEvent> thresholdEvents) throws Exception {
+        if (!(thresholdEvents instanceof SortedSet)) {
+            thresholdEvents = new TreeSet<ThresholdEvent>(thresholdEvents);
+        }
+        List<Event> events = new ArrayList<Event>(thresholdEvents.size());
+        for (ThresholdEvent e : thresholdEvents) {
+            events.add(e.getEvent());
+        }
+        return writeEvents(onmsHome, events);
+    }
+
+    /**
+     * Writes the events file.
+     * <p>The events must be sorted by UEI. The events file is only replaced when its content has changed.</p>
+     * <p>When a merge policy is set and the events file exists, the events are merged into it.</p>
+     * <p>When sharding by group, all the events go to the default shard, as their groups are unknown.</p>
+     *
+     * @param onmsHome the OpenNMS home directory
+     * @param events the events
+     * @return the status of the events file
+     * @throws Exception the exception
+     */
+    public OutputFile.Status writeEvents(File onmsHome, Collection<Event> events) throws Exception {
+        return writeEvents(onmsHome, events, null);
+    }
 
-        Events events = eventProcessor.getEvents(thresholdsConfig.getGroupCollection(), graphDao.getAllPrefabGraphs());
-        File eventFile = new File(onmsHome, "etc/events/" + EVENTS_FILENAME);
+    /**
+     * Writes the events files.
+     * <p>The events must be sorted by UEI. Each events file is only replaced when its content has changed.</p>
+     * <p>When sharding, the shards are written in parallel, and their names are recorded on
+     * etc/{@value EventsSharding#SHARDS_FILENAME}. The shards recorded on a previous run that are no longer
+     * generated (and the single events file) are removed, or kept when merging, as they might contain events
+     * added manually. If etc/eventconf.xml exists, its entries for the generated files are updated.</p>
+     * <p>When not sharding after a sharded run, the recorded shards are removed in the same way, and the single
+     * events file replaces them on etc/eventconf.xml.</p>
+     *
+     * @param onmsHome the OpenNMS home directory
+     * @param events the events
+     * @param groupNames the group name of each UEI (used when sharding by group; can be null)
+     * @return the status of the events files (updated if any of them, or eventconf.xml, has been updated)
+     * @throws Exception the exception
+     */
+    public OutputFile.Status writeEvents(File onmsHome, Collection<Event> events, Map<String,String> groupNames) throws Exception {
+        File eventsDir = new File(onmsHome, "etc/events");
+        File shardsFile = new File(onmsHome, "etc/" + EventsSharding.SHARDS_FILENAME);
+        List<String> fileNames = new ArrayList<String>();
+        boolean updated;
+        if (sharding == null) {
+            OutputFile.Status status = writeEvents(new File(eventsDir, EVENTS_FILENAME), events);
+            if (!shardsFile.exists()) {
+                return status;
+            }
+            fileNames.add(EVENTS_FILENAME);
+            updated = status == OutputFile.Status.UPDATED;
+        } else {
+            String baseUei = eventProcessor == null ? ThresholdEvent.BASE_UEI : eventProcessor.getConfig().getProperty("baseUei", ThresholdEvent.BASE_UEI);
+            SortedMap<String,List<Event>> shards = sharding.split(events, baseUei, groupNames);
+            for (String shard : shards.keySet()) {
+                fileNames.add(EventsSharding.getFileName(shard));
+            }
+            updated = writeShards(eventsDir, shards);
+        }
+        List<String> staleNames = shardsFile.exists() ? Files.readAllLines(shardsFile.toPath(), CHARSET) : new ArrayList<String>();
+        staleNames.add(EVENTS_FILENAME);
+        staleNames.removeAll(fileNames);
+        updated |= removeStaleFiles(eventsDir, staleNames);
+        if (sharding != null) {
+            writeShardNames(shardsFile, fileNames);
+        } else if (!shardsFile.delete()) {
+            LOG.warn("Can't remove {}", shardsFile);
+        }
+        File eventConfFile = new File(onmsHome, "etc/eventconf.xml");
+        if (eventConfFile.exists()) {
+            OutputFile.Status status = new EventConfUpdater(eventConfFile).update(fileNames);
+            System.out.println(eventConfFile + " " + status);
+            updated |= status == OutputFile.Status.UPDATED;
+        } else {
+            System.out.println(eventConfFile + " not found, remember to add the entries for " + fileNames);
+        }
+        return updated ? OutputFile.Status.UPDATED : OutputFile.Status.UNCHANGED;
+    }
+
+    /**
+     * Writes the shards.
+     *
+     * @param eventsDir the events directory
+     * @param shards the events of each shard, indexed by shard name
+     * @return true, if any of the shards has been updated
+     * @throws Exception the exception
+     */
+    private boolean writeShards(final File eventsDir, SortedMap<String,List<Event>> shards) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(shards.size(), parallelism)));
+        try {
+            List<Future<OutputFile.Status>> tasks = new ArrayList<Future<OutputFile.Status>>();
+            for (final Map.Entry<String,List<Event>> shard : shards.entrySet()) {
+                tasks.add(executor.submit(new Callable<OutputFile.Status>() {
+                    public OutputFile.Status call() throws Exception {
+                        return writeEvents(new File(eventsDir, EventsSharding.getFileName(shard.getKey())), shard.getValue());
+                    }
+                }));
+            }
+            boolean updated = false;
+            for (Future<OutputFile.Status> task : tasks) {
+                try {
+                    updated |= task.get() == OutputFile.Status.UPDATED;
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof Exception) {
+                        throw (Exception) e.getCause();
+                    }
+                    throw e;
+                }
+            }
+            return updated;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Removes the events files written on previous runs that are no longer generated.
+     * <p>When merging, the files are kept (they might contain events added manually), but they are no longer
+     * registered on eventconf.xml.</p>
+     *
+     * @param eventsDir the events directory
+     * @param staleNames the names of the events files that are no longer generated
+     * @return true, if any file has been removed
+     */
+    private boolean removeStaleFiles(File eventsDir, List<String> staleNames) {
+        boolean removed = false;
+        for (String name : staleNames) {
+            File f = new File(eventsDir, name);
+            if (!f.exists()) {
+                continue;
+            }
+            if (mergePolicy != null) {
+                LOG.warn("Keeping {} as it might contain custom events, but it is no longer registered on eventconf.xml", f);
+            } else if (f.delete()) {
+                System.out.println(f + " removed");
+                removed = true;
+            } else {
+                LOG.warn("Can't remove {}", f);
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Writes the names of the shards, one per line.
+     *
+     * @param shardsFile the file with the names of the shards
+     * @param fileNames the names of the shards
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    private void writeShardNames(File shardsFile, List<String> fileNames) throws IOException {
+        OutputFile output = new OutputFile(shardsFile);
+        try {
+            Writer writer = new OutputStreamWriter(output.open(), CHARSET);
+            try {
+                for (String name : fileNames) {
+                    writer.write(name + "\n");
+                }
+                writer.close();
+            } finally {
+                OutputFile.closeQuietly(writer);
+            }
+            output.commit();
+        } finally {
+            output.discard();
+        }
+    }
+
+    /**
+     * Writes an events file.
+     * <p>When a merge policy is set and the events file exists, the events are merged into it.</p>
+     *
+     * @param eventFile the events file
+     * @param events the events
+     * @return the status of the events file
+     * @throws Exception the exception
+     */
+    private OutputFile.Status writeEvents(File eventFile, Collection<Event> events) throws Exception {
         System.out.println("Generating " + eventFile);
-        JaxbUtils.marshal(events, new FileWriter(eventFile));
+        OutputFile output = new OutputFile(eventFile);
+        GenerationStats.Timer timer = getStats().start(GenerationStats.EVENTS_MARSHAL);
+        GenerationTracer.Span span = TRACER.startOutputWriting(eventFile.getPath());
+        OutputFile.Status status = null;
+        try {
+            EventsWriter writer = new EventsWriter(output.open());
+            try {
+                if (mergePolicy != null && eventFile.exists()) {
+                    EventsMerger merger = new EventsMerger(mergePolicy);
+                    merger.merge(eventFile, events, writer);
+                    System.out.println("Merged " + eventFile + ": " + merger);
+                } else {
+                    for (Event e : events) {
+                        writer.write(e);
+                    }
+                }
+                writer.close();
+            } finally {
+                OutputFile.closeQuietly(writer);
+            }
+            status = output.commit();
+            System.out.println(eventFile + " " + status);
+            return status;
+        } finally {
+            timer.stop();
+            span.end(status == null ? null : status.toString());
+            output.discard();
+        }
+    }
+
+    /**
+     * Gets the generation statistics of the threshold event processor.
+     *
+     * @return the generation statistics
+     */
+    private GenerationStats getStats() {
+        return eventProcessor == null ? GenerationStats.DISABLED : eventProcessor.getStats();
+    }
+
+    /**
+     * Gets the graph templates.
+     * <p>Includes the graph templates defined on snmp-graph.properties and its include directory.</p>
+     *
+     * @param onmsHome the OpenNMS home directory
+     * @return the graph templates
+     * @throws Exception the exception
+     */
+    public static GraphTemplates getGraphTemplates(File onmsHome) throws Exception {
+        return new GraphTemplateLoader().load(new File(onmsHome, "etc/snmp-graph.properties"));
     }
 
 }
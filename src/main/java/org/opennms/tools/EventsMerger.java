@@ -0,0 +1,231 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2006-2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+package org.opennms.tools;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import javax.xml.stream.XMLStreamReader;
+
+import org.opennms.netmgt.xml.eventconf.Event;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The Class EventsMerger.
+ * <p>Merges the generated events into an existing events file, instead of replacing it, so the events added manually
+ * to the file are kept.</p>
+ * <p>The generated events are indexed by UEI, and the existing file is streamed once: each existing event is written
+ * back on its original position, replaced by the generated event with the same UEI when the policy is
+ * {@link Policy#REPLACE}, or kept as it is when the policy is {@link Policy#PRESERVE}. The generated events that
+ * don't exist on the file are appended after the existing events, in UEI order. The rest of the content of the
+ * file (like the global section, the event-file entries or the comments) is copied on its position. The merge is
+ * linear on the size of both inputs, and the existing events are never kept in memory.</p>
+ * <p>As the generated events can't be distinguished from the manual ones, the events of deleted thresholds are
+ * kept on the file; a generation without merge removes them.</p>
+ *
+ * @author <a href="mailto:agalue@opennms.org">Alejandro Galue</a>
+ */
+public class EventsMerger {
+
+    /** The Constant LOG. */
+    private static final Logger LOG = LoggerFactory.getLogger(EventsMerger.class);
+
+    /**
+     * The Enum Policy.
+     * <p>What to do when an existing event has the same UEI as a generated event.</p>
+     */
+    public enum Policy {
+
+        /** Keep the existing event. */
+        PRESERVE,
+
+        /** Replace the existing event with the generated one. */
+        REPLACE;
+
+        /**
+         * Parses a policy.
+         *
+         * @param policy the policy name (preserve or replace)
+         * @return the policy
+         * @throws IllegalArgumentException if the policy is not supported
+         */
+        public static Policy parse(String policy) {
+            try {
+                return valueOf(policy.trim().toUpperCase(Locale.ENGLISH));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Unsupported merge policy " + policy);
+            }
+        }
+    }
+
+    /** The policy. */
+    private Policy policy;
+
+    /** The number of existing events kept (without a generated counterpart). */
+    private int kept;
+
+    /** The number of existing events preserved instead of the generated ones. */
+    private int preserved;
+
+    /** The number of existing events replaced by the generated ones. */
+    private int replaced;
+
+    /** The number of generated events appended. */
+    private int added;
+
+    /**
+     * Instantiates a new events merger.
+     *
+     * @param policy the policy
+     */
+    public EventsMerger(Policy policy) {
+        this.policy = policy;
+    }
+
+    /**
+     * Merges the generated events with an existing events file.
+     *
+     * @param existingFile the existing events file
+     * @param generated the generated events
+     * @param writer the writer of the merged events
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public void merge(File existingFile, Collection<Event> generated, final EventsWriter writer) throws IOException {
+        final Map<String,Event> index = new LinkedHashMap<String,Event>(generated.size() * 4 / 3 + 1);
+        for (Event e : generated) {
+            index.put(e.getUei(), e);
+        }
+        final Set<String> merged = new HashSet<String>();
+        EventsReader reader = new EventsReader(existingFile);
+        reader.setContentHandler(new EventsReader.ContentHandler() {
+            public void handle(XMLStreamReader r) throws IOException {
+                // Only the global section goes before the events; the rest (like the event-file entries) must follow them
+                if (r.isStartElement() && !r.getLocalName().equals("global")) {
+                    append(index, merged, writer);
+                }
+                writer.copy(r);
+            }
+        });
+        try {
+            Event existing;
+            while ((existing = reader.read()) != null) {
+                String uei = existing.getUei();
+                Event e = index.remove(uei);
+                if (e == null) {
+                    if (merged.contains(uei)) {
+                        LOG.warn("Ignoring duplicate definition of event {} on {}", uei, existingFile);
+                        continue;
+                    }
+                    writer.write(existing);
+                    kept++;
+                } else {
+                    merged.add(uei);
+                    if (policy == Policy.REPLACE) {
+                        writer.write(e);
+                        replaced++;
+                    } else {
+                        writer.write(existing);
+                        preserved++;
+                    }
+                }
+            }
+            append(index, merged, writer);
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Appends the generated events that don't exist on the file.
+     *
+     * @param index the pending generated events, indexed by UEI (emptied)
+     * @param merged the UEIs already merged
+     * @param writer the writer of the merged events
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    private void append(Map<String,Event> index, Set<String> merged, EventsWriter writer) throws IOException {
+        for (Event e : index.values()) {
+            writer.write(e);
+            merged.add(e.getUei());
+            added++;
+        }
+        index.clear();
+    }
+
+    /**
+     * Gets the number of existing events kept, without a generated counterpart.
+     *
+     * @return the number of kept events
+     */
+    public int getKept() {
+        return kept;
+    }
+
+    /**
+     * Gets the number of existing events preserved instead of the generated ones.
+     *
+     * @return the number of preserved events
+     */
+    public int getPreserved() {
+        return preserved;
+    }
+
+    /**
+     * Gets the number of existing events replaced by the generated ones.
+     *
+     * @return the number of replaced events
+     */
+    public int getReplaced() {
+        return replaced;
+    }
+
+    /**
+     * Gets the number of generated events appended.
+     *
+     * @return the number of added events
+     */
+    public int getAdded() {
+        return added;
+    }
+
+    /* (non-Javadoc)
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return kept + " kept, " + (policy == Policy.REPLACE ? replaced + " replaced, " : preserved + " preserved, ") + added + " added";
+    }
+
+}
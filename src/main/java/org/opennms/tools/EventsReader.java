@@ -0,0 +1,206 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2006-2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+package org.opennms.tools;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Unmarshaller;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.opennms.netmgt.xml.eventconf.Event;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The Class EventsReader.
+ * <p>Streaming reader for an events file. Each event is unmarshalled and returned as soon as it has been read,
+ * so only one event is kept in memory at a time.</p>
+ * <p>Only the events are returned; the other content of the file (like the global section, the event-file
+ * entries or the comments) is passed to the {@link ContentHandler}, when there is one, or ignored.</p>
+ *
+ * @author <a href="mailto:agalue@opennms.org">Alejandro Galue</a>
+ */
+public class EventsReader implements Closeable {
+
+    /** The Constant LOG. */
+    private static final Logger LOG = LoggerFactory.getLogger(EventsReader.class);
+
+    /** The XML input factory. */
+    private static final XMLInputFactory FACTORY = XMLInputFactory.newInstance();
+
+    /** The source file. */
+    private File eventsFile;
+
+    /** The input stream. */
+    private InputStream input;
+
+    /** The XML stream reader. */
+    private XMLStreamReader reader;
+
+    /** The unmarshaller. */
+    private Unmarshaller unmarshaller;
+
+    /** Whether the reader is inside the events element. */
+    private boolean inside = false;
+
+    /** The handler of the content other than the events (null to ignore it). */
+    private ContentHandler contentHandler;
+
+    /**
+     * The Interface ContentHandler.
+     * <p>Receives the children of the events element other than the events, in document order.</p>
+     */
+    public interface ContentHandler {
+
+        /**
+         * Handles an element or a comment.
+         * <p>The reader is positioned on the start element or on the comment, and when it is an element, it must
+         * be left on the matching end element.</p>
+         *
+         * @param reader the XML stream reader
+         * @throws XMLStreamException the XML stream exception
+         * @throws IOException Signals that an I/O exception has occurred.
+         */
+        void handle(XMLStreamReader reader) throws XMLStreamException, IOException;
+    }
+
+    /**
+     * Instantiates a new events reader.
+     *
+     * @param eventsFile the events file
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public EventsReader(File eventsFile) throws IOException {
+        if (!eventsFile.exists()) {
+            throw new FileNotFoundException(eventsFile.getAbsolutePath());
+        }
+        this.eventsFile = eventsFile;
+        input = new BufferedInputStream(new FileInputStream(eventsFile));
+        try {
+            unmarshaller = EventsWriter.getContext().createUnmarshaller();
+            reader = FACTORY.createXMLStreamReader(input);
+        } catch (JAXBException e) {
+            close();
+            throw new IOException("Can't create the events unmarshaller", e);
+        } catch (XMLStreamException e) {
+            close();
+            throw new IOException("Can't parse " + eventsFile, e);
+        }
+    }
+
+    /**
+     * Sets the handler of the content other than the events.
+     *
+     * @param contentHandler the content handler (null to ignore the content)
+     */
+    public void setContentHandler(ContentHandler contentHandler) {
+        this.contentHandler = contentHandler;
+    }
+
+    /**
+     * Reads the next event.
+     *
+     * @return the next event, or null if there are no more events
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public Event read() throws IOException {
+        try {
+            while (reader.hasNext()) {
+                int type = reader.getEventType();
+                if (type == XMLStreamConstants.START_ELEMENT) {
+                    String name = reader.getLocalName();
+                    if (name.equals("event")) {
+                        // The unmarshaller leaves the reader after the end of the event
+                        return unmarshaller.unmarshal(reader, Event.class).getValue();
+                    }
+                    if (name.equals("events")) {
+                        inside = true;
+                    } else if (contentHandler == null) {
+                        LOG.warn("Ignoring element {} on {}", name, eventsFile);
+                        skipElement();
+                    } else {
+                        contentHandler.handle(reader);
+                    }
+                } else if (type == XMLStreamConstants.END_ELEMENT) {
+                    inside = false;
+                } else if (type == XMLStreamConstants.COMMENT && inside && contentHandler != null) {
+                    contentHandler.handle(reader);
+                }
+                reader.next();
+            }
+            return null;
+        } catch (XMLStreamException e) {
+            throw new IOException("Can't parse " + eventsFile, e);
+        } catch (JAXBException e) {
+            throw new IOException("Invalid event on " + eventsFile + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Skips the current element and its content.
+     * <p>The reader must be positioned on the start element, and it is left on the matching end element.</p>
+     *
+     * @throws XMLStreamException the XML stream exception
+     */
+    private void skipElement() throws XMLStreamException {
+        int depth = 1;
+        while (depth > 0 && reader.hasNext()) {
+            int type = reader.next();
+            if (type == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+            } else if (type == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            }
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see java.io.Closeable#close()
+     */
+    public void close() throws IOException {
+        if (reader != null) {
+            try {
+                reader.close();
+            } catch (XMLStreamException e) {
+                // The underlying stream is closed below.
+            }
+        }
+        input.close();
+    }
+
+}
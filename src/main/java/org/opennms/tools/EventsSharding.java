@@ -0,0 +1,277 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2006-2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+package org.opennms.tools;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.zip.CRC32;
+
+import org.opennms.netmgt.xml.eventconf.Event;
+
+/**
+ * The Class EventsSharding.
+ * <p>Splits the generated events into several events files (shards), so eventd reloads and diffs are smaller:</p>
+ * <ul>
+ * <li><b>group</b>: one shard per threshold group (the group that generated the event first).</li>
+ * <li><b>prefix</b>: one shard per UEI segment that follows the base UEI, for example the <i>serverType</i>
+ * on uei.opennms.org/threshold/{serverType}/...; the UEIs outside the base UEI go to the <i>other</i> shard.</li>
+ * <li><b>size:N</b>: consecutive shards of at most N events, in UEI order.</li>
+ * </ul>
+ * <p>The events keep the UEI order inside each shard, and the shards are sorted by name. The numbers of the
+ * size shards have as many digits as needed to keep that order (at least three). The characters that are not
+ * allowed on a file name are replaced, and when different names end up being the same, a checksum of the
+ * original name is appended to the ones that have been changed.</p>
+ *
+ * @author <a href="mailto:agalue@opennms.org">Alejandro Galue</a>
+ */
+public class EventsSharding {
+
+    /** The Constant FILENAME_PREFIX. */
+    public static final String FILENAME_PREFIX = "Thresholds-Categorized.";
+
+    /** The Constant FILENAME_SUFFIX. */
+    public static final String FILENAME_SUFFIX = ".events.xml";
+
+    /** The Constant SHARDS_FILENAME (the names of the shards written on the last run, stored on etc). */
+    public static final String SHARDS_FILENAME = "threshold-events-generator.shards";
+
+    /** The Constant DEFAULT_SHARD (used when the group of an event is unknown). */
+    public static final String DEFAULT_SHARD = "default";
+
+    /** The Constant OTHER_SHARD (used for the UEIs outside the base UEI). */
+    public static final String OTHER_SHARD = "other";
+
+    /** The Constant CHARSET. */
+    private static final Charset CHARSET = Charset.forName("UTF-8");
+
+    /**
+     * The Enum Mode.
+     */
+    public enum Mode {
+
+        /** One shard per threshold group. */
+        GROUP,
+
+        /** One shard per UEI prefix. */
+        PREFIX,
+
+        /** Shards with a maximum number of events. */
+        SIZE
+    }
+
+    /** The mode. */
+    private Mode mode;
+
+    /** The maximum number of events per shard (only for {@link Mode#SIZE}). */
+    private int maxEvents;
+
+    /**
+     * Instantiates a new events sharding.
+     *
+     * @param mode the mode
+     * @param maxEvents the maximum number of events per shard (only for {@link Mode#SIZE})
+     */
+    public EventsSharding(Mode mode, int maxEvents) {
+        if (mode == Mode.SIZE && maxEvents < 1) {
+            throw new IllegalArgumentException("The maximum number of events per shard must be greater than zero");
+        }
+        this.mode = mode;
+        this.maxEvents = maxEvents;
+    }
+
+    /**
+     * Parses a sharding specification.
+     *
+     * @param spec the specification (group, prefix or size:N)
+     * @return the events sharding
+     * @throws IllegalArgumentException if the specification is not supported
+     */
+    public static EventsSharding parse(String spec) {
+        String value = spec.trim().toLowerCase(Locale.ENGLISH);
+        if (value.equals("group")) {
+            return new EventsSharding(Mode.GROUP, 0);
+        }
+        if (value.equals("prefix")) {
+            return new EventsSharding(Mode.PREFIX, 0);
+        }
+        if (value.startsWith("size:")) {
+            try {
+                return new EventsSharding(Mode.SIZE, Integer.parseInt(value.substring(5)));
+            } catch (NumberFormatException e) {
+                // Reported below
+            }
+        }
+        throw new IllegalArgumentException("Unsupported sharding " + spec);
+    }
+
+    /**
+     * Gets the mode.
+     *
+     * @return the mode
+     */
+    public Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * Splits the events into shards.
+     *
+     * @param events the events, sorted by UEI
+     * @param baseUei the base UEI (for {@link Mode#PREFIX})
+     * @param groupNames the group name of each UEI (for {@link Mode#GROUP}; can be null)
+     * @return the events of each shard, indexed by shard name
+     */
+    public SortedMap<String,List<Event>> split(Collection<Event> events, String baseUei, Map<String,String> groupNames) {
+        SortedMap<String,List<Event>> shards = new TreeMap<String,List<Event>>();
+        int count = 0;
+        int shardCount = mode == Mode.SIZE ? (events.size() + maxEvents - 1) / maxEvents : 0;
+        String format = "%0" + Math.max(3, Integer.toString(shardCount).length()) + "d";
+        for (Event e : events) {
+            String shard;
+            switch (mode) {
+            case GROUP:
+                String groupName = groupNames == null ? null : groupNames.get(e.getUei());
+                shard = groupName == null ? DEFAULT_SHARD : groupName;
+                break;
+            case PREFIX:
+                shard = getPrefix(e.getUei(), baseUei);
+                break;
+            default:
+                shard = String.format(format, count++ / maxEvents + 1);
+            }
+            List<Event> list = shards.get(shard);
+            if (list == null) {
+                list = new ArrayList<Event>();
+                shards.put(shard, list);
+            }
+            list.add(e);
+        }
+        return sanitize(shards);
+    }
+
+    /**
+     * Gets the name of the events file of a shard.
+     *
+     * @param shard the shard name
+     * @return the file name
+     */
+    public static String getFileName(String shard) {
+        return FILENAME_PREFIX + shard + FILENAME_SUFFIX;
+    }
+
+    /**
+     * Checks if a file name belongs to a shard.
+     *
+     * @param fileName the file name
+     * @return true, if the file is a shard
+     */
+    public static boolean isShardFile(String fileName) {
+        return fileName.startsWith(FILENAME_PREFIX) && fileName.endsWith(FILENAME_SUFFIX)
+                && fileName.length() > FILENAME_PREFIX.length() + FILENAME_SUFFIX.length();
+    }
+
+    /**
+     * Gets the UEI segment that follows the base UEI.
+     *
+     * @param uei the UEI
+     * @param baseUei the base UEI
+     * @return the prefix
+     */
+    private String getPrefix(String uei, String baseUei) {
+        String base = baseUei.endsWith("/") ? baseUei : baseUei + "/";
+        if (!uei.startsWith(base)) {
+            return OTHER_SHARD;
+        }
+        int end = uei.indexOf('/', base.length());
+        return end < 0 ? OTHER_SHARD : uei.substring(base.length(), end);
+    }
+
+    /**
+     * Sanitizes the shard names to be used as part of a file name.
+     *
+     * @param shards the events of each shard, indexed by the original shard name
+     * @return the events of each shard, indexed by the sanitized shard name
+     * @throws IllegalArgumentException if the sanitized names can't be made unique
+     */
+    private SortedMap<String,List<Event>> sanitize(SortedMap<String,List<Event>> shards) {
+        Map<String,Set<String>> originals = new HashMap<String,Set<String>>();
+        for (String shard : shards.keySet()) {
+            String name = sanitize(shard);
+            Set<String> set = originals.get(name);
+            if (set == null) {
+                set = new TreeSet<String>();
+                originals.put(name, set);
+            }
+            set.add(shard);
+        }
+        SortedMap<String,List<Event>> sanitized = new TreeMap<String,List<Event>>();
+        for (Map.Entry<String,List<Event>> e : shards.entrySet()) {
+            String name = sanitize(e.getKey());
+            if (originals.get(name).size() > 1 && !name.equals(e.getKey())) {
+                name = name + "-" + getChecksum(e.getKey());
+            }
+            if (sanitized.put(name, e.getValue()) != null) {
+                throw new IllegalArgumentException("Can't find a unique file name for the shard " + e.getKey());
+            }
+        }
+        return sanitized;
+    }
+
+    /**
+     * Sanitizes a shard name to be used as part of a file name.
+     *
+     * @param shard the shard name
+     * @return the sanitized name
+     */
+    private String sanitize(String shard) {
+        String name = shard.replaceAll("[^A-Za-z0-9_-]", "_");
+        return name.isEmpty() ? DEFAULT_SHARD : name;
+    }
+
+    /**
+     * Gets the checksum of a shard name.
+     *
+     * @param shard the shard name
+     * @return the checksum (8 hexadecimal digits)
+     */
+    private String getChecksum(String shard) {
+        CRC32 crc = new CRC32();
+        crc.update(shard.getBytes(CHARSET));
+        return String.format("%08x", crc.getValue());
+    }
+
+}
@@ -0,0 +1,226 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2006-2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+package org.opennms.tools;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Marshaller;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+
+import org.opennms.netmgt.xml.eventconf.Event;
+
+/**
+ * The Class EventsWriter.
+ * <p>Streaming writer for the events file. Each event is marshalled as soon as it is written, through
+ * a buffered StAX writer, so the whole Events tree is never built in memory. The output is indented, with
+ * one element per line.</p>
+ * <p>The events are written on the order they are received; the generator writes them in UEI order.</p>
+ *
+ * @author <a href="mailto:agalue@opennms.org">Alejandro Galue</a>
+ */
+public class EventsWriter implements Closeable {
+
+    /** The Constant NAMESPACE. */
+    public static final String NAMESPACE = "http://xmlns.opennms.org/xsd/eventconf";
+
+    /** The Constant ENCODING. */
+    public static final String ENCODING = "UTF-8";
+
+    /** The Constant INDENT (the indentation of each level, as on the files written by Castor). */
+    private static final String INDENT = "    ";
+
+    /** The XML output factory. */
+    private static final XMLOutputFactory FACTORY = XMLOutputFactory.newInstance();
+
+    /** The JAXB context. */
+    private static JAXBContext context;
+
+    /** The output stream. */
+    private OutputStream output;
+
+    /** The XML stream writer. */
+    private XMLStreamWriter writer;
+
+    /** The event marshaller. */
+    private Marshaller marshaller;
+
+    /** The number of written events. */
+    private int count = 0;
+
+    /** The flag to know if the writer has been closed. */
+    private boolean closed = false;
+
+    /**
+     * Instantiates a new events writer.
+     *
+     * @param output the output stream
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public EventsWriter(OutputStream output) throws IOException {
+        this.output = new BufferedOutputStream(output);
+        try {
+            marshaller = getContext().createMarshaller();
+            marshaller.setProperty(Marshaller.JAXB_FRAGMENT, Boolean.TRUE);
+            marshaller.setProperty(Marshaller.JAXB_ENCODING, ENCODING);
+            writer = new IndentingXMLStreamWriter(FACTORY.createXMLStreamWriter(this.output, ENCODING), INDENT);
+            writer.writeStartDocument(ENCODING, "1.0");
+            writer.setDefaultNamespace(NAMESPACE);
+            writer.writeStartElement(NAMESPACE, "events");
+            writer.writeDefaultNamespace(NAMESPACE);
+        } catch (JAXBException e) {
+            OutputFile.closeQuietly(this.output);
+            throw new IOException("Can't create the events marshaller", e);
+        } catch (XMLStreamException e) {
+            OutputFile.closeQuietly(this.output);
+            throw new IOException("Can't write the events header", e);
+        }
+    }
+
+    /**
+     * Writes an event.
+     *
+     * @param event the event
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public void write(Event event) throws IOException {
+        try {
+            marshaller.marshal(event, writer);
+            count++;
+        } catch (XMLStreamException e) {
+            throw new IOException("Can't write event " + event.getUei(), e);
+        } catch (JAXBException e) {
+            throw new IOException("Can't marshal event " + event.getUei(), e);
+        }
+    }
+
+    /**
+     * Copies the current element (with its content) or comment of a reader.
+     * <p>The elements are written on the events namespace, and the whitespace between them is replaced by the
+     * indentation of the file. When the reader is positioned on a start element, it is left on the matching
+     * end element.</p>
+     *
+     * @param reader the XML stream reader
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public void copy(XMLStreamReader reader) throws IOException {
+        try {
+            int depth = 0;
+            do {
+                if (depth > 0) {
+                    reader.next();
+                }
+                switch (reader.getEventType()) {
+                case XMLStreamConstants.START_ELEMENT:
+                    writer.writeStartElement(NAMESPACE, reader.getLocalName());
+                    for (int i = 0; i < reader.getAttributeCount(); i++) {
+                        String namespace = reader.getAttributeNamespace(i);
+                        if (namespace == null || namespace.isEmpty()) {
+                            writer.writeAttribute(reader.getAttributeLocalName(i), reader.getAttributeValue(i));
+                        } else {
+                            writer.writeAttribute(reader.getAttributePrefix(i), namespace, reader.getAttributeLocalName(i), reader.getAttributeValue(i));
+                        }
+                    }
+                    depth++;
+                    break;
+                case XMLStreamConstants.END_ELEMENT:
+                    writer.writeEndElement();
+                    depth--;
+                    break;
+                case XMLStreamConstants.CHARACTERS:
+                    if (!reader.isWhiteSpace()) {
+                        writer.writeCharacters(reader.getText());
+                    }
+                    break;
+                case XMLStreamConstants.CDATA:
+                    writer.writeCData(reader.getText());
+                    break;
+                case XMLStreamConstants.COMMENT:
+                    writer.writeComment(reader.getText());
+                    break;
+                default:
+                    break;
+                }
+            } while (depth > 0);
+        } catch (XMLStreamException e) {
+            throw new IOException("Can't copy the element " + (reader.hasName() ? reader.getLocalName() : ""), e);
+        }
+    }
+
+    /**
+     * Gets the number of written events.
+     *
+     * @return the number of events
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /* (non-Javadoc)
+     * @see java.io.Closeable#close()
+     */
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            writer.writeEndElement();
+            writer.writeEndDocument();
+            writer.flush();
+            writer.close();
+            output.close();
+        } catch (XMLStreamException e) {
+            throw new IOException("Can't write the end of the events file", e);
+        } finally {
+            OutputFile.closeQuietly(output);
+        }
+    }
+
+    /**
+     * Gets the JAXB context for events.
+     *
+     * @return the JAXB context
+     * @throws JAXBException the JAXB exception
+     */
+    static synchronized JAXBContext getContext() throws JAXBException {
+        if (context == null) {
+            context = JAXBContext.newInstance(Event.class);
+        }
+        return context;
+    }
+
+}
@@ -0,0 +1,230 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2006-2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+package org.opennms.tools;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.jexl2.ExpressionImpl;
+import org.apache.commons.jexl2.JexlEngine;
+
+/**
+ * The Class ExpressionCache.
+ * <p>Process-wide, thread-safe cache of the analysis of threshold expressions, indexed by the expression text.
+ * All the expressions are parsed by a single JEXL engine, and each distinct expression is parsed only once,
+ * no matter how many events (exceeded, rearmed, notifications) are generated from it.</p>
+ * <p>The cache keeps the {@value #MAX_SIZE} most recently used expressions, so long-running processes, like the
+ * watcher, don't accumulate the expressions of every configuration they have seen.</p>
+ *
+ * @author <a href="mailto:agalue@opennms.org">Alejandro Galue</a>
+ */
+public class ExpressionCache {
+
+    /** The Constant INSTANCE. */
+    private static final ExpressionCache INSTANCE = new ExpressionCache();
+
+    /** The Constant MAX_SIZE (the maximum number of cached expressions). */
+    public static final int MAX_SIZE = 4096;
+
+    /** The Constant TRACER. */
+    private static final GenerationTracer TRACER = GenerationTracer.getInstance();
+
+    /** The JEXL engine. */
+    private final JexlEngine engine = new JexlEngine();
+
+    /** The analysis cache, in access order (guarded by itself). */
+    private final Map<String,Analysis> cache = new LinkedHashMap<String,Analysis>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String,Analysis> eldest) {
+            return size() > MAX_SIZE;
+        }
+    };
+
+    /** The number of hits. */
+    private final AtomicLong hits = new AtomicLong();
+
+    /** The number of misses. */
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Gets the single instance of ExpressionCache.
+     *
+     * @return single instance of ExpressionCache
+     */
+    public static ExpressionCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Gets the analysis of an expression.
+     *
+     * @param expression the expression
+     * @return the analysis
+     */
+    public Analysis analyze(String expression) {
+        if (expression == null) {
+            return new Analysis(null, null, new IllegalArgumentException("The expression cannot be null"));
+        }
+        Analysis analysis;
+        synchronized (cache) {
+            analysis = cache.get(expression);
+        }
+        if (analysis != null) {
+            hits.incrementAndGet();
+            return analysis;
+        }
+        misses.incrementAndGet();
+        analysis = parse(expression);
+        synchronized (cache) {
+            Analysis previous = cache.get(expression);
+            if (previous != null) {
+                return previous;
+            }
+            cache.put(expression, analysis);
+        }
+        return analysis;
+    }
+
+    /**
+     * Gets the number of hits.
+     *
+     * @return the hits
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * Gets the number of misses.
+     *
+     * @return the misses
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Parses an expression.
+     *
+     * @param expression the expression
+     * @return the analysis
+     */
+    private Analysis parse(String expression) {
+        GenerationTracer.Span span = TRACER.startExpressionParsing(expression);
+        try {
+            ExpressionImpl e = (ExpressionImpl) engine.createExpression(expression);
+            List<String> datasources = new ArrayList<String>();
+            for (List<String> list : e.getVariables()) {
+                if (list.get(0).equalsIgnoreCase("math")) {
+                    continue;
+                }
+                if (list.get(0).equalsIgnoreCase("datasources")) {
+                    datasources.add(list.get(1).intern());
+                } else {
+                    datasources.add(list.get(0).intern());
+                }
+            }
+            span.end(datasources.toString());
+            return new Analysis(e, datasources, null);
+        } catch (Exception e) {
+            span.end(e.getMessage());
+            return new Analysis(null, null, e);
+        }
+    }
+
+    /**
+     * The Class Analysis.
+     * <p>Immutable result of the analysis of an expression.</p>
+     */
+    public static class Analysis {
+
+        /** The parsed expression. */
+        private final ExpressionImpl expression;
+
+        /** The datasources. */
+        private final List<String> datasources;
+
+        /** The parse error. */
+        private final Exception error;
+
+        /**
+         * Instantiates a new analysis.
+         *
+         * @param expression the parsed expression
+         * @param datasources the datasources
+         * @param error the parse error
+         */
+        private Analysis(ExpressionImpl expression, List<String> datasources, Exception error) {
+            this.expression = expression;
+            this.datasources = datasources == null ? Collections.<String>emptyList() : Collections.unmodifiableList(datasources);
+            this.error = error;
+        }
+
+        /**
+         * Gets the parsed expression.
+         *
+         * @return the parsed expression, or null if the expression can't be parsed
+         */
+        public ExpressionImpl getExpression() {
+            return expression;
+        }
+
+        /**
+         * Gets the datasources used on the expression.
+         *
+         * @return the datasources
+         */
+        public List<String> getDatasources() {
+            return datasources;
+        }
+
+        /**
+         * Gets the parse error.
+         *
+         * @return the parse error, or null if the expression is valid
+         */
+        public Exception getError() {
+            return error;
+        }
+
+        /**
+         * Checks if the expression is valid.
+         *
+         * @return true, if is valid
+         */
+        public boolean isValid() {
+            return error == null;
+        }
+    }
+
+}
@@ -0,0 +1,413 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2006-2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+package org.opennms.tools;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The Class FleetGenerator.
+ * <p>Generates the files for many OpenNMS installations in a single run. Each installation is processed by its
+ * own generation session, concurrently with the others, and the threshold groups of all of them are processed
+ * on a single fork/join pool. Nothing is shared through system properties.</p>
+ * <p>Installations with identical graph templates (same file names and content) share the same graph templates
+ * and graph indexes, and installations with identical configuration share the same threshold event processor.
+ * Each installation uses etc/{@value #CONFIG_FILENAME} when it exists, or the default configuration otherwise.</p>
+ *
+ * @author <a href="mailto:agalue@opennms.org">Alejandro Galue</a>
+ */
+public class FleetGenerator {
+
+    private static final Logger LOG = LoggerFactory.getLogger(FleetGenerator.class);
+
+    /** The Constant CONFIG_FILENAME. */
+    public static final String CONFIG_FILENAME = "threshold-events-generator.properties";
+
+    /** The default configuration file (null to use the default settings). */
+    private File defaultConfigFile;
+
+    /** The notifications template (can be null). */
+    private File notificationsTemplate;
+
+    /** The validate flag for thresholds.xml. */
+    private boolean validate = true;
+
+    /** The cache flag. */
+    private boolean cache = false;
+
+    /** The parallelism level. */
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+
+    /** The merge policy for the events files (null to replace them). */
+    private EventsMerger.Policy mergePolicy;
+
+    /** The sharding of the events files (null to write a single file). */
+    private EventsSharding sharding;
+
+    /** The policy for the generated notifications that already exist on the template. */
+    private NotificationsMerger.Policy notificationsPolicy = NotificationsMerger.Policy.SKIP;
+
+    /** The manifest flag. */
+    private boolean manifest;
+
+    /** The generation statistics of the whole fleet. */
+    private GenerationStats stats = GenerationStats.DISABLED;
+
+    /** The shared graph templates, indexed by the digest of their source files. */
+    private final ConcurrentMap<String,Future<GraphTemplates>> graphTemplates = new ConcurrentHashMap<String,Future<GraphTemplates>>();
+
+    /** The shared event processors, indexed by the digest of the configuration file. */
+    private final ConcurrentMap<String,Future<ThresholdEventProcessor>> eventProcessors = new ConcurrentHashMap<String,Future<ThresholdEventProcessor>>();
+
+    /**
+     * Instantiates a new fleet generator.
+     *
+     * @param defaultConfigFile the configuration file for the installations without their own (null to use the default settings)
+     * @param notificationsTemplate the template for notifications.xml (null to skip notifications.xml)
+     */
+    public FleetGenerator(File defaultConfigFile, File notificationsTemplate) {
+        this.defaultConfigFile = defaultConfigFile;
+        this.notificationsTemplate = notificationsTemplate;
+    }
+
+    /**
+     * Sets the validate flag.
+     *
+     * @param validate true to validate thresholds.xml
+     */
+    public void setValidate(boolean validate) {
+        this.validate = validate;
+    }
+
+    /**
+     * Sets the cache flag.
+     *
+     * @param cache true to cache the output of the groups on the default directory of each installation
+     */
+    public void setCache(boolean cache) {
+        this.cache = cache;
+    }
+
+    /**
+     * Sets the parallelism level.
+     *
+     * @param parallelism the number of threads used to process the installations and their threshold groups
+     */
+    public void setParallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("The parallelism must be greater than zero");
+        }
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Sets the merge policy for the events files.
+     *
+     * @param mergePolicy the merge policy (null to replace the events files)
+     */
+    public void setMergePolicy(EventsMerger.Policy mergePolicy) {
+        this.mergePolicy = mergePolicy;
+    }
+
+    /**
+     * Sets the sharding of the events files.
+     *
+     * @param sharding the sharding (null to write a single file per installation)
+     */
+    public void setSharding(EventsSharding sharding) {
+        this.sharding = sharding;
+    }
+
+    /**
+     * Sets the policy for the generated notifications that already exist on the template.
+     *
+     * @param notificationsPolicy the notifications policy
+     */
+    public void setNotificationsPolicy(NotificationsMerger.Policy notificationsPolicy) {
+        this.notificationsPolicy = notificationsPolicy;
+    }
+
+    /**
+     * Sets the manifest flag.
+     *
+     * @param manifest true to store the manifest and report the changes of each installation
+     */
+    public void setManifest(boolean manifest) {
+        this.manifest = manifest;
+    }
+
+    /**
+     * Sets the generation statistics.
+     * <p>The statistics of all the installations are added together, and reported at the end of the generation.</p>
+     *
+     * @param stats the generation statistics
+     */
+    public void setStats(GenerationStats stats) {
+        this.stats = stats;
+    }
+
+    /**
+     * Gets the OpenNMS installations of the fleet.
+     * <p>The fleet can be a directory, where each subdirectory with etc/thresholds.xml is an OpenNMS installation,
+     * or a text file with the path of one OpenNMS installation per line (empty lines and lines starting with # are ignored).</p>
+     *
+     * @param fleet the fleet directory or file
+     * @return the OpenNMS home directories
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public static List<File> getHomes(File fleet) throws IOException {
+        List<File> homes = new ArrayList<File>();
+        if (fleet.isDirectory()) {
+            File[] dirs = fleet.listFiles();
+            if (dirs != null) {
+                Arrays.sort(dirs);
+                for (File dir : dirs) {
+                    if (new File(dir, "etc/thresholds.xml").isFile()) {
+                        homes.add(dir);
+                    }
+                }
+            }
+        } else {
+            BufferedReader reader = new BufferedReader(new FileReader(fleet));
+            try {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    line = line.trim();
+                    if (!line.isEmpty() && !line.startsWith("#")) {
+                        homes.add(new File(line));
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        }
+        return homes;
+    }
+
+    /**
+     * Generates the files for all the OpenNMS installations.
+     * <p>A failure on one installation doesn't stop the others. A summary is printed at the end.</p>
+     *
+     * @param homes the OpenNMS home directories
+     * @return true, if the files were generated for all the installations
+     * @throws InterruptedException if the thread is interrupted while waiting for the installations
+     */
+    public boolean generate(List<File> homes) throws InterruptedException {
+        final ForkJoinPool forkJoinPool = new ForkJoinPool(parallelism);
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(homes.size(), parallelism)));
+        List<Future<Long>> results = new ArrayList<Future<Long>>();
+        try {
+            for (final File home : homes) {
+                results.add(executor.submit(new Callable<Long>() {
+                    public Long call() throws Exception {
+                        long start = System.currentTimeMillis();
+                        generate(home, forkJoinPool);
+                        return System.currentTimeMillis() - start;
+                    }
+                }));
+            }
+            int failures = 0;
+            List<String> summary = new ArrayList<String>();
+            for (int i = 0; i < homes.size(); i++) {
+                try {
+                    summary.add("  OK      " + homes.get(i) + " (" + results.get(i).get() + " ms)");
+                } catch (ExecutionException e) {
+                    failures++;
+                    Throwable cause = e.getCause();
+                    summary.add("  FAILED  " + homes.get(i) + ": " + cause.getMessage());
+                    LOG.error("Can't generate the files for {}", homes.get(i), cause);
+                }
+            }
+            System.out.println("Fleet summary: " + (homes.size() - failures) + " succeeded, " + failures + " failed, "
+                    + graphTemplates.size() + " distinct graph templates, " + eventProcessors.size() + " distinct configurations");
+            for (String line : summary) {
+                System.out.println(line);
+            }
+            stats.report(System.out);
+            return failures == 0;
+        } finally {
+            executor.shutdownNow();
+            forkJoinPool.shutdownNow();
+        }
+    }
+
+    /**
+     * Generates the files for an OpenNMS installation.
+     *
+     * @param home the OpenNMS home directory
+     * @param forkJoinPool the shared fork/join pool
+     * @throws Exception the exception
+     */
+    private void generate(File home, ForkJoinPool forkJoinPool) throws Exception {
+        if (!new File(home, "etc/thresholds.xml").isFile()) {
+            throw new IOException("Can't find etc/thresholds.xml");
+        }
+        GenerationSession session = new GenerationSession(getEventProcessor(home), home);
+        session.setValidate(validate);
+        session.setForkJoinPool(forkJoinPool);
+        session.setMergePolicy(mergePolicy);
+        session.setSharding(sharding);
+        session.setNotificationsPolicy(notificationsPolicy);
+        session.setManifest(manifest);
+        session.setGraphTemplates(getGraphTemplates(home));
+        if (cache) {
+            session.setCacheDirectory(new File(home, GroupCache.DEFAULT_DIRECTORY));
+        }
+        session.generate(notificationsTemplate);
+    }
+
+    /**
+     * Gets the graph templates of an OpenNMS installation, shared with the installations with identical files.
+     *
+     * @param home the OpenNMS home directory
+     * @return the graph templates
+     * @throws Exception the exception
+     */
+    private GraphTemplates getGraphTemplates(File home) throws Exception {
+        final File graphTemplatesFile = new File(home, "etc/snmp-graph.properties");
+        final GraphTemplateLoader loader = new GraphTemplateLoader();
+        String digest = getDigest(loader.getSourceFiles(graphTemplatesFile));
+        return getShared(graphTemplates, digest, new Callable<GraphTemplates>() {
+            public GraphTemplates call() throws Exception {
+                GenerationStats.Timer timer = stats.start(GenerationStats.GRAPH_TEMPLATES);
+                try {
+                    return loader.load(graphTemplatesFile);
+                } finally {
+                    timer.stop();
+                }
+            }
+        });
+    }
+
+    /**
+     * Gets the threshold event processor of an OpenNMS installation, shared with the installations with identical configuration.
+     *
+     * @param home the OpenNMS home directory
+     * @return the threshold event processor
+     * @throws Exception the exception
+     */
+    private ThresholdEventProcessor getEventProcessor(File home) throws Exception {
+        File configFile = new File(home, "etc/" + CONFIG_FILENAME);
+        final File file = configFile.isFile() ? configFile : defaultConfigFile;
+        String digest = file == null ? "" : getDigest(Collections.singletonList(file));
+        return getShared(eventProcessors, digest, new Callable<ThresholdEventProcessor>() {
+            public ThresholdEventProcessor call() throws Exception {
+                ThresholdEventProcessor eventProcessor = ConfigGenerator.createEventProcessor(file);
+                eventProcessor.setStats(stats);
+                return eventProcessor;
+            }
+        });
+    }
+
+    /**
+     * Gets a shared object, creating it only once per key even when it is requested concurrently.
+     *
+     * @param <T> the type of the object
+     * @param map the shared objects
+     * @param key the key
+     * @param factory the factory of the object
+     * @return the shared object
+     * @throws Exception the exception
+     */
+    private <T> T getShared(ConcurrentMap<String,Future<T>> map, String key, Callable<T> factory) throws Exception {
+        FutureTask<T> task = new FutureTask<T>(factory);
+        Future<T> future = map.putIfAbsent(key, task);
+        if (future == null) {
+            future = task;
+            task.run();
+        }
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception) {
+                throw (Exception) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Gets the digest of the name and content of a list of files.
+     *
+     * @param files the files
+     * @return the digest
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    private String getDigest(List<File> files) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        byte[] buffer = new byte[8192];
+        for (File file : files) {
+            digest.update(file.getName().getBytes("UTF-8"));
+            digest.update((byte) 0);
+            InputStream is = new BufferedInputStream(new FileInputStream(file));
+            try {
+                int n;
+                while ((n = is.read(buffer)) != -1) {
+                    digest.update(buffer, 0, n);
+                }
+            } finally {
+                is.close();
+            }
+            digest.update((byte) 0);
+        }
+        StringBuilder sb = new StringBuilder();
+        for (byte b : digest.digest()) {
+            sb.append(String.format("%02x", b));
+        }
+        return sb.toString();
+    }
+
+}
@@ -0,0 +1,388 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2006-2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+package org.opennms.tools;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Marshaller;
+
+import org.exolab.castor.xml.MarshalException;
+import org.exolab.castor.xml.ValidationException;
+import org.opennms.netmgt.config.notifications.Notification;
+import org.opennms.netmgt.xml.eventconf.Event;
+
+/**
+ * The Class GenerationManifest.
+ * <p>Maps each generated UEI to the SHA-256 digest of its rendered definition (the XML of the event, and the
+ * XML of the notification), so the changes between two runs can be found by comparing digests, without
+ * diffing the generated files.</p>
+ * <p>The manifest is stored as a sorted text file, with one line per definition (kind, UEI and digest), so
+ * two manifests are compared with a single pass over both of them.</p>
+ *
+ * @author <a href="mailto:agalue@opennms.org">Alejandro Galue</a>
+ */
+public class GenerationManifest {
+
+    /** The Constant MANIFEST_FILENAME. */
+    public static final String MANIFEST_FILENAME = "threshold-events-generator.manifest";
+
+    /** The Constant CHANGES_FILENAME. */
+    public static final String CHANGES_FILENAME = "threshold-events-generator.changes";
+
+    /** The Constant EVENT (kind of definition). */
+    public static final String EVENT = "event";
+
+    /** The Constant NOTIFICATION (kind of definition). */
+    public static final String NOTIFICATION = "notification";
+
+    /** The Constant ENCODING. */
+    private static final String ENCODING = "UTF-8";
+
+    /**
+     * The Enum Change.
+     */
+    public enum Change {
+
+        /** The definition is new. */
+        ADDED('+'),
+
+        /** The definition no longer exists. */
+        REMOVED('-'),
+
+        /** The definition has changed. */
+        MODIFIED('~');
+
+        /** The symbol. */
+        private char symbol;
+
+        /**
+         * Instantiates a new change.
+         *
+         * @param symbol the symbol
+         */
+        private Change(char symbol) {
+            this.symbol = symbol;
+        }
+
+        /**
+         * Gets the symbol.
+         *
+         * @return the symbol
+         */
+        public char getSymbol() {
+            return symbol;
+        }
+    }
+
+    /** The digests, indexed by kind and UEI (for example, event uei.opennms.org/...). */
+    private SortedMap<String,String> digests = new TreeMap<String,String>();
+
+    /**
+     * Adds the digests of the events.
+     *
+     * @param events the events
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public void addEvents(Collection<Event> events) throws IOException {
+        try {
+            Marshaller marshaller = EventsWriter.getContext().createMarshaller();
+            marshaller.setProperty(Marshaller.JAXB_FRAGMENT, Boolean.TRUE);
+            marshaller.setProperty(Marshaller.JAXB_ENCODING, ENCODING);
+            for (Event e : events) {
+                DigestOutputStream out = createDigestStream();
+                marshaller.marshal(e, out);
+                digests.put(EVENT + " " + e.getUei(), toHex(out.getMessageDigest().digest()));
+            }
+        } catch (JAXBException e) {
+            throw new IOException("Can't marshal the events", e);
+        }
+    }
+
+    /**
+     * Adds the digests of the notifications.
+     *
+     * @param notifications the notifications
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public void addNotifications(Collection<Notification> notifications) throws IOException {
+        for (Notification n : notifications) {
+            DigestOutputStream out = createDigestStream();
+            Writer writer = new OutputStreamWriter(out, ENCODING);
+            try {
+                org.exolab.castor.xml.Marshaller m = new org.exolab.castor.xml.Marshaller(writer);
+                m.setMarshalAsDocument(false);
+                m.marshal(n);
+                writer.flush();
+            } catch (MarshalException e) {
+                throw new IOException("Can't marshal notification " + n.getName(), e);
+            } catch (ValidationException e) {
+                throw new IOException("Invalid notification " + n.getName() + ": " + e.getMessage(), e);
+            }
+            digests.put(NOTIFICATION + " " + n.getUei(), toHex(out.getMessageDigest().digest()));
+        }
+    }
+
+    /**
+     * Copies the digests of one kind of definition from another manifest.
+     * <p>Used to keep the definitions that have not been generated on the current run, so they are not reported
+     * as removed.</p>
+     *
+     * @param source the source manifest (can be null)
+     * @param kind the kind of definition ({@value #EVENT} or {@value #NOTIFICATION})
+     */
+    public void copyDigests(GenerationManifest source, String kind) {
+        if (source == null) {
+            return;
+        }
+        String prefix = kind + " ";
+        for (Map.Entry<String,String> e : source.digests.subMap(prefix, kind + "!").entrySet()) {
+            digests.put(e.getKey(), e.getValue());
+        }
+    }
+
+    /**
+     * Gets the digests.
+     *
+     * @return the digests, indexed by kind and UEI
+     */
+    public SortedMap<String,String> getDigests() {
+        return digests;
+    }
+
+    /**
+     * Loads a manifest.
+     *
+     * @param file the manifest file
+     * @return the manifest, or null if the file doesn't exist
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public static GenerationManifest load(File file) throws IOException {
+        if (!file.exists()) {
+            return null;
+        }
+        GenerationManifest manifest = new GenerationManifest();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), ENCODING));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int index = line.lastIndexOf(' ');
+                if (line.startsWith("#") || index <= 0) {
+                    continue;
+                }
+                manifest.digests.put(line.substring(0, index), line.substring(index + 1));
+            }
+        } finally {
+            reader.close();
+        }
+        return manifest;
+    }
+
+    /**
+     * Stores the manifest.
+     * <p>The file is only replaced when its content has changed.</p>
+     *
+     * @param file the manifest file
+     * @return the status of the manifest file
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public OutputFile.Status store(File file) throws IOException {
+        OutputFile output = new OutputFile(file);
+        try {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(output.open(), ENCODING));
+            try {
+                for (Map.Entry<String,String> e : digests.entrySet()) {
+                    writer.write(e.getKey() + " " + e.getValue() + "\n");
+                }
+                writer.close();
+            } finally {
+                OutputFile.closeQuietly(writer);
+            }
+            return output.commit();
+        } finally {
+            output.discard();
+        }
+    }
+
+    /**
+     * Compares the manifest with the manifest of a previous run.
+     * <p>Both manifests are sorted, so they are compared with a single pass over them.</p>
+     *
+     * @param previous the previous manifest (null if there is none, so everything is added)
+     * @return the changes, indexed by kind and UEI
+     */
+    public SortedMap<String,Change> compare(GenerationManifest previous) {
+        SortedMap<String,Change> changes = new TreeMap<String,Change>();
+        Iterator<Map.Entry<String,String>> current = digests.entrySet().iterator();
+        Iterator<Map.Entry<String,String>> old = previous == null ? null : previous.digests.entrySet().iterator();
+        Map.Entry<String,String> c = next(current);
+        Map.Entry<String,String> o = next(old);
+        while (c != null || o != null) {
+            int cmp = c == null ? 1 : o == null ? -1 : c.getKey().compareTo(o.getKey());
+            if (cmp < 0) {
+                changes.put(c.getKey(), Change.ADDED);
+                c = next(current);
+            } else if (cmp > 0) {
+                changes.put(o.getKey(), Change.REMOVED);
+                o = next(old);
+            } else {
+                if (!c.getValue().equals(o.getValue())) {
+                    changes.put(c.getKey(), Change.MODIFIED);
+                }
+                c = next(current);
+                o = next(old);
+            }
+        }
+        return changes;
+    }
+
+    /**
+     * Gets a summary of the changes.
+     *
+     * @param changes the changes
+     * @return the summary
+     */
+    public static String getSummary(SortedMap<String,Change> changes) {
+        StringBuilder sb = new StringBuilder();
+        for (String kind : new String[] { EVENT, NOTIFICATION }) {
+            int[] counts = new int[Change.values().length];
+            for (Map.Entry<String,Change> e : changes.entrySet()) {
+                if (e.getKey().startsWith(kind + " ")) {
+                    counts[e.getValue().ordinal()]++;
+                }
+            }
+            if (sb.length() > 0) {
+                sb.append("; ");
+            }
+            sb.append(kind).append("s: ");
+            for (Change change : Change.values()) {
+                sb.append(change == Change.ADDED ? "" : ", ").append(counts[change.ordinal()]).append(' ').append(change.name().toLowerCase(Locale.ENGLISH));
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Writes the changes, one per line (symbol, kind and UEI).
+     *
+     * @param changes the changes
+     * @param out the print stream
+     */
+    public static void writeChanges(SortedMap<String,Change> changes, PrintStream out) {
+        for (Map.Entry<String,Change> e : changes.entrySet()) {
+            out.println(e.getValue().getSymbol() + " " + e.getKey());
+        }
+    }
+
+    /**
+     * Stores the changes, one per line (symbol, kind and UEI).
+     * <p>The file is only replaced when its content has changed.</p>
+     *
+     * @param changes the changes
+     * @param file the changes file
+     * @return the status of the changes file
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public static OutputFile.Status storeChanges(SortedMap<String,Change> changes, File file) throws IOException {
+        OutputFile output = new OutputFile(file);
+        try {
+            PrintStream out = new PrintStream(output.open(), false, ENCODING);
+            try {
+                writeChanges(changes, out);
+            } finally {
+                out.close();
+            }
+            return output.commit();
+        } finally {
+            output.discard();
+        }
+    }
+
+    /**
+     * Gets the next entry of an iterator.
+     *
+     * @param iterator the iterator (can be null)
+     * @return the next entry, or null if there are no more entries
+     */
+    private static Map.Entry<String,String> next(Iterator<Map.Entry<String,String>> iterator) {
+        return iterator != null && iterator.hasNext() ? iterator.next() : null;
+    }
+
+    /**
+     * Creates a stream that only computes the digest of its content.
+     *
+     * @return the digest output stream
+     */
+    private static DigestOutputStream createDigestStream() {
+        try {
+            return new DigestOutputStream(new OutputStream() {
+                @Override
+                public void write(int b) {
+                }
+                @Override
+                public void write(byte[] b, int off, int len) {
+                }
+            }, MessageDigest.getInstance("SHA-256"));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Converts a digest to hexadecimal.
+     *
+     * @param digest the digest
+     * @return the hexadecimal representation
+     */
+    private static String toHex(byte[] digest) {
+        StringBuilder sb = new StringBuilder();
+        for (byte b : digest) {
+            sb.append(String.format("%02x", b));
+        }
+        return sb.toString();
+    }
+
+}
@@ -0,0 +1,122 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2006-2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+package org.opennms.tools;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import org.opennms.netmgt.config.notifications.Notification;
+import org.opennms.netmgt.xml.eventconf.Event;
+
+/**
+ * The Class GenerationResult.
+ * <p>Merges the output of each group, in the same order the groups are defined on thresholds.xml.
+ * When the same UEI is generated by more than one group, the first one wins.</p>
+ *
+ * @author <a href="mailto:agalue@opennms.org">Alejandro Galue</a>
+ */
+public class GenerationResult {
+
+    /** The events indexed by UEI. */
+    private SortedMap<String,Event> events = new TreeMap<String,Event>();
+
+    /** The notifications indexed by UEI. */
+    private SortedMap<String,Notification> notifications = new TreeMap<String,Notification>();
+
+    /** The name of the group that generated each UEI. */
+    private Map<String,String> groupNames = new TreeMap<String,String>();
+
+    /** The group outputs. */
+    private List<GroupOutput> groups = new ArrayList<GroupOutput>();
+
+    /**
+     * Adds the output of a group.
+     *
+     * @param output the group output
+     */
+    public void add(GroupOutput output) {
+        groups.add(output);
+        for (int i = 0; i < output.getEvents().size(); i++) {
+            Event e = output.getEvents().get(i);
+            if (!events.containsKey(e.getUei())) {
+                events.put(e.getUei(), e);
+                notifications.put(e.getUei(), output.getNotifications().get(i));
+                groupNames.put(e.getUei(), output.getGroupName());
+            }
+        }
+    }
+
+    /**
+     * Gets the group outputs.
+     *
+     * @return the group outputs
+     */
+    public List<GroupOutput> getGroups() {
+        return groups;
+    }
+
+    /**
+     * Gets the events, sorted by UEI.
+     *
+     * @return the events
+     */
+    public Collection<Event> getEvents() {
+        return events.values();
+    }
+
+    /**
+     * Gets the name of the group that generated each UEI.
+     *
+     * @return the group names indexed by UEI
+     */
+    public Map<String,String> getGroupNames() {
+        return groupNames;
+    }
+
+    /**
+     * Gets the notifications, sorted by name.
+     *
+     * @return the notifications
+     */
+    public List<Notification> getNotifications() {
+        List<Notification> list = new ArrayList<Notification>(notifications.values());
+        Collections.sort(list, new Comparator<Notification>() {
+            public int compare(Notification n1, Notification n2) {
+                return n1.getName().compareTo(n2.getName());
+            }
+        });
+        return list;
+    }
+
+}
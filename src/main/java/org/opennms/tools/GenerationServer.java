@@ -0,0 +1,788 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2006-2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+package org.opennms.tools;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+import org.opennms.netmgt.EventConstants;
+import org.opennms.netmgt.config.threshd.Group;
+import org.opennms.netmgt.xml.eventconf.Event;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * The Class GenerationServer.
+ * <p>Embedded HTTP service, built on the HTTP server of the JDK, that keeps a warm process to generate the events
+ * and the notifications on demand:</p>
+ * <ul>
+ * <li><b>GET /events?home=&lt;dir&gt;</b> and <b>GET /notifications?home=&lt;dir&gt;</b>: generate the content
+ * from an OpenNMS home directory (etc/thresholds.xml, etc/snmp-graph.properties and its include directory, and
+ * etc/{@value FleetGenerator#CONFIG_FILENAME} and etc/notifications-template.xml when they exist). Nothing is
+ * written on the directory.</li>
+ * <li><b>POST /events</b> and <b>POST /notifications</b>: generate the content from a multipart/form-data request
+ * with the parts <i>thresholds</i> (required), <i>graphs</i> (snmp-graph.properties), <i>config</i> (configuration
+ * properties) and <i>notifications</i> (template of notifications.xml).</li>
+ * </ul>
+ * <p>When the configuration or the notifications template are not part of the request, the defaults of the server
+ * are used. The content is cached by the SHA-256 digest of the inputs, which is also the ETag of the response, so
+ * a request with a matching If-None-Match is answered with 304 without generating anything. Concurrent requests
+ * with the same inputs share a single generation, and the processors and graph templates are shared between
+ * requests with identical configuration and graph files.</p>
+ *
+ * @author <a href="mailto:agalue@opennms.org">Alejandro Galue</a>
+ */
+public class GenerationServer {
+
+    private static final Logger LOG = LoggerFactory.getLogger(GenerationServer.class);
+
+    /** The Constant DEFAULT_CACHE_SIZE (number of cached responses). */
+    public static final int DEFAULT_CACHE_SIZE = 64;
+
+    /** The Constant MAX_REQUEST_SIZE (in bytes). */
+    public static final int MAX_REQUEST_SIZE = 64 * 1024 * 1024;
+
+    /** The Constant CONTENT_TYPE. */
+    private static final String CONTENT_TYPE = "application/xml; charset=UTF-8";
+
+    /** The default configuration file (null to use the default settings). */
+    private File defaultConfigFile;
+
+    /** The default notifications template (can be null). */
+    private File defaultNotificationsTemplate;
+
+    /** The validate flag for thresholds.xml. */
+    private boolean validate = true;
+
+    /** The number of threads used to serve the requests. */
+    private int threads = Runtime.getRuntime().availableProcessors();
+
+    /** The generated content, indexed by the digest of the inputs. */
+    private SharedCache<GeneratedContent> contents = new SharedCache<GeneratedContent>(DEFAULT_CACHE_SIZE);
+
+    /** The threshold event processors, indexed by the digest of the configuration and of the event templates. */
+    private SharedCache<ThresholdEventProcessor> eventProcessors = new SharedCache<ThresholdEventProcessor>(DEFAULT_CACHE_SIZE);
+
+    /** The graph templates, indexed by the digest of the graph templates files. */
+    private SharedCache<GraphTemplates> graphTemplates = new SharedCache<GraphTemplates>(DEFAULT_CACHE_SIZE);
+
+    /** The HTTP server. */
+    private HttpServer server;
+
+    /** The executor of the requests. */
+    private ExecutorService executor;
+
+    /**
+     * Instantiates a new generation server.
+     *
+     * @param defaultConfigFile the default configuration file (null to use the default settings)
+     * @param defaultNotificationsTemplate the default notifications template (can be null)
+     */
+    public GenerationServer(File defaultConfigFile, File defaultNotificationsTemplate) {
+        this.defaultConfigFile = defaultConfigFile;
+        this.defaultNotificationsTemplate = defaultNotificationsTemplate;
+    }
+
+    /**
+     * Sets the validate flag.
+     *
+     * @param validate true to validate the content of thresholds.xml
+     */
+    public void setValidate(boolean validate) {
+        this.validate = validate;
+    }
+
+    /**
+     * Sets the number of threads used to serve the requests.
+     *
+     * @param threads the number of threads
+     */
+    public void setThreads(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("The number of threads must be greater than zero");
+        }
+        this.threads = threads;
+    }
+
+    /**
+     * Sets the maximum number of cached responses.
+     *
+     * @param cacheSize the cache size
+     */
+    public void setCacheSize(int cacheSize) {
+        contents = new SharedCache<GeneratedContent>(cacheSize);
+    }
+
+    /**
+     * Parses a listen address.
+     * <p>When only the port is specified, the server listens on the loopback interface.</p>
+     *
+     * @param address the address ([host:]port)
+     * @return the socket address
+     * @throws IllegalArgumentException if the address is not valid
+     */
+    public static InetSocketAddress parseAddress(String address) {
+        int index = address.lastIndexOf(':');
+        try {
+            if (index < 0) {
+                return new InetSocketAddress("127.0.0.1", Integer.parseInt(address));
+            }
+            return new InetSocketAddress(address.substring(0, index), Integer.parseInt(address.substring(index + 1)));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid address " + address);
+        }
+    }
+
+    /**
+     * Starts the server.
+     *
+     * @param address the listen address
+     * @return the address the server is listening on
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public InetSocketAddress start(InetSocketAddress address) throws IOException {
+        server = HttpServer.create(address, 0);
+        HttpHandler handler = new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                GenerationServer.this.handle(exchange);
+            }
+        };
+        server.createContext("/events", handler);
+        server.createContext("/notifications", handler);
+        executor = Executors.newFixedThreadPool(threads);
+        server.setExecutor(executor);
+        server.start();
+        System.out.println("Listening on http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort());
+        return server.getAddress();
+    }
+
+    /**
+     * Stops the server.
+     */
+    public void stop() {
+        if (server != null) {
+            server.stop(0);
+            executor.shutdownNow();
+            server = null;
+        }
+    }
+
+    /**
+     * Handles a request.
+     *
+     * @param exchange the HTTP exchange
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    private void handle(HttpExchange exchange) throws IOException {
+        long start = System.currentTimeMillis();
+        String path = exchange.getRequestURI().getPath();
+        int status = 500;
+        try {
+            boolean events = path.equals("/events");
+            if (!events && !path.equals("/notifications")) {
+                status = sendError(exchange, 404, "Unknown resource " + path);
+                return;
+            }
+            File home;
+            File tempHome = null;
+            if (exchange.getRequestMethod().equals("GET")) {
+                String homeParam = getQueryParameters(exchange.getRequestURI().getRawQuery()).get("home");
+                if (homeParam == null) {
+                    status = sendError(exchange, 400, "The home parameter is required");
+                    return;
+                }
+                home = new File(homeParam);
+            } else if (exchange.getRequestMethod().equals("POST")) {
+                tempHome = createHome(exchange);
+                home = tempHome;
+            } else {
+                exchange.getResponseHeaders().set("Allow", "GET, POST");
+                status = sendError(exchange, 405, "Unsupported method " + exchange.getRequestMethod());
+                return;
+            }
+            try {
+                status = send(exchange, home, events);
+            } finally {
+                if (tempHome != null) {
+                    delete(tempHome);
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            status = sendError(exchange, 400, e.getMessage());
+        } catch (Exception e) {
+            LOG.error("Can't process {} {}", exchange.getRequestMethod(), exchange.getRequestURI(), e);
+            status = sendError(exchange, 500, e.getMessage());
+        } finally {
+            exchange.close();
+            LOG.info("{} {} {} ({} ms)", exchange.getRequestMethod(), exchange.getRequestURI(), status, System.currentTimeMillis() - start);
+        }
+    }
+
+    /**
+     * Sends the generated content of an OpenNMS home directory.
+     *
+     * @param exchange the HTTP exchange
+     * @param home the OpenNMS home directory
+     * @param events true for the events, false for the notifications
+     * @return the status code
+     * @throws Exception the exception
+     */
+    private int send(HttpExchange exchange, File home, boolean events) throws Exception {
+        final File thresholdsFile = new File(home, "etc/thresholds.xml");
+        if (!thresholdsFile.isFile()) {
+            throw new IllegalArgumentException("Can't find " + thresholdsFile);
+        }
+        File configFile = new File(home, "etc/" + FleetGenerator.CONFIG_FILENAME);
+        if (!configFile.isFile()) {
+            configFile = defaultConfigFile;
+        }
+        File template = new File(home, "etc/notifications-template.xml");
+        if (!template.isFile()) {
+            template = defaultNotificationsTemplate;
+        }
+        if (!events && template == null) {
+            throw new IllegalArgumentException("There is no template for notifications.xml");
+        }
+
+        final ThresholdEventProcessor eventProcessor = getEventProcessor(configFile);
+        final File graphTemplatesFile = new File(home, "etc/snmp-graph.properties");
+        final List<File> graphFiles = new GraphTemplateLoader().getSourceFiles(graphTemplatesFile);
+        List<File> inputs = new ArrayList<File>();
+        inputs.add(thresholdsFile);
+        inputs.addAll(graphFiles);
+        if (configFile != null) {
+            inputs.add(configFile);
+        }
+        if (eventProcessor.getTemplatesFile() != null) {
+            inputs.add(eventProcessor.getTemplatesFile());
+        }
+        if (template != null) {
+            inputs.add(template);
+        }
+        String digest = getDigest(inputs);
+        String etag = "\"" + digest + (events ? "-events" : "-notifications") + "\"";
+        exchange.getResponseHeaders().set("ETag", etag);
+        if (matches(exchange.getRequestHeaders().getFirst("If-None-Match"), etag)) {
+            exchange.sendResponseHeaders(304, -1);
+            return 304;
+        }
+
+        final File notificationsTemplate = template;
+        GeneratedContent content = contents.get(digest, new Callable<GeneratedContent>() {
+            public GeneratedContent call() throws Exception {
+                GraphTemplates graphs = getGraphTemplates(graphTemplatesFile, graphFiles);
+                return generate(eventProcessor, thresholdsFile, graphs, notificationsTemplate);
+            }
+        });
+        byte[] body = events ? content.events : content.notifications;
+        exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+        exchange.sendResponseHeaders(200, body.length);
+        OutputStream out = exchange.getResponseBody();
+        try {
+            out.write(body);
+            out.close();
+        } finally {
+            OutputFile.closeQuietly(out);
+        }
+        return 200;
+    }
+
+    /**
+     * Generates the events and the notifications.
+     * <p>The groups are processed sequentially, as the requests are already served concurrently.</p>
+     *
+     * @param eventProcessor the threshold event processor
+     * @param thresholdsFile the thresholds file
+     * @param graphs the graph templates
+     * @param notificationsTemplate the notifications template (can be null)
+     * @return the generated content
+     * @throws Exception the exception
+     */
+    private GeneratedContent generate(ThresholdEventProcessor eventProcessor, File thresholdsFile, GraphTemplates graphs, File notificationsTemplate) throws Exception {
+        GenerationResult result = new GenerationResult();
+        ThresholdsReader reader = new ThresholdsReader(thresholdsFile, validate);
+        try {
+            Group g;
+            while ((g = reader.read()) != null) {
+                result.add(eventProcessor.getGroupOutput(g, graphs));
+            }
+        } finally {
+            reader.close();
+        }
+
+        GeneratedContent content = new GeneratedContent();
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        EventsWriter eventsWriter = new EventsWriter(output);
+        try {
+            for (Event e : result.getEvents()) {
+                eventsWriter.write(e);
+            }
+            eventsWriter.close();
+        } finally {
+            OutputFile.closeQuietly(eventsWriter);
+        }
+        content.events = output.toByteArray();
+
+        if (notificationsTemplate != null) {
+            output = new ByteArrayOutputStream();
+            NotificationsMerger merger = new NotificationsMerger(NotificationsMerger.Policy.SKIP, EventConstants.formatToString(new Date()));
+            Writer writer = new OutputStreamWriter(output, "UTF-8");
+            try {
+                merger.merge(notificationsTemplate, result.getNotifications(), writer);
+                writer.close();
+            } finally {
+                OutputFile.closeQuietly(writer);
+            }
+            content.notifications = output.toByteArray();
+        }
+        return content;
+    }
+
+    /**
+     * Gets the threshold event processor for a configuration file, shared with the requests with identical configuration.
+     * <p>A processor loads its event templates when it is created, so the processors are also indexed by the digest of
+     * the templates file, and a processor is created again when the templates change.</p>
+     *
+     * @param configFile the configuration file (null to use the default settings)
+     * @return the threshold event processor
+     * @throws Exception the exception
+     */
+    private ThresholdEventProcessor getEventProcessor(final File configFile) throws Exception {
+        String digest = configFile == null ? "" : getDigest(Collections.singletonList(configFile));
+        Callable<ThresholdEventProcessor> factory = new Callable<ThresholdEventProcessor>() {
+            public ThresholdEventProcessor call() throws Exception {
+                return ConfigGenerator.createEventProcessor(configFile);
+            }
+        };
+        ThresholdEventProcessor eventProcessor = eventProcessors.get(digest, factory);
+        File templatesFile = eventProcessor.getTemplatesFile();
+        if (templatesFile == null || !templatesFile.isFile()) {
+            return eventProcessor;
+        }
+        return eventProcessors.get(digest + "-" + getDigest(Collections.singletonList(templatesFile)), factory);
+    }
+
+    /**
+     * Gets the graph templates, shared with the requests with identical graph templates files.
+     *
+     * @param graphTemplatesFile the graph templates file
+     * @param sources the source files of the graph templates
+     * @return the graph templates
+     * @throws Exception the exception
+     */
+    private GraphTemplates getGraphTemplates(final File graphTemplatesFile, List<File> sources) throws Exception {
+        return graphTemplates.get(getDigest(sources), new Callable<GraphTemplates>() {
+            public GraphTemplates call() throws Exception {
+                return new GraphTemplateLoader().load(graphTemplatesFile);
+            }
+        });
+    }
+
+    /**
+     * Creates a temporary OpenNMS home directory with the parts of a multipart/form-data request.
+     *
+     * @param exchange the HTTP exchange
+     * @return the temporary OpenNMS home directory
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    private File createHome(HttpExchange exchange) throws IOException {
+        String contentType = exchange.getRequestHeaders().getFirst("Content-Type");
+        String boundary = contentType == null ? null : getHeaderParameter(contentType, "boundary");
+        if (boundary == null || !contentType.toLowerCase(Locale.ENGLISH).startsWith("multipart/form-data")) {
+            throw new IllegalArgumentException("The request must be multipart/form-data");
+        }
+        Map<String,byte[]> parts = parseMultipart(readBody(exchange.getRequestBody()), boundary);
+        if (!parts.containsKey("thresholds")) {
+            throw new IllegalArgumentException("The thresholds part is required");
+        }
+        File home = Files.createTempDirectory("threshold-events-generator").toFile();
+        File etc = new File(home, "etc");
+        etc.mkdirs();
+        write(new File(etc, "thresholds.xml"), parts.get("thresholds"));
+        write(new File(etc, "snmp-graph.properties"), parts.containsKey("graphs") ? parts.get("graphs") : new byte[0]);
+        if (parts.containsKey("config")) {
+            write(new File(etc, FleetGenerator.CONFIG_FILENAME), parts.get("config"));
+        }
+        if (parts.containsKey("notifications")) {
+            write(new File(etc, "notifications-template.xml"), parts.get("notifications"));
+        }
+        return home;
+    }
+
+    /**
+     * Reads the body of a request.
+     *
+     * @param input the input stream
+     * @return the body
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    private byte[] readBody(InputStream input) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int n;
+        try {
+            while ((n = input.read(buffer)) != -1) {
+                body.write(buffer, 0, n);
+                if (body.size() > MAX_REQUEST_SIZE) {
+                    throw new IllegalArgumentException("The request is bigger than " + MAX_REQUEST_SIZE + " bytes");
+                }
+            }
+        } finally {
+            input.close();
+        }
+        return body.toByteArray();
+    }
+
+    /**
+     * Parses a multipart/form-data body.
+     *
+     * @param body the body
+     * @param boundary the boundary
+     * @return the content of each part, indexed by name
+     * @throws UnsupportedEncodingException the unsupported encoding exception
+     */
+    static Map<String,byte[]> parseMultipart(byte[] body, String boundary) throws UnsupportedEncodingException {
+        Map<String,byte[]> parts = new HashMap<String,byte[]>();
+        byte[] delimiter = ("--" + boundary).getBytes("ISO-8859-1");
+        byte[] headersEnd = "\r\n\r\n".getBytes("ISO-8859-1");
+        int index = indexOf(body, delimiter, 0);
+        while (index >= 0) {
+            int partStart = index + delimiter.length;
+            if (partStart + 1 < body.length && body[partStart] == '-' && body[partStart + 1] == '-') {
+                break;
+            }
+            int contentStart = indexOf(body, headersEnd, partStart);
+            int next = indexOf(body, delimiter, partStart);
+            if (contentStart < 0 || next < 0 || contentStart > next) {
+                throw new IllegalArgumentException("Invalid multipart/form-data content");
+            }
+            String headers = new String(body, partStart, contentStart - partStart, "ISO-8859-1");
+            String name = null;
+            for (String header : headers.split("\r\n")) {
+                if (header.toLowerCase(Locale.ENGLISH).startsWith("content-disposition:")) {
+                    name = getHeaderParameter(header, "name");
+                }
+            }
+            int contentEnd = next - 2; // The line break before the delimiter
+            if (name != null && contentEnd >= contentStart + headersEnd.length) {
+                byte[] content = new byte[contentEnd - contentStart - headersEnd.length];
+                System.arraycopy(body, contentStart + headersEnd.length, content, 0, content.length);
+                parts.put(name, content);
+            }
+            index = next;
+        }
+        return parts;
+    }
+
+    /**
+     * Gets a parameter of a header value (like the boundary of a Content-Type, or the name of a Content-Disposition).
+     *
+     * @param header the header value
+     * @param parameter the parameter name
+     * @return the parameter value (null if it doesn't exist)
+     */
+    private static String getHeaderParameter(String header, String parameter) {
+        for (String token : header.split(";")) {
+            String t = token.trim();
+            if (t.toLowerCase(Locale.ENGLISH).startsWith(parameter + "=")) {
+                String value = t.substring(parameter.length() + 1);
+                if (value.length() > 1 && value.startsWith("\"") && value.endsWith("\"")) {
+                    value = value.substring(1, value.length() - 1);
+                }
+                return value;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Finds a sequence of bytes.
+     *
+     * @param data the data
+     * @param pattern the sequence of bytes
+     * @param from the starting index
+     * @return the index of the sequence, or -1 if it doesn't exist
+     */
+    private static int indexOf(byte[] data, byte[] pattern, int from) {
+        outer: for (int i = from; i <= data.length - pattern.length; i++) {
+            for (int j = 0; j < pattern.length; j++) {
+                if (data[i + j] != pattern[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Gets the parameters of a query string.
+     *
+     * @param query the raw query string (can be null)
+     * @return the parameters
+     * @throws UnsupportedEncodingException the unsupported encoding exception
+     */
+    private Map<String,String> getQueryParameters(String query) throws UnsupportedEncodingException {
+        Map<String,String> parameters = new HashMap<String,String>();
+        if (query != null) {
+            for (String pair : query.split("&")) {
+                int index = pair.indexOf('=');
+                if (index > 0) {
+                    parameters.put(URLDecoder.decode(pair.substring(0, index), "UTF-8"), URLDecoder.decode(pair.substring(index + 1), "UTF-8"));
+                }
+            }
+        }
+        return parameters;
+    }
+
+    /**
+     * Checks if an If-None-Match header matches an ETag.
+     *
+     * @param ifNoneMatch the If-None-Match header (can be null)
+     * @param etag the ETag
+     * @return true, if the ETag matches
+     */
+    private boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String value : ifNoneMatch.split(",")) {
+            String v = value.trim();
+            if (v.startsWith("W/")) {
+                v = v.substring(2);
+            }
+            if (v.equals("*") || v.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Sends an error.
+     *
+     * @param exchange the HTTP exchange
+     * @param status the status code
+     * @param message the message
+     * @return the status code
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    private int sendError(HttpExchange exchange, int status, String message) throws IOException {
+        byte[] body = ((message == null ? "Internal error" : message) + "\n").getBytes("UTF-8");
+        exchange.getResponseHeaders().remove("ETag");
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=UTF-8");
+        exchange.sendResponseHeaders(status, body.length);
+        OutputStream out = exchange.getResponseBody();
+        try {
+            out.write(body);
+            out.close();
+        } finally {
+            OutputFile.closeQuietly(out);
+        }
+        return status;
+    }
+
+    /**
+     * Writes a file.
+     *
+     * @param file the file
+     * @param content the content
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    private void write(File file, byte[] content) throws IOException {
+        OutputStream out = new FileOutputStream(file);
+        try {
+            out.write(content);
+            out.close();
+        } finally {
+            OutputFile.closeQuietly(out);
+        }
+    }
+
+    /**
+     * Deletes a directory and its content.
+     *
+     * @param file the file or directory
+     */
+    private void delete(File file) {
+        File[] files = file.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                delete(f);
+            }
+        }
+        if (!file.delete()) {
+            LOG.warn("Can't delete {}", file);
+        }
+    }
+
+    /**
+     * Gets the digest of the name and content of a list of files.
+     *
+     * @param files the files
+     * @return the digest
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    private String getDigest(List<File> files) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        byte[] buffer = new byte[8192];
+        for (File file : files) {
+            digest.update(file.getName().getBytes("UTF-8"));
+            digest.update((byte) 0);
+            InputStream is = new BufferedInputStream(new FileInputStream(file));
+            try {
+                int n;
+                while ((n = is.read(buffer)) != -1) {
+                    digest.update(buffer, 0, n);
+                }
+            } finally {
+                is.close();
+            }
+            digest.update((byte) 0);
+        }
+        StringBuilder sb = new StringBuilder();
+        for (byte b : digest.digest()) {
+            sb.append(String.format("%02x", b));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * The Class GeneratedContent.
+     */
+    private static class GeneratedContent {
+
+        /** The content of the events file. */
+        private byte[] events;
+
+        /** The content of notifications.xml (null if there is no template). */
+        private byte[] notifications;
+    }
+
+    /**
+     * The Class SharedCache.
+     * <p>Bounded LRU cache that creates each object only once per key, even when it is requested concurrently.
+     * Failed creations are not cached.</p>
+     *
+     * @param <T> the type of the cached objects
+     */
+    private static class SharedCache<T> {
+
+        /** The cached objects. */
+        private Map<String,Future<T>> map;
+
+        /**
+         * Instantiates a new shared cache.
+         *
+         * @param maxSize the maximum number of objects
+         */
+        private SharedCache(final int maxSize) {
+            map = new LinkedHashMap<String,Future<T>>(16, 0.75f, true) {
+                private static final long serialVersionUID = 1L;
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String,Future<T>> eldest) {
+                    return size() > maxSize;
+                }
+            };
+        }
+
+        /**
+         * Gets an object, creating it when it is not cached.
+         *
+         * @param key the key
+         * @param factory the factory of the object
+         * @return the object
+         * @throws Exception the exception
+         */
+        private T get(String key, Callable<T> factory) throws Exception {
+            FutureTask<T> task = new FutureTask<T>(factory);
+            Future<T> future;
+            synchronized (map) {
+                future = map.get(key);
+                if (future == null) {
+                    map.put(key, task);
+                }
+            }
+            if (future == null) {
+                future = task;
+                task.run();
+            }
+            try {
+                return future.get();
+            } catch (ExecutionException e) {
+                synchronized (map) {
+                    if (map.get(key) == future) {
+                        map.remove(key);
+                    }
+                }
+                if (e.getCause() instanceof Exception) {
+                    throw (Exception) e.getCause();
+                }
+                throw e;
+            }
+        }
+    }
+
+}
@@ -0,0 +1,541 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2006-2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+package org.opennms.tools;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Future;
+
+import org.opennms.netmgt.config.threshd.Group;
+
+/**
+ * The Class GenerationSession.
+ * <p>Loads thresholds.xml and the graph templates once, computes the threshold events once, and then
+ * generates the events file and (optionally) notifications.xml in parallel from the same result.</p>
+ * <p>When a cache directory is configured, the output of the groups that haven't changed since the
+ * previous run is taken from the cache, and only the modified groups are processed.</p>
+ * <p>The groups are processed in parallel on a fork/join pool, and merged on the order of thresholds.xml,
+ * so the output is the same as the sequential one.</p>
+ * <p>The content of the events and notifications is deduplicated through a {@link ContentPool},
+ * so identical descriptions, messages and keys are kept in memory only once.</p>
+ * <p>The statistics of each phase are collected on the {@link GenerationStats} of the threshold event processor.</p>
+ * 
+ * @author <a href="mailto:agalue@opennms.org">Alejandro Galue</a>
+ */
+public class GenerationSession {
+
+    /** The UEI processor. */
+    private ThresholdEventProcessor eventProcessor;
+
+    /** The OpenNMS home directory. */
+    private File onmsHome;
+
+    /** The validate flag for thresholds.xml. */
+    private boolean validate = true;
+
+    /** The cache directory (null if the cache is disabled). */
+    private File cacheDirectory;
+
+    /** The graph templates (kept between runs while the source files don't change). */
+    private GraphTemplates graphTemplates;
+
+    /** The signature of the source files of the graph templates when they were loaded. */
+    private String graphTemplatesSignature;
+
+    /** The generation result. */
+    private GenerationResult result;
+
+    /** The group cache used on the last load (null if the cache is disabled). */
+    private GroupCache groupCache;
+
+    /** The parallelism level. */
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+
+    /** The shared fork/join pool (null to create one per run). */
+    private ForkJoinPool sharedPool;
+
+    /** The content pool of the generation result. */
+    private ContentPool contentPool;
+
+    /** The merge policy for the events file (null to replace it). */
+    private EventsMerger.Policy mergePolicy;
+
+    /** The sharding of the events file (null to write a single file). */
+    private EventsSharding sharding;
+
+    /** The policy for the generated notifications that already exist on the template. */
+    private NotificationsMerger.Policy notificationsPolicy = NotificationsMerger.Policy.SKIP;
+
+    /** The manifest flag. */
+    private boolean manifest;
+
+    /**
+     * Instantiates a new generation session.
+     *
+     * @param eventProcessor the threshold event processor
+     * @param onmsHome the OpenNMS home directory
+     */
+    public GenerationSession(ThresholdEventProcessor eventProcessor, File onmsHome) {
+        this.eventProcessor = eventProcessor;
+        this.onmsHome = onmsHome;
+    }
+
+    /**
+     * Sets the threshold event processor.
+     * <p>Used to apply a new configuration without loading the graph templates again.</p>
+     *
+     * @param eventProcessor the threshold event processor
+     */
+    public void setEventProcessor(ThresholdEventProcessor eventProcessor) {
+        this.eventProcessor = eventProcessor;
+    }
+
+    /**
+     * Gets the threshold event processor.
+     *
+     * @return the threshold event processor
+     */
+    public ThresholdEventProcessor getEventProcessor() {
+        return eventProcessor;
+    }
+
+    /**
+     * Gets the OpenNMS home directory.
+     *
+     * @return the OpenNMS home directory
+     */
+    public File getOnmsHome() {
+        return onmsHome;
+    }
+
+    /**
+     * Sets the validate flag.
+     *
+     * @param validate true to validate the content of thresholds.xml
+     */
+    public void setValidate(boolean validate) {
+        this.validate = validate;
+    }
+
+    /**
+     * Sets the parallelism level.
+     * <p>With a parallelism of 1, the groups are processed sequentially on the calling thread.</p>
+     *
+     * @param parallelism the number of threads used to process the threshold groups
+     */
+    public void setParallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("The parallelism must be greater than zero");
+        }
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Sets a fork/join pool shared with other sessions.
+     * <p>When set, the parallelism level is ignored, and the pool is not shut down after each run.</p>
+     *
+     * @param sharedPool the shared fork/join pool
+     */
+    public void setForkJoinPool(ForkJoinPool sharedPool) {
+        this.sharedPool = sharedPool;
+    }
+
+    /**
+     * Sets the graph templates.
+     * <p>Used to share the graph templates with other sessions; they are only loaded again
+     * if their source files are modified.</p>
+     *
+     * @param graphTemplates the graph templates
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public void setGraphTemplates(GraphTemplates graphTemplates) throws IOException {
+        this.graphTemplates = graphTemplates;
+        this.graphTemplatesSignature = getSignature(new GraphTemplateLoader().getSourceFiles(new File(onmsHome, "etc/snmp-graph.properties")));
+    }
+
+    /**
+     * Sets the merge policy for the events file.
+     *
+     * @param mergePolicy the merge policy (null to replace the events file)
+     */
+    public void setMergePolicy(EventsMerger.Policy mergePolicy) {
+        this.mergePolicy = mergePolicy;
+    }
+
+    /**
+     * Sets the sharding of the events file.
+     *
+     * @param sharding the sharding (null to write a single file)
+     */
+    public void setSharding(EventsSharding sharding) {
+        this.sharding = sharding;
+    }
+
+    /**
+     * Sets the policy for the generated notifications that already exist on the template.
+     *
+     * @param notificationsPolicy the notifications policy
+     */
+    public void setNotificationsPolicy(NotificationsMerger.Policy notificationsPolicy) {
+        this.notificationsPolicy = notificationsPolicy;
+    }
+
+    /**
+     * Sets the manifest flag.
+     * <p>When enabled, the digest of each generated definition is stored on etc/{@value GenerationManifest#MANIFEST_FILENAME},
+     * and the changes since the previous run are reported and stored on etc/{@value GenerationManifest#CHANGES_FILENAME}.</p>
+     *
+     * @param manifest true to store the manifest and report the changes
+     */
+    public void setManifest(boolean manifest) {
+        this.manifest = manifest;
+    }
+
+    /**
+     * Sets the cache directory.
+     *
+     * @param cacheDirectory the cache directory (null to disable the cache)
+     */
+    public void setCacheDirectory(File cacheDirectory) {
+        this.cacheDirectory = cacheDirectory;
+    }
+
+    /**
+     * Loads the input files and computes the threshold events.
+     * <p>The graph templates are only loaded again when their source files have been modified.</p>
+     *
+     * @throws Exception the exception
+     */
+    public void load() throws Exception {
+        File graphTemplatesFile = new File(onmsHome, "etc/snmp-graph.properties");
+        GraphTemplateLoader loader = new GraphTemplateLoader();
+        List<File> sources = loader.getSourceFiles(graphTemplatesFile);
+        String signature = getSignature(sources);
+        GenerationStats stats = eventProcessor.getStats();
+        if (graphTemplates == null || !signature.equals(graphTemplatesSignature)) {
+            GenerationStats.Timer timer = stats.start(GenerationStats.GRAPH_TEMPLATES);
+            try {
+                graphTemplates = loader.load(graphTemplatesFile);
+            } finally {
+                timer.stop();
+            }
+            graphTemplatesSignature = signature;
+            stats.cache(GenerationStats.GRAPH_TEMPLATES_CACHE, 0, 1);
+        } else {
+            stats.cache(GenerationStats.GRAPH_TEMPLATES_CACHE, 1, 0);
+        }
+        GroupCache cache = null;
+        if (cacheDirectory != null) {
+            List<File> inputs = new ArrayList<File>(sources);
+            if (eventProcessor.getTemplatesFile() != null) {
+                inputs.add(eventProcessor.getTemplatesFile());
+            }
+            cache = new GroupCache(cacheDirectory, eventProcessor.getConfig(), inputs.toArray(new File[inputs.size()]));
+        }
+        GenerationResult newResult = new GenerationResult();
+        final ContentPool pool = new ContentPool();
+        ForkJoinPool forkJoinPool = sharedPool;
+        if (forkJoinPool == null && parallelism > 1) {
+            forkJoinPool = new ForkJoinPool(parallelism);
+        }
+        LinkedList<PendingGroup> pending = new LinkedList<PendingGroup>();
+        ThresholdsReader reader = new ThresholdsReader(new File(onmsHome, "etc/thresholds.xml"), validate);
+        reader.setStats(stats);
+        try {
+            Group g;
+            while ((g = reader.read()) != null) {
+                PendingGroup p = new PendingGroup();
+                if (cache != null) {
+                    p.fingerprint = cache.getFingerprint(g);
+                    p.output = cache.get(p.fingerprint);
+                }
+                if (p.output == null) {
+                    if (forkJoinPool == null) {
+                        p.output = eventProcessor.getGroupOutput(g, graphTemplates);
+                        p.output.canonicalize(pool);
+                        p.generated = true;
+                    } else {
+                        final Group group = g;
+                        p.task = forkJoinPool.submit(new Callable<GroupOutput>() {
+                            public GroupOutput call() throws Exception {
+                                GroupOutput output = eventProcessor.getGroupOutput(group, graphTemplates);
+                                output.canonicalize(pool);
+                                return output;
+                            }
+                        });
+                    }
+                } else {
+                    p.output.canonicalize(pool);
+                }
+                pending.add(p);
+                while (!pending.isEmpty() && pending.getFirst().isDone()) {
+                    merge(pending.removeFirst(), cache, newResult);
+                }
+            }
+            while (!pending.isEmpty()) {
+                merge(pending.removeFirst(), cache, newResult);
+            }
+        } finally {
+            reader.close();
+            if (forkJoinPool != null && forkJoinPool != sharedPool) {
+                forkJoinPool.shutdownNow();
+            }
+        }
+        if (cache != null) {
+            cache.purge();
+            System.out.println("Group cache: " + cache.getHits() + " unchanged, " + cache.getMisses() + " regenerated");
+            stats.cache(GenerationStats.GROUP_CACHE, cache.getHits(), cache.getMisses());
+        }
+        System.out.println("Content pool: " + pool);
+        stats.cache(GenerationStats.CONTENT_POOL, pool.getRequests() - pool.getSize(), pool.getSize());
+        contentPool = pool;
+        result = newResult;
+        groupCache = cache;
+    }
+
+    /**
+     * Gets the group cache used on the last load.
+     *
+     * @return the group cache, or null if the cache is disabled
+     */
+    public GroupCache getGroupCache() {
+        return groupCache;
+    }
+
+    /**
+     * The Class PendingGroup.
+     * <p>A group that is being processed, kept in the order of thresholds.xml until it can be merged.</p>
+     */
+    private static class PendingGroup {
+
+        /** The fingerprint of the group (null when the cache is disabled). */
+        private String fingerprint;
+
+        /** The output of the group (null while the task is running). */
+        private GroupOutput output;
+
+        /** The task that builds the output of the group (null for cached or sequential outputs). */
+        private ForkJoinTask<GroupOutput> task;
+
+        /** The generated flag (true when the output was not taken from the cache). */
+        private boolean generated;
+
+        /**
+         * Checks if the output is available.
+         *
+         * @return true, if the output is available
+         */
+        private boolean isDone() {
+            return task == null || task.isDone();
+        }
+    }
+
+    /**
+     * Merges the output of a group into the result.
+     * <p>The groups are always merged on the order of thresholds.xml, so the result is the same
+     * regardless of the parallelism level.</p>
+     *
+     * @param p the pending group
+     * @param cache the group cache (can be null)
+     * @param result the generation result
+     */
+    private void merge(PendingGroup p, GroupCache cache, GenerationResult result) {
+        if (p.task != null) {
+            p.output = p.task.join();
+            p.generated = true;
+        }
+        if (cache != null && p.generated) {
+            cache.put(p.fingerprint, p.output);
+        }
+        result.add(p.output);
+    }
+
+    /**
+     * Gets the signature of a list of files, based on their names, sizes and modification times.
+     *
+     * @param files the files
+     * @return the signature
+     */
+    private String getSignature(List<File> files) {
+        StringBuilder sb = new StringBuilder();
+        for (File f : files) {
+            sb.append(f.getAbsolutePath()).append(':').append(f.length()).append(':').append(f.lastModified()).append(';');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Gets the content pool of the last generation result.
+     *
+     * @return the content pool, or null if the inputs haven't been loaded
+     */
+    public ContentPool getContentPool() {
+        return contentPool;
+    }
+
+    /**
+     * Gets the generation result.
+     *
+     * @return the generation result
+     */
+    public GenerationResult getResult() {
+        return result;
+    }
+
+    /**
+     * Generates the events file and notifications.xml.
+     * <p>Both files are written concurrently. If the session has not been loaded, it will be loaded first.</p>
+     *
+     * @param notificationsTemplate the template for notifications.xml (null to skip the notifications)
+     * @throws Exception the exception
+     */
+    public void generate(final File notificationsTemplate) throws Exception {
+        GenerationStats stats = eventProcessor.getStats();
+        GenerationStats.Timer timer = stats.start(GenerationStats.TOTAL);
+        try {
+            if (result == null) {
+                load();
+            }
+            write(notificationsTemplate);
+        } finally {
+            timer.stop();
+        }
+    }
+
+    /**
+     * Writes the events file and notifications.xml concurrently.
+     * <p>When the manifest is enabled, the digests of the definitions are computed at the same time, and the
+     * manifest is stored once the files have been written.</p>
+     *
+     * @param notificationsTemplate the template for notifications.xml (null to skip the notifications)
+     * @throws Exception the exception
+     */
+    private void write(final File notificationsTemplate) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            List<Future<Void>> tasks = new ArrayList<Future<Void>>();
+            tasks.add(executor.submit(new Callable<Void>() {
+                public Void call() throws Exception {
+                    EventsGenerator generator = new EventsGenerator(eventProcessor);
+                    generator.setMergePolicy(mergePolicy);
+                    generator.setSharding(sharding);
+                    generator.setParallelism(parallelism);
+                    generator.writeEvents(onmsHome, result.getEvents(), result.getGroupNames());
+                    return null;
+                }
+            }));
+            if (notificationsTemplate != null) {
+                tasks.add(executor.submit(new Callable<Void>() {
+                    public Void call() throws Exception {
+                        NotificationsGenerator generator = new NotificationsGenerator(eventProcessor);
+                        generator.setMergePolicy(notificationsPolicy);
+                        generator.writeNotifications(onmsHome, notificationsTemplate, result.getNotifications());
+                        return null;
+                    }
+                }));
+            }
+            Future<GenerationManifest> manifestTask = null;
+            if (manifest) {
+                manifestTask = executor.submit(new Callable<GenerationManifest>() {
+                    public GenerationManifest call() throws Exception {
+                        GenerationManifest m = new GenerationManifest();
+                        m.addEvents(result.getEvents());
+                        if (notificationsTemplate != null) {
+                            m.addNotifications(result.getNotifications());
+                        }
+                        return m;
+                    }
+                });
+            }
+            for (Future<Void> task : tasks) {
+                get(task);
+            }
+            if (manifestTask != null) {
+                writeManifest(get(manifestTask), notificationsTemplate != null);
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Compares the manifest with the one of the previous run, and stores it with the changes.
+     * <p>When the notifications have not been generated, the ones of the previous run are kept.</p>
+     *
+     * @param current the manifest of the current run
+     * @param notifications true if the notifications have been generated
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    private void writeManifest(GenerationManifest current, boolean notifications) throws IOException {
+        File manifestFile = new File(onmsHome, "etc/" + GenerationManifest.MANIFEST_FILENAME);
+        GenerationManifest previous = GenerationManifest.load(manifestFile);
+        if (!notifications) {
+            current.copyDigests(previous, GenerationManifest.NOTIFICATION);
+        }
+        SortedMap<String,GenerationManifest.Change> changes = current.compare(previous);
+        File changesFile = new File(onmsHome, "etc/" + GenerationManifest.CHANGES_FILENAME);
+        GenerationManifest.storeChanges(changes, changesFile);
+        current.store(manifestFile);
+        if (previous == null) {
+            System.out.println("No previous manifest, " + current.getDigests().size() + " definitions added to " + manifestFile);
+        } else {
+            System.out.println("Changes since the previous run (" + changesFile + "): " + GenerationManifest.getSummary(changes));
+            GenerationManifest.writeChanges(changes, System.out);
+        }
+    }
+
+    /**
+     * Waits for a task.
+     *
+     * @param <T> the type of the result
+     * @param task the task
+     * @return the result of the task
+     * @throws Exception the exception thrown by the task
+     */
+    private <T> T get(Future<T> task) throws Exception {
+        try {
+            return task.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception) {
+                throw (Exception) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+}
@@ -0,0 +1,514 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2006-2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+package org.opennms.tools;
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * The Class GenerationStats.
+ * <p>Thread-safe collector of the wall time, CPU time and allocated bytes of each phase of a generation,
+ * and of the counters of the processed elements and the caches.</p>
+ * <p>The CPU time and the allocated bytes are measured on the thread that runs each phase, so they are exact
+ * even when the groups are processed in parallel. For the same reason, the wall time of a phase that runs on
+ * several threads at once is the sum of the time spent by each thread.</p>
+ * <p>The hits of the process-wide {@link ExpressionCache} are taken when the report is written, and they include
+ * all the expressions analyzed since the previous report.</p>
+ * <p>The {@link #DISABLED} instance doesn't measure anything, and it is used when the statistics are not requested.</p>
+ *
+ * @author <a href="mailto:agalue@opennms.org">Alejandro Galue</a>
+ */
+public class GenerationStats {
+
+    /** The Constant TOTAL (the whole generation). */
+    public static final String TOTAL = "total";
+
+    /** The Constant GRAPH_TEMPLATES (loading snmp-graph.properties and its include directory). */
+    public static final String GRAPH_TEMPLATES = "graph-templates";
+
+    /** The Constant THRESHOLDS_READ (parsing and validating thresholds.xml). */
+    public static final String THRESHOLDS_READ = "thresholds-read";
+
+    /** The Constant EVENTS (computing the threshold events). */
+    public static final String EVENTS = "events";
+
+    /** The Constant NOTIFICATIONS (computing the notifications). */
+    public static final String NOTIFICATIONS = "notifications";
+
+    /** The Constant EVENTS_MARSHAL (writing the events file). */
+    public static final String EVENTS_MARSHAL = "events-marshal";
+
+    /** The Constant NOTIFICATIONS_UNMARSHAL (streaming the template of notifications.xml). */
+    public static final String NOTIFICATIONS_UNMARSHAL = "notifications-unmarshal";
+
+    /** The Constant NOTIFICATIONS_MARSHAL (appending the generated notifications to notifications.xml). */
+    public static final String NOTIFICATIONS_MARSHAL = "notifications-marshal";
+
+    /** The Constant GROUPS. */
+    public static final String GROUPS = "groups";
+
+    /** The Constant THRESHOLDS. */
+    public static final String THRESHOLDS = "thresholds";
+
+    /** The Constant EXPRESSIONS. */
+    public static final String EXPRESSIONS = "expressions";
+
+    /** The Constant GENERATED_EVENTS. */
+    public static final String GENERATED_EVENTS = "events";
+
+    /** The Constant GENERATED_NOTIFICATIONS. */
+    public static final String GENERATED_NOTIFICATIONS = "notifications";
+
+    /** The Constant GROUP_CACHE (hits and misses of the group cache). */
+    public static final String GROUP_CACHE = "group-cache";
+
+    /** The Constant GRAPH_TEMPLATES_CACHE (hits and misses of the graph templates kept between runs). */
+    public static final String GRAPH_TEMPLATES_CACHE = "graph-templates";
+
+    /** The Constant EXPRESSION_CACHE (hits and misses of the expression cache). */
+    public static final String EXPRESSION_CACHE = "expression-cache";
+
+    /** The Constant CONTENT_POOL (hits and misses of the content pool). */
+    public static final String CONTENT_POOL = "content-pool";
+
+    /** The Constant DISABLED. */
+    public static final GenerationStats DISABLED = new GenerationStats(false);
+
+    /**
+     * The Enum Format.
+     */
+    public enum Format {
+
+        /** Human-readable text. */
+        TEXT,
+
+        /** A single line of JSON. */
+        JSON
+    }
+
+    /** The Constant NOOP_TIMER. */
+    private static final Timer NOOP_TIMER = new Timer(null, null) {
+        @Override
+        public void stop() {
+        }
+    };
+
+    /** The thread MX bean. */
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    /** The enabled flag. */
+    private final boolean enabled;
+
+    /** The output format. */
+    private final Format format;
+
+    /** The phases. */
+    private final Map<String,Phase> phases = new LinkedHashMap<String,Phase>();
+
+    /** The counters. */
+    private final Map<String,Long> counters = new LinkedHashMap<String,Long>();
+
+    /** The caches (hits and misses). */
+    private final Map<String,long[]> caches = new LinkedHashMap<String,long[]>();
+
+    /** The hits of the expression cache on the previous report. */
+    private long expressionCacheHits;
+
+    /** The misses of the expression cache on the previous report. */
+    private long expressionCacheMisses;
+
+    /**
+     * Instantiates a new generation statistics collector.
+     *
+     * @param format the output format
+     */
+    public GenerationStats(Format format) {
+        this.enabled = true;
+        this.format = format;
+        reset();
+    }
+
+    /**
+     * Instantiates a disabled generation statistics collector.
+     *
+     * @param enabled the enabled flag
+     */
+    private GenerationStats(boolean enabled) {
+        this.enabled = enabled;
+        this.format = Format.TEXT;
+    }
+
+    /**
+     * Parses the output format.
+     *
+     * @param format the format name (text or json)
+     * @return the format
+     * @throws IllegalArgumentException if the format is not supported
+     */
+    public static Format parseFormat(String format) {
+        try {
+            return Format.valueOf(format.trim().toUpperCase(Locale.ENGLISH));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unsupported statistics format " + format);
+        }
+    }
+
+    /**
+     * Checks if the statistics are enabled.
+     *
+     * @return true, if enabled
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Starts the measurement of a phase on the current thread.
+     *
+     * @param phase the phase name
+     * @return the timer, that must be stopped on the same thread
+     */
+    public Timer start(String phase) {
+        if (!enabled) {
+            return NOOP_TIMER;
+        }
+        return new Timer(this, phase);
+    }
+
+    /**
+     * Adds a value to a counter.
+     *
+     * @param counter the counter name
+     * @param delta the value to add
+     */
+    public void count(String counter, long delta) {
+        if (!enabled) {
+            return;
+        }
+        synchronized (this) {
+            Long value = counters.get(counter);
+            counters.put(counter, value == null ? delta : value + delta);
+        }
+    }
+
+    /**
+     * Adds the hits and misses of a cache.
+     *
+     * @param cache the cache name
+     * @param hits the number of hits
+     * @param misses the number of misses
+     */
+    public void cache(String cache, long hits, long misses) {
+        if (!enabled) {
+            return;
+        }
+        synchronized (this) {
+            long[] value = caches.get(cache);
+            if (value == null) {
+                value = new long[2];
+                caches.put(cache, value);
+            }
+            value[0] += hits;
+            value[1] += misses;
+        }
+    }
+
+    /**
+     * Gets the value of a counter.
+     *
+     * @param counter the counter name
+     * @return the value, or 0 if the counter doesn't exist
+     */
+    public synchronized long getCount(String counter) {
+        Long value = counters.get(counter);
+        return value == null ? 0 : value;
+    }
+
+    /**
+     * Gets a phase.
+     *
+     * @param phase the phase name
+     * @return the phase, or null if it hasn't been measured
+     */
+    public synchronized Phase getPhase(String phase) {
+        return phases.get(phase);
+    }
+
+    /**
+     * Removes all the measurements.
+     */
+    public synchronized void reset() {
+        phases.clear();
+        counters.clear();
+        caches.clear();
+        expressionCacheHits = ExpressionCache.getInstance().getHits();
+        expressionCacheMisses = ExpressionCache.getInstance().getMisses();
+    }
+
+    /**
+     * Writes the report on the configured format, and removes all the measurements.
+     *
+     * @param out the output stream
+     */
+    public void report(PrintStream out) {
+        if (!enabled) {
+            return;
+        }
+        synchronized (this) {
+            ExpressionCache expressionCache = ExpressionCache.getInstance();
+            cache(EXPRESSION_CACHE, expressionCache.getHits() - expressionCacheHits, expressionCache.getMisses() - expressionCacheMisses);
+            out.println(format == Format.JSON ? toJson() : toText());
+            reset();
+        }
+    }
+
+    /**
+     * Records the measurement of a phase.
+     *
+     * @param phase the phase name
+     * @param wallNanos the wall time in nanoseconds
+     * @param cpuNanos the CPU time in nanoseconds
+     * @param allocatedBytes the allocated bytes
+     */
+    private synchronized void record(String phase, long wallNanos, long cpuNanos, long allocatedBytes) {
+        Phase p = phases.get(phase);
+        if (p == null) {
+            p = new Phase();
+            phases.put(phase, p);
+        }
+        p.invocations++;
+        p.wallNanos += wallNanos;
+        p.cpuNanos += cpuNanos;
+        p.allocatedBytes += allocatedBytes;
+    }
+
+    /**
+     * Gets the report as human-readable text.
+     *
+     * @return the report
+     */
+    public synchronized String toText() {
+        StringBuilder sb = new StringBuilder("Generation statistics:\n");
+        sb.append(String.format(Locale.ENGLISH, "  %-24s %8s %12s %12s %14s%n", "phase", "calls", "wall (ms)", "cpu (ms)", "allocated (KB)"));
+        for (Map.Entry<String,Phase> e : phases.entrySet()) {
+            Phase p = e.getValue();
+            sb.append(String.format(Locale.ENGLISH, "  %-24s %8d %12.1f %12.1f %14d%n", e.getKey(), p.invocations, p.wallNanos / 1e6, p.cpuNanos / 1e6, p.allocatedBytes / 1024));
+        }
+        for (Map.Entry<String,Long> e : counters.entrySet()) {
+            sb.append(String.format(Locale.ENGLISH, "  %-24s %d%n", e.getKey(), e.getValue()));
+        }
+        for (Map.Entry<String,long[]> e : caches.entrySet()) {
+            long[] c = e.getValue();
+            sb.append(String.format(Locale.ENGLISH, "  %-24s %d hits, %d misses (%.1f%% hit rate)%n", e.getKey(), c[0], c[1], getHitRate(c) * 100));
+        }
+        return sb.toString().trim();
+    }
+
+    /**
+     * Gets the report as JSON.
+     *
+     * @return the report
+     */
+    public synchronized String toJson() {
+        StringBuilder sb = new StringBuilder("{\"phases\":{");
+        boolean first = true;
+        for (Map.Entry<String,Phase> e : phases.entrySet()) {
+            Phase p = e.getValue();
+            sb.append(first ? "" : ",").append('"').append(e.getKey()).append("\":{")
+            .append("\"calls\":").append(p.invocations)
+            .append(",\"wallNanos\":").append(p.wallNanos)
+            .append(",\"cpuNanos\":").append(p.cpuNanos)
+            .append(",\"allocatedBytes\":").append(p.allocatedBytes)
+            .append('}');
+            first = false;
+        }
+        sb.append("},\"counters\":{");
+        first = true;
+        for (Map.Entry<String,Long> e : counters.entrySet()) {
+            sb.append(first ? "" : ",").append('"').append(e.getKey()).append("\":").append(e.getValue());
+            first = false;
+        }
+        sb.append("},\"caches\":{");
+        first = true;
+        for (Map.Entry<String,long[]> e : caches.entrySet()) {
+            long[] c = e.getValue();
+            sb.append(first ? "" : ",").append('"').append(e.getKey()).append("\":{")
+            .append("\"hits\":").append(c[0])
+            .append(",\"misses\":").append(c[1])
+            .append(",\"hitRate\":").append(String.format(Locale.ENGLISH, "%.4f", getHitRate(c)))
+            .append('}');
+            first = false;
+        }
+        return sb.append("}}").toString();
+    }
+
+    /**
+     * Gets the hit rate of a cache.
+     *
+     * @param cache the hits and misses
+     * @return the hit rate, between 0 and 1
+     */
+    private double getHitRate(long[] cache) {
+        long total = cache[0] + cache[1];
+        return total == 0 ? 0 : (double) cache[0] / total;
+    }
+
+    /**
+     * Gets the CPU time of the current thread.
+     *
+     * @return the CPU time in nanoseconds, or 0 if it is not supported
+     */
+    private static long getCpuTime() {
+        return THREADS.isCurrentThreadCpuTimeSupported() ? THREADS.getCurrentThreadCpuTime() : 0;
+    }
+
+    /**
+     * Gets the bytes allocated by the current thread.
+     *
+     * @return the allocated bytes, or 0 if it is not supported by the JVM
+     */
+    private static long getAllocatedBytes() {
+        if (THREADS instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) THREADS;
+            if (threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled()) {
+                return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * The Class Phase.
+     * <p>The accumulated measurements of a phase.</p>
+     */
+    public static class Phase {
+
+        /** The number of invocations. */
+        private long invocations;
+
+        /** The wall time in nanoseconds. */
+        private long wallNanos;
+
+        /** The CPU time in nanoseconds. */
+        private long cpuNanos;
+
+        /** The allocated bytes. */
+        private long allocatedBytes;
+
+        /**
+         * Gets the number of invocations.
+         *
+         * @return the number of invocations
+         */
+        public long getInvocations() {
+            return invocations;
+        }
+
+        /**
+         * Gets the wall time.
+         *
+         * @return the wall time in nanoseconds
+         */
+        public long getWallNanos() {
+            return wallNanos;
+        }
+
+        /**
+         * Gets the CPU time.
+         *
+         * @return the CPU time in nanoseconds
+         */
+        public long getCpuNanos() {
+            return cpuNanos;
+        }
+
+        /**
+         * Gets the allocated bytes.
+         *
+         * @return the allocated bytes
+         */
+        public long getAllocatedBytes() {
+            return allocatedBytes;
+        }
+    }
+
+    /**
+     * The Class Timer.
+     * <p>Measures one execution of a phase on the current thread.</p>
+     */
+    public static class Timer {
+
+        /** The statistics collector. */
+        private final GenerationStats stats;
+
+        /** The phase name. */
+        private final String phase;
+
+        /** The start wall time. */
+        private final long wallStart;
+
+        /** The start CPU time. */
+        private final long cpuStart;
+
+        /** The start allocated bytes. */
+        private final long allocatedStart;
+
+        /**
+         * Instantiates a new timer.
+         *
+         * @param stats the statistics collector
+         * @param phase the phase name
+         */
+        private Timer(GenerationStats stats, String phase) {
+            this.stats = stats;
+            this.phase = phase;
+            if (stats == null) {
+                wallStart = cpuStart = allocatedStart = 0;
+            } else {
+                allocatedStart = getAllocatedBytes();
+                cpuStart = getCpuTime();
+                wallStart = System.nanoTime();
+            }
+        }
+
+        /**
+         * Stops the timer, and records the measurement.
+         */
+        public void stop() {
+            long wall = System.nanoTime() - wallStart;
+            long cpu = getCpuTime() - cpuStart;
+            long allocated = getAllocatedBytes() - allocatedStart;
+            stats.record(phase, wall, cpu, allocated);
+        }
+    }
+
+}
@@ -0,0 +1,175 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2006-2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+package org.opennms.tools;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.ServiceLoader;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The Class GenerationTracer.
+ * <p>Extension point to trace the work of the generator with an external profiler. Each method is called when a unit of
+ * work starts, and the returned span must be ended when the work finishes, on the same thread.</p>
+ * <p>This implementation does nothing. A different implementation can be registered through
+ * <code>META-INF/services/org.opennms.tools.GenerationTracer</code>; the <code>jfr</code> Maven profile adds one that emits
+ * Java Flight Recorder events, only while a recording is active.</p>
+ *
+ * @author <a href="mailto:agalue@opennms.org">Alejandro Galue</a>
+ */
+public class GenerationTracer {
+
+    /** The Constant LOG. */
+    private static final Logger LOG = LoggerFactory.getLogger(GenerationTracer.class);
+
+    /** The Constant NOOP (a span that does nothing). */
+    public static final Span NOOP = new Span() {
+        public void end() {
+        }
+        public void end(String result) {
+        }
+    };
+
+    /** The Constant INSTANCE. */
+    private static final GenerationTracer INSTANCE = load();
+
+    /**
+     * The Interface Span.
+     * <p>A unit of work that is being traced.</p>
+     */
+    public interface Span {
+
+        /**
+         * Ends the span.
+         */
+        void end();
+
+        /**
+         * Ends the span.
+         *
+         * @param result the result of the work
+         */
+        void end(String result);
+    }
+
+    /**
+     * Gets the tracer.
+     *
+     * @return the registered tracer, or a tracer that does nothing
+     */
+    public static GenerationTracer getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Loads the registered tracer.
+     * <p>If the tracer can't be loaded (for example, when the JVM doesn't support it), this implementation is used.</p>
+     *
+     * @return the tracer
+     */
+    private static GenerationTracer load() {
+        try {
+            Iterator<GenerationTracer> it = ServiceLoader.load(GenerationTracer.class).iterator();
+            if (it.hasNext()) {
+                GenerationTracer tracer = it.next();
+                LOG.debug("Using generation tracer {}", tracer.getClass().getName());
+                return tracer;
+            }
+        } catch (Throwable e) {
+            LOG.debug("Can't load the generation tracer, tracing is disabled", e);
+        }
+        return new GenerationTracer();
+    }
+
+    /**
+     * Starts loading an input (a group from thresholds.xml, a graph templates file or the notifications template).
+     *
+     * @param input the input file
+     * @return the span
+     */
+    public Span startInputLoading(String input) {
+        return NOOP;
+    }
+
+    /**
+     * Starts the generation of the events and notifications of a threshold group.
+     *
+     * @param group the group name
+     * @param definitions the number of threshold definitions
+     * @return the span
+     */
+    public Span startGroupGeneration(String group, int definitions) {
+        return NOOP;
+    }
+
+    /**
+     * Starts the construction of a threshold event.
+     *
+     * @param uei the UEI of the event
+     * @param type the threshold type
+     * @param dsType the resource type of the threshold
+     * @return the span
+     */
+    public Span startThresholdEvent(String uei, String type, String dsType) {
+        return NOOP;
+    }
+
+    /**
+     * Starts the parsing of a JEXL expression.
+     *
+     * @param expression the expression
+     * @return the span
+     */
+    public Span startExpressionParsing(String expression) {
+        return NOOP;
+    }
+
+    /**
+     * Starts the resolution of the graph links of a threshold.
+     *
+     * @param metrics the datasources of the threshold
+     * @param dsType the resource type of the threshold
+     * @return the span
+     */
+    public Span startGraphLinkResolution(Collection<String> metrics, String dsType) {
+        return NOOP;
+    }
+
+    /**
+     * Starts writing an output file.
+     *
+     * @param output the output file
+     * @return the span
+     */
+    public Span startOutputWriting(String output) {
+        return NOOP;
+    }
+
+}
@@ -0,0 +1,189 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2006-2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+package org.opennms.tools;
+
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The Class GraphIndex.
+ * <p>Inverted index from datasource (column) name to the graph templates that use it, used to build the
+ * <code>reports</code> parameter of the graph links. The result is memoized per distinct set of datasources,
+ * so all the thresholds defined on the same datasources share the same string.</p>
+ * <p>When <code>matchResourceType</code> is enabled, only the graphs defined for the resource type of
+ * the threshold (or without resource type) are considered.</p>
+ *
+ * @author <a href="mailto:agalue@opennms.org">Alejandro Galue</a>
+ */
+public class GraphIndex {
+
+    /** The Constant TRACER. */
+    private static final GenerationTracer TRACER = GenerationTracer.getInstance();
+
+    /** The graph templates. */
+    private final GraphTemplates templates;
+
+    /** The match resource type flag. */
+    private final boolean matchResourceType;
+
+    /** The positions of the graph templates that use each column. */
+    private final Map<String,BitSet> columnIndex = new HashMap<String,BitSet>();
+
+    /** The memoized reports, indexed by resource type and datasources. */
+    private final ConcurrentMap<String,String> reportsCache = new ConcurrentHashMap<String,String>();
+
+    /**
+     * Instantiates a new graph index.
+     *
+     * @param templates the graph templates
+     * @param matchResourceType true to only consider the graphs of the resource type of the threshold
+     */
+    public GraphIndex(GraphTemplates templates, boolean matchResourceType) {
+        this.templates = templates;
+        this.matchResourceType = matchResourceType;
+        List<GraphTemplate> list = templates.getTemplates();
+        for (int i = 0; i < list.size(); i++) {
+            for (String column : list.get(i).getColumns()) {
+                BitSet positions = columnIndex.get(column);
+                if (positions == null) {
+                    positions = new BitSet(list.size());
+                    columnIndex.put(column, positions);
+                }
+                positions.set(i);
+            }
+        }
+    }
+
+    /**
+     * Gets the graph templates.
+     *
+     * @return the graph templates
+     */
+    public GraphTemplates getTemplates() {
+        return templates;
+    }
+
+    /**
+     * Gets the reports for a set of datasources.
+     *
+     * @param metrics the datasource names
+     * @param dsType the resource type of the threshold
+     * @return the report names separated by <code>&amp;reports=</code>, or null if there are no graphs for the datasources
+     */
+    public String getReports(Collection<String> metrics, String dsType) {
+        GenerationTracer.Span span = TRACER.startGraphLinkResolution(metrics, dsType);
+        String reports = null;
+        try {
+            reports = findReports(metrics, dsType);
+            return reports;
+        } finally {
+            span.end(reports);
+        }
+    }
+
+    /**
+     * Finds the reports for a set of datasources.
+     *
+     * @param metrics the datasource names
+     * @param dsType the resource type of the threshold
+     * @return the report names separated by <code>&amp;reports=</code>, or null if there are no graphs for the datasources
+     */
+    private String findReports(Collection<String> metrics, String dsType) {
+        String resourceType = matchResourceType ? getResourceType(dsType) : null;
+        StringBuilder key = new StringBuilder();
+        if (resourceType != null) {
+            key.append(resourceType);
+        }
+        key.append('|');
+        for (String metric : new TreeSet<String>(metrics)) {
+            key.append(metric).append(',');
+        }
+        String reports = reportsCache.get(key.toString());
+        if (reports == null) {
+            reports = buildReports(metrics, resourceType);
+            reportsCache.putIfAbsent(key.toString(), reports);
+        }
+        return reports.length() == 0 ? null : reports;
+    }
+
+    /**
+     * Builds the reports for a set of datasources.
+     *
+     * @param metrics the datasource names
+     * @param resourceType the resource type (null to accept all)
+     * @return the report names separated by <code>&amp;reports=</code>, or an empty string if there are no graphs
+     */
+    private String buildReports(Collection<String> metrics, String resourceType) {
+        BitSet positions = new BitSet();
+        for (String metric : metrics) {
+            BitSet p = columnIndex.get(metric);
+            if (p != null) {
+                positions.or(p);
+            }
+        }
+        List<GraphTemplate> list = templates.getTemplates();
+        StringBuilder sb = new StringBuilder();
+        for (int i = positions.nextSetBit(0); i >= 0; i = positions.nextSetBit(i + 1)) {
+            GraphTemplate graph = list.get(i);
+            if (resourceType != null && !graph.getTypes().isEmpty() && !graph.getTypes().contains(resourceType)) {
+                continue;
+            }
+            if (sb.length() > 0) {
+                sb.append("&reports=");
+            }
+            sb.append(graph.getName());
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Gets the resource type used on the graph templates for the resource type of a threshold.
+     *
+     * @param dsType the resource type of the threshold
+     * @return the resource type of the graph templates
+     */
+    private static String getResourceType(String dsType) {
+        if (dsType == null) {
+            return null;
+        }
+        if (dsType.equals("if")) {
+            return "interfaceSnmp";
+        }
+        if (dsType.equals("node")) {
+            return "nodeSnmp";
+        }
+        return dsType;
+    }
+
+}
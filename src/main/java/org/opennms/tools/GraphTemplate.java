@@ -0,0 +1,117 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2006-2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+package org.opennms.tools;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The Class GraphTemplate.
+ * <p>Immutable view of a prefab graph, containing only the attributes required to build the graph links.</p>
+ *
+ * @author <a href="mailto:agalue@opennms.org">Alejandro Galue</a>
+ */
+public class GraphTemplate {
+
+    /** The graph name. */
+    private final String name;
+
+    /** The columns. */
+    private final List<String> columns;
+
+    /** The resource types. */
+    private final List<String> types;
+
+    /**
+     * Instantiates a new graph template.
+     *
+     * @param name the graph name
+     * @param columns the columns
+     * @param types the resource types
+     */
+    public GraphTemplate(String name, Collection<String> columns, Collection<String> types) {
+        this.name = name.intern();
+        this.columns = internAll(columns);
+        this.types = internAll(types);
+    }
+
+    /**
+     * Gets the graph name.
+     *
+     * @return the graph name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Gets the columns.
+     *
+     * @return the columns
+     */
+    public List<String> getColumns() {
+        return columns;
+    }
+
+    /**
+     * Gets the resource types.
+     *
+     * @return the resource types
+     */
+    public List<String> getTypes() {
+        return types;
+    }
+
+    /* (non-Javadoc)
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return name + columns;
+    }
+
+    /**
+     * Interns all the strings of a collection.
+     *
+     * @param values the values
+     * @return the unmodifiable list of interned values
+     */
+    private static List<String> internAll(Collection<String> values) {
+        if (values == null || values.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<String> list = new ArrayList<String>(values.size());
+        for (String v : values) {
+            list.add(v.intern());
+        }
+        return Collections.unmodifiableList(list);
+    }
+
+}
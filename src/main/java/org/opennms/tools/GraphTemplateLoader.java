@@ -0,0 +1,246 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2006-2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+package org.opennms.tools;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The Class GraphTemplateLoader.
+ * <p>Loads the graph templates from snmp-graph.properties and all the files inside the include directory
+ * (snmp-graph.properties.d by default). All the files are parsed in parallel, and only the name, the columns
+ * and the resource types of each report are extracted.</p>
+ * <p>Both formats used by OpenNMS are supported: multiple reports per file (listed on the <code>reports</code>
+ * property), and a single report per file (identified by the <code>report.id</code> property).</p>
+ * <p>When the same report is defined more than once, the first definition wins. The main file is processed
+ * first, followed by the include files sorted by name.</p>
+ *
+ * @author <a href="mailto:agalue@opennms.org">Alejandro Galue</a>
+ */
+public class GraphTemplateLoader {
+
+    private static final Logger LOG = LoggerFactory.getLogger(GraphTemplateLoader.class);
+
+    /** The Constant TRACER. */
+    private static final GenerationTracer TRACER = GenerationTracer.getInstance();
+
+    /** The Constant DEFAULT_INCLUDE_DIRECTORY. */
+    public static final String DEFAULT_INCLUDE_DIRECTORY = "snmp-graph.properties.d";
+
+    /**
+     * Loads the graph templates.
+     *
+     * @param graphTemplatesFile the main graph templates file (snmp-graph.properties)
+     * @return the graph templates
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public GraphTemplates load(File graphTemplatesFile) throws IOException {
+        final List<File> sources = getSourceFiles(graphTemplatesFile);
+        int threads = Math.max(1, Math.min(sources.size(), Runtime.getRuntime().availableProcessors()));
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<List<GraphTemplate>>> tasks = new ArrayList<Future<List<GraphTemplate>>>();
+            for (final File source : sources) {
+                tasks.add(executor.submit(new Callable<List<GraphTemplate>>() {
+                    public List<GraphTemplate> call() throws Exception {
+                        GenerationTracer.Span span = TRACER.startInputLoading(source.getPath());
+                        List<GraphTemplate> templates = null;
+                        try {
+                            templates = parse(source);
+                            return templates;
+                        } finally {
+                            span.end(templates == null ? null : templates.size() + " graph templates");
+                        }
+                    }
+                }));
+            }
+            Map<String,GraphTemplate> templates = new LinkedHashMap<String,GraphTemplate>();
+            for (Future<List<GraphTemplate>> task : tasks) {
+                for (GraphTemplate t : task.get()) {
+                    if (templates.containsKey(t.getName())) {
+                        LOG.debug("Ignoring duplicate definition of report {}", t.getName());
+                    } else {
+                        templates.put(t.getName(), t);
+                    }
+                }
+            }
+            return new GraphTemplates(templates.values(), sources);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while loading graph templates", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Can't load graph templates: " + e.getCause().getMessage(), e.getCause());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Gets the source files.
+     * <p>The main file, followed by all the properties files of the include directory, sorted by name.</p>
+     *
+     * @param graphTemplatesFile the main graph templates file
+     * @return the source files
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public List<File> getSourceFiles(File graphTemplatesFile) throws IOException {
+        if (!graphTemplatesFile.exists()) {
+            throw new FileNotFoundException(graphTemplatesFile.getAbsolutePath());
+        }
+        List<File> sources = new ArrayList<File>();
+        sources.add(graphTemplatesFile);
+        File[] includes = getIncludeDirectory(graphTemplatesFile).listFiles(new FilenameFilter() {
+            public boolean accept(File dir, String name) {
+                return name.endsWith(".properties");
+            }
+        });
+        if (includes != null) {
+            Arrays.sort(includes);
+            sources.addAll(Arrays.asList(includes));
+        }
+        return sources;
+    }
+
+    /**
+     * Gets the include directory.
+     * <p>Uses the <code>include.directory</code> property of the main file, or snmp-graph.properties.d if it is not defined.</p>
+     *
+     * @param graphTemplatesFile the main graph templates file
+     * @return the include directory (it may not exist)
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public File getIncludeDirectory(File graphTemplatesFile) throws IOException {
+        String include = loadProperties(graphTemplatesFile).getProperty("include.directory", DEFAULT_INCLUDE_DIRECTORY).trim();
+        File dir = new File(include);
+        if (!dir.isAbsolute()) {
+            dir = new File(graphTemplatesFile.getAbsoluteFile().getParentFile(), include);
+        }
+        return dir;
+    }
+
+    /**
+     * Parses a graph templates file.
+     *
+     * @param file the file
+     * @return the graph templates
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    protected List<GraphTemplate> parse(File file) throws IOException {
+        Properties properties = loadProperties(file);
+        List<GraphTemplate> templates = new ArrayList<GraphTemplate>();
+        String singleReport = properties.getProperty("report.id");
+        if (singleReport != null) {
+            addTemplate(templates, singleReport.trim(), properties.getProperty("report.columns"), properties.getProperty("report.type"), file);
+        } else {
+            for (String report : split(properties.getProperty("reports"))) {
+                String prefix = "report." + report + ".";
+                addTemplate(templates, report, properties.getProperty(prefix + "columns"), properties.getProperty(prefix + "type"), file);
+            }
+        }
+        return templates;
+    }
+
+    /**
+     * Adds a template.
+     *
+     * @param templates the templates
+     * @param name the report name
+     * @param columns the columns, as a comma separated list
+     * @param types the resource types, as a comma separated list
+     * @param file the source file
+     */
+    private void addTemplate(List<GraphTemplate> templates, String name, String columns, String types, File file) {
+        if (columns == null) {
+            LOG.warn("Report {} on {} has no columns, ignoring it", name, file);
+            return;
+        }
+        templates.add(new GraphTemplate(name, split(columns), split(types)));
+    }
+
+    /**
+     * Loads a properties file.
+     *
+     * @param file the file
+     * @return the properties
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    private Properties loadProperties(File file) throws IOException {
+        Properties properties = new Properties();
+        InputStream input = new BufferedInputStream(new FileInputStream(file));
+        try {
+            properties.load(input);
+        } finally {
+            input.close();
+        }
+        return properties;
+    }
+
+    /**
+     * Splits a comma separated list.
+     *
+     * @param value the value (can be null)
+     * @return the list of trimmed, non-empty elements
+     */
+    private static List<String> split(String value) {
+        if (value == null) {
+            return Collections.emptyList();
+        }
+        List<String> list = new ArrayList<String>();
+        for (String element : value.split(",")) {
+            element = element.trim();
+            if (element.length() > 0) {
+                list.add(element);
+            }
+        }
+        return list;
+    }
+
+}
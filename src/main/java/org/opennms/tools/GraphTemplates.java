@@ -0,0 +1,139 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2006-2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+package org.opennms.tools;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import org.opennms.netmgt.model.PrefabGraph;
+
+/**
+ * The Class GraphTemplates.
+ * <p>Immutable list of graph templates, in the order they were defined.</p>
+ * <p>The graph indexes built from the templates are kept with them, so they can be shared by all the
+ * processors (and OpenNMS installations) that use the same templates.</p>
+ *
+ * @author <a href="mailto:agalue@opennms.org">Alejandro Galue</a>
+ */
+public class GraphTemplates {
+
+    /** The Constant EMPTY. */
+    public static final GraphTemplates EMPTY = new GraphTemplates(new ArrayList<GraphTemplate>(), new ArrayList<File>());
+
+    /** The templates. */
+    private final List<GraphTemplate> templates;
+
+    /** The source files. */
+    private final List<File> sources;
+
+    /** The graph index for all the resource types. */
+    private GraphIndex index;
+
+    /** The graph index that matches the resource types. */
+    private GraphIndex resourceTypeIndex;
+
+    /**
+     * Instantiates a new graph templates.
+     *
+     * @param templates the templates
+     * @param sources the source files
+     */
+    public GraphTemplates(Collection<GraphTemplate> templates, Collection<File> sources) {
+        this.templates = Collections.unmodifiableList(new ArrayList<GraphTemplate>(templates));
+        this.sources = Collections.unmodifiableList(new ArrayList<File>(sources));
+    }
+
+    /**
+     * Gets the templates.
+     *
+     * @return the templates
+     */
+    public List<GraphTemplate> getTemplates() {
+        return templates;
+    }
+
+    /**
+     * Gets the source files.
+     *
+     * @return the source files
+     */
+    public List<File> getSources() {
+        return sources;
+    }
+
+    /**
+     * Gets the graph index.
+     *
+     * @param matchResourceType true to only consider the graphs of the resource type of the threshold
+     * @return the graph index
+     */
+    public synchronized GraphIndex getIndex(boolean matchResourceType) {
+        if (matchResourceType) {
+            if (resourceTypeIndex == null) {
+                resourceTypeIndex = new GraphIndex(this, true);
+            }
+            return resourceTypeIndex;
+        }
+        if (index == null) {
+            index = new GraphIndex(this, false);
+        }
+        return index;
+    }
+
+    /**
+     * Checks if is empty.
+     *
+     * @return true, if is empty
+     */
+    public boolean isEmpty() {
+        return templates.isEmpty();
+    }
+
+    /**
+     * Creates the graph templates from a list of prefab graphs.
+     *
+     * @param graphs the prefab graphs (can be null)
+     * @return the graph templates, or null if the list of prefab graphs is null
+     */
+    public static GraphTemplates fromPrefabGraphs(List<PrefabGraph> graphs) {
+        if (graphs == null) {
+            return null;
+        }
+        List<GraphTemplate> list = new ArrayList<GraphTemplate>(graphs.size());
+        for (PrefabGraph g : graphs) {
+            String[] types = g.getTypes();
+            list.add(new GraphTemplate(g.getName(), Arrays.asList(g.getColumns()), types == null ? null : Arrays.asList(types)));
+        }
+        return new GraphTemplates(list, new ArrayList<File>());
+    }
+
+}
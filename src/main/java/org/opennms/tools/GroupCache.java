@@ -0,0 +1,328 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2006-2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+package org.opennms.tools;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashSet;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.opennms.netmgt.config.threshd.Basethresholddef;
+import org.opennms.netmgt.config.threshd.Expression;
+import org.opennms.netmgt.config.threshd.Group;
+import org.opennms.netmgt.config.threshd.Threshold;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The Class GroupCache.
+ * <p>Persistent cache of the rendered output of each threshold group.</p>
+ * <p>Each entry is keyed by a fingerprint of the group definitions that affect the generated content, combined
+ * with the effective configuration properties and the content of the graph templates. When a group has not
+ * changed, its previous output is reused and the group is not processed again.</p>
+ * <p>The fingerprints also include the compiled classes that render the output and the default event templates,
+ * so the entries written by a different version of the generator are never reused.</p>
+ *
+ * @author <a href="mailto:agalue@opennms.org">Alejandro Galue</a>
+ */
+public class GroupCache {
+
+    private static final Logger LOG = LoggerFactory.getLogger(GroupCache.class);
+
+    /** The Constant CACHE_VERSION (must be increased when the format of the cache entries changes). */
+    public static final String CACHE_VERSION = "2";
+
+    /** The Constant RENDERING_CLASSES (the classes that affect the generated content). */
+    private static final Class<?>[] RENDERING_CLASSES = new Class<?>[] {
+        ThresholdEventProcessor.class, ThresholdEvent.class, ThresholdNotification.class, ThresholdUei.class,
+        EventTemplates.class, EventTemplate.class, GraphIndex.class, GraphTemplate.class, InstanceResolver.class,
+        DestinationPathMatcher.class, ExpressionCache.class, GroupOutput.class, ContentPool.class
+    };
+
+    /** The Constant DEFAULT_DIRECTORY (relative to the OpenNMS home directory). */
+    public static final String DEFAULT_DIRECTORY = "share/threshold-events-generator/cache";
+
+    /** The Constant EXTENSION. */
+    private static final String EXTENSION = ".ser";
+
+    /** The cache directory. */
+    private File directory;
+
+    /** The salt for the fingerprints. */
+    private byte[] salt;
+
+    /** The fingerprints used on the current run. */
+    private Set<String> used = new HashSet<String>();
+
+    /** The number of hits. */
+    private int hits = 0;
+
+    /** The number of misses. */
+    private int misses = 0;
+
+    /**
+     * Instantiates a new group cache.
+     *
+     * @param directory the cache directory
+     * @param config the effective configuration properties
+     * @param inputs the additional input files (for example, the graph templates)
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public GroupCache(File directory, Properties config, File... inputs) throws IOException {
+        this.directory = directory;
+        if (!directory.exists() && !directory.mkdirs()) {
+            throw new IOException("Can't create cache directory " + directory);
+        }
+        MessageDigest digest = createDigest();
+        update(digest, CACHE_VERSION);
+        for (Class<?> c : RENDERING_CLASSES) {
+            update(digest, c.getName());
+            update(digest, c.getResourceAsStream(c.getSimpleName() + ".class"), c.getName());
+        }
+        update(digest, EventTemplates.class.getResourceAsStream(EventTemplates.DEFAULT_TEMPLATES), EventTemplates.DEFAULT_TEMPLATES);
+        for (String key : new TreeSet<String>(config.stringPropertyNames())) {
+            update(digest, key);
+            update(digest, config.getProperty(key));
+        }
+        for (File input : inputs) {
+            update(digest, input.getName());
+            update(digest, new FileInputStream(input), input.getName());
+        }
+        salt = digest.digest();
+    }
+
+    /**
+     * Gets the fingerprint of a group.
+     * <p>Must be called before processing the group, as missing UEIs are filled in while processing it.</p>
+     *
+     * @param group the group
+     * @return the fingerprint
+     */
+    public String getFingerprint(Group group) {
+        MessageDigest digest = createDigest();
+        digest.update(salt);
+        update(digest, group.getName());
+        for (Threshold t : group.getThresholdCollection()) {
+            update(digest, "threshold");
+            update(digest, t.getDsName());
+            update(digest, t);
+        }
+        for (Expression e : group.getExpressionCollection()) {
+            update(digest, "expression");
+            update(digest, e.getExpression());
+            update(digest, e);
+        }
+        StringBuilder sb = new StringBuilder();
+        for (byte b : digest.digest()) {
+            sb.append(String.format("%02x", b));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Gets the cached output of a group.
+     *
+     * @param fingerprint the fingerprint of the group
+     * @return the group output, or null if it is not on the cache
+     */
+    public GroupOutput get(String fingerprint) {
+        used.add(fingerprint);
+        File file = getFile(fingerprint);
+        if (file.exists()) {
+            try {
+                ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(file)));
+                try {
+                    GroupOutput output = (GroupOutput) in.readObject();
+                    hits++;
+                    return output;
+                } finally {
+                    in.close();
+                }
+            } catch (Exception e) {
+                LOG.info("Can't read cache entry {}, it will be regenerated: {}", file, e.getMessage());
+            }
+        }
+        misses++;
+        return null;
+    }
+
+    /**
+     * Stores the output of a group.
+     *
+     * @param fingerprint the fingerprint of the group
+     * @param output the group output
+     */
+    public void put(String fingerprint, GroupOutput output) {
+        used.add(fingerprint);
+        OutputFile file = new OutputFile(getFile(fingerprint));
+        try {
+            ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(file.open()));
+            try {
+                out.writeObject(output);
+                out.close();
+            } finally {
+                OutputFile.closeQuietly(out);
+            }
+            file.commit();
+        } catch (IOException e) {
+            LOG.info("Can't store cache entry for group {}: {}", output.getGroupName(), e.getMessage());
+        } finally {
+            file.discard();
+        }
+    }
+
+    /**
+     * Removes the entries that haven't been used on the current run.
+     */
+    public void purge() {
+        File[] files = directory.listFiles(new FilenameFilter() {
+            public boolean accept(File dir, String name) {
+                return name.endsWith(EXTENSION);
+            }
+        });
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            String fingerprint = file.getName().substring(0, file.getName().length() - EXTENSION.length());
+            if (!used.contains(fingerprint)) {
+                file.delete();
+            }
+        }
+    }
+
+    /**
+     * Gets the number of hits.
+     *
+     * @return the hits
+     */
+    public int getHits() {
+        return hits;
+    }
+
+    /**
+     * Gets the number of misses.
+     *
+     * @return the misses
+     */
+    public int getMisses() {
+        return misses;
+    }
+
+    /**
+     * Gets the file of a cache entry.
+     *
+     * @param fingerprint the fingerprint
+     * @return the file
+     */
+    private File getFile(String fingerprint) {
+        return new File(directory, fingerprint + EXTENSION);
+    }
+
+    /**
+     * Updates the digest with the attributes of a threshold definition that affect the generated content.
+     *
+     * @param digest the digest
+     * @param def the base threshold definition
+     */
+    private void update(MessageDigest digest, Basethresholddef def) {
+        update(digest, def.getType());
+        update(digest, def.getDsType());
+        update(digest, def.getDescription());
+        update(digest, def.getTriggeredUEI());
+        update(digest, def.getRearmedUEI());
+    }
+
+    /**
+     * Updates the digest with the content of a stream, and closes it.
+     *
+     * @param digest the digest
+     * @param input the input stream (can be null if the resource doesn't exist)
+     * @param name the name of the input
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    private void update(MessageDigest digest, InputStream input, String name) throws IOException {
+        if (input == null) {
+            throw new IOException("Can't find " + name);
+        }
+        InputStream is = new BufferedInputStream(input);
+        try {
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = is.read(buffer)) != -1) {
+                digest.update(buffer, 0, n);
+            }
+        } finally {
+            is.close();
+        }
+    }
+
+    /**
+     * Updates the digest with a string.
+     *
+     * @param digest the digest
+     * @param value the value (can be null)
+     */
+    private void update(MessageDigest digest, String value) {
+        if (value == null) {
+            digest.update((byte) 1);
+        } else {
+            try {
+                digest.update(value.getBytes("UTF-8"));
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        digest.update((byte) 0);
+    }
+
+    /**
+     * Creates the digest.
+     *
+     * @return the message digest
+     */
+    private MessageDigest createDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+}
@@ -0,0 +1,136 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2006-2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+package org.opennms.tools;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.opennms.netmgt.config.notifications.Notification;
+import org.opennms.netmgt.xml.eventconf.Event;
+
+/**
+ * The Class GroupOutput.
+ * <p>The rendered events and notifications of a single threshold group, in UEI order.
+ * The n-th notification always corresponds to the n-th event.</p>
+ *
+ * @author <a href="mailto:agalue@opennms.org">Alejandro Galue</a>
+ */
+public class GroupOutput implements Serializable {
+
+    /** The Constant serialVersionUID. */
+    private static final long serialVersionUID = 1L;
+
+    /** The group name. */
+    private String groupName;
+
+    /** The events. */
+    private ArrayList<Event> events = new ArrayList<Event>();
+
+    /** The notifications. */
+    private ArrayList<Notification> notifications = new ArrayList<Notification>();
+
+    /**
+     * Instantiates a new group output.
+     *
+     * @param groupName the group name
+     */
+    public GroupOutput(String groupName) {
+        this.groupName = groupName;
+    }
+
+    /**
+     * Adds an event with its notification.
+     *
+     * @param event the event
+     * @param notification the notification
+     */
+    public void add(Event event, Notification notification) {
+        events.add(event);
+        notifications.add(notification);
+    }
+
+    /**
+     * Replaces the content of the events and notifications with its canonical instances.
+     * <p>Must be called before sharing the output, as the events and notifications are modified.</p>
+     *
+     * @param pool the content pool
+     */
+    public void canonicalize(ContentPool pool) {
+        for (Event e : events) {
+            e.setEventLabel(pool.canonicalize(e.getEventLabel()));
+            e.setDescr(pool.canonicalize(e.getDescr()));
+            e.setSeverity(pool.canonicalize(e.getSeverity()));
+            if (e.getLogmsg() != null) {
+                e.getLogmsg().setContent(pool.canonicalize(e.getLogmsg().getContent()));
+                e.getLogmsg().setDest(pool.canonicalize(e.getLogmsg().getDest()));
+            }
+            if (e.getAlarmData() != null) {
+                e.getAlarmData().setReductionKey(pool.canonicalize(e.getAlarmData().getReductionKey()));
+                e.getAlarmData().setClearKey(pool.canonicalize(e.getAlarmData().getClearKey()));
+            }
+        }
+        for (Notification n : notifications) {
+            n.setRule(pool.canonicalize(n.getRule()));
+            n.setDestinationPath(pool.canonicalize(n.getDestinationPath()));
+            n.setTextMessage(pool.canonicalize(n.getTextMessage()));
+            n.setSubject(pool.canonicalize(n.getSubject()));
+            n.setNumericMessage(pool.canonicalize(n.getNumericMessage()));
+            n.setStatus(pool.canonicalize(n.getStatus()));
+            n.setWriteable(pool.canonicalize(n.getWriteable()));
+        }
+    }
+
+    /**
+     * Gets the group name.
+     *
+     * @return the group name
+     */
+    public String getGroupName() {
+        return groupName;
+    }
+
+    /**
+     * Gets the events.
+     *
+     * @return the events
+     */
+    public List<Event> getEvents() {
+        return events;
+    }
+
+    /**
+     * Gets the notifications.
+     *
+     * @return the notifications
+     */
+    public List<Notification> getNotifications() {
+        return notifications;
+    }
+
+}
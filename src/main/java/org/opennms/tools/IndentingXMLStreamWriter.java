@@ -0,0 +1,346 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2006-2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+package org.opennms.tools;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+import javax.xml.namespace.NamespaceContext;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+/**
+ * The Class IndentingXMLStreamWriter.
+ * <p>Delegating StAX writer that puts each element on its own line, indented by its depth, so streamed
+ * files look like the ones written by the marshallers with pretty-printing enabled.</p>
+ * <p>Only the elements with child elements get their end tag on a new line; the text content is written
+ * untouched, so elements with text keep it on the same line (the events schema has no mixed content).</p>
+ *
+ * @author <a href="mailto:agalue@opennms.org">Alejandro Galue</a>
+ */
+public class IndentingXMLStreamWriter implements XMLStreamWriter {
+
+    /** The delegate writer. */
+    private XMLStreamWriter delegate;
+
+    /** The indentation of each level. */
+    private String indent;
+
+    /** Whether each open element has child elements (the innermost element first). */
+    private Deque<Boolean> children = new ArrayDeque<Boolean>();
+
+    /** Whether something has been written before the current position. */
+    private boolean started = false;
+
+    /**
+     * Instantiates a new indenting XML stream writer.
+     *
+     * @param delegate the delegate writer
+     * @param indent the indentation of each level
+     */
+    public IndentingXMLStreamWriter(XMLStreamWriter delegate, String indent) {
+        this.delegate = delegate;
+        this.indent = indent;
+    }
+
+    /**
+     * Writes the line break and the indentation for the next element, and records it as a child of its parent.
+     *
+     * @throws XMLStreamException the XML stream exception
+     */
+    private void beforeElement() throws XMLStreamException {
+        if (!children.isEmpty()) {
+            children.pop();
+            children.push(Boolean.TRUE);
+        }
+        if (started) {
+            newLine(children.size());
+        }
+        started = true;
+    }
+
+    /**
+     * Writes a line break followed by the indentation of a level.
+     *
+     * @param level the level
+     * @throws XMLStreamException the XML stream exception
+     */
+    private void newLine(int level) throws XMLStreamException {
+        StringBuilder sb = new StringBuilder("\n");
+        for (int i = 0; i < level; i++) {
+            sb.append(indent);
+        }
+        delegate.writeCharacters(sb.toString());
+    }
+
+    /* (non-Javadoc)
+     * @see javax.xml.stream.XMLStreamWriter#writeStartElement(java.lang.String)
+     */
+    public void writeStartElement(String localName) throws XMLStreamException {
+        beforeElement();
+        delegate.writeStartElement(localName);
+        children.push(Boolean.FALSE);
+    }
+
+    /* (non-Javadoc)
+     * @see javax.xml.stream.XMLStreamWriter#writeStartElement(java.lang.String, java.lang.String)
+     */
+    public void writeStartElement(String namespaceURI, String localName) throws XMLStreamException {
+        beforeElement();
+        delegate.writeStartElement(namespaceURI, localName);
+        children.push(Boolean.FALSE);
+    }
+
+    /* (non-Javadoc)
+     * @see javax.xml.stream.XMLStreamWriter#writeStartElement(java.lang.String, java.lang.String, java.lang.String)
+     */
+    public void writeStartElement(String prefix, String localName, String namespaceURI) throws XMLStreamException {
+        beforeElement();
+        delegate.writeStartElement(prefix, localName, namespaceURI);
+        children.push(Boolean.FALSE);
+    }
+
+    /* (non-Javadoc)
+     * @see javax.xml.stream.XMLStreamWriter#writeEmptyElement(java.lang.String, java.lang.String)
+     */
+    public void writeEmptyElement(String namespaceURI, String localName) throws XMLStreamException {
+        beforeElement();
+        delegate.writeEmptyElement(namespaceURI, localName);
+    }
+
+    /* (non-Javadoc)
+     * @see javax.xml.stream.XMLStreamWriter#writeEmptyElement(java.lang.String, java.lang.String, java.lang.String)
+     */
+    public void writeEmptyElement(String prefix, String localName, String namespaceURI) throws XMLStreamException {
+        beforeElement();
+        delegate.writeEmptyElement(prefix, localName, namespaceURI);
+    }
+
+    /* (non-Javadoc)
+     * @see javax.xml.stream.XMLStreamWriter#writeEmptyElement(java.lang.String)
+     */
+    public void writeEmptyElement(String localName) throws XMLStreamException {
+        beforeElement();
+        delegate.writeEmptyElement(localName);
+    }
+
+    /* (non-Javadoc)
+     * @see javax.xml.stream.XMLStreamWriter#writeEndElement()
+     */
+    public void writeEndElement() throws XMLStreamException {
+        if (!children.isEmpty() && children.pop()) {
+            newLine(children.size());
+        }
+        delegate.writeEndElement();
+    }
+
+    /* (non-Javadoc)
+     * @see javax.xml.stream.XMLStreamWriter#writeEndDocument()
+     */
+    public void writeEndDocument() throws XMLStreamException {
+        while (!children.isEmpty()) {
+            writeEndElement();
+        }
+        delegate.writeCharacters("\n");
+        delegate.writeEndDocument();
+    }
+
+    /* (non-Javadoc)
+     * @see javax.xml.stream.XMLStreamWriter#close()
+     */
+    public void close() throws XMLStreamException {
+        delegate.close();
+    }
+
+    /* (non-Javadoc)
+     * @see javax.xml.stream.XMLStreamWriter#flush()
+     */
+    public void flush() throws XMLStreamException {
+        delegate.flush();
+    }
+
+    /* (non-Javadoc)
+     * @see javax.xml.stream.XMLStreamWriter#writeAttribute(java.lang.String, java.lang.String)
+     */
+    public void writeAttribute(String localName, String value) throws XMLStreamException {
+        delegate.writeAttribute(localName, value);
+    }
+
+    /* (non-Javadoc)
+     * @see javax.xml.stream.XMLStreamWriter#writeAttribute(java.lang.String, java.lang.String, java.lang.String, java.lang.String)
+     */
+    public void writeAttribute(String prefix, String namespaceURI, String localName, String value) throws XMLStreamException {
+        delegate.writeAttribute(prefix, namespaceURI, localName, value);
+    }
+
+    /* (non-Javadoc)
+     * @see javax.xml.stream.XMLStreamWriter#writeAttribute(java.lang.String, java.lang.String, java.lang.String)
+     */
+    public void writeAttribute(String namespaceURI, String localName, String value) throws XMLStreamException {
+        delegate.writeAttribute(namespaceURI, localName, value);
+    }
+
+    /* (non-Javadoc)
+     * @see javax.xml.stream.XMLStreamWriter#writeNamespace(java.lang.String, java.lang.String)
+     */
+    public void writeNamespace(String prefix, String namespaceURI) throws XMLStreamException {
+        delegate.writeNamespace(prefix, namespaceURI);
+    }
+
+    /* (non-Javadoc)
+     * @see javax.xml.stream.XMLStreamWriter#writeDefaultNamespace(java.lang.String)
+     */
+    public void writeDefaultNamespace(String namespaceURI) throws XMLStreamException {
+        delegate.writeDefaultNamespace(namespaceURI);
+    }
+
+    /* (non-Javadoc)
+     * @see javax.xml.stream.XMLStreamWriter#writeComment(java.lang.String)
+     */
+    public void writeComment(String data) throws XMLStreamException {
+        beforeElement();
+        delegate.writeComment(data);
+    }
+
+    /* (non-Javadoc)
+     * @see javax.xml.stream.XMLStreamWriter#writeProcessingInstruction(java.lang.String)
+     */
+    public void writeProcessingInstruction(String target) throws XMLStreamException {
+        delegate.writeProcessingInstruction(target);
+    }
+
+    /* (non-Javadoc)
+     * @see javax.xml.stream.XMLStreamWriter#writeProcessingInstruction(java.lang.String, java.lang.String)
+     */
+    public void writeProcessingInstruction(String target, String data) throws XMLStreamException {
+        delegate.writeProcessingInstruction(target, data);
+    }
+
+    /* (non-Javadoc)
+     * @see javax.xml.stream.XMLStreamWriter#writeCData(java.lang.String)
+     */
+    public void writeCData(String data) throws XMLStreamException {
+        delegate.writeCData(data);
+    }
+
+    /* (non-Javadoc)
+     * @see javax.xml.stream.XMLStreamWriter#writeDTD(java.lang.String)
+     */
+    public void writeDTD(String dtd) throws XMLStreamException {
+        delegate.writeDTD(dtd);
+        started = true;
+    }
+
+    /* (non-Javadoc)
+     * @see javax.xml.stream.XMLStreamWriter#writeEntityRef(java.lang.String)
+     */
+    public void writeEntityRef(String name) throws XMLStreamException {
+        delegate.writeEntityRef(name);
+    }
+
+    /* (non-Javadoc)
+     * @see javax.xml.stream.XMLStreamWriter#writeStartDocument()
+     */
+    public void writeStartDocument() throws XMLStreamException {
+        delegate.writeStartDocument();
+        started = true;
+    }
+
+    /* (non-Javadoc)
+     * @see javax.xml.stream.XMLStreamWriter#writeStartDocument(java.lang.String)
+     */
+    public void writeStartDocument(String version) throws XMLStreamException {
+        delegate.writeStartDocument(version);
+        started = true;
+    }
+
+    /* (non-Javadoc)
+     * @see javax.xml.stream.XMLStreamWriter#writeStartDocument(java.lang.String, java.lang.String)
+     */
+    public void writeStartDocument(String encoding, String version) throws XMLStreamException {
+        delegate.writeStartDocument(encoding, version);
+        started = true;
+    }
+
+    /* (non-Javadoc)
+     * @see javax.xml.stream.XMLStreamWriter#writeCharacters(java.lang.String)
+     */
+    public void writeCharacters(String text) throws XMLStreamException {
+        delegate.writeCharacters(text);
+    }
+
+    /* (non-Javadoc)
+     * @see javax.xml.stream.XMLStreamWriter#writeCharacters(char[], int, int)
+     */
+    public void writeCharacters(char[] text, int start, int len) throws XMLStreamException {
+        delegate.writeCharacters(text, start, len);
+    }
+
+    /* (non-Javadoc)
+     * @see javax.xml.stream.XMLStreamWriter#getPrefix(java.lang.String)
+     */
+    public String getPrefix(String uri) throws XMLStreamException {
+        return delegate.getPrefix(uri);
+    }
+
+    /* (non-Javadoc)
+     * @see javax.xml.stream.XMLStreamWriter#setPrefix(java.lang.String, java.lang.String)
+     */
+    public void setPrefix(String prefix, String uri) throws XMLStreamException {
+        delegate.setPrefix(prefix, uri);
+    }
+
+    /* (non-Javadoc)
+     * @see javax.xml.stream.XMLStreamWriter#setDefaultNamespace(java.lang.String)
+     */
+    public void setDefaultNamespace(String uri) throws XMLStreamException {
+        delegate.setDefaultNamespace(uri);
+    }
+
+    /* (non-Javadoc)
+     * @see javax.xml.stream.XMLStreamWriter#setNamespaceContext(javax.xml.namespace.NamespaceContext)
+     */
+    public void setNamespaceContext(NamespaceContext context) throws XMLStreamException {
+        delegate.setNamespaceContext(context);
+    }
+
+    /* (non-Javadoc)
+     * @see javax.xml.stream.XMLStreamWriter#getNamespaceContext()
+     */
+    public NamespaceContext getNamespaceContext() {
+        return delegate.getNamespaceContext();
+    }
+
+    /* (non-Javadoc)
+     * @see javax.xml.stream.XMLStreamWriter#getProperty(java.lang.String)
+     */
+    public Object getProperty(String name) throws IllegalArgumentException {
+        return delegate.getProperty(name);
+    }
+
+}
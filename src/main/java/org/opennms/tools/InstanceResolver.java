@@ -0,0 +1,215 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2006-2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+package org.opennms.tools;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The Class InstanceResolver.
+ * <p>Resolves the instance information of the events from the <code>instance[substring]</code> rules.
+ * The substrings are compiled into an Aho-Corasick automaton, so each input is scanned once regardless of the
+ * number of rules. When several substrings are found, the longest one wins, and if they have the same length,
+ * the first one on declaration order wins (for example, <code>ifHC</code> is preferred over <code>if</code>).
+ * The results are memoized per input.</p>
+ *
+ * @author <a href="mailto:agalue@opennms.org">Alejandro Galue</a>
+ */
+public class InstanceResolver {
+
+    /** The Constant ROOT. */
+    private static final int ROOT = 0;
+
+    /** The Constant NONE. */
+    private static final int NONE = -1;
+
+    /** The substrings, on declaration order. */
+    private final List<String> keys = new ArrayList<String>();
+
+    /** The instance information of each substring. */
+    private final List<String> values = new ArrayList<String>();
+
+    /** The transitions of each state. */
+    private final List<Map<Character,Integer>> transitions = new ArrayList<Map<Character,Integer>>();
+
+    /** The failure link of each state. */
+    private int[] failures;
+
+    /** The best rule recognized on each state (including its failure links). */
+    private int[] outputs;
+
+    /** The default instance information. */
+    private final String defaultInstance;
+
+    /** The memoized instance information, indexed by input. */
+    private final ConcurrentMap<String,String> cache = new ConcurrentHashMap<String,String>();
+
+    /**
+     * Instantiates a new instance resolver.
+     *
+     * @param rules the rules (substring to instance information) on declaration order
+     * @param defaultInstance the instance information used when no rule matches
+     */
+    public InstanceResolver(Map<String,String> rules, String defaultInstance) {
+        this.defaultInstance = defaultInstance;
+        List<Integer> terminals = new ArrayList<Integer>();
+        transitions.add(new HashMap<Character,Integer>());
+        terminals.add(NONE);
+        for (Entry<String,String> rule : rules.entrySet()) {
+            int ruleIndex = keys.size();
+            keys.add(rule.getKey());
+            values.add(rule.getValue());
+            int state = ROOT;
+            for (char c : rule.getKey().toCharArray()) {
+                Integer next = transitions.get(state).get(c);
+                if (next == null) {
+                    next = transitions.size();
+                    transitions.add(new HashMap<Character,Integer>());
+                    terminals.add(NONE);
+                    transitions.get(state).put(c, next);
+                }
+                state = next;
+            }
+            if (terminals.get(state) == NONE) {
+                terminals.set(state, ruleIndex);
+            }
+        }
+        buildFailures(terminals);
+    }
+
+    /**
+     * Builds the failure links and the outputs of the automaton (breadth-first).
+     *
+     * @param terminals the rule that ends on each state
+     */
+    private void buildFailures(List<Integer> terminals) {
+        failures = new int[transitions.size()];
+        outputs = new int[transitions.size()];
+        outputs[ROOT] = terminals.get(ROOT);
+        LinkedList<Integer> queue = new LinkedList<Integer>();
+        for (int child : transitions.get(ROOT).values()) {
+            failures[child] = ROOT;
+            outputs[child] = best(terminals.get(child), outputs[ROOT]);
+            queue.add(child);
+        }
+        while (!queue.isEmpty()) {
+            int state = queue.removeFirst();
+            for (Entry<Character,Integer> t : transitions.get(state).entrySet()) {
+                int child = t.getValue();
+                int failure = failures[state];
+                while (failure != ROOT && !transitions.get(failure).containsKey(t.getKey())) {
+                    failure = failures[failure];
+                }
+                Integer next = transitions.get(failure).get(t.getKey());
+                failures[child] = next == null ? ROOT : next;
+                outputs[child] = best(terminals.get(child), outputs[failures[child]]);
+                queue.add(child);
+            }
+        }
+    }
+
+    /**
+     * Gets the instance information.
+     *
+     * @param input the input (usually the dsType or the UEI)
+     * @return the instance information of the best matching rule, or the default instance information
+     */
+    public String getInstanceInfo(String input) {
+        if (input == null) {
+            return defaultInstance;
+        }
+        String instance = cache.get(input);
+        if (instance == null) {
+            instance = findInstanceInfo(input);
+            cache.putIfAbsent(input, instance);
+        }
+        return instance;
+    }
+
+    /**
+     * Finds the instance information, without using the cache.
+     *
+     * @param input the input
+     * @return the instance information
+     */
+    String findInstanceInfo(String input) {
+        int rule = findRule(input);
+        return rule == NONE ? defaultInstance : values.get(rule);
+    }
+
+    /**
+     * Finds the best rule for an input.
+     *
+     * @param input the input
+     * @return the index of the best rule, or NONE
+     */
+    private int findRule(String input) {
+        int state = ROOT;
+        int rule = outputs[ROOT];
+        for (int i = 0; i < input.length(); i++) {
+            char c = input.charAt(i);
+            Integer next = transitions.get(state).get(c);
+            while (next == null && state != ROOT) {
+                state = failures[state];
+                next = transitions.get(state).get(c);
+            }
+            state = next == null ? ROOT : next;
+            rule = best(rule, outputs[state]);
+        }
+        return rule;
+    }
+
+    /**
+     * Gets the rule with the highest priority.
+     *
+     * @param a the first rule (or NONE)
+     * @param b the second rule (or NONE)
+     * @return the longest rule, or the first one on declaration order if both have the same length
+     */
+    private int best(int a, int b) {
+        if (a == NONE) {
+            return b;
+        }
+        if (b == NONE) {
+            return a;
+        }
+        int la = keys.get(a).length();
+        int lb = keys.get(b).length();
+        if (la != lb) {
+            return la > lb ? a : b;
+        }
+        return a < b ? a : b;
+    }
+
+}
@@ -27,17 +27,18 @@
  *******************************************************************************/
 package org.opennms.tools;
 
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileNotFoundException;
-import java.io.FileWriter;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.util.Date;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
 
-import org.exolab.castor.xml.Marshaller;
-import org.opennms.core.xml.CastorUtils;
 import org.opennms.netmgt.EventConstants;
-import org.opennms.netmgt.config.notifications.Notifications;
-import org.opennms.netmgt.config.threshd.ThresholdingConfig;
-import org.springframework.core.io.FileSystemResource;
+import org.opennms.netmgt.config.notifications.Notification;
 
 /**
  * The Class NotificationsGenerator.
@@ -46,9 +47,21 @@ import org.springframework.core.io.FileSystemResource;
  */
 public class NotificationsGenerator {
 
+    /** The pattern of the header line with the creation date, ignored when comparing the content. */
+    private static final Pattern CREATED_LINE = Pattern.compile("\\s*<created>.*</created>\\s*");
+
+    /** The Constant TRACER. */
+    private static final GenerationTracer TRACER = GenerationTracer.getInstance();
+
     /** The UEI processor. */
     private ThresholdEventProcessor eventProcessor;
 
+    /** The validate flag for thresholds.xml. */
+    private boolean validate = true;
+
+    /** The policy for the generated notifications that already exist on the template. */
+    private NotificationsMerger.Policy mergePolicy = NotificationsMerger.Policy.SKIP;
+
     /**
      * Instantiates a new notifications generator.
      *
@@ -58,6 +71,24 @@ public class NotificationsGenerator {
         this.eventProcessor = eventProcessor;
     }
 
+    /**
+     * Sets the validate flag.
+     *
+     * @param validate true to validate the content of thresholds.xml
+     */
+    public void setValidate(boolean validate) {
+        this.validate = validate;
+    }
+
+    /**
+     * Sets the policy for the generated notifications that already exist on the template.
+     *
+     * @param mergePolicy the merge policy (skip by default)
+     */
+    public void setMergePolicy(NotificationsMerger.Policy mergePolicy) {
+        this.mergePolicy = mergePolicy;
+    }
+
     /**
      * Generate notifications.
      *
@@ -74,18 +105,79 @@ public class NotificationsGenerator {
             throw new FileNotFoundException(notificationsTemplate.getAbsolutePath());
         }
 
-        ThresholdingConfig thresholdsConfig = CastorUtils.unmarshal(ThresholdingConfig.class, new FileSystemResource(thresholdsFile), true);
+        Set<ThresholdEvent> thresholdEvents = null;
+        ThresholdsReader reader = new ThresholdsReader(thresholdsFile, validate);
+        reader.setStats(getStats());
+        try {
+            thresholdEvents = eventProcessor.getThresholdEvents(reader, null);
+        } finally {
+            reader.close();
+        }
+        generateNotifications(onmsHome, notificationsTemplate, thresholdEvents);
+    }
 
-        Notifications notifications = CastorUtils.unmarshal(Notifications.class, new FileSystemResource(notificationsTemplate), true);
-        notifications.getHeader().setCreated(EventConstants.formatToString(new Date()));
+    /**
+     * Generate notifications.
+     * <p>notifications.xml is only replaced when its content has changed (ignoring the creation date).</p>
+     *
+     * @param onmsHome the OpenNMS home directory
+     * @param notificationsTemplate the notifications template
+     * @param thresholdEvents the threshold events
+     * @return the status of notifications.xml
+     * @throws Exception the exception
+     */
+    public OutputFile.Status generateNotifications(File onmsHome, File notificationsTemplate, Set<ThresholdEvent> thresholdEvents) throws Exception {
+        return writeNotifications(onmsHome, notificationsTemplate, eventProcessor.getNotifications(thresholdEvents));
+    }
 
-        notifications.getNotificationCollection().addAll(eventProcessor.getNotifications(thresholdsConfig.getGroupCollection()));
+    /**
+     * Writes notifications.xml.
+     * <p>The template is streamed, and the generated notifications are merged with it (see {@link NotificationsMerger}).
+     * notifications.xml is only replaced when its content has changed (ignoring the creation date).</p>
+     *
+     * @param onmsHome the OpenNMS home directory
+     * @param notificationsTemplate the notifications template
+     * @param generated the generated notifications
+     * @return the status of notifications.xml
+     * @throws Exception the exception
+     */
+    public OutputFile.Status writeNotifications(File onmsHome, File notificationsTemplate, List<Notification> generated) throws Exception {
+        if (!notificationsTemplate.exists()) {
+            throw new FileNotFoundException(notificationsTemplate.getAbsolutePath());
+        }
 
         File notificationsFile = new File(onmsHome, "etc/notifications.xml");
         System.out.println("Generating " + notificationsFile);
-        Marshaller m = new Marshaller(new FileWriter(notificationsFile));
-        m.setSuppressNamespaces(false);
-        m.marshal(notifications);
+        OutputFile output = new OutputFile(notificationsFile, CREATED_LINE);
+        GenerationTracer.Span span = TRACER.startOutputWriting(notificationsFile.getPath());
+        OutputFile.Status status = null;
+        try {
+            NotificationsMerger merger = new NotificationsMerger(mergePolicy, EventConstants.formatToString(new Date()));
+            merger.setStats(getStats());
+            Writer writer = new BufferedWriter(new OutputStreamWriter(output.open(), "UTF-8"));
+            try {
+                merger.merge(notificationsTemplate, generated, writer);
+                writer.close();
+            } finally {
+                OutputFile.closeQuietly(writer);
+            }
+            System.out.println("Merged " + notificationsTemplate + ": " + merger);
+            status = output.commit();
+            System.out.println(notificationsFile + " " + status);
+            return status;
+        } finally {
+            span.end(status == null ? null : status.toString());
+            output.discard();
+        }
+    }
+
+    /**
+     * Gets the generation statistics of the threshold event processor.
+     *
+     * @return the generation statistics
+     */
+    private GenerationStats getStats() {
+        return eventProcessor == null ? GenerationStats.DISABLED : eventProcessor.getStats();
     }
 
 }
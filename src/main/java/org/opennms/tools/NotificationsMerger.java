@@ -0,0 +1,429 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2006-2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+package org.opennms.tools;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLEventFactory;
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLEventWriter;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.events.Attribute;
+import javax.xml.stream.events.StartElement;
+import javax.xml.stream.events.XMLEvent;
+
+import org.exolab.castor.xml.MarshalException;
+import org.exolab.castor.xml.Marshaller;
+import org.exolab.castor.xml.ValidationException;
+import org.opennms.netmgt.config.notifications.Notification;
+
+/**
+ * The Class NotificationsMerger.
+ * <p>Merges the generated notifications with the template of notifications.xml, without unmarshalling it.</p>
+ * <p>The template is streamed once with StAX and copied through as it is (except for the creation date of the
+ * header), so its formatting and comments are preserved, and only one notification of the template is kept in memory
+ * at a time. The names and UEIs of the notifications of the template are indexed while copying them; when a
+ * generated notification has the same name or UEI as one on the template:</p>
+ * <ul>
+ * <li>{@link Policy#SKIP}: the notification of the template is kept, and the generated one is discarded.</li>
+ * <li>{@link Policy#REPLACE}: the generated notification is written on the position of the one on the template.</li>
+ * </ul>
+ * <p>The rest of the generated notifications are appended at the end, so notifd never evaluates two rules for the
+ * same UEI.</p>
+ *
+ * @author <a href="mailto:agalue@opennms.org">Alejandro Galue</a>
+ */
+public class NotificationsMerger {
+
+    /** The XML input factory. */
+    private static final XMLInputFactory INPUT_FACTORY = XMLInputFactory.newInstance();
+
+    /** The XML output factory. */
+    private static final XMLOutputFactory OUTPUT_FACTORY = XMLOutputFactory.newInstance();
+
+    /** The XML event factory. */
+    private static final XMLEventFactory EVENT_FACTORY = XMLEventFactory.newInstance();
+
+    /** The Constant ENCODING. */
+    private static final String ENCODING = "UTF-8";
+
+    /** The Constant NAME. */
+    private static final QName NAME = new QName("name");
+
+    /**
+     * The Enum Policy.
+     * <p>What to do when a generated notification has the same name or UEI as a notification of the template.</p>
+     */
+    public enum Policy {
+
+        /** Keep the notification of the template. */
+        SKIP,
+
+        /** Replace the notification of the template with the generated one. */
+        REPLACE;
+
+        /**
+         * Parses a policy.
+         *
+         * @param policy the policy name (skip or replace)
+         * @return the policy
+         * @throws IllegalArgumentException if the policy is not supported
+         */
+        public static Policy parse(String policy) {
+            try {
+                return valueOf(policy.trim().toUpperCase(Locale.ENGLISH));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Unsupported notifications policy " + policy);
+            }
+        }
+    }
+
+    /** The policy. */
+    private Policy policy;
+
+    /** The creation date for the header. */
+    private String created;
+
+    /** The generation statistics. */
+    private GenerationStats stats = GenerationStats.DISABLED;
+
+    /** The number of notifications of the template kept. */
+    private int kept;
+
+    /** The number of generated notifications skipped. */
+    private int skipped;
+
+    /** The number of notifications of the template replaced. */
+    private int replaced;
+
+    /** The number of generated notifications appended. */
+    private int added;
+
+    /**
+     * Instantiates a new notifications merger.
+     *
+     * @param policy the policy
+     * @param created the creation date for the header
+     */
+    public NotificationsMerger(Policy policy, String created) {
+        this.policy = policy;
+        this.created = created;
+    }
+
+    /**
+     * Sets the generation statistics.
+     *
+     * @param stats the generation statistics
+     */
+    public void setStats(GenerationStats stats) {
+        this.stats = stats;
+    }
+
+    /**
+     * Merges the generated notifications with the template.
+     *
+     * @param template the template of notifications.xml
+     * @param generated the generated notifications
+     * @param writer the writer of notifications.xml
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public void merge(File template, List<Notification> generated, Writer writer) throws IOException {
+        Map<String,Notification> generatedNames = new HashMap<String,Notification>(generated.size() * 4 / 3 + 1);
+        Map<String,Notification> generatedUeis = new HashMap<String,Notification>(generated.size() * 4 / 3 + 1);
+        for (Notification n : generated) {
+            generatedNames.put(n.getName(), n);
+            generatedUeis.put(n.getUei(), n);
+        }
+        Set<String> existingNames = new HashSet<String>();
+        Set<String> existingUeis = new HashSet<String>();
+        Map<Notification,Boolean> written = new IdentityHashMap<Notification,Boolean>();
+
+        InputStream input = new BufferedInputStream(new FileInputStream(template));
+        try {
+            XMLEventReader reader = INPUT_FACTORY.createXMLEventReader(input);
+            XMLEventWriter out = OUTPUT_FACTORY.createXMLEventWriter(writer);
+            GenerationStats.Timer timer = stats.start(GenerationStats.NOTIFICATIONS_UNMARSHAL);
+            try {
+                int depth = 0;
+                while (reader.hasNext()) {
+                    XMLEvent e = reader.nextEvent();
+                    if (e.isStartDocument()) {
+                        out.add(EVENT_FACTORY.createStartDocument(ENCODING, "1.0"));
+                        out.add(EVENT_FACTORY.createCharacters("\n"));
+                        continue;
+                    }
+                    if (depth == 0 && e.isCharacters()) {
+                        continue;
+                    }
+                    if (e.isStartElement()) {
+                        String name = e.asStartElement().getName().getLocalPart();
+                        if (depth == 1 && name.equals("notification")) {
+                            List<XMLEvent> notification = readElement(reader, e);
+                            String notificationName = getName(e.asStartElement());
+                            String uei = getUei(notification);
+                            existingNames.add(notificationName);
+                            existingUeis.add(uei);
+                            Notification n = policy == Policy.REPLACE ? find(generatedNames, generatedUeis, notificationName, uei) : null;
+                            if (n == null) {
+                                for (XMLEvent ne : notification) {
+                                    out.add(ne);
+                                }
+                                kept++;
+                            } else {
+                                if (!written.containsKey(n)) {
+                                    marshal(out, writer, n);
+                                    written.put(n, Boolean.TRUE);
+                                }
+                                replaced++;
+                            }
+                            continue;
+                        }
+                        if (depth == 2 && name.equals("created")) {
+                            out.add(e);
+                            out.add(EVENT_FACTORY.createCharacters(created));
+                            skipContent(reader);
+                            out.add(EVENT_FACTORY.createEndElement(e.asStartElement().getName(), null));
+                            continue;
+                        }
+                        depth++;
+                    } else if (e.isEndElement()) {
+                        depth--;
+                        if (depth == 0) {
+                            timer.stop();
+                            timer = stats.start(GenerationStats.NOTIFICATIONS_MARSHAL);
+                            for (Notification n : generated) {
+                                if (written.containsKey(n)) {
+                                    continue;
+                                }
+                                if (existingNames.contains(n.getName()) || existingUeis.contains(n.getUei())) {
+                                    skipped++;
+                                    continue;
+                                }
+                                out.add(EVENT_FACTORY.createCharacters("    "));
+                                marshal(out, writer, n);
+                                out.add(EVENT_FACTORY.createCharacters("\n"));
+                                added++;
+                            }
+                        }
+                    }
+                    out.add(e);
+                    if (depth == 0 && !e.isEndDocument()) {
+                        out.add(EVENT_FACTORY.createCharacters("\n"));
+                    }
+                }
+                out.flush();
+            } finally {
+                timer.stop();
+            }
+        } catch (XMLStreamException e) {
+            throw new IOException("Can't merge the notifications with " + template, e);
+        } finally {
+            input.close();
+        }
+    }
+
+    /**
+     * Reads the events of an element, including its start and end elements.
+     *
+     * @param reader the XML event reader
+     * @param start the start element
+     * @return the events of the element
+     * @throws XMLStreamException the XML stream exception
+     */
+    private List<XMLEvent> readElement(XMLEventReader reader, XMLEvent start) throws XMLStreamException {
+        List<XMLEvent> events = new ArrayList<XMLEvent>();
+        events.add(start);
+        int depth = 1;
+        while (depth > 0) {
+            XMLEvent e = reader.nextEvent();
+            if (e.isStartElement()) {
+                depth++;
+            } else if (e.isEndElement()) {
+                depth--;
+            }
+            events.add(e);
+        }
+        return events;
+    }
+
+    /**
+     * Skips the content of the current element, up to its end element (which is consumed).
+     *
+     * @param reader the XML event reader
+     * @throws XMLStreamException the XML stream exception
+     */
+    private void skipContent(XMLEventReader reader) throws XMLStreamException {
+        int depth = 1;
+        while (depth > 0) {
+            XMLEvent e = reader.nextEvent();
+            if (e.isStartElement()) {
+                depth++;
+            } else if (e.isEndElement()) {
+                depth--;
+            }
+        }
+    }
+
+    /**
+     * Gets the name of a notification.
+     *
+     * @param start the start element of the notification
+     * @return the name (null if it doesn't exist)
+     */
+    private String getName(StartElement start) {
+        Attribute name = start.getAttributeByName(NAME);
+        return name == null ? null : name.getValue();
+    }
+
+    /**
+     * Gets the UEI of a notification.
+     *
+     * @param notification the events of the notification
+     * @return the UEI (null if it doesn't exist)
+     */
+    private String getUei(List<XMLEvent> notification) {
+        StringBuilder uei = null;
+        int depth = 0;
+        for (XMLEvent e : notification) {
+            if (e.isStartElement()) {
+                depth++;
+                if (depth == 2 && e.asStartElement().getName().getLocalPart().equals("uei")) {
+                    uei = new StringBuilder();
+                }
+            } else if (e.isEndElement()) {
+                depth--;
+                if (uei != null) {
+                    return uei.toString().trim();
+                }
+            } else if (uei != null && e.isCharacters()) {
+                uei.append(e.asCharacters().getData());
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Finds the generated notification with the name or the UEI of a notification of the template.
+     *
+     * @param generatedNames the generated notifications indexed by name
+     * @param generatedUeis the generated notifications indexed by UEI
+     * @param name the name of the notification of the template
+     * @param uei the UEI of the notification of the template
+     * @return the generated notification, or null if there is none
+     */
+    private Notification find(Map<String,Notification> generatedNames, Map<String,Notification> generatedUeis, String name, String uei) {
+        Notification n = name == null ? null : generatedNames.get(name);
+        return n == null && uei != null ? generatedUeis.get(uei) : n;
+    }
+
+    /**
+     * Marshals a generated notification.
+     * <p>The namespace of the notification is inherited from the root element of the template.</p>
+     *
+     * @param out the XML event writer
+     * @param writer the underlying writer
+     * @param n the notification
+     * @throws XMLStreamException the XML stream exception
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    private void marshal(XMLEventWriter out, Writer writer, Notification n) throws XMLStreamException, IOException {
+        out.add(EVENT_FACTORY.createCharacters("")); // Closes the pending start tag, if any
+        out.flush();
+        try {
+            Marshaller m = new Marshaller(writer);
+            m.setMarshalAsDocument(false);
+            m.setSuppressNamespaces(true);
+            m.marshal(n);
+        } catch (MarshalException e) {
+            throw new IOException("Can't marshal notification " + n.getName(), e);
+        } catch (ValidationException e) {
+            throw new IOException("Invalid notification " + n.getName() + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Gets the number of notifications of the template kept.
+     *
+     * @return the number of kept notifications
+     */
+    public int getKept() {
+        return kept;
+    }
+
+    /**
+     * Gets the number of generated notifications skipped, as the template already had them.
+     *
+     * @return the number of skipped notifications
+     */
+    public int getSkipped() {
+        return skipped;
+    }
+
+    /**
+     * Gets the number of notifications of the template replaced by the generated ones.
+     *
+     * @return the number of replaced notifications
+     */
+    public int getReplaced() {
+        return replaced;
+    }
+
+    /**
+     * Gets the number of generated notifications appended.
+     *
+     * @return the number of added notifications
+     */
+    public int getAdded() {
+        return added;
+    }
+
+    /* (non-Javadoc)
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return kept + " kept, " + (policy == Policy.REPLACE ? replaced + " replaced, " : skipped + " skipped, ") + added + " added";
+    }
+
+}
@@ -0,0 +1,89 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2006-2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+package org.opennms.tools;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+
+/**
+ * The Class OrderedProperties.
+ * <p>Properties that remember the order on which the keys were defined, so the rules of the configuration
+ * file (like <code>destinationPath[...]</code> or <code>instance[...]</code>) can be evaluated on declaration order.</p>
+ *
+ * @author <a href="mailto:agalue@opennms.org">Alejandro Galue</a>
+ */
+public class OrderedProperties extends Properties {
+
+    /** The Constant serialVersionUID. */
+    private static final long serialVersionUID = 1L;
+
+    /** The keys, on declaration order. */
+    private final Set<String> orderedKeys = new LinkedHashSet<String>();
+
+    /* (non-Javadoc)
+     * @see java.util.Hashtable#put(java.lang.Object, java.lang.Object)
+     */
+    @Override
+    public synchronized Object put(Object key, Object value) {
+        if (key instanceof String) {
+            orderedKeys.add((String) key);
+        }
+        return super.put(key, value);
+    }
+
+    /* (non-Javadoc)
+     * @see java.util.Hashtable#remove(java.lang.Object)
+     */
+    @Override
+    public synchronized Object remove(Object key) {
+        orderedKeys.remove(key);
+        return super.remove(key);
+    }
+
+    /* (non-Javadoc)
+     * @see java.util.Hashtable#clear()
+     */
+    @Override
+    public synchronized void clear() {
+        orderedKeys.clear();
+        super.clear();
+    }
+
+    /**
+     * Gets the keys on declaration order.
+     *
+     * @return the keys
+     */
+    public synchronized List<String> getOrderedKeys() {
+        return new ArrayList<String>(orderedKeys);
+    }
+
+}
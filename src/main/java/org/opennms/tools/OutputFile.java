@@ -0,0 +1,231 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2006-2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+package org.opennms.tools;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.regex.Pattern;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The Class OutputFile.
+ * <p>The content is written to a temporary file on the same directory as the target. On commit, the digest
+ * of the temporary file is compared with the digest of the current target; the target is atomically replaced
+ * only when the content is different, so its modification time is preserved when nothing has changed, and
+ * a failure while writing never leaves a truncated file.</p>
+ * <p>Lines matching an optional pattern (for example, a creation timestamp) are ignored when comparing.</p>
+ *
+ * @author <a href="mailto:agalue@opennms.org">Alejandro Galue</a>
+ */
+public class OutputFile {
+
+    private static final Logger LOG = LoggerFactory.getLogger(OutputFile.class);
+
+    /**
+     * The Enum Status.
+     */
+    public enum Status {
+
+        /** The target file has been replaced. */
+        UPDATED,
+
+        /** The target file already had the same content. */
+        UNCHANGED;
+
+        /* (non-Javadoc)
+         * @see java.lang.Enum#toString()
+         */
+        @Override
+        public String toString() {
+            return name().toLowerCase();
+        }
+    }
+
+    /** The Constant DIGEST_ALGORITHM. */
+    private static final String DIGEST_ALGORITHM = "SHA-256";
+
+    /** The target file. */
+    private File target;
+
+    /** The temporary file. */
+    private File tempFile;
+
+    /** The pattern for the lines to ignore while comparing. */
+    private Pattern ignoredLines;
+
+    /**
+     * Instantiates a new output file.
+     *
+     * @param target the target file
+     */
+    public OutputFile(File target) {
+        this(target, null);
+    }
+
+    /**
+     * Instantiates a new output file.
+     *
+     * @param target the target file
+     * @param ignoredLines the pattern for the lines to ignore while comparing (can be null)
+     */
+    public OutputFile(File target, Pattern ignoredLines) {
+        this.target = target;
+        this.ignoredLines = ignoredLines;
+    }
+
+    /**
+     * Gets the target file.
+     *
+     * @return the target file
+     */
+    public File getTarget() {
+        return target;
+    }
+
+    /**
+     * Opens the temporary file for writing.
+     *
+     * @return the output stream
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public OutputStream open() throws IOException {
+        File dir = target.getAbsoluteFile().getParentFile();
+        tempFile = File.createTempFile(target.getName() + ".", ".tmp", dir);
+        return new FileOutputStream(tempFile);
+    }
+
+    /**
+     * Commits the content.
+     * <p>The output stream returned by {@link #open()} must be closed before calling this method.</p>
+     *
+     * @return the status
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public Status commit() throws IOException {
+        if (tempFile == null) {
+            throw new IllegalStateException("The output file " + target + " has not been opened");
+        }
+        try {
+            if (target.exists() && Arrays.equals(getDigest(tempFile), getDigest(target))) {
+                return Status.UNCHANGED;
+            }
+            try {
+                Files.move(tempFile.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tempFile.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            return Status.UPDATED;
+        } finally {
+            discard();
+        }
+    }
+
+    /**
+     * Discards the temporary file, if it still exists.
+     */
+    public void discard() {
+        if (tempFile != null) {
+            tempFile.delete();
+            tempFile = null;
+        }
+    }
+
+    /**
+     * Closes a stream without throwing.
+     * <p>Used on the finally blocks, once the stream has already been closed on the success path (closing it
+     * again does nothing). When an exception is being propagated, a failure while closing the stream is logged
+     * instead of replacing it.</p>
+     *
+     * @param closeable the stream (can be null)
+     */
+    public static void closeQuietly(Closeable closeable) {
+        if (closeable == null) {
+            return;
+        }
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            LOG.info("Can't close the output after a failure: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Gets the digest of a file.
+     *
+     * @param file the file
+     * @return the digest
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    private byte[] getDigest(File file) throws IOException {
+        MessageDigest digest = null;
+        try {
+            digest = MessageDigest.getInstance(DIGEST_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException("Can't create the digest for " + file, e);
+        }
+        InputStream input = new BufferedInputStream(new FileInputStream(file));
+        try {
+            if (ignoredLines == null) {
+                byte[] buffer = new byte[8192];
+                int n;
+                while ((n = input.read(buffer)) != -1) {
+                    digest.update(buffer, 0, n);
+                }
+            } else {
+                BufferedReader reader = new BufferedReader(new InputStreamReader(input, "UTF-8"));
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (!ignoredLines.matcher(line).matches()) {
+                        digest.update(line.getBytes("UTF-8"));
+                        digest.update((byte) '\n');
+                    }
+                }
+            }
+        } finally {
+            input.close();
+        }
+        return digest.digest();
+    }
+
+}
@@ -30,9 +30,6 @@ package org.opennms.tools;
 import java.util.ArrayList;
 import java.util.List;
 
-import org.apache.commons.jexl2.ExpressionImpl;
-import org.apache.commons.jexl2.JexlEngine;
-import org.apache.commons.lang.StringUtils;
 import org.opennms.netmgt.config.threshd.Basethresholddef;
 import org.opennms.netmgt.config.threshd.Expression;
 import org.opennms.netmgt.config.threshd.Threshold;
@@ -77,6 +74,12 @@ public class ThresholdEvent implements Comparable<ThresholdEvent> {
     /** The threshold expression. */
     private String thresholdExpression;
 
+    /** The computed threshold expression. */
+    private String computedExpression;
+
+    /** The token model of the event UEI. */
+    private ThresholdUei thresholdUei;
+
     /** The threshold description. */
     private String thresholdDescription;
 
@@ -95,8 +98,14 @@ public class ThresholdEvent implements Comparable<ThresholdEvent> {
     /** The metric list. */
     private List<String> metricList = new ArrayList<String>();
 
-    /** The metric templates. */
-    private List<PrefabGraph> metricTemplates;
+    /** The graph index. */
+    private GraphIndex graphIndex;
+
+    /** The resource type. */
+    private String dsType;
+
+    /** The event templates. */
+    private EventTemplates templates;
 
     /**
      * Instantiates a new threshold event.
@@ -109,8 +118,39 @@ public class ThresholdEvent implements Comparable<ThresholdEvent> {
      * @param metricTemplates the metric templates
      */
     public ThresholdEvent(Basethresholddef def, String baseUei, boolean isExceeded, boolean useComputedThresholdExpression, String instanceInfo, List<PrefabGraph> metricTemplates) {
+        this(def, baseUei, isExceeded, useComputedThresholdExpression, instanceInfo, metricTemplates == null ? null : new GraphIndex(GraphTemplates.fromPrefabGraphs(metricTemplates), false));
+    }
+
+    /**
+     * Instantiates a new threshold event.
+     *
+     * @param def the base threshold definition
+     * @param baseUei the base UEI
+     * @param isExceeded the is exceeded
+     * @param useComputedThresholdExpression the use computed threshold expression
+     * @param instanceInfo the instance information
+     * @param graphIndex the graph index (can be null)
+     */
+    public ThresholdEvent(Basethresholddef def, String baseUei, boolean isExceeded, boolean useComputedThresholdExpression, String instanceInfo, GraphIndex graphIndex) {
+        this(def, baseUei, isExceeded, useComputedThresholdExpression, instanceInfo, graphIndex, EventTemplates.getDefault());
+    }
+
+    /**
+     * Instantiates a new threshold event.
+     *
+     * @param def the base threshold definition
+     * @param baseUei the base UEI
+     * @param isExceeded the is exceeded
+     * @param useComputedThresholdExpression the use computed threshold expression
+     * @param instanceInfo the instance information
+     * @param graphIndex the graph index (can be null)
+     * @param templates the event templates
+     */
+    public ThresholdEvent(Basethresholddef def, String baseUei, boolean isExceeded, boolean useComputedThresholdExpression, String instanceInfo, GraphIndex graphIndex, EventTemplates templates) {
         this.baseUei = baseUei;
-        this.metricTemplates = metricTemplates;
+        this.graphIndex = graphIndex;
+        this.templates = templates;
+        this.dsType = def.getDsType();
         this.useComputedThresholdExpression = useComputedThresholdExpression;
         if (!def.getDsType().equals("node")) { // Instance doesn't apply to node resources
             this.instanceInfo = instanceInfo;
@@ -132,20 +172,10 @@ public class ThresholdEvent implements Comparable<ThresholdEvent> {
             metricList.add(dsName);
         } else {
             thresholdExpression = ((Expression)def).getExpression();
-            JexlEngine expressionParser = new JexlEngine();
-            try {
-                ExpressionImpl e = (ExpressionImpl) expressionParser.createExpression(thresholdExpression);
-                for (List<String> list : e.getVariables()) {
-                    if (list.get(0).equalsIgnoreCase("math")) {
-                        continue;
-                    }
-                    if (list.get(0).equalsIgnoreCase("datasources")) {
-                        metricList.add(list.get(1).intern());
-                    } else {
-                        metricList.add(list.get(0).intern());
-                    }
-                }
-            } catch (Exception e) {
+            ExpressionCache.Analysis analysis = ExpressionCache.getInstance().analyze(thresholdExpression);
+            if (analysis.isValid()) {
+                metricList.addAll(analysis.getDatasources());
+            } else {
                 LOG.error("Can't parse expression {}.", thresholdExpression);
             }
         }
@@ -165,6 +195,7 @@ public class ThresholdEvent implements Comparable<ThresholdEvent> {
         } else {
             event.setUei(def.getRearmedUEI());
         }
+        thresholdUei = new ThresholdUei(event.getUei(), baseUei);
         if (def.getDescription() != null) {
             thresholdDescription = def.getDescription();
         }
@@ -175,9 +206,7 @@ public class ThresholdEvent implements Comparable<ThresholdEvent> {
         updateGraphLink();
 
         updateEventSeverity();
-        updateEventLabel();
-        updateEventLogMessage();
-        updateEventDescription();
+        updateEventContent();
         updateEventAlarmData();
     }
 
@@ -221,22 +250,10 @@ public class ThresholdEvent implements Comparable<ThresholdEvent> {
      * Update graph link.
      */
     private void updateGraphLink() {
-        if (metricTemplates != null) {
-            List<String> templates = new ArrayList<String>();
-            for (PrefabGraph graph : metricTemplates) {
-                boolean found = false;
-                for (String c : graph.getColumns()) {
-                    if (metricList.contains(c)) {
-                        found = true;
-                        continue;
-                    }
-                }
-                if (found) {
-                    templates.add(graph.getName());
-                }
-            }
-            if (!templates.isEmpty()) {
-                graphLink = graphLink.replaceAll("all", StringUtils.join(templates, "&reports="));
+        if (graphIndex != null) {
+            String reports = graphIndex.getReports(metricList, dsType);
+            if (reports != null) {
+                graphLink = graphLink.replace("reports=all", "reports=" + reports);
             }
         }
     }
@@ -245,99 +262,36 @@ public class ThresholdEvent implements Comparable<ThresholdEvent> {
      * Update event severity.
      */
     private void updateEventSeverity() {
-        String eventSeverity = "Normal";
-        String eventUei = event.getUei().toLowerCase();
-        if (exceeded) {
-            eventSeverity = "Warning";
-            if (eventUei.contains("minor")) {
-                eventSeverity = "Minor";
-            } else if (eventUei.contains("major")) {
-                eventSeverity = "Major";
-            } else if (eventUei.contains("critical")) {
-                eventSeverity = "Critical";
-            }
-        }
-        event.setSeverity(eventSeverity);
-    }
-
-    /**
-     * Update event label.
-     */
-    private void updateEventLabel() {
-        StringBuffer sb = new StringBuffer();
-        sb.append("User-defined custom ");
-        sb.append(thresholdName.toLowerCase());
-        sb.append(" threshold ");
-        sb.append(getThresholdEventType());
-        sb.append(" event for ");
-        sb.append(getThresholdExpression().toLowerCase());
-        if (exceeded) {
-            sb.append(" [").append(event.getSeverity()).append("]");
+        event.setSeverity(thresholdUei.getEventSeverity(exceeded));
+        if (useComputedThresholdExpression) {
+            computedExpression = thresholdUei.getComputedExpression(event.getSeverity());
         }
-        event.setEventLabel(sb.toString());
     }
 
     /**
-     * Update event log message.
+     * Update the event label, log message and description from the event templates.
      */
-    private void updateEventLogMessage() {
-        StringBuffer sb = new StringBuffer();
-        sb.append("<b><a href='").append(graphLink).append("'>").append(getThresholdExpression()).append("</b></a> ");
-        sb.append(thresholdName).append(" threshold ");
-        sb.append("<b>").append(thresholdParam).append("</b> ").append(getThresholdEventType());
-        if (thresholdId.equals("absoluteChange") || thresholdId.equals("relativeChange")) {
-            sb.append(" changed from %parm[previousValue]% to ");
-        } else {
-            sb.append(" with ");
-        }
-        sb.append("<font color=").append(exceeded ? "#cc0000" : "#4e9a06").append("><b>%parm[value]%</b></font>");
+    private void updateEventContent() {
+        String[] values = new String[EventTemplates.Variable.values().length];
+        String expression = getThresholdExpression();
+        values[EventTemplates.Variable.THRESHOLD_NAME.ordinal()] = thresholdName;
+        values[EventTemplates.Variable.THRESHOLD_NAME_LOWER.ordinal()] = thresholdName.toLowerCase();
+        values[EventTemplates.Variable.THRESHOLD_PARAM.ordinal()] = thresholdParam;
+        values[EventTemplates.Variable.CONDITION.ordinal()] = getThresholdEventType();
+        values[EventTemplates.Variable.EXPRESSION.ordinal()] = expression;
+        values[EventTemplates.Variable.EXPRESSION_LOWER.ordinal()] = expression.toLowerCase();
+        values[EventTemplates.Variable.SEVERITY.ordinal()] = event.getSeverity();
+        values[EventTemplates.Variable.GRAPH_LINK.ordinal()] = graphLink;
         if (instanceInfo != null && !instanceInfo.trim().equals("")) {
-            sb.append(", on ").append(instanceInfo);
+            values[EventTemplates.Variable.INSTANCE.ordinal()] = instanceInfo;
         }
-        sb.append(", for metric %parm[ds]%, on node %nodelabel%.");
+        values[EventTemplates.Variable.DESCRIPTION.ordinal()] = thresholdDescription;
+
+        event.setEventLabel(templates.getTemplate(EventTemplates.LABEL, thresholdId, exceeded).render(values));
         event.setLogmsg(new Logmsg());
         event.getLogmsg().setDest("logndisplay");
-        event.getLogmsg().setContent(sb.toString());
-    } 
-
-    /**
-     * Update event description.
-     */
-    private void updateEventDescription() {
-        StringBuffer sb = new StringBuffer();
-        sb.append("<p>");
-        sb.append(thresholdName).append(" threshold ").append(getThresholdEventType());
-        sb.append(" for %service% datasource %parm[ds]% on interface %interface% for node %nodelabel% (nodeId %nodeid%).");
-        sb.append("</p>");
-        if (thresholdDescription != null) {
-            sb.append("<p><b>Description:</b> ").append(thresholdDescription).append("</p>");
-        }
-        sb.append("<br>\n");
-        sb.append("        <table style='width:50%; white-space: nowrap;'>\n");
-        sb.append("        <tr><td><b>").append("Data Source").append("</b></td><td>").append("%parm[ds]%").append("</td></tr>\n");
-        sb.append("        <tr><td><b>").append("Resource Label").append("</b></td><td>").append("%parm[label]%").append("</td></tr>\n");
-        sb.append("        <tr><td><b>").append("Resource Instance").append("</b></td><td>").append("%parm[instance]%").append("</td></tr>\n");
-        sb.append("        <tr><td><b>").append("Resource ID").append("</b></td><td>").append("%parm[resourceId]%").append("</td></tr>\n");
-        sb.append("        <tr><td><b>").append("Current Metric Value").append("</b></td><td>").append("%parm[value]%").append("</td></tr>\n");
-        if (thresholdId.equals("absoluteChange")) {
-            sb.append("        <tr><td><b>").append("Change Threshold").append("</b></td><td>").append("%parm[changeThreshold]%").append("</td></tr>\n");
-            sb.append("        <tr><td><b>").append("Previous Value").append("</b></td><td>").append("%parm[previousValue]%").append("</td></tr>\n");            
-            sb.append("        <tr><td><b>").append("Trigger Value").append("</b></td><td>").append("%parm[trigger]%").append("</td></tr>\n");
-        } else if (thresholdId.equals("relativeChange")) {
-            sb.append("        <tr><td><b>").append("Multiplier (Threshold Value)").append("</b></td><td>").append("%parm[multiplier]%").append("</td></tr>\n");
-            sb.append("        <tr><td><b>").append("Previous Value").append("</b></td><td>").append("%parm[previousValue]%").append("</td></tr>\n");            
-        } else if (thresholdId.equals("rearmingAbsoluteChange")) {
-            sb.append("        <tr><td><b>").append("Threshold Value").append("</b></td><td>").append("%parm[threshold]%").append("</td></tr>\n");
-            sb.append("        <tr><td><b>").append("Previous Value").append("</b></td><td>").append("%parm[previousValue]%").append("</td></tr>\n");            
-            sb.append("        <tr><td><b>").append("Trigger Value").append("</b></td><td>").append("%parm[trigger]%").append("</td></tr>\n");
-        } else {
-            sb.append("        <tr><td><b>").append("Threshold Value").append("</b></td><td>").append("%parm[threshold]%").append("</td></tr>\n");
-            sb.append("        <tr><td><b>").append("Rearm Value").append("</b></td><td>").append("%parm[rearm]%").append("</td></tr>\n");            
-            sb.append("        <tr><td><b>").append("Trigger Value").append("</b></td><td>").append("%parm[trigger]%").append("</td></tr>\n");
-        }
-        sb.append("        </table>\n");
-        sb.append("        </br><p>All parameters: %parm[all]%</p>");
-        event.setDescr(sb.toString());
+        event.getLogmsg().setContent(templates.getTemplate(EventTemplates.LOG_MESSAGE, thresholdId, exceeded).render(values));
+        event.setDescr(templates.getTemplate(EventTemplates.DESCRIPTION, thresholdId, exceeded).render(values));
     }
 
     /**
@@ -408,17 +362,16 @@ public class ThresholdEvent implements Comparable<ThresholdEvent> {
      * @return the metric type
      */
     protected String getThresholdExpression() {
-        if (useComputedThresholdExpression) {
-            List<String> elements = new ArrayList<String>();
-            String[] sections = event.getUei().replace(baseUei + '/', "").split("\\/");
-            for (String section : sections) {
-                if (!section.toLowerCase().matches("(?i)(high|low|ac|rc|absolutechange|relativechange|exceed.+|rearm.+|" + event.getSeverity() + ")")) {
-                    elements.add(section);
-                }
-            }
-            return StringUtils.join(elements, "-").toUpperCase();
-        }
-        return thresholdExpression;
+        return useComputedThresholdExpression ? computedExpression : thresholdExpression;
+    }
+
+    /**
+     * Gets the token model of the event UEI.
+     *
+     * @return the threshold UEI
+     */
+    protected ThresholdUei getThresholdUei() {
+        return thresholdUei;
     }
 
     /**
@@ -27,19 +27,20 @@
  *******************************************************************************/
 package org.opennms.tools;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Properties;
 import java.util.Set;
 import java.util.TreeSet;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
 
 import org.opennms.netmgt.config.notifications.Notification;
 import org.opennms.netmgt.config.threshd.Basethresholddef;
@@ -62,17 +63,32 @@ public class ThresholdEventProcessor {
 
     private static final Logger LOG = LoggerFactory.getLogger(ThresholdEventProcessor.class);
 
+    /** The Constant TRACER. */
+    private static final GenerationTracer TRACER = GenerationTracer.getInstance();
+
     /** The Constant BASE_URI. */
     public static final String BASE_URI = "uei.opennms.org/threshold";
 
+    /** The Constant MIN_DEFINITIONS_PER_TASK. */
+    private static final int MIN_DEFINITIONS_PER_TASK = 32;
+
     /** The configuration properties. */
-    private Properties config = new Properties();
+    private Properties config = new OrderedProperties();
+
+    /** The instance resolver. */
+    private InstanceResolver instanceResolver;
 
-    /** The instances map. */
-    private Map<String,String> instancesMap = new HashMap<String,String>();
+    /** The destination path matcher. */
+    private DestinationPathMatcher destinationPathMatcher;
 
-    /** The destination paths map. */
-    private Map<String,String> destinationsMap = new HashMap<String,String>();
+    /** The event templates. */
+    private EventTemplates templates;
+
+    /** The file with the custom event templates (can be null). */
+    private File templatesFile;
+
+    /** The generation statistics. */
+    private GenerationStats stats = GenerationStats.DISABLED;
 
     /**
      * Instantiates a new UEI processor.
@@ -96,12 +112,22 @@ public class ThresholdEventProcessor {
         parseConfig();
     }
 
+    /**
+     * Gets the configuration.
+     *
+     * @return the configuration properties
+     */
+    public Properties getConfig() {
+        return config;
+    }
+
     /**
      * Parses the configuration.
      */
     private void parseConfig() {
-        for (Object o : config.keySet()) {
-            String key = (String) o;
+        Map<String,String> instancesMap = new LinkedHashMap<String,String>();
+        Map<String,String> destinationsMap = new LinkedHashMap<String,String>();
+        for (String key : getConfigKeys()) {
             if (key.startsWith("instance")) {
                 String ueiSubstring = key.replace("instance[", "").replace("]", "");
                 instancesMap.put(ueiSubstring, config.getProperty(key));
@@ -111,6 +137,61 @@ public class ThresholdEventProcessor {
                 destinationsMap.put(ueiSubstring, config.getProperty(key));
             }
         }
+        templates = EventTemplates.getDefault();
+        String templatesPath = config.getProperty("eventTemplates");
+        if (templatesPath != null && !templatesPath.trim().equals("")) {
+            templatesFile = new File(templatesPath.trim());
+            try {
+                templates = new EventTemplates(templatesFile);
+            } catch (IOException e) {
+                LOG.error("Can't load the event templates from {}; using the default templates", templatesFile, e);
+            }
+        }
+        instanceResolver = new InstanceResolver(instancesMap, ThresholdEvent.INSTANCE_INFO);
+        destinationPathMatcher = new DestinationPathMatcher(destinationsMap, DestinationPathMatcher.DEFAULT_DESTINATION_PATH);
+    }
+
+    /**
+     * Gets the file with the custom event templates.
+     *
+     * @return the event templates file, or null if it is not configured
+     */
+    public File getTemplatesFile() {
+        return templatesFile;
+    }
+
+    /**
+     * Sets the generation statistics.
+     *
+     * @param stats the generation statistics (null to disable them)
+     */
+    public void setStats(GenerationStats stats) {
+        this.stats = stats == null ? GenerationStats.DISABLED : stats;
+    }
+
+    /**
+     * Gets the generation statistics.
+     *
+     * @return the generation statistics
+     */
+    public GenerationStats getStats() {
+        return stats;
+    }
+
+    /**
+     * Gets the configuration keys.
+     * <p>The keys are returned on declaration order when the configuration was loaded through {@link OrderedProperties},
+     * and sorted alphabetically otherwise, so the priority of the rules is always deterministic.</p>
+     *
+     * @return the configuration keys
+     */
+    private List<String> getConfigKeys() {
+        if (config instanceof OrderedProperties) {
+            return ((OrderedProperties) config).getOrderedKeys();
+        }
+        List<String> keys = new ArrayList<String>(config.stringPropertyNames());
+        Collections.sort(keys);
+        return keys;
     }
 
     /**
@@ -121,7 +202,29 @@ public class ThresholdEventProcessor {
      * @return the Events object
      */
     public Events getEvents(List<Group> groups, List<PrefabGraph> metrics) {
-        Set<ThresholdEvent> list = getThresholdEvents(groups, metrics);
+        return getEvents(getThresholdEvents(groups, GraphTemplates.fromPrefabGraphs(metrics)));
+    }
+
+    /**
+     * Gets the Events object.
+     * <p>The groups are processed one at a time, as they are returned by the reader.</p>
+     *
+     * @param reader the thresholds reader
+     * @param metrics the metrics
+     * @return the Events object
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public Events getEvents(ThresholdsReader reader, GraphTemplates metrics) throws IOException {
+        return getEvents(getThresholdEvents(reader, metrics));
+    }
+
+    /**
+     * Gets the Events object.
+     *
+     * @param list the threshold events
+     * @return the Events object
+     */
+    public Events getEvents(Set<ThresholdEvent> list) {
         Events events = new Events();
         for (ThresholdEvent e : list) {
             events.getEventCollection().add(e.getEvent());
@@ -141,11 +244,38 @@ public class ThresholdEventProcessor {
      * @return the notifications
      */
     public List<Notification> getNotifications(List<Group> groups) {
+        return getNotifications(getThresholdEvents(groups, null));
+    }
+
+    /**
+     * Gets the notifications.
+     * <p>The groups are processed one at a time, as they are returned by the reader.</p>
+     *
+     * @param reader the thresholds reader
+     * @return the notifications
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public List<Notification> getNotifications(ThresholdsReader reader) throws IOException {
+        return getNotifications(getThresholdEvents(reader, null));
+    }
+
+    /**
+     * Gets the notifications.
+     *
+     * @param list the threshold events
+     * @return the notifications
+     */
+    public List<Notification> getNotifications(Set<ThresholdEvent> list) {
         List<Notification> notifications = new ArrayList<Notification>();
-        for (ThresholdEvent e : getThresholdEvents(groups, null)) {
-            ThresholdNotification n = new ThresholdNotification(e, getDestinationPath(e.getEventUei()));
-            notifications.add(n.getNotification());
+        GenerationStats.Timer timer = stats.start(GenerationStats.NOTIFICATIONS);
+        try {
+            for (ThresholdEvent e : list) {
+                notifications.add(getNotification(e));
+            }
+        } finally {
+            timer.stop();
         }
+        stats.count(GenerationStats.GENERATED_NOTIFICATIONS, notifications.size());
         Collections.sort(notifications, new Comparator<Notification>() {
             public int compare(Notification n1, Notification n2) {
                 return n1.getName().compareTo(n2.getName());
@@ -154,6 +284,66 @@ public class ThresholdEventProcessor {
         return notifications;
     }
 
+    /**
+     * Gets the notification of a threshold event.
+     *
+     * @param e the threshold event
+     * @return the notification
+     */
+    private Notification getNotification(ThresholdEvent e) {
+        ThresholdNotification n = new ThresholdNotification(e, getDestinationPath(e.getEventUei()));
+        return n.getNotification();
+    }
+
+    /**
+     * Gets the output of a group.
+     * <p>Contains the events and the notifications of the group, in UEI order.</p>
+     * <p>When called from a fork/join pool, the definitions of large groups are processed in parallel.</p>
+     *
+     * @param g the group
+     * @param metrics the metrics
+     * @return the group output
+     */
+    public GroupOutput getGroupOutput(Group g, GraphTemplates metrics) {
+        Set<ThresholdEvent> events = new TreeSet<ThresholdEvent>();
+        List<Basethresholddef> definitions = getDefinitions(g);
+        GenerationTracer.Span span = TRACER.startGroupGeneration(g.getName(), definitions.size());
+        try {
+            return getGroupOutput(g, definitions, getGraphIndex(metrics), events);
+        } finally {
+            span.end(events.size() + " events");
+        }
+    }
+
+    /**
+     * Gets the output of a group.
+     *
+     * @param g the group
+     * @param definitions the definitions of the group
+     * @param graphs the graph index
+     * @param events the threshold events (initially empty)
+     * @return the group output
+     */
+    private GroupOutput getGroupOutput(Group g, List<Basethresholddef> definitions, GraphIndex graphs, Set<ThresholdEvent> events) {
+        if (ForkJoinTask.inForkJoinPool() && definitions.size() > MIN_DEFINITIONS_PER_TASK) {
+            events.addAll(new DefinitionsTask(g, definitions, 0, definitions.size(), graphs).invoke());
+        } else {
+            addThresholdEvents(g, definitions, 0, definitions.size(), graphs, events);
+        }
+        stats.count(GenerationStats.GENERATED_EVENTS, events.size());
+        GroupOutput output = new GroupOutput(g.getName());
+        GenerationStats.Timer timer = stats.start(GenerationStats.NOTIFICATIONS);
+        try {
+            for (ThresholdEvent e : events) {
+                output.add(e.getEvent(), getNotification(e));
+            }
+        } finally {
+            timer.stop();
+        }
+        stats.count(GenerationStats.GENERATED_NOTIFICATIONS, events.size());
+        return output;
+    }
+
     /**
      * Gets the threshold events.
      *
@@ -161,33 +351,208 @@ public class ThresholdEventProcessor {
      * @param metrics the metrics
      * @return the threshold events
      */
-    private Set<ThresholdEvent> getThresholdEvents(List<Group> groups, List<PrefabGraph> metrics) {
+    private Set<ThresholdEvent> getThresholdEvents(List<Group> groups, GraphTemplates metrics) {
         Set<ThresholdEvent> events = new TreeSet<ThresholdEvent>();
+        for (Group g : groups) {
+            addThresholdEvents(g, metrics, events);
+        }
+        stats.count(GenerationStats.GENERATED_EVENTS, events.size());
+        return events;
+    }
+
+    /**
+     * Gets the threshold events.
+     * <p>The result can be shared to build the events and the notifications without processing the groups twice.</p>
+     *
+     * @param reader the thresholds reader
+     * @param metrics the metrics
+     * @return the threshold events
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public Set<ThresholdEvent> getThresholdEvents(ThresholdsReader reader, GraphTemplates metrics) throws IOException {
+        Set<ThresholdEvent> events = new TreeSet<ThresholdEvent>();
+        Group g;
+        while ((g = reader.read()) != null) {
+            addThresholdEvents(g, metrics, events);
+        }
+        stats.count(GenerationStats.GENERATED_EVENTS, events.size());
+        return events;
+    }
+
+    /**
+     * Adds the threshold events of a group.
+     *
+     * @param g the group
+     * @param metrics the metrics
+     * @param events the threshold events
+     */
+    private void addThresholdEvents(Group g, GraphTemplates metrics, Set<ThresholdEvent> events) {
+        List<Basethresholddef> definitions = getDefinitions(g);
+        GenerationTracer.Span span = TRACER.startGroupGeneration(g.getName(), definitions.size());
+        int initialSize = events.size();
+        try {
+            addThresholdEvents(g, definitions, 0, definitions.size(), getGraphIndex(metrics), events);
+        } finally {
+            span.end((events.size() - initialSize) + " events");
+        }
+    }
+
+    /**
+     * Adds the threshold events of a range of definitions of a group.
+     *
+     * @param g the group
+     * @param definitions the definitions of the group
+     * @param from the index of the first definition (inclusive)
+     * @param to the index of the last definition (exclusive)
+     * @param graphs the graph index
+     * @param events the threshold events
+     */
+    private void addThresholdEvents(Group g, List<Basethresholddef> definitions, int from, int to, GraphIndex graphs, Collection<ThresholdEvent> events) {
+        GenerationStats.Timer timer = stats.start(GenerationStats.EVENTS);
+        try {
+            addThresholdEvents(g, definitions.subList(from, to), graphs, events);
+        } finally {
+            timer.stop();
+        }
+    }
+
+    /**
+     * Adds the threshold events of a list of definitions of a group.
+     *
+     * @param g the group
+     * @param definitions the definitions
+     * @param graphs the graph index
+     * @param events the threshold events
+     */
+    private void addThresholdEvents(Group g, List<Basethresholddef> definitions, GraphIndex graphs, Collection<ThresholdEvent> events) {
         boolean useComputedExpression = Boolean.parseBoolean(config.getProperty("useComputedExpression", "true"));
         String baseUei = config.getProperty("baseUei", ThresholdEvent.BASE_UEI);
-        for (Group g : groups) {
-            for (Threshold t : g.getThresholdCollection()) {
-                if (t.getTriggeredUEI() == null || t.getTriggeredUEI().trim().equals("")) {
+        for (Basethresholddef def : definitions) {
+            if (def.getTriggeredUEI() == null || def.getTriggeredUEI().trim().equals("")) {
+                if (def instanceof Threshold) {
+                    Threshold t = (Threshold) def;
                     generateTriggeredUei(t, baseUei, t.getDsName());
                     LOG.warn("There is no TriggeredUEI for threshold {} using threshold {} on group {}; using {}", t.getType(), t.getDsName(), g.getName(), t.getTriggeredUEI());
-                }
-                events.add(new ThresholdEvent(t, baseUei, true, useComputedExpression, getInstanceInfo(t.getDsType()), metrics));
-                if (shouldAddRearm(t, g.getName())) {
-                    events.add(new ThresholdEvent(t, baseUei, false, useComputedExpression, getInstanceInfo(t.getDsType()), metrics));
-                }
-            }
-            for (Expression ex : g.getExpressionCollection()) {
-                if (ex.getTriggeredUEI() == null || ex.getTriggeredUEI().trim().equals("")) {
+                } else {
+                    Expression ex = (Expression) def;
                     generateTriggeredUei(ex, baseUei, g.getName());
                     LOG.warn("There is no TriggeredUEI for threshold {} using expression '{}' on group {}; using {}", ex.getType(), ex.getExpression(), g.getName(), ex.getTriggeredUEI());
                 }
-                events.add(new ThresholdEvent(ex, baseUei, true, useComputedExpression, getInstanceInfo(ex.getDsType()), metrics));
-                if (shouldAddRearm(ex, g.getName())) {
-                    events.add(new ThresholdEvent(ex, baseUei, false, useComputedExpression, getInstanceInfo(ex.getDsType()), metrics));
-                }
+            }
+            events.add(createThresholdEvent(def, baseUei, true, useComputedExpression, graphs));
+            if (shouldAddRearm(def, g.getName())) {
+                events.add(createThresholdEvent(def, baseUei, false, useComputedExpression, graphs));
             }
         }
-        return events;
+    }
+
+    /**
+     * Creates a threshold event.
+     *
+     * @param def the base threshold definition
+     * @param baseUei the base UEI
+     * @param isExceeded true for the exceeded event, false for the rearmed event
+     * @param useComputedExpression true to use the computed threshold expression
+     * @param graphs the graph index
+     * @return the threshold event
+     */
+    private ThresholdEvent createThresholdEvent(Basethresholddef def, String baseUei, boolean isExceeded, boolean useComputedExpression, GraphIndex graphs) {
+        GenerationTracer.Span span = TRACER.startThresholdEvent(isExceeded ? def.getTriggeredUEI() : def.getRearmedUEI(), def.getType(), def.getDsType());
+        try {
+            return new ThresholdEvent(def, baseUei, isExceeded, useComputedExpression, getInstanceInfo(def.getDsType()), graphs, templates);
+        } finally {
+            span.end();
+        }
+    }
+
+    /**
+     * Gets the definitions of a group: the thresholds followed by the expressions.
+     *
+     * @param g the group
+     * @return the definitions
+     */
+    private List<Basethresholddef> getDefinitions(Group g) {
+        List<Basethresholddef> definitions = new ArrayList<Basethresholddef>(g.getThresholdCount() + g.getExpressionCount());
+        definitions.addAll(g.getThresholdCollection());
+        definitions.addAll(g.getExpressionCollection());
+        return definitions;
+    }
+
+    /**
+     * The Class DefinitionsTask.
+     * <p>Builds the threshold events of a range of definitions of a group, splitting the range when it is large.
+     * The events are returned on the order of the definitions, so the result is the same as the sequential one.</p>
+     */
+    private class DefinitionsTask extends RecursiveTask<List<ThresholdEvent>> {
+
+        /** The Constant serialVersionUID. */
+        private static final long serialVersionUID = 1L;
+
+        /** The group. */
+        private final Group group;
+
+        /** The definitions of the group. */
+        private final List<Basethresholddef> definitions;
+
+        /** The index of the first definition (inclusive). */
+        private final int from;
+
+        /** The index of the last definition (exclusive). */
+        private final int to;
+
+        /** The graph index. */
+        private final GraphIndex graphs;
+
+        /**
+         * Instantiates a new definitions task.
+         *
+         * @param group the group
+         * @param definitions the definitions of the group
+         * @param from the index of the first definition (inclusive)
+         * @param to the index of the last definition (exclusive)
+         * @param graphs the graph index
+         */
+        public DefinitionsTask(Group group, List<Basethresholddef> definitions, int from, int to, GraphIndex graphs) {
+            this.group = group;
+            this.definitions = definitions;
+            this.from = from;
+            this.to = to;
+            this.graphs = graphs;
+        }
+
+        /* (non-Javadoc)
+         * @see java.util.concurrent.RecursiveTask#compute()
+         */
+        @Override
+        protected List<ThresholdEvent> compute() {
+            List<ThresholdEvent> events = new ArrayList<ThresholdEvent>();
+            if (to - from <= MIN_DEFINITIONS_PER_TASK) {
+                addThresholdEvents(group, definitions, from, to, graphs, events);
+            } else {
+                int middle = (from + to) >>> 1;
+                DefinitionsTask left = new DefinitionsTask(group, definitions, from, middle, graphs);
+                left.fork();
+                List<ThresholdEvent> right = new DefinitionsTask(group, definitions, middle, to, graphs).compute();
+                events.addAll(left.join());
+                events.addAll(right);
+            }
+            return events;
+        }
+    }
+
+    /**
+     * Gets the graph index.
+     * <p>The index is kept with the graph templates, so it is reused while the same graph templates are used,
+     * even when the processor is shared by sessions with different graph templates.</p>
+     *
+     * @param metrics the graph templates (can be null)
+     * @return the graph index, or null if there are no graph templates
+     */
+    private GraphIndex getGraphIndex(GraphTemplates metrics) {
+        if (metrics == null) {
+            return null;
+        }
+        return metrics.getIndex(Boolean.parseBoolean(config.getProperty("graphLinkMatchResourceType", "false")));
     }
 
     /**
@@ -242,12 +607,7 @@ public class ThresholdEventProcessor {
      * @return the instance info
      */
     protected String getInstanceInfo(String uei) {
-        for (Entry<String,String> entry : instancesMap.entrySet()) {
-            if (uei.contains(entry.getKey())) {
-                return entry.getValue();
-            }
-        }
-        return ThresholdEvent.INSTANCE_INFO;
+        return instanceResolver.getInstanceInfo(uei);
     }
 
     /**
@@ -257,14 +617,7 @@ public class ThresholdEventProcessor {
      * @return the destination path
      */
     protected String getDestinationPath(String uei) {
-        for (Entry<String,String> entry : destinationsMap.entrySet()) {
-            Pattern p = Pattern.compile(entry.getKey());
-            Matcher m = p.matcher(uei);
-            if (m.matches()) {
-                return entry.getValue();
-            }
-        }
-        return "Email-Admin";
+        return destinationPathMatcher.getDestinationPath(uei);
     }
 
 }
@@ -0,0 +1,251 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2006-2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+package org.opennms.tools;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import org.apache.commons.lang.StringUtils;
+
+/**
+ * The Class ThresholdUei.
+ * <p>Token model of a threshold UEI, parsed once, following the recommended format:</p>
+ * <pre>
+ * {baseUei}/{serverType}/{metricType|purpose}/{thresholdType}/{severity}/{thresholdCondition}
+ * </pre>
+ * <p>The sections are classified by content rather than by position, as the order of the threshold type
+ * and the severity is not always the same. Sections that are neither a threshold type, a severity nor a
+ * condition are part of the purpose; when there are several of them, the first one is the server type.</p>
+ *
+ * @author <a href="mailto:agalue@opennms.org">Alejandro Galue</a>
+ */
+public class ThresholdUei {
+
+    /** The Constant THRESHOLD_TYPE. */
+    private static final Pattern THRESHOLD_TYPE = Pattern.compile("high|low|ac|rc|absolutechange|relativechange");
+
+    /** The Constant CONDITION. */
+    private static final Pattern CONDITION = Pattern.compile("exceed.+|rearm.+");
+
+    /** The Constant SEVERITIES. */
+    private static final String[] SEVERITIES = new String[] { "indeterminate", "cleared", "normal", "warning", "minor", "major", "critical" };
+
+    /** The UEI. */
+    private final String uei;
+
+    /** The sections of the UEI after the base UEI. */
+    private final List<String> sections;
+
+    /** The ignored flag of each section, regardless of the event severity. */
+    private final boolean[] ignored;
+
+    /** The server type. */
+    private String serverType;
+
+    /** The purpose. */
+    private final List<String> purpose = new ArrayList<String>();
+
+    /** The threshold type. */
+    private String thresholdType;
+
+    /** The severity. */
+    private String severity;
+
+    /** The threshold condition. */
+    private String condition;
+
+    /** The UEI mentions a minor severity. */
+    private boolean minor;
+
+    /** The UEI mentions a major severity. */
+    private boolean major;
+
+    /** The UEI mentions a critical severity. */
+    private boolean critical;
+
+    /**
+     * Instantiates a new threshold UEI.
+     *
+     * @param uei the UEI
+     * @param baseUei the base UEI
+     */
+    public ThresholdUei(String uei, String baseUei) {
+        this.uei = uei;
+        for (String token : uei.toLowerCase().split("/")) {
+            minor |= token.contains("minor");
+            major |= token.contains("major");
+            critical |= token.contains("critical");
+        }
+        String[] tokens = uei.replace(baseUei + '/', "").split("\\/");
+        sections = Collections.unmodifiableList(Arrays.asList(tokens));
+        ignored = new boolean[tokens.length];
+        List<String> others = new ArrayList<String>();
+        for (int i = 0; i < tokens.length; i++) {
+            String token = tokens[i].toLowerCase();
+            if (THRESHOLD_TYPE.matcher(token).matches()) {
+                ignored[i] = true;
+                thresholdType = thresholdType == null ? tokens[i] : thresholdType;
+            } else if (CONDITION.matcher(token).matches()) {
+                ignored[i] = true;
+                condition = condition == null ? tokens[i] : condition;
+            } else if (severity == null && isSeverity(token)) {
+                severity = tokens[i];
+            } else {
+                others.add(tokens[i]);
+            }
+        }
+        if (others.size() > 1) {
+            serverType = others.remove(0);
+        }
+        purpose.addAll(others);
+    }
+
+    /**
+     * Checks if a section is a severity.
+     *
+     * @param token the section in lower case
+     * @return true, if the section is the name of a severity
+     */
+    private static boolean isSeverity(String token) {
+        for (String s : SEVERITIES) {
+            if (s.equals(token)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Gets the event severity.
+     * <p>Rearmed events are always Normal. For exceeded events, minor takes precedence over major, and major
+     * over critical; Warning is used if none of them is mentioned on the UEI.</p>
+     *
+     * @param exceeded true for exceeded events, false for rearmed events
+     * @return the event severity
+     */
+    public String getEventSeverity(boolean exceeded) {
+        if (!exceeded) {
+            return "Normal";
+        }
+        if (minor) {
+            return "Minor";
+        }
+        if (major) {
+            return "Major";
+        }
+        if (critical) {
+            return "Critical";
+        }
+        return "Warning";
+    }
+
+    /**
+     * Gets the computed expression.
+     * <p>The computed expression contains the sections of the UEI except the threshold type, the condition,
+     * and the event severity, separated by dashes and in upper case.</p>
+     *
+     * @param eventSeverity the event severity
+     * @return the computed expression
+     */
+    public String getComputedExpression(String eventSeverity) {
+        List<String> elements = new ArrayList<String>();
+        for (int i = 0; i < ignored.length; i++) {
+            if (!ignored[i] && !sections.get(i).equalsIgnoreCase(eventSeverity)) {
+                elements.add(sections.get(i));
+            }
+        }
+        return StringUtils.join(elements, "-").toUpperCase();
+    }
+
+    /**
+     * Gets the UEI.
+     *
+     * @return the UEI
+     */
+    public String getUei() {
+        return uei;
+    }
+
+    /**
+     * Gets the sections of the UEI after the base UEI.
+     *
+     * @return the sections
+     */
+    public List<String> getSections() {
+        return sections;
+    }
+
+    /**
+     * Gets the server type.
+     *
+     * @return the server type, or null if the UEI doesn't have one
+     */
+    public String getServerType() {
+        return serverType;
+    }
+
+    /**
+     * Gets the purpose.
+     *
+     * @return the purpose sections
+     */
+    public List<String> getPurpose() {
+        return Collections.unmodifiableList(purpose);
+    }
+
+    /**
+     * Gets the threshold type.
+     *
+     * @return the threshold type, or null if the UEI doesn't have one
+     */
+    public String getThresholdType() {
+        return thresholdType;
+    }
+
+    /**
+     * Gets the severity.
+     *
+     * @return the severity section, or null if the UEI doesn't have one
+     */
+    public String getSeverity() {
+        return severity;
+    }
+
+    /**
+     * Gets the threshold condition.
+     *
+     * @return the threshold condition, or null if the UEI doesn't have one
+     */
+    public String getCondition() {
+        return condition;
+    }
+
+}
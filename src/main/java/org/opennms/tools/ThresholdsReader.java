@@ -0,0 +1,252 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2006-2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+package org.opennms.tools;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.exolab.castor.xml.ValidationException;
+import org.opennms.netmgt.config.threshd.Basethresholddef;
+import org.opennms.netmgt.config.threshd.Expression;
+import org.opennms.netmgt.config.threshd.Group;
+import org.opennms.netmgt.config.threshd.ResourceFilter;
+import org.opennms.netmgt.config.threshd.Threshold;
+
+/**
+ * The Class ThresholdsReader.
+ * <p>Streaming reader for thresholds.xml. Instead of unmarshalling the whole configuration with Castor,
+ * the file is parsed with StAX and each group (with its thresholds and expressions) is returned as soon
+ * as it has been read, so only one group is kept in memory at a time.</p>
+ * <p>When validation is enabled, it is performed per group through the Castor descriptors.</p>
+ *
+ * @author <a href="mailto:agalue@opennms.org">Alejandro Galue</a>
+ */
+public class ThresholdsReader implements Closeable {
+
+    /** The XML input factory. */
+    private static final XMLInputFactory FACTORY = XMLInputFactory.newInstance();
+
+    /** The Constant TRACER. */
+    private static final GenerationTracer TRACER = GenerationTracer.getInstance();
+
+    /** The source file. */
+    private File thresholdsFile;
+
+    /** The input stream. */
+    private InputStream input;
+
+    /** The XML stream reader. */
+    private XMLStreamReader reader;
+
+    /** The validate flag. */
+    private boolean validate;
+
+    /** The generation statistics. */
+    private GenerationStats stats = GenerationStats.DISABLED;
+
+    /**
+     * Instantiates a new thresholds reader.
+     *
+     * @param thresholdsFile the thresholds file
+     * @param validate true to validate each group after reading it
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public ThresholdsReader(File thresholdsFile, boolean validate) throws IOException {
+        if (!thresholdsFile.exists()) {
+            throw new FileNotFoundException(thresholdsFile.getAbsolutePath());
+        }
+        this.thresholdsFile = thresholdsFile;
+        this.validate = validate;
+        input = new BufferedInputStream(new FileInputStream(thresholdsFile));
+        try {
+            reader = FACTORY.createXMLStreamReader(input);
+        } catch (XMLStreamException e) {
+            close();
+            throw new IOException("Can't parse " + thresholdsFile, e);
+        }
+    }
+
+    /**
+     * Sets the generation statistics.
+     *
+     * @param stats the generation statistics
+     */
+    public void setStats(GenerationStats stats) {
+        this.stats = stats;
+    }
+
+    /**
+     * Reads the next group.
+     *
+     * @return the next group, or null if there are no more groups
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public Group read() throws IOException {
+        GenerationStats.Timer timer = stats.start(GenerationStats.THRESHOLDS_READ);
+        GenerationTracer.Span span = TRACER.startInputLoading(thresholdsFile.getPath());
+        String groupName = null;
+        try {
+            while (reader.hasNext()) {
+                if (reader.next() == XMLStreamConstants.START_ELEMENT && reader.getLocalName().equals("group")) {
+                    Group group = readGroup();
+                    if (validate) {
+                        group.validate();
+                    }
+                    stats.count(GenerationStats.GROUPS, 1);
+                    stats.count(GenerationStats.THRESHOLDS, group.getThresholdCount());
+                    stats.count(GenerationStats.EXPRESSIONS, group.getExpressionCount());
+                    groupName = group.getName();
+                    return group;
+                }
+            }
+            return null;
+        } catch (XMLStreamException e) {
+            throw new IOException("Can't parse " + thresholdsFile, e);
+        } catch (ValidationException e) {
+            throw new IOException("Invalid content on " + thresholdsFile + ": " + e.getMessage(), e);
+        } catch (NumberFormatException e) {
+            throw new IOException("Invalid numeric value on " + thresholdsFile + ": " + e.getMessage(), e);
+        } finally {
+            span.end(groupName);
+            timer.stop();
+        }
+    }
+
+    /**
+     * Reads a group.
+     * <p>The reader must be positioned on the start element of the group.</p>
+     *
+     * @return the group
+     * @throws XMLStreamException the XML stream exception
+     */
+    private Group readGroup() throws XMLStreamException {
+        Group group = new Group();
+        group.setName(getAttribute("name"));
+        group.setRrdRepository(getAttribute("rrdRepository"));
+        Basethresholddef current = null;
+        while (reader.hasNext()) {
+            int type = reader.next();
+            if (type == XMLStreamConstants.START_ELEMENT) {
+                String name = reader.getLocalName();
+                if (name.equals("threshold")) {
+                    Threshold t = new Threshold();
+                    t.setDsName(getAttribute("ds-name"));
+                    t.setDsLabel(getAttribute("ds-label"));
+                    readBaseDefinition(t);
+                    group.addThreshold(t);
+                    current = t;
+                } else if (name.equals("expression")) {
+                    Expression e = new Expression();
+                    e.setExpression(getAttribute("expression"));
+                    e.setDsLabel(getAttribute("ds-label"));
+                    readBaseDefinition(e);
+                    group.addExpression(e);
+                    current = e;
+                } else if (name.equals("resource-filter") && current != null) {
+                    ResourceFilter filter = new ResourceFilter();
+                    filter.setField(getAttribute("field"));
+                    filter.setContent(reader.getElementText());
+                    current.addResourceFilter(filter);
+                }
+            } else if (type == XMLStreamConstants.END_ELEMENT) {
+                String name = reader.getLocalName();
+                if (name.equals("group")) {
+                    break;
+                }
+                if (name.equals("threshold") || name.equals("expression")) {
+                    current = null;
+                }
+            }
+        }
+        return group;
+    }
+
+    /**
+     * Reads the attributes shared by thresholds and expressions.
+     *
+     * @param def the base threshold definition
+     */
+    private void readBaseDefinition(Basethresholddef def) {
+        def.setType(getAttribute("type"));
+        def.setDsType(getAttribute("ds-type"));
+        def.setDescription(getAttribute("description"));
+        def.setTriggeredUEI(getAttribute("triggeredUEI"));
+        def.setRearmedUEI(getAttribute("rearmedUEI"));
+        String value = getAttribute("value");
+        if (value != null) {
+            def.setValue(Double.parseDouble(value));
+        }
+        String rearm = getAttribute("rearm");
+        if (rearm != null) {
+            def.setRearm(Double.parseDouble(rearm));
+        }
+        String trigger = getAttribute("trigger");
+        if (trigger != null) {
+            def.setTrigger(Integer.parseInt(trigger));
+        }
+        String filterOperator = getAttribute("filterOperator");
+        if (filterOperator != null) {
+            def.setFilterOperator(filterOperator);
+        }
+    }
+
+    /**
+     * Gets the value of an attribute of the current element.
+     *
+     * @param name the attribute name
+     * @return the attribute value, or null if it doesn't exist
+     */
+    private String getAttribute(String name) {
+        return reader.getAttributeValue(null, name);
+    }
+
+    /* (non-Javadoc)
+     * @see java.io.Closeable#close()
+     */
+    public void close() throws IOException {
+        if (reader != null) {
+            try {
+                reader.close();
+            } catch (XMLStreamException e) {
+                // The underlying stream is closed below.
+            }
+        }
+        input.close();
+    }
+
+}
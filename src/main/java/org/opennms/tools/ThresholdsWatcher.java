@@ -0,0 +1,259 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2006-2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+package org.opennms.tools;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The Class ThresholdsWatcher.
+ * <p>Keeps the generator running, and regenerates the output files every time one of the inputs changes:
+ * thresholds.xml, snmp-graph.properties (and the files of its include directory), the configuration file,
+ * the event templates file and the template for notifications.xml.</p>
+ * <p>The event templates file and the include directory of snmp-graph.properties depend on the configuration, so the
+ * watched files are resolved again after every regeneration.</p>
+ * <p>Bursts of changes are grouped together: the files are regenerated only after no more changes have been
+ * detected during the quiet period. The session and its graph templates are kept in memory between runs.</p>
+ *
+ * @author <a href="mailto:agalue@opennms.org">Alejandro Galue</a>
+ */
+public class ThresholdsWatcher {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ThresholdsWatcher.class);
+
+    /** The Constant DEFAULT_QUIET_PERIOD (in milliseconds). */
+    public static final long DEFAULT_QUIET_PERIOD = 500;
+
+    /** The generation session. */
+    private GenerationSession session;
+
+    /** The configuration file (can be null). */
+    private File configFile;
+
+    /** The notifications template (can be null). */
+    private File notificationsTemplate;
+
+    /** The event templates file (can be null). */
+    private File templatesFile;
+
+    /** The quiet period in milliseconds. */
+    private long quietPeriod = DEFAULT_QUIET_PERIOD;
+
+    /** The watched files. */
+    private Set<Path> watchedFiles = new HashSet<Path>();
+
+    /** The watched directories (any change on their files is relevant). */
+    private Set<Path> watchedDirectories = new HashSet<Path>();
+
+    /** The watched directories registered on the watch service. */
+    private Set<Path> registeredDirectories = new HashSet<Path>();
+
+    /** The parent directories of the watched files registered on the watch service. */
+    private Set<Path> registeredParents = new HashSet<Path>();
+
+    /**
+     * Instantiates a new thresholds watcher.
+     *
+     * @param session the generation session
+     * @param configFile the configuration file (can be null)
+     * @param notificationsTemplate the notifications template (can be null)
+     */
+    public ThresholdsWatcher(GenerationSession session, File configFile, File notificationsTemplate) {
+        this.session = session;
+        this.configFile = configFile;
+        this.notificationsTemplate = notificationsTemplate;
+        resolveWatchedFiles();
+    }
+
+    /**
+     * Sets the quiet period.
+     *
+     * @param quietPeriod the quiet period in milliseconds
+     */
+    public void setQuietPeriod(long quietPeriod) {
+        this.quietPeriod = quietPeriod;
+    }
+
+    /**
+     * Generates the files, and then waits for changes on the input files to generate them again.
+     * <p>This method only returns when the thread is interrupted.</p>
+     *
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public void watch() throws IOException {
+        WatchService watchService = FileSystems.getDefault().newWatchService();
+        try {
+            registerDirectories(watchService);
+            regenerate(false);
+            System.out.println("Watching " + watchedFiles + (watchedDirectories.isEmpty() ? "" : " and " + watchedDirectories));
+            while (!Thread.currentThread().isInterrupted()) {
+                Set<Path> changes = new HashSet<Path>();
+                collectChanges(watchService.take(), changes);
+                if (changes.isEmpty()) {
+                    continue;
+                }
+                WatchKey key;
+                while ((key = watchService.poll(quietPeriod, TimeUnit.MILLISECONDS)) != null) {
+                    collectChanges(key, changes);
+                }
+                LOG.info("Detected changes on {}", changes);
+                regenerate(isChanged(configFile, changes) || isChanged(templatesFile, changes));
+                resolveWatchedFiles();
+                registerDirectories(watchService);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            watchService.close();
+        }
+    }
+
+    /**
+     * Regenerates the files.
+     * <p>Failures are reported, but they don't stop the watcher.</p>
+     *
+     * @param reloadConfig true to load the configuration file again
+     */
+    private void regenerate(boolean reloadConfig) {
+        long start = System.currentTimeMillis();
+        try {
+            if (reloadConfig) {
+                ThresholdEventProcessor eventProcessor = ConfigGenerator.createEventProcessor(configFile);
+                eventProcessor.setStats(session.getEventProcessor().getStats());
+                session.setEventProcessor(eventProcessor);
+            }
+            session.load();
+            session.generate(notificationsTemplate);
+            System.out.println("Files generated in " + (System.currentTimeMillis() - start) + " ms");
+        } catch (Exception e) {
+            System.err.println("Can't generate the files: " + e.getMessage());
+            LOG.error("Can't generate the files", e);
+        } finally {
+            session.getEventProcessor().getStats().report(System.out);
+        }
+    }
+
+    /**
+     * Resolves the watched files and directories from the current configuration.
+     */
+    private void resolveWatchedFiles() {
+        watchedFiles.clear();
+        File etc = new File(session.getOnmsHome(), "etc");
+        addWatchedFile(new File(etc, "thresholds.xml"));
+        addWatchedFile(new File(etc, "snmp-graph.properties"));
+        addWatchedFile(configFile);
+        addWatchedFile(notificationsTemplate);
+        templatesFile = session.getEventProcessor().getTemplatesFile();
+        addWatchedFile(templatesFile);
+        try {
+            File includeDir = new GraphTemplateLoader().getIncludeDirectory(new File(etc, "snmp-graph.properties"));
+            watchedDirectories.clear();
+            if (includeDir.isDirectory()) {
+                watchedDirectories.add(includeDir.getAbsoluteFile().toPath().normalize());
+            }
+        } catch (IOException e) {
+            LOG.warn("Can't resolve the include directory of snmp-graph.properties: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Registers the existing directories of the watched files that are not registered yet.
+     *
+     * @param watchService the watch service
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    private void registerDirectories(WatchService watchService) throws IOException {
+        for (Path dir : watchedDirectories) {
+            if (dir.toFile().isDirectory() && registeredDirectories.add(dir)) {
+                dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+            }
+        }
+        for (Path file : watchedFiles) {
+            Path dir = file.getParent();
+            if (dir.toFile().isDirectory() && !registeredDirectories.contains(dir) && registeredParents.add(dir)) {
+                dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+            }
+        }
+    }
+
+    /**
+     * Checks if a file has been changed.
+     *
+     * @param file the file (can be null)
+     * @param changes the changed files
+     * @return true, if the file has been changed
+     */
+    private boolean isChanged(File file, Set<Path> changes) {
+        return file != null && changes.contains(file.getAbsoluteFile().toPath().normalize());
+    }
+
+    /**
+     * Collects the changes on the watched files.
+     *
+     * @param key the watch key
+     * @param changes the changed files
+     */
+    private void collectChanges(WatchKey key, Set<Path> changes) {
+        Path dir = (Path) key.watchable();
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                changes.addAll(watchedFiles);
+                continue;
+            }
+            Path file = dir.resolve((Path) event.context());
+            if (watchedFiles.contains(file) || (watchedDirectories.contains(dir) && file.toString().endsWith(".properties"))) {
+                changes.add(file);
+            }
+        }
+        key.reset();
+    }
+
+    /**
+     * Adds a watched file.
+     *
+     * @param file the file (ignored if null)
+     */
+    private void addWatchedFile(File file) {
+        if (file != null) {
+            watchedFiles.add(file.getAbsoluteFile().toPath().normalize());
+        }
+    }
+
+}
@@ -0,0 +1,297 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2006-2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+package org.opennms.tools;
+
+import java.util.Collection;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * The Class JfrGenerationTracer.
+ * <p>Emits Java Flight Recorder events for the work of the generator. The events are only created when a recording
+ * with the event type enabled is active; otherwise the methods return a span that does nothing.</p>
+ * <p>The threshold event, expression and graph link events don't record stack traces, as they are emitted for each
+ * threshold definition. The allocations of each unit of work can be correlated with the JFR allocation samples
+ * through the thread and the time span of the events.</p>
+ * <p>This class is only built with the <code>jfr</code> Maven profile, as it requires JDK 8u262 or newer.</p>
+ *
+ * @author <a href="mailto:agalue@opennms.org">Alejandro Galue</a>
+ */
+public class JfrGenerationTracer extends GenerationTracer {
+
+    /** The Constant INPUT_LOADING. */
+    private static final EventType INPUT_LOADING = EventType.getEventType(InputLoadingEvent.class);
+
+    /** The Constant GROUP_GENERATION. */
+    private static final EventType GROUP_GENERATION = EventType.getEventType(GroupGenerationEvent.class);
+
+    /** The Constant THRESHOLD_EVENT. */
+    private static final EventType THRESHOLD_EVENT = EventType.getEventType(ThresholdEventConstructionEvent.class);
+
+    /** The Constant EXPRESSION_PARSING. */
+    private static final EventType EXPRESSION_PARSING = EventType.getEventType(ExpressionParsingEvent.class);
+
+    /** The Constant GRAPH_LINK_RESOLUTION. */
+    private static final EventType GRAPH_LINK_RESOLUTION = EventType.getEventType(GraphLinkResolutionEvent.class);
+
+    /** The Constant OUTPUT_WRITING. */
+    private static final EventType OUTPUT_WRITING = EventType.getEventType(OutputWritingEvent.class);
+
+    /* (non-Javadoc)
+     * @see org.opennms.tools.GenerationTracer#startInputLoading(java.lang.String)
+     */
+    @Override
+    public Span startInputLoading(String input) {
+        if (!INPUT_LOADING.isEnabled()) {
+            return NOOP;
+        }
+        InputLoadingEvent event = new InputLoadingEvent();
+        event.input = input;
+        return new EventSpan(event);
+    }
+
+    /* (non-Javadoc)
+     * @see org.opennms.tools.GenerationTracer#startGroupGeneration(java.lang.String, int)
+     */
+    @Override
+    public Span startGroupGeneration(String group, int definitions) {
+        if (!GROUP_GENERATION.isEnabled()) {
+            return NOOP;
+        }
+        GroupGenerationEvent event = new GroupGenerationEvent();
+        event.group = group;
+        event.definitions = definitions;
+        return new EventSpan(event);
+    }
+
+    /* (non-Javadoc)
+     * @see org.opennms.tools.GenerationTracer#startThresholdEvent(java.lang.String, java.lang.String, java.lang.String)
+     */
+    @Override
+    public Span startThresholdEvent(String uei, String type, String dsType) {
+        if (!THRESHOLD_EVENT.isEnabled()) {
+            return NOOP;
+        }
+        ThresholdEventConstructionEvent event = new ThresholdEventConstructionEvent();
+        event.uei = uei;
+        event.type = type;
+        event.dsType = dsType;
+        return new EventSpan(event);
+    }
+
+    /* (non-Javadoc)
+     * @see org.opennms.tools.GenerationTracer#startExpressionParsing(java.lang.String)
+     */
+    @Override
+    public Span startExpressionParsing(String expression) {
+        if (!EXPRESSION_PARSING.isEnabled()) {
+            return NOOP;
+        }
+        ExpressionParsingEvent event = new ExpressionParsingEvent();
+        event.expression = expression;
+        return new EventSpan(event);
+    }
+
+    /* (non-Javadoc)
+     * @see org.opennms.tools.GenerationTracer#startGraphLinkResolution(java.util.Collection, java.lang.String)
+     */
+    @Override
+    public Span startGraphLinkResolution(Collection<String> metrics, String dsType) {
+        if (!GRAPH_LINK_RESOLUTION.isEnabled()) {
+            return NOOP;
+        }
+        GraphLinkResolutionEvent event = new GraphLinkResolutionEvent();
+        event.metrics = String.valueOf(metrics);
+        event.dsType = dsType;
+        return new EventSpan(event);
+    }
+
+    /* (non-Javadoc)
+     * @see org.opennms.tools.GenerationTracer#startOutputWriting(java.lang.String)
+     */
+    @Override
+    public Span startOutputWriting(String output) {
+        if (!OUTPUT_WRITING.isEnabled()) {
+            return NOOP;
+        }
+        OutputWritingEvent event = new OutputWritingEvent();
+        event.output = output;
+        return new EventSpan(event);
+    }
+
+    /**
+     * The Class EventSpan.
+     * <p>A span backed by a JFR event, that is committed when the span ends.</p>
+     */
+    private static class EventSpan implements Span {
+
+        /** The event. */
+        private final GeneratorEvent event;
+
+        /**
+         * Instantiates a new event span, and begins the event.
+         *
+         * @param event the event
+         */
+        private EventSpan(GeneratorEvent event) {
+            this.event = event;
+            event.begin();
+        }
+
+        /* (non-Javadoc)
+         * @see org.opennms.tools.GenerationTracer.Span#end()
+         */
+        public void end() {
+            event.commit();
+        }
+
+        /* (non-Javadoc)
+         * @see org.opennms.tools.GenerationTracer.Span#end(java.lang.String)
+         */
+        public void end(String result) {
+            event.result = result;
+            event.commit();
+        }
+    }
+
+    /**
+     * The Class GeneratorEvent.
+     * <p>Base class of the events of the generator.</p>
+     */
+    @Category({ "OpenNMS", "Threshold Events Generator" })
+    abstract static class GeneratorEvent extends Event {
+
+        /** The result. */
+        @Label("Result")
+        String result;
+    }
+
+    /**
+     * The Class InputLoadingEvent.
+     */
+    @Name("org.opennms.tools.InputLoading")
+    @Label("Input Loading")
+    @Description("Reading of a group from thresholds.xml, a graph templates file or the notifications template")
+    static class InputLoadingEvent extends GeneratorEvent {
+
+        /** The input file. */
+        @Label("Input")
+        String input;
+    }
+
+    /**
+     * The Class GroupGenerationEvent.
+     */
+    @Name("org.opennms.tools.GroupGeneration")
+    @Label("Group Generation")
+    @Description("Generation of the events and notifications of a threshold group")
+    static class GroupGenerationEvent extends GeneratorEvent {
+
+        /** The group name. */
+        @Label("Group")
+        String group;
+
+        /** The number of threshold definitions. */
+        @Label("Definitions")
+        int definitions;
+    }
+
+    /**
+     * The Class ThresholdEventConstructionEvent.
+     */
+    @Name("org.opennms.tools.ThresholdEvent")
+    @Label("Threshold Event")
+    @Description("Construction of the event definition of a threshold")
+    @StackTrace(false)
+    static class ThresholdEventConstructionEvent extends GeneratorEvent {
+
+        /** The UEI. */
+        @Label("UEI")
+        String uei;
+
+        /** The threshold type. */
+        @Label("Threshold Type")
+        String type;
+
+        /** The resource type. */
+        @Label("Resource Type")
+        String dsType;
+    }
+
+    /**
+     * The Class ExpressionParsingEvent.
+     */
+    @Name("org.opennms.tools.ExpressionParsing")
+    @Label("Expression Parsing")
+    @Description("Parsing of a JEXL threshold expression; the result contains the datasources or the error")
+    @StackTrace(false)
+    static class ExpressionParsingEvent extends GeneratorEvent {
+
+        /** The expression. */
+        @Label("Expression")
+        String expression;
+    }
+
+    /**
+     * The Class GraphLinkResolutionEvent.
+     */
+    @Name("org.opennms.tools.GraphLinkResolution")
+    @Label("Graph Link Resolution")
+    @Description("Resolution of the graph templates of a threshold; the result contains the reports")
+    @StackTrace(false)
+    static class GraphLinkResolutionEvent extends GeneratorEvent {
+
+        /** The datasources. */
+        @Label("Datasources")
+        String metrics;
+
+        /** The resource type. */
+        @Label("Resource Type")
+        String dsType;
+    }
+
+    /**
+     * The Class OutputWritingEvent.
+     */
+    @Name("org.opennms.tools.OutputWriting")
+    @Label("Output Writing")
+    @Description("Marshalling of an output file; the result contains the status of the file")
+    static class OutputWritingEvent extends GeneratorEvent {
+
+        /** The output file. */
+        @Label("Output")
+        String output;
+    }
+
+}
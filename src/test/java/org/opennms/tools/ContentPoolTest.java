@@ -0,0 +1,88 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2006-2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+package org.opennms.tools;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * The Class ContentPoolTest.
+ * 
+ * @author <a href="mailto:agalue@opennms.org">Alejandro Galue</a>
+ */
+public class ContentPoolTest {
+
+    /**
+     * Test that equal content gets the same instance.
+     */
+    @Test
+    public void testCanonicalize() {
+        ContentPool pool = new ContentPool();
+        String first = new String("Threshold exceeded");
+        String second = new String("Threshold exceeded");
+        Assert.assertNotSame(first, second);
+        Assert.assertSame(first, pool.canonicalize(first));
+        Assert.assertSame(first, pool.canonicalize(second));
+        String other = new String("Threshold rearmed");
+        Assert.assertSame(other, pool.canonicalize(other));
+        Assert.assertEquals(2, pool.getSize());
+        Assert.assertEquals(3, pool.getRequests());
+    }
+
+    /**
+     * Test that null content is returned without being counted.
+     */
+    @Test
+    public void testNull() {
+        ContentPool pool = new ContentPool();
+        Assert.assertNull(pool.canonicalize(null));
+        Assert.assertEquals(0, pool.getSize());
+        Assert.assertEquals(0, pool.getRequests());
+        Assert.assertEquals(0, pool.getDedupRatio(), 0);
+        Assert.assertEquals(0, pool.getSavedBytes());
+    }
+
+    /**
+     * Test the deduplication ratio and the saved bytes.
+     */
+    @Test
+    public void testStatistics() {
+        ContentPool pool = new ContentPool();
+        pool.canonicalize(new String("abcd"));
+        pool.canonicalize(new String("abcd"));
+        pool.canonicalize(new String("xy"));
+        pool.canonicalize(new String("abcd"));
+        // 14 characters received, 6 of them unique
+        Assert.assertEquals(4, pool.getRequests());
+        Assert.assertEquals(2, pool.getSize());
+        Assert.assertEquals(8.0 / 14, pool.getDedupRatio(), 1e-9);
+        Assert.assertEquals(16, pool.getSavedBytes());
+        Assert.assertTrue(pool.toString().startsWith("4 strings, 2 unique ("));
+    }
+
+}
@@ -0,0 +1,101 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2006-2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+package org.opennms.tools;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * The Class DestinationPathMatcherTest.
+ * 
+ * @author <a href="mailto:agalue@opennms.org">Alejandro Galue</a>
+ */
+public class DestinationPathMatcherTest {
+
+    /**
+     * Test the priority of the rules.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void testPriority() throws Exception {
+        Map<String,String> rules = new LinkedHashMap<String,String>();
+        rules.put(".*/(high|low)/if/.*", "Network-Team");
+        rules.put(".*/windows/.*", "Windows-Team");
+        rules.put(".*/high/.*", "Ops-Team");
+        DestinationPathMatcher matcher = new DestinationPathMatcher(rules, DestinationPathMatcher.DEFAULT_DESTINATION_PATH);
+        Assert.assertEquals("Network-Team", matcher.getDestinationPath("uei.opennms.org/threshold/high/if/ifInOctets/exceeded"));
+        Assert.assertEquals("Windows-Team", matcher.getDestinationPath("uei.opennms.org/threshold/windows/high/cpu/exceeded"));
+        Assert.assertEquals("Ops-Team", matcher.getDestinationPath("uei.opennms.org/threshold/high/node/load/exceeded"));
+        Assert.assertEquals("Email-Admin", matcher.getDestinationPath("uei.opennms.org/threshold/low/node/load/exceeded"));
+    }
+
+    /**
+     * Test rules with back references.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void testBackReferences() throws Exception {
+        Map<String,String> rules = new LinkedHashMap<String,String>();
+        rules.put("[(", "Invalid");
+        rules.put(".*/(\\w+)/\\1/.*", "Repeated");
+        rules.put(".*", "Everything");
+        DestinationPathMatcher matcher = new DestinationPathMatcher(rules, DestinationPathMatcher.DEFAULT_DESTINATION_PATH);
+        Assert.assertEquals("Repeated", matcher.getDestinationPath("uei.opennms.org/threshold/cpu/cpu/exceeded"));
+        Assert.assertEquals("Everything", matcher.getDestinationPath("uei.opennms.org/threshold/cpu/exceeded"));
+    }
+
+    /**
+     * Test rules that are valid alone, but can't be merged.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void testUnmergeableRules() throws Exception {
+        Map<String,String> rules = new LinkedHashMap<String,String>();
+        rules.put(".*/(?<type>high)/if/.*", "Network-Team");
+        rules.put(".*/(?<type>low)/.*", "Ops-Team");
+        DestinationPathMatcher matcher = new DestinationPathMatcher(rules, DestinationPathMatcher.DEFAULT_DESTINATION_PATH);
+        Assert.assertEquals("Network-Team", matcher.getDestinationPath("uei.opennms.org/threshold/high/if/ifInOctets/exceeded"));
+        Assert.assertEquals("Ops-Team", matcher.getDestinationPath("uei.opennms.org/threshold/low/node/load/exceeded"));
+        Assert.assertEquals("Email-Admin", matcher.getDestinationPath("uei.opennms.org/threshold/high/node/load/exceeded"));
+
+        rules = new LinkedHashMap<String,String>();
+        rules.put("(?x) .*/windows/.*  # Windows servers", "Windows-Team");
+        rules.put(".*/high/.*", "Ops-Team");
+        matcher = new DestinationPathMatcher(rules, DestinationPathMatcher.DEFAULT_DESTINATION_PATH);
+        Assert.assertEquals("Windows-Team", matcher.getDestinationPath("uei.opennms.org/threshold/windows/high/cpu/exceeded"));
+        Assert.assertEquals("Ops-Team", matcher.getDestinationPath("uei.opennms.org/threshold/high/node/load/exceeded"));
+        Assert.assertEquals("Email-Admin", matcher.getDestinationPath("uei.opennms.org/threshold/low/node/load/exceeded"));
+    }
+
+}
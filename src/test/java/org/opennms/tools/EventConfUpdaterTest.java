@@ -0,0 +1,131 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2006-2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+package org.opennms.tools;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * The Class EventConfUpdaterTest.
+ * 
+ * @author <a href="mailto:agalue@opennms.org">Alejandro Galue</a>
+ */
+public class EventConfUpdaterTest {
+
+    /** The eventconf.xml file. */
+    private File eventConfFile = new File("target/eventconf-updater-test/eventconf.xml");
+
+    /**
+     * Set up the test.
+     *
+     * @throws Exception the exception
+     */
+    @Before
+    public void setUp() throws Exception {
+        FileUtils.deleteDirectory(eventConfFile.getParentFile());
+        eventConfFile.getParentFile().mkdirs();
+        FileUtils.writeStringToFile(eventConfFile, "<events xmlns=\"http://xmlns.opennms.org/xsd/eventconf\">\n"
+                + "  <global/>\n"
+                + "  <event-file>events/opennms.snmp.trap.translator.events.xml</event-file>\n"
+                + "  <event-file>events/Thresholds-Categorized.events.xml</event-file>\n"
+                + "  <!-- Catch-all events -->\n"
+                + "  <event-file>events/opennms.catch-all.events.xml</event-file>\n"
+                + "</events>\n", "UTF-8");
+    }
+
+    /**
+     * Test the replacement of the entries.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void testUpdate() throws Exception {
+        EventConfUpdater updater = new EventConfUpdater(eventConfFile);
+        Assert.assertEquals(OutputFile.Status.UPDATED, updater.update(Arrays.asList(EventsSharding.getFileName("linux"), EventsSharding.getFileName("windows"))));
+        Assert.assertEquals("<events xmlns=\"http://xmlns.opennms.org/xsd/eventconf\">\n"
+                + "  <global/>\n"
+                + "  <event-file>events/opennms.snmp.trap.translator.events.xml</event-file>\n"
+                + "  <event-file>events/Thresholds-Categorized.linux.events.xml</event-file>\n"
+                + "  <event-file>events/Thresholds-Categorized.windows.events.xml</event-file>\n"
+                + "  <!-- Catch-all events -->\n"
+                + "  <event-file>events/opennms.catch-all.events.xml</event-file>\n"
+                + "</events>\n", FileUtils.readFileToString(eventConfFile, "UTF-8"));
+        Assert.assertEquals(OutputFile.Status.UNCHANGED, updater.update(Arrays.asList(EventsSharding.getFileName("linux"), EventsSharding.getFileName("windows"))));
+        Assert.assertEquals(OutputFile.Status.UPDATED, updater.update(Collections.singletonList(EventsGenerator.EVENTS_FILENAME)));
+        String content = FileUtils.readFileToString(eventConfFile, "UTF-8");
+        Assert.assertTrue(content.contains("  <event-file>events/Thresholds-Categorized.events.xml</event-file>\n  <!-- Catch-all events -->"));
+        Assert.assertFalse(content.contains("linux"));
+    }
+
+    /**
+     * Test the registration when there are no entries for the generated files.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void testRegister() throws Exception {
+        FileUtils.writeStringToFile(eventConfFile, "<events>\n  <global/>\n  <event-file>events/a.events.xml</event-file>\n</events>\n", "UTF-8");
+        new EventConfUpdater(eventConfFile).update(Collections.singletonList(EventsGenerator.EVENTS_FILENAME));
+        Assert.assertEquals("<events>\n  <global/>\n"
+                + "  <event-file>events/Thresholds-Categorized.events.xml</event-file>\n"
+                + "  <event-file>events/a.events.xml</event-file>\n</events>\n", FileUtils.readFileToString(eventConfFile, "UTF-8"));
+    }
+
+    /**
+     * Test that the commented entries are ignored.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void testCommentedEntries() throws Exception {
+        FileUtils.writeStringToFile(eventConfFile, "<events>\n  <global/>\n"
+                + "  <!-- <event-file>events/Thresholds-Categorized.events.xml</event-file> -->\n"
+                + "  <event-file>events/Thresholds-Categorized.events.xml</event-file>\n"
+                + "  <event-file>events/a.events.xml</event-file>\n</events>\n", "UTF-8");
+        new EventConfUpdater(eventConfFile).update(Collections.singletonList(EventsSharding.getFileName("linux")));
+        Assert.assertEquals("<events>\n  <global/>\n"
+                + "  <!-- <event-file>events/Thresholds-Categorized.events.xml</event-file> -->\n"
+                + "  <event-file>events/Thresholds-Categorized.linux.events.xml</event-file>\n"
+                + "  <event-file>events/a.events.xml</event-file>\n</events>\n", FileUtils.readFileToString(eventConfFile, "UTF-8"));
+        FileUtils.writeStringToFile(eventConfFile, "<events>\n  <global/>\n"
+                + "  <!--\n  <event-file>events/Thresholds-Categorized.events.xml</event-file>\n  -->\n"
+                + "  <event-file>events/a.events.xml</event-file>\n</events>\n", "UTF-8");
+        new EventConfUpdater(eventConfFile).update(Collections.singletonList(EventsGenerator.EVENTS_FILENAME));
+        Assert.assertEquals("<events>\n  <global/>\n"
+                + "  <!--\n  <event-file>events/Thresholds-Categorized.events.xml</event-file>\n  -->\n"
+                + "  <event-file>events/Thresholds-Categorized.events.xml</event-file>\n"
+                + "  <event-file>events/a.events.xml</event-file>\n</events>\n", FileUtils.readFileToString(eventConfFile, "UTF-8"));
+    }
+
+}
@@ -0,0 +1,105 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2006-2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+package org.opennms.tools;
+
+import java.io.File;
+import java.io.FileWriter;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * The Class EventTemplatesTest.
+ * 
+ * @author <a href="mailto:agalue@opennms.org">Alejandro Galue</a>
+ */
+public class EventTemplatesTest {
+
+    /**
+     * Test the default templates.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void testDefaultTemplates() throws Exception {
+        EventTemplates templates = new EventTemplates();
+        String[] values = createValues();
+        Assert.assertEquals("User-defined custom high threshold exceeded event for apc-ups-load [Major]", templates.getTemplate(EventTemplates.LABEL, "high", true).render(values));
+        Assert.assertEquals("User-defined custom high threshold exceeded event for apc-ups-load", templates.getTemplate(EventTemplates.LABEL, "high", false).render(values));
+        Assert.assertEquals("<b><a href='graph/results.htm'>APC-UPS-LOAD</b></a> High threshold <b>%parm[threshold]%</b> exceeded with <font color=#cc0000><b>%parm[value]%</b></font>, on instance <b>%parm[label]%</b>, for metric %parm[ds]%, on node %nodelabel%.",
+                templates.getTemplate(EventTemplates.LOG_MESSAGE, "high", true).render(values));
+        values[EventTemplates.Variable.INSTANCE.ordinal()] = null;
+        Assert.assertEquals("<b><a href='graph/results.htm'>APC-UPS-LOAD</b></a> High threshold <b>%parm[threshold]%</b> exceeded changed from %parm[previousValue]% to <font color=#4e9a06><b>%parm[value]%</b></font>, for metric %parm[ds]%, on node %nodelabel%.",
+                templates.getTemplate(EventTemplates.LOG_MESSAGE, "relativeChange", false).render(values));
+        Assert.assertTrue(templates.getTemplate(EventTemplates.DESCRIPTION, "relativeChange", true).render(values).contains("Multiplier (Threshold Value)"));
+    }
+
+    /**
+     * Test custom templates.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void testCustomTemplates() throws Exception {
+        File file = new File("target/custom-event-templates.xml");
+        FileWriter writer = new FileWriter(file);
+        writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        writer.write("<!DOCTYPE properties SYSTEM \"http://java.sun.com/dtd/properties.dtd\">\n");
+        writer.write("<properties>\n");
+        writer.write("  <entry key=\"label.low\">${expression} is too low[[ (${description})]]</entry>\n");
+        writer.write("</properties>\n");
+        writer.close();
+        EventTemplates templates = new EventTemplates(file);
+        String[] values = createValues();
+        Assert.assertEquals("APC-UPS-LOAD is too low", templates.getTemplate(EventTemplates.LABEL, "low", true).render(values));
+        values[EventTemplates.Variable.DESCRIPTION.ordinal()] = "UPS Load";
+        Assert.assertEquals("APC-UPS-LOAD is too low (UPS Load)", templates.getTemplate(EventTemplates.LABEL, "low", false).render(values));
+        Assert.assertEquals("User-defined custom high threshold exceeded event for apc-ups-load [Major]", templates.getTemplate(EventTemplates.LABEL, "high", true).render(values));
+        file.delete();
+    }
+
+    /**
+     * Creates the values of the variables.
+     *
+     * @return the values
+     */
+    private String[] createValues() {
+        String[] values = new String[EventTemplates.Variable.values().length];
+        values[EventTemplates.Variable.THRESHOLD_NAME.ordinal()] = "High";
+        values[EventTemplates.Variable.THRESHOLD_NAME_LOWER.ordinal()] = "high";
+        values[EventTemplates.Variable.THRESHOLD_PARAM.ordinal()] = "%parm[threshold]%";
+        values[EventTemplates.Variable.CONDITION.ordinal()] = "exceeded";
+        values[EventTemplates.Variable.EXPRESSION.ordinal()] = "APC-UPS-LOAD";
+        values[EventTemplates.Variable.EXPRESSION_LOWER.ordinal()] = "apc-ups-load";
+        values[EventTemplates.Variable.SEVERITY.ordinal()] = "Major";
+        values[EventTemplates.Variable.GRAPH_LINK.ordinal()] = "graph/results.htm";
+        values[EventTemplates.Variable.INSTANCE.ordinal()] = ThresholdEvent.INSTANCE_INFO;
+        return values;
+    }
+
+}
@@ -28,6 +28,7 @@
 package org.opennms.tools;
 
 import java.io.File;
+import java.util.List;
 
 import org.apache.commons.io.FileUtils;
 import org.junit.After;
@@ -122,6 +123,74 @@ public class EventsGeneratorTest {
         Assert.assertTrue(e.getLogmsg().getContent().contains("changed from"));
     }
 
+    /**
+     * Test the removal of the shards that are no longer generated.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void testSharding() throws Exception {
+        File onmsHome = new File(System.getProperty("opennms.home"));
+        File eventsDir = new File(onmsHome, "etc/events");
+        File shardsFile = new File(onmsHome, "etc/" + EventsSharding.SHARDS_FILENAME);
+        EventsGenerator generator = new EventsGenerator(new ThresholdEventProcessor());
+        generator.generateThresholdEvents(onmsHome);
+        Assert.assertTrue(new File(eventsDir, EventsGenerator.EVENTS_FILENAME).exists());
+        Assert.assertFalse(shardsFile.exists());
+
+        File custom = new File(eventsDir, EventsSharding.getFileName("custom"));
+        FileUtils.writeStringToFile(custom, "<events/>\n", "UTF-8");
+        generator.setSharding(EventsSharding.parse("prefix"));
+        generator.generateThresholdEvents(onmsHome);
+        Assert.assertFalse(new File(eventsDir, EventsGenerator.EVENTS_FILENAME).exists());
+        List<String> prefixShards = FileUtils.readLines(shardsFile, "UTF-8");
+        Assert.assertFalse(prefixShards.isEmpty());
+        for (String name : prefixShards) {
+            Assert.assertTrue(new File(eventsDir, name).exists());
+        }
+
+        generator.setSharding(EventsSharding.parse("size:1000000"));
+        generator.generateThresholdEvents(onmsHome);
+        List<String> sizeShards = FileUtils.readLines(shardsFile, "UTF-8");
+        for (String name : prefixShards) {
+            Assert.assertEquals(sizeShards.contains(name), new File(eventsDir, name).exists());
+        }
+        Assert.assertTrue(custom.exists());
+    }
+
+    /**
+     * Test a run without sharding after a sharded run.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void testShardingDisabled() throws Exception {
+        File onmsHome = new File(System.getProperty("opennms.home"));
+        File eventsDir = new File(onmsHome, "etc/events");
+        File shardsFile = new File(onmsHome, "etc/" + EventsSharding.SHARDS_FILENAME);
+        File eventConfFile = new File(onmsHome, "etc/eventconf.xml");
+        FileUtils.writeStringToFile(eventConfFile, "<events>\n  <global/>\n"
+                + "  <event-file>events/" + EventsGenerator.EVENTS_FILENAME + "</event-file>\n"
+                + "  <event-file>events/a.events.xml</event-file>\n</events>\n", "UTF-8");
+
+        EventsGenerator generator = new EventsGenerator(new ThresholdEventProcessor());
+        generator.setSharding(EventsSharding.parse("prefix"));
+        generator.generateThresholdEvents(onmsHome);
+        List<String> shards = FileUtils.readLines(shardsFile, "UTF-8");
+        Assert.assertFalse(FileUtils.readFileToString(eventConfFile, "UTF-8").contains(EventsGenerator.EVENTS_FILENAME));
+
+        generator.setSharding(null);
+        generator.generateThresholdEvents(onmsHome);
+        Assert.assertTrue(new File(eventsDir, EventsGenerator.EVENTS_FILENAME).exists());
+        for (String name : shards) {
+            Assert.assertFalse(new File(eventsDir, name).exists());
+        }
+        Assert.assertFalse(shardsFile.exists());
+        Assert.assertEquals("<events>\n  <global/>\n"
+                + "  <event-file>events/" + EventsGenerator.EVENTS_FILENAME + "</event-file>\n"
+                + "  <event-file>events/a.events.xml</event-file>\n</events>\n", FileUtils.readFileToString(eventConfFile, "UTF-8"));
+    }
+
     /**
      * Find event.
      *
@@ -0,0 +1,230 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2006-2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+package org.opennms.tools;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.opennms.core.test.MockLogAppender;
+import org.opennms.netmgt.xml.eventconf.Event;
+
+/**
+ * The Class EventsMergerTest.
+ * 
+ * @author <a href="mailto:agalue@opennms.org">Alejandro Galue</a>
+ */
+public class EventsMergerTest {
+
+    /** The existing events file. */
+    private File existingFile = new File("target/events-merger/existing.events.xml");
+
+    /** The merged events file. */
+    private File mergedFile = new File("target/events-merger/merged.events.xml");
+
+    /**
+     * Set up the test.
+     *
+     * @throws Exception the exception
+     */
+    @Before
+    public void setUp() throws Exception {
+        MockLogAppender.setupLogging();
+        File dir = existingFile.getParentFile();
+        if (dir.exists()) {
+            FileUtils.deleteDirectory(dir);
+        }
+        dir.mkdirs();
+        EventsWriter writer = new EventsWriter(new FileOutputStream(existingFile));
+        try {
+            writer.write(createEvent("uei.opennms.org/custom/manual", "Manual"));
+            writer.write(createEvent("uei.opennms.org/threshold/cpu/exceeded", "Customized"));
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * Tears down the test.
+     *
+     * @throws Exception the exception
+     */
+    @After
+    public void tearDown() throws Exception {
+        MockLogAppender.assertNoWarningsOrGreater();
+    }
+
+    /**
+     * Test the preserve policy.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void testPreserve() throws Exception {
+        EventsMerger merger = merge(EventsMerger.Policy.PRESERVE);
+        Assert.assertEquals(1, merger.getKept());
+        Assert.assertEquals(1, merger.getPreserved());
+        Assert.assertEquals(0, merger.getReplaced());
+        Assert.assertEquals(1, merger.getAdded());
+
+        List<Event> events = readEvents(mergedFile);
+        Assert.assertEquals(3, events.size());
+        Assert.assertEquals("uei.opennms.org/custom/manual", events.get(0).getUei());
+        Assert.assertEquals("uei.opennms.org/threshold/cpu/exceeded", events.get(1).getUei());
+        Assert.assertEquals("Customized", events.get(1).getEventLabel());
+        Assert.assertEquals("uei.opennms.org/threshold/cpu/rearmed", events.get(2).getUei());
+    }
+
+    /**
+     * Test the replace policy.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void testReplace() throws Exception {
+        EventsMerger merger = merge(EventsMerger.Policy.REPLACE);
+        Assert.assertEquals(1, merger.getKept());
+        Assert.assertEquals(0, merger.getPreserved());
+        Assert.assertEquals(1, merger.getReplaced());
+        Assert.assertEquals(1, merger.getAdded());
+
+        List<Event> events = readEvents(mergedFile);
+        Assert.assertEquals(3, events.size());
+        Assert.assertEquals("uei.opennms.org/custom/manual", events.get(0).getUei());
+        Assert.assertEquals("Manual", events.get(0).getEventLabel());
+        Assert.assertEquals("uei.opennms.org/threshold/cpu/exceeded", events.get(1).getUei());
+        Assert.assertEquals("Generated", events.get(1).getEventLabel());
+        Assert.assertEquals("uei.opennms.org/threshold/cpu/rearmed", events.get(2).getUei());
+    }
+
+    /**
+     * Test that the content other than the events is kept.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void testOtherContent() throws Exception {
+        FileUtils.writeStringToFile(existingFile, "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                + "<events xmlns=\"" + EventsWriter.NAMESPACE + "\">\n"
+                + "  <global>\n    <security>\n      <doNotOverride>logmsg</doNotOverride>\n    </security>\n  </global>\n"
+                + "  <!-- Manual events -->\n"
+                + "  <event>\n    <uei>uei.opennms.org/custom/manual</uei>\n    <event-label>Manual</event-label>\n    <severity>Warning</severity>\n  </event>\n"
+                + "  <event-file>events/custom.events.xml</event-file>\n"
+                + "</events>\n", "UTF-8");
+        EventsMerger merger = merge(EventsMerger.Policy.PRESERVE);
+        Assert.assertEquals(1, merger.getKept());
+        Assert.assertEquals(2, merger.getAdded());
+
+        String content = FileUtils.readFileToString(mergedFile, "UTF-8");
+        Assert.assertTrue(content.contains("\n    <global>\n        <security>\n            <doNotOverride>logmsg</doNotOverride>\n"
+                + "        </security>\n    </global>\n    <!-- Manual events -->\n"));
+        Assert.assertTrue(content.indexOf("<!-- Manual events -->") < content.indexOf("uei.opennms.org/custom/manual"));
+        Assert.assertTrue(content.indexOf("uei.opennms.org/threshold/cpu/rearmed") < content.indexOf("<event-file>"));
+        Assert.assertTrue(content.endsWith("\n    <event-file>events/custom.events.xml</event-file>\n</events>\n"));
+    }
+
+    /**
+     * Test the policy parser.
+     */
+    @Test
+    public void testParsePolicy() {
+        Assert.assertEquals(EventsMerger.Policy.PRESERVE, EventsMerger.Policy.parse("preserve"));
+        Assert.assertEquals(EventsMerger.Policy.REPLACE, EventsMerger.Policy.parse(" Replace "));
+        try {
+            EventsMerger.Policy.parse("append");
+            Assert.fail("The policy should be rejected");
+        } catch (IllegalArgumentException e) {
+            Assert.assertTrue(e.getMessage().contains("append"));
+        }
+    }
+
+    /**
+     * Merges the generated events into the existing file.
+     *
+     * @param policy the merge policy
+     * @return the events merger
+     * @throws Exception the exception
+     */
+    private EventsMerger merge(EventsMerger.Policy policy) throws Exception {
+        List<Event> generated = Arrays.asList(
+                createEvent("uei.opennms.org/threshold/cpu/exceeded", "Generated"),
+                createEvent("uei.opennms.org/threshold/cpu/rearmed", "Generated"));
+        EventsMerger merger = new EventsMerger(policy);
+        EventsWriter writer = new EventsWriter(new FileOutputStream(mergedFile));
+        try {
+            merger.merge(existingFile, generated, writer);
+        } finally {
+            writer.close();
+        }
+        return merger;
+    }
+
+    /**
+     * Reads the events of a file.
+     *
+     * @param file the events file
+     * @return the events
+     * @throws Exception the exception
+     */
+    private List<Event> readEvents(File file) throws Exception {
+        List<Event> events = new ArrayList<Event>();
+        EventsReader reader = new EventsReader(file);
+        try {
+            Event e;
+            while ((e = reader.read()) != null) {
+                events.add(e);
+            }
+        } finally {
+            reader.close();
+        }
+        return events;
+    }
+
+    /**
+     * Creates an event.
+     *
+     * @param uei the UEI
+     * @param label the event label
+     * @return the event
+     */
+    private Event createEvent(String uei, String label) {
+        Event e = new Event();
+        e.setUei(uei);
+        e.setEventLabel(label);
+        e.setSeverity("Warning");
+        return e;
+    }
+
+}
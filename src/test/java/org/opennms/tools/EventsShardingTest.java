@@ -0,0 +1,175 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2006-2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+package org.opennms.tools;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.opennms.netmgt.xml.eventconf.Event;
+
+/**
+ * The Class EventsShardingTest.
+ * 
+ * @author <a href="mailto:agalue@opennms.org">Alejandro Galue</a>
+ */
+public class EventsShardingTest {
+
+    /** The events, sorted by UEI. */
+    private List<Event> events = createEvents(
+            "uei.mycompany.com/custom/exceeded",
+            "uei.opennms.org/threshold/linux/cpu/high/exceeded",
+            "uei.opennms.org/threshold/linux/cpu/high/rearmed",
+            "uei.opennms.org/threshold/windows/disk/low/exceeded");
+
+    /**
+     * Test sharding by group.
+     */
+    @Test
+    public void testGroup() {
+        SortedMap<String,List<Event>> shards = EventsSharding.parse("group").split(events, ThresholdEvent.BASE_UEI,
+                Collections.singletonMap("uei.opennms.org/threshold/windows/disk/low/exceeded", "windows disk"));
+        Assert.assertEquals(2, shards.size());
+        Assert.assertEquals(3, shards.get(EventsSharding.DEFAULT_SHARD).size());
+        Assert.assertEquals(1, shards.get("windows_disk").size());
+    }
+
+    /**
+     * Test sharding by UEI prefix.
+     */
+    @Test
+    public void testPrefix() {
+        SortedMap<String,List<Event>> shards = EventsSharding.parse("prefix").split(events, ThresholdEvent.BASE_UEI, null);
+        Assert.assertEquals(3, shards.size());
+        Assert.assertEquals(1, shards.get(EventsSharding.OTHER_SHARD).size());
+        Assert.assertEquals(2, shards.get("linux").size());
+        Assert.assertEquals("uei.opennms.org/threshold/linux/cpu/high/exceeded", shards.get("linux").get(0).getUei());
+        Assert.assertEquals(1, shards.get("windows").size());
+    }
+
+    /**
+     * Test sharding by size.
+     */
+    @Test
+    public void testSize() {
+        SortedMap<String,List<Event>> shards = EventsSharding.parse("size:3").split(events, ThresholdEvent.BASE_UEI, null);
+        Assert.assertEquals(2, shards.size());
+        Assert.assertEquals(3, shards.get("001").size());
+        Assert.assertEquals(1, shards.get("002").size());
+        Assert.assertEquals("uei.opennms.org/threshold/windows/disk/low/exceeded", shards.get("002").get(0).getUei());
+    }
+
+    /**
+     * Test that the names of the size shards keep their order past 999 shards.
+     */
+    @Test
+    public void testSizeWidth() {
+        List<Event> many = new ArrayList<Event>();
+        for (int i = 0; i < 1001; i++) {
+            many.addAll(createEvents(String.format("uei.opennms.org/threshold/linux/metric%04d/high/exceeded", i)));
+        }
+        SortedMap<String,List<Event>> shards = EventsSharding.parse("size:1").split(many, ThresholdEvent.BASE_UEI, null);
+        Assert.assertEquals(1001, shards.size());
+        Assert.assertEquals("0001", shards.firstKey());
+        Assert.assertEquals("1001", shards.lastKey());
+        List<Event> sorted = new ArrayList<Event>();
+        for (List<Event> list : shards.values()) {
+            sorted.addAll(list);
+        }
+        Assert.assertEquals(many, sorted);
+    }
+
+    /**
+     * Test that the names that are the same once sanitized are made unique.
+     */
+    @Test
+    public void testNameCollisions() {
+        Map<String,String> groupNames = new HashMap<String,String>();
+        groupNames.put("uei.opennms.org/threshold/linux/cpu/high/exceeded", "a.b");
+        groupNames.put("uei.opennms.org/threshold/linux/cpu/high/rearmed", "a/b");
+        groupNames.put("uei.opennms.org/threshold/windows/disk/low/exceeded", "a_b");
+        SortedMap<String,List<Event>> shards = EventsSharding.parse("group").split(events, ThresholdEvent.BASE_UEI, groupNames);
+        Assert.assertEquals(4, shards.size());
+        Assert.assertEquals("uei.opennms.org/threshold/windows/disk/low/exceeded", shards.get("a_b").get(0).getUei());
+        int renamed = 0;
+        for (String name : shards.keySet()) {
+            if (name.matches("a_b-[0-9a-f]{8}")) {
+                Assert.assertEquals(1, shards.get(name).size());
+                renamed++;
+            }
+        }
+        Assert.assertEquals(2, renamed);
+    }
+
+    /**
+     * Test the file names of the shards.
+     */
+    @Test
+    public void testFileNames() {
+        Assert.assertEquals("Thresholds-Categorized.linux.events.xml", EventsSharding.getFileName("linux"));
+        Assert.assertTrue(EventsSharding.isShardFile("Thresholds-Categorized.linux.events.xml"));
+        Assert.assertFalse(EventsSharding.isShardFile(EventsGenerator.EVENTS_FILENAME));
+    }
+
+    /**
+     * Test the rejection of invalid specifications.
+     */
+    @Test
+    public void testParse() {
+        for (String spec : new String[] { "metric", "size:", "size:0", "size:many" }) {
+            try {
+                EventsSharding.parse(spec);
+                Assert.fail("The sharding " + spec + " should be rejected");
+            } catch (IllegalArgumentException e) {
+                // Expected
+            }
+        }
+    }
+
+    /**
+     * Creates the events.
+     *
+     * @param ueis the UEIs
+     * @return the events
+     */
+    private static List<Event> createEvents(String... ueis) {
+        List<Event> events = new ArrayList<Event>();
+        for (String uei : ueis) {
+            Event e = new Event();
+            e.setUei(uei);
+            events.add(e);
+        }
+        return events;
+    }
+
+}
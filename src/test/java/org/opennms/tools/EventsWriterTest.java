@@ -0,0 +1,110 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2006-2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+package org.opennms.tools;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.opennms.netmgt.xml.eventconf.Event;
+
+/**
+ * The Class EventsWriterTest.
+ * 
+ * @author <a href="mailto:agalue@opennms.org">Alejandro Galue</a>
+ */
+public class EventsWriterTest {
+
+    /**
+     * Test the indentation of the events file.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void testIndentation() throws Exception {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        EventsWriter writer = new EventsWriter(output);
+        try {
+            for (String uei : new String[] { "uei.opennms.org/threshold/a/exceeded", "uei.opennms.org/threshold/b/exceeded" }) {
+                Event e = new Event();
+                e.setUei(uei);
+                e.setEventLabel("Label\n    of " + uei);
+                e.setSeverity("Warning");
+                writer.write(e);
+            }
+        } finally {
+            writer.close();
+        }
+        String content = output.toString(EventsWriter.ENCODING);
+        String[] lines = content.split("\n");
+        Assert.assertEquals("<?xml version=\"1.0\" encoding=\"UTF-8\"?>", lines[0]);
+        Assert.assertTrue(lines[1].matches("<events .*>"));
+        Assert.assertTrue(lines[2].matches("    <([^:>]+:)?event( .*)?>"));
+        Assert.assertTrue(lines[3].matches("        <([^:>]+:)?uei>uei.opennms.org/threshold/a/exceeded</([^:>]+:)?uei>"));
+        Assert.assertTrue(lines[4].matches("        <([^:>]+:)?event-label>Label"));
+        Assert.assertTrue(lines[5].matches("    of uei.opennms.org/threshold/a/exceeded</([^:>]+:)?event-label>"));
+        Assert.assertTrue(lines[7].matches("    </([^:>]+:)?event>"));
+        Assert.assertTrue(lines[8].matches("    <([^:>]+:)?event( .*)?>"));
+        Assert.assertTrue(lines[lines.length - 1].matches("</([^:>]+:)?events>"));
+        Assert.assertTrue(content.endsWith(">\n"));
+    }
+
+    /**
+     * Test that a failure while closing the output doesn't hide the failure while writing.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void testCloseFailure() throws Exception {
+        OutputStream output = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                throw new IOException("Can't write");
+            }
+            @Override
+            public void close() throws IOException {
+                throw new IOException("Can't close");
+            }
+        };
+        EventsWriter writer = new EventsWriter(output);
+        Event e = new Event();
+        e.setUei("uei.opennms.org/threshold/a/exceeded");
+        writer.write(e);
+        try {
+            writer.close();
+            Assert.fail("The failure while writing has not been reported");
+        } catch (IOException ex) {
+            Assert.assertEquals("Can't write the end of the events file", ex.getMessage());
+        }
+        // Closing it again does nothing
+        writer.close();
+    }
+
+}
@@ -0,0 +1,81 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2006-2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+package org.opennms.tools;
+
+import java.util.Arrays;
+import java.util.HashSet;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * The Class ExpressionCacheTest.
+ * 
+ * @author <a href="mailto:agalue@opennms.org">Alejandro Galue</a>
+ */
+public class ExpressionCacheTest {
+
+    /**
+     * Test the analysis of expressions.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void testAnalysis() throws Exception {
+        ExpressionCache cache = ExpressionCache.getInstance();
+        ExpressionCache.Analysis a = cache.analyze("math.max(ifInOctets, ifOutOctets) * 8 / datasources['ifHighSpeed']");
+        Assert.assertTrue(a.isValid());
+        Assert.assertNotNull(a.getExpression());
+        Assert.assertEquals(new HashSet<String>(Arrays.asList("ifInOctets", "ifOutOctets", "ifHighSpeed")), new HashSet<String>(a.getDatasources()));
+        Assert.assertSame(a, cache.analyze("math.max(ifInOctets, ifOutOctets) * 8 / datasources['ifHighSpeed']"));
+
+        ExpressionCache.Analysis invalid = cache.analyze("(ifInOctets + ");
+        Assert.assertFalse(invalid.isValid());
+        Assert.assertNotNull(invalid.getError());
+        Assert.assertTrue(invalid.getDatasources().isEmpty());
+    }
+
+    /**
+     * Test that the least recently used expressions are evicted.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void testEviction() throws Exception {
+        ExpressionCache cache = ExpressionCache.getInstance();
+        ExpressionCache.Analysis kept = cache.analyze("lruKept * 8");
+        ExpressionCache.Analysis evicted = cache.analyze("lruEvicted * 8");
+        for (int i = 0; i < ExpressionCache.MAX_SIZE - 1; i++) {
+            cache.analyze("lruFiller" + i + " * 8");
+            Assert.assertSame(kept, cache.analyze("lruKept * 8"));
+        }
+        Assert.assertSame(kept, cache.analyze("lruKept * 8"));
+        Assert.assertNotSame(evicted, cache.analyze("lruEvicted * 8"));
+    }
+
+}
@@ -0,0 +1,98 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2006-2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+package org.opennms.tools;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * The Class FleetGeneratorTest.
+ * 
+ * @author <a href="mailto:agalue@opennms.org">Alejandro Galue</a>
+ */
+public class FleetGeneratorTest {
+
+    /** The fleet directory. */
+    private File fleetDir = new File("target/fleet");
+
+    /**
+     * Set up the test.
+     *
+     * @throws Exception the exception
+     */
+    @Before
+    public void setUp() throws Exception {
+        if (fleetDir.exists()) {
+            FileUtils.deleteDirectory(fleetDir);
+        }
+        for (String name : new String[] { "onms1", "onms2" }) {
+            File onmsHome = new File(fleetDir, name);
+            new File(onmsHome, "etc/events").mkdirs();
+            FileUtils.copyFile(new File("src/test/resources/opennms-home/etc/thresholds.xml"), new File(onmsHome, "etc/thresholds.xml"));
+            FileUtils.copyFile(new File("src/test/resources/opennms-home/etc/snmp-graph.properties"), new File(onmsHome, "etc/snmp-graph.properties"));
+        }
+    }
+
+    /**
+     * Test the fleet mode.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void testFleet() throws Exception {
+        List<File> homes = FleetGenerator.getHomes(fleetDir);
+        Assert.assertEquals(2, homes.size());
+        FleetGenerator generator = new FleetGenerator(null, new File("src/test/resources/notifications.xml"));
+        Assert.assertTrue(generator.generate(homes));
+        String events = FileUtils.readFileToString(new File(fleetDir, "onms1/etc/events/" + EventsGenerator.EVENTS_FILENAME));
+        Assert.assertEquals(events, FileUtils.readFileToString(new File(fleetDir, "onms2/etc/events/" + EventsGenerator.EVENTS_FILENAME)));
+        Assert.assertTrue(new File(fleetDir, "onms2/etc/notifications.xml").exists());
+    }
+
+    /**
+     * Test that a failure on one installation doesn't stop the others.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void testFailure() throws Exception {
+        List<File> homes = new ArrayList<File>(FleetGenerator.getHomes(fleetDir));
+        homes.add(new File(fleetDir, "missing"));
+        FleetGenerator generator = new FleetGenerator(null, null);
+        Assert.assertFalse(generator.generate(homes));
+        Assert.assertTrue(new File(fleetDir, "onms1/etc/events/" + EventsGenerator.EVENTS_FILENAME).exists());
+        Assert.assertTrue(new File(fleetDir, "onms2/etc/events/" + EventsGenerator.EVENTS_FILENAME).exists());
+    }
+
+}
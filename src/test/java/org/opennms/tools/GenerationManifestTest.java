@@ -0,0 +1,135 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2006-2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+package org.opennms.tools;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.SortedMap;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.opennms.netmgt.xml.eventconf.Event;
+
+/**
+ * The Class GenerationManifestTest.
+ * 
+ * @author <a href="mailto:agalue@opennms.org">Alejandro Galue</a>
+ */
+public class GenerationManifestTest {
+
+    /** The manifest file. */
+    private File manifestFile = new File("target/generation-manifest-test/" + GenerationManifest.MANIFEST_FILENAME);
+
+    /**
+     * Set up the test.
+     *
+     * @throws Exception the exception
+     */
+    @Before
+    public void setUp() throws Exception {
+        FileUtils.deleteDirectory(manifestFile.getParentFile());
+        manifestFile.getParentFile().mkdirs();
+    }
+
+    /**
+     * Test the comparison with the previous manifest.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void testCompare() throws Exception {
+        GenerationManifest previous = new GenerationManifest();
+        previous.addEvents(Arrays.asList(createEvent("uei.opennms.org/a", "A"), createEvent("uei.opennms.org/b", "B"), createEvent("uei.opennms.org/c", "C")));
+        Assert.assertEquals(OutputFile.Status.UPDATED, previous.store(manifestFile));
+
+        GenerationManifest current = new GenerationManifest();
+        current.addEvents(Arrays.asList(createEvent("uei.opennms.org/a", "A"), createEvent("uei.opennms.org/c", "Changed"), createEvent("uei.opennms.org/d", "D")));
+        SortedMap<String,GenerationManifest.Change> changes = current.compare(GenerationManifest.load(manifestFile));
+        Assert.assertEquals(3, changes.size());
+        Assert.assertEquals(GenerationManifest.Change.REMOVED, changes.get("event uei.opennms.org/b"));
+        Assert.assertEquals(GenerationManifest.Change.MODIFIED, changes.get("event uei.opennms.org/c"));
+        Assert.assertEquals(GenerationManifest.Change.ADDED, changes.get("event uei.opennms.org/d"));
+        Assert.assertEquals("events: 1 added, 1 removed, 1 modified; notifications: 0 added, 0 removed, 0 modified", GenerationManifest.getSummary(changes));
+
+        Assert.assertTrue(current.compare(current).isEmpty());
+        Assert.assertEquals(3, current.compare(null).size());
+    }
+
+    /**
+     * Test the copy of the digests of one kind of definition.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void testCopyDigests() throws Exception {
+        GenerationManifest previous = new GenerationManifest();
+        previous.addEvents(Arrays.asList(createEvent("uei.opennms.org/a", "A")));
+        previous.getDigests().put(GenerationManifest.NOTIFICATION + " uei.opennms.org/a", "0123");
+
+        GenerationManifest current = new GenerationManifest();
+        current.addEvents(Arrays.asList(createEvent("uei.opennms.org/b", "B")));
+        current.copyDigests(previous, GenerationManifest.NOTIFICATION);
+        current.copyDigests(null, GenerationManifest.NOTIFICATION);
+        Assert.assertEquals(2, current.getDigests().size());
+        Assert.assertEquals("0123", current.getDigests().get("notification uei.opennms.org/a"));
+        Assert.assertFalse(current.getDigests().containsKey("event uei.opennms.org/a"));
+    }
+
+    /**
+     * Test that the manifest is stored and loaded without changes.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void testStore() throws Exception {
+        GenerationManifest manifest = new GenerationManifest();
+        manifest.addEvents(Arrays.asList(createEvent("uei.opennms.org/a", "A"), createEvent("uei.opennms.org/b", "B")));
+        Assert.assertNull(GenerationManifest.load(manifestFile));
+        Assert.assertEquals(OutputFile.Status.UPDATED, manifest.store(manifestFile));
+        Assert.assertEquals(OutputFile.Status.UNCHANGED, manifest.store(manifestFile));
+        Assert.assertEquals(manifest.getDigests(), GenerationManifest.load(manifestFile).getDigests());
+    }
+
+    /**
+     * Creates an event.
+     *
+     * @param uei the UEI
+     * @param label the event label
+     * @return the event
+     */
+    private static Event createEvent(String uei, String label) {
+        Event e = new Event();
+        e.setUei(uei);
+        e.setEventLabel(label);
+        e.setSeverity("Warning");
+        return e;
+    }
+
+}
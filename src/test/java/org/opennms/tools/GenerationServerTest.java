@@ -0,0 +1,224 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2006-2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+package org.opennms.tools;
+
+import java.io.File;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.net.URLEncoder;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.opennms.core.test.MockLogAppender;
+
+/**
+ * The Class GenerationServerTest.
+ * 
+ * @author <a href="mailto:agalue@opennms.org">Alejandro Galue</a>
+ */
+public class GenerationServerTest {
+
+    /** The OpenNMS home. */
+    private File onmsHome = new File("target/generation-server-test/opennms-home");
+
+    /** The generation server. */
+    private GenerationServer server;
+
+    /** The base URL of the server. */
+    private String baseUrl;
+
+    /**
+     * Set up the test.
+     *
+     * @throws Exception the exception
+     */
+    @Before
+    public void setUp() throws Exception {
+        MockLogAppender.setupLogging();
+        FileUtils.deleteDirectory(onmsHome);
+        new File(onmsHome, "etc").mkdirs();
+        FileUtils.copyFile(new File("src/test/resources/opennms-home/etc/thresholds.xml"), new File(onmsHome, "etc/thresholds.xml"));
+        FileUtils.copyFile(new File("src/test/resources/opennms-home/etc/snmp-graph.properties"), new File(onmsHome, "etc/snmp-graph.properties"));
+        server = new GenerationServer(null, new File("src/test/resources/notifications.xml"));
+        server.setThreads(2);
+        InetSocketAddress address = server.start(new InetSocketAddress("127.0.0.1", 0));
+        baseUrl = "http://127.0.0.1:" + address.getPort();
+    }
+
+    /**
+     * Tears down the test.
+     *
+     * @throws Exception the exception
+     */
+    @After
+    public void tearDown() throws Exception {
+        server.stop();
+        MockLogAppender.assertNoWarningsOrGreater();
+    }
+
+    /**
+     * Test the generation from an OpenNMS home directory, and the validation of the ETag.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void testHome() throws Exception {
+        String url = baseUrl + "/events?home=" + URLEncoder.encode(onmsHome.getAbsolutePath(), "UTF-8");
+        HttpURLConnection c = (HttpURLConnection) new URL(url).openConnection();
+        Assert.assertEquals(200, c.getResponseCode());
+        String etag = c.getHeaderField("ETag");
+        Assert.assertNotNull(etag);
+        String events = read(c);
+        Assert.assertTrue(events.contains("uei.opennms.org/threshold/windows/cpu/high/major/exceeded"));
+        Assert.assertFalse(new File(onmsHome, "etc/events").exists());
+
+        c = (HttpURLConnection) new URL(url).openConnection();
+        c.setRequestProperty("If-None-Match", etag);
+        Assert.assertEquals(304, c.getResponseCode());
+
+        c = (HttpURLConnection) new URL(url).openConnection();
+        Assert.assertEquals(200, c.getResponseCode());
+        Assert.assertEquals(etag, c.getHeaderField("ETag"));
+        Assert.assertEquals(events, read(c));
+
+        c = (HttpURLConnection) new URL(baseUrl + "/notifications?home=" + URLEncoder.encode(onmsHome.getAbsolutePath(), "UTF-8")).openConnection();
+        Assert.assertEquals(200, c.getResponseCode());
+        Assert.assertFalse(etag.equals(c.getHeaderField("ETag")));
+        Assert.assertTrue(read(c).contains("uei.opennms.org/threshold/windows/cpu/high/major/exceeded"));
+
+        FileUtils.writeStringToFile(new File(onmsHome, "etc/snmp-graph.properties"), "\n", "UTF-8", true);
+        c = (HttpURLConnection) new URL(url).openConnection();
+        c.setRequestProperty("If-None-Match", etag);
+        Assert.assertEquals(200, c.getResponseCode());
+        Assert.assertFalse(etag.equals(c.getHeaderField("ETag")));
+    }
+
+    /**
+     * Test that the changes of the event templates are applied.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void testEventTemplates() throws Exception {
+        File templatesFile = new File(onmsHome, "etc/event-templates.xml");
+        FileUtils.writeStringToFile(new File(onmsHome, "etc/" + FleetGenerator.CONFIG_FILENAME), "eventTemplates = " + templatesFile.getAbsolutePath() + "\n", "UTF-8");
+        String url = baseUrl + "/events?home=" + URLEncoder.encode(onmsHome.getAbsolutePath(), "UTF-8");
+        for (String label : new String[] { "First custom label", "Second custom label" }) {
+            FileUtils.writeStringToFile(templatesFile, "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                    + "<!DOCTYPE properties SYSTEM \"http://java.sun.com/dtd/properties.dtd\">\n"
+                    + "<properties>\n  <entry key=\"label\">" + label + " for ${expression}</entry>\n</properties>\n", "UTF-8");
+            HttpURLConnection c = (HttpURLConnection) new URL(url).openConnection();
+            Assert.assertEquals(200, c.getResponseCode());
+            Assert.assertTrue(read(c).contains(label + " for "));
+        }
+    }
+
+    /**
+     * Test the generation from the files of a multipart request.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void testPost() throws Exception {
+        String boundary = "----GenerationServerTest";
+        HttpURLConnection c = (HttpURLConnection) new URL(baseUrl + "/events").openConnection();
+        c.setDoOutput(true);
+        c.setRequestMethod("POST");
+        c.setRequestProperty("Content-Type", "multipart/form-data; boundary=" + boundary);
+        OutputStream out = c.getOutputStream();
+        try {
+            writePart(out, boundary, "thresholds", new File(onmsHome, "etc/thresholds.xml"));
+            writePart(out, boundary, "graphs", new File(onmsHome, "etc/snmp-graph.properties"));
+            out.write(("--" + boundary + "--\r\n").getBytes("UTF-8"));
+        } finally {
+            out.close();
+        }
+        Assert.assertEquals(200, c.getResponseCode());
+        String etag = c.getHeaderField("ETag");
+        Assert.assertTrue(read(c).contains("uei.opennms.org/threshold/windows/cpu/high/major/exceeded"));
+
+        // The same inputs from a home directory have the same ETag
+        c = (HttpURLConnection) new URL(baseUrl + "/events?home=" + URLEncoder.encode(onmsHome.getAbsolutePath(), "UTF-8")).openConnection();
+        c.setRequestProperty("If-None-Match", etag);
+        Assert.assertEquals(304, c.getResponseCode());
+    }
+
+    /**
+     * Test the invalid requests.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void testErrors() throws Exception {
+        Assert.assertEquals(400, ((HttpURLConnection) new URL(baseUrl + "/events").openConnection()).getResponseCode());
+        Assert.assertEquals(400, ((HttpURLConnection) new URL(baseUrl + "/events?home=/nonexistent").openConnection()).getResponseCode());
+        Assert.assertEquals(404, ((HttpURLConnection) new URL(baseUrl + "/events/other").openConnection()).getResponseCode());
+        HttpURLConnection c = (HttpURLConnection) new URL(baseUrl + "/events").openConnection();
+        c.setRequestMethod("DELETE");
+        Assert.assertEquals(405, c.getResponseCode());
+    }
+
+    /**
+     * Writes a part of a multipart request.
+     *
+     * @param out the output stream
+     * @param boundary the boundary
+     * @param name the name of the part
+     * @param file the content of the part
+     * @throws Exception the exception
+     */
+    private void writePart(OutputStream out, String boundary, String name, File file) throws Exception {
+        out.write(("--" + boundary + "\r\nContent-Disposition: form-data; name=\"" + name + "\"; filename=\"" + file.getName() + "\"\r\n\r\n").getBytes("UTF-8"));
+        out.write(FileUtils.readFileToByteArray(file));
+        out.write("\r\n".getBytes("UTF-8"));
+    }
+
+    /**
+     * Reads the body of a response.
+     *
+     * @param c the connection
+     * @return the body
+     * @throws Exception the exception
+     */
+    private String read(HttpURLConnection c) throws Exception {
+        InputStream in = c.getInputStream();
+        try {
+            return IOUtils.toString(in, "UTF-8");
+        } finally {
+            in.close();
+        }
+    }
+
+}
@@ -0,0 +1,282 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2006-2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+package org.opennms.tools;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.opennms.core.test.MockLogAppender;
+import org.opennms.core.xml.CastorUtils;
+import org.opennms.netmgt.config.notifications.Notifications;
+import org.opennms.netmgt.xml.eventconf.Event;
+import org.opennms.netmgt.xml.eventconf.Events;
+import org.springframework.core.io.FileSystemResource;
+
+/**
+ * The Class GenerationSessionTest.
+ * 
+ * @author <a href="mailto:agalue@opennms.org">Alejandro Galue</a>
+ */
+public class GenerationSessionTest {
+
+    /** The OpenNMS home. */
+    private File onmsHome = new File("target/opennms-home");
+
+    /**
+     * Set up the test.
+     *
+     * @throws Exception the exception
+     */
+    @Before
+    public void setUp() throws Exception {
+        MockLogAppender.setupLogging();
+        if (onmsHome.exists()) {
+            FileUtils.deleteDirectory(onmsHome);
+        }
+        new File(onmsHome, "etc/events").mkdirs();
+        FileUtils.copyFile(new File("src/test/resources/opennms-home/etc/thresholds.xml"), new File(onmsHome, "etc/thresholds.xml"));
+        FileUtils.copyFile(new File("src/test/resources/opennms-home/etc/snmp-graph.properties"), new File(onmsHome, "etc/snmp-graph.properties"));
+    }
+
+    /**
+     * Tears down the test.
+     *
+     * @throws Exception the exception
+     */
+    @After
+    public void tearDown() throws Exception {
+        MockLogAppender.assertNoWarningsOrGreater();
+    }
+
+    /**
+     * Test the generation of both files from a single session.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void testSession() throws Exception {
+        GenerationSession session = new GenerationSession(new ThresholdEventProcessor(), onmsHome);
+        session.load();
+        int count = session.getResult().getEvents().size();
+        Assert.assertTrue(count > 0);
+        Assert.assertTrue(session.getContentPool().getSize() < session.getContentPool().getRequests());
+        Assert.assertTrue(session.getContentPool().getDedupRatio() > 0);
+        assertSharedContent(session.getResult().getEvents());
+        session.generate(new File("src/test/resources/notifications.xml"));
+
+        Events events = CastorUtils.unmarshal(Events.class, new FileSystemResource(new File(onmsHome, "etc/events/" + EventsGenerator.EVENTS_FILENAME)), true);
+        Assert.assertEquals(count, events.getEventCollection().size());
+
+        Notifications template = CastorUtils.unmarshal(Notifications.class, new FileSystemResource(new File("src/test/resources/notifications.xml")), true);
+        Notifications notifications = CastorUtils.unmarshal(Notifications.class, new FileSystemResource(new File(onmsHome, "etc/notifications.xml")), true);
+        Assert.assertEquals(template.getNotificationCount() + count, notifications.getNotificationCount());
+    }
+
+    /**
+     * Test the group cache.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void testCache() throws Exception {
+        File eventsFile = new File(onmsHome, "etc/events/" + EventsGenerator.EVENTS_FILENAME);
+        File thresholdsFile = new File(onmsHome, "etc/thresholds.xml");
+        File cacheDir = new File(onmsHome, GroupCache.DEFAULT_DIRECTORY);
+
+        GenerationSession session = new GenerationSession(new ThresholdEventProcessor(), onmsHome);
+        session.generate(null);
+        String expected = FileUtils.readFileToString(eventsFile);
+
+        GroupCache cache = generateWithCache(cacheDir);
+        Assert.assertEquals(expected, FileUtils.readFileToString(eventsFile));
+        int entries = cacheDir.list().length;
+        Assert.assertTrue(entries > 1);
+        Assert.assertEquals(0, cache.getHits());
+        Assert.assertEquals(entries, cache.getMisses());
+
+        cache = generateWithCache(cacheDir);
+        Assert.assertEquals(expected, FileUtils.readFileToString(eventsFile));
+        Assert.assertEquals(entries, cacheDir.list().length);
+        Assert.assertEquals(entries, cache.getHits());
+        Assert.assertEquals(0, cache.getMisses());
+
+        // Only the modified group must be regenerated
+        String thresholds = FileUtils.readFileToString(thresholdsFile);
+        String modified = thresholds.replace("value=\"40.0\" rearm=\"40.0\"", "value=\"45.0\" rearm=\"45.0\"");
+        Assert.assertFalse(thresholds.equals(modified));
+        FileUtils.writeStringToFile(thresholdsFile, modified);
+        session = new GenerationSession(new ThresholdEventProcessor(), onmsHome);
+        session.generate(null);
+        expected = FileUtils.readFileToString(eventsFile);
+
+        cache = generateWithCache(cacheDir);
+        Assert.assertEquals(expected, FileUtils.readFileToString(eventsFile));
+        Assert.assertEquals(entries, cacheDir.list().length);
+        Assert.assertEquals(entries - 1, cache.getHits());
+        Assert.assertEquals(1, cache.getMisses());
+    }
+
+    /**
+     * Generates the events file using the group cache.
+     *
+     * @param cacheDir the cache directory
+     * @return the group cache used on the generation
+     * @throws Exception the exception
+     */
+    private GroupCache generateWithCache(File cacheDir) throws Exception {
+        GenerationSession session = new GenerationSession(new ThresholdEventProcessor(), onmsHome);
+        session.setCacheDirectory(cacheDir);
+        session.generate(null);
+        Assert.assertEquals(session.getResult().getGroups().size(), cacheDir.list().length);
+        return session.getGroupCache();
+    }
+
+    /**
+     * Test that the notifications of the manifest are kept when only the events are generated.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void testManifest() throws Exception {
+        File manifestFile = new File(onmsHome, "etc/" + GenerationManifest.MANIFEST_FILENAME);
+        File changesFile = new File(onmsHome, "etc/" + GenerationManifest.CHANGES_FILENAME);
+
+        GenerationSession session = new GenerationSession(new ThresholdEventProcessor(), onmsHome);
+        session.setManifest(true);
+        session.generate(new File("src/test/resources/notifications.xml"));
+        GenerationManifest expected = GenerationManifest.load(manifestFile);
+        int notifications = 0;
+        for (String key : expected.getDigests().keySet()) {
+            if (key.startsWith(GenerationManifest.NOTIFICATION + " ")) {
+                notifications++;
+            }
+        }
+        Assert.assertEquals(session.getResult().getNotifications().size(), notifications);
+
+        session = new GenerationSession(new ThresholdEventProcessor(), onmsHome);
+        session.setManifest(true);
+        session.generate(null);
+        Assert.assertEquals(expected.getDigests(), GenerationManifest.load(manifestFile).getDigests());
+        Assert.assertEquals("", FileUtils.readFileToString(changesFile));
+    }
+
+    /**
+     * Test that the parallel generation produces the same files as the sequential one.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void testParallelism() throws Exception {
+        File eventsFile = new File(onmsHome, "etc/events/" + EventsGenerator.EVENTS_FILENAME);
+        File notificationsFile = new File(onmsHome, "etc/notifications.xml");
+        File template = new File("src/test/resources/notifications.xml");
+
+        GenerationSession session = new GenerationSession(new ThresholdEventProcessor(), onmsHome);
+        session.setParallelism(1);
+        session.generate(template);
+        String expectedEvents = FileUtils.readFileToString(eventsFile);
+        String expectedNotifications = FileUtils.readFileToString(notificationsFile).replaceAll("<created>.*</created>", "");
+
+        session = new GenerationSession(new ThresholdEventProcessor(), onmsHome);
+        session.setParallelism(4);
+        session.generate(template);
+        Assert.assertEquals(expectedEvents, FileUtils.readFileToString(eventsFile));
+        Assert.assertEquals(expectedNotifications, FileUtils.readFileToString(notificationsFile).replaceAll("<created>.*</created>", ""));
+    }
+
+    /**
+     * Test the generation statistics.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void testStats() throws Exception {
+        GenerationStats stats = new GenerationStats(GenerationStats.Format.JSON);
+        ThresholdEventProcessor eventProcessor = new ThresholdEventProcessor();
+        eventProcessor.setStats(stats);
+        GenerationSession session = new GenerationSession(eventProcessor, onmsHome);
+        session.setParallelism(4);
+        session.generate(new File("src/test/resources/notifications.xml"));
+
+        int count = 0;
+        for (GroupOutput output : session.getResult().getGroups()) {
+            count += output.getEvents().size();
+        }
+        Assert.assertEquals(count, stats.getCount(GenerationStats.GENERATED_EVENTS));
+        Assert.assertEquals(count, stats.getCount(GenerationStats.GENERATED_NOTIFICATIONS));
+        Assert.assertEquals(session.getResult().getGroups().size(), stats.getCount(GenerationStats.GROUPS));
+        Assert.assertTrue(stats.getCount(GenerationStats.THRESHOLDS) > 0);
+        Assert.assertTrue(stats.getCount(GenerationStats.EXPRESSIONS) > 0);
+        for (String phase : new String[] { GenerationStats.TOTAL, GenerationStats.GRAPH_TEMPLATES, GenerationStats.THRESHOLDS_READ, GenerationStats.EVENTS,
+                GenerationStats.NOTIFICATIONS, GenerationStats.EVENTS_MARSHAL, GenerationStats.NOTIFICATIONS_UNMARSHAL, GenerationStats.NOTIFICATIONS_MARSHAL }) {
+            Assert.assertNotNull(phase, stats.getPhase(phase));
+        }
+        Assert.assertEquals(1, stats.getPhase(GenerationStats.TOTAL).getInvocations());
+        Assert.assertTrue(stats.getPhase(GenerationStats.TOTAL).getWallNanos() > 0);
+
+        String json = stats.toJson();
+        Assert.assertTrue(json.startsWith("{\"phases\":{\"total\":{\"calls\":1,"));
+        Assert.assertTrue(json.contains("\"content-pool\":{\"hits\":"));
+        Assert.assertTrue(stats.toText().contains(GenerationStats.THRESHOLDS_READ));
+
+        stats.report(new PrintStream(new ByteArrayOutputStream()));
+        Assert.assertNull(stats.getPhase(GenerationStats.TOTAL));
+    }
+
+    /**
+     * Asserts that the events with equal content share the same instances after being canonicalized.
+     *
+     * @param events the events
+     */
+    private void assertSharedContent(Collection<Event> events) {
+        Map<String,String> instances = new HashMap<String,String>();
+        int shared = 0;
+        for (Event e : events) {
+            for (String content : new String[] { e.getEventLabel(), e.getDescr(), e.getSeverity(), e.getLogmsg().getContent() }) {
+                String instance = instances.get(content);
+                if (instance == null) {
+                    instances.put(content, content);
+                } else {
+                    Assert.assertSame(instance, content);
+                    shared++;
+                }
+            }
+        }
+        Assert.assertTrue(shared > 0);
+    }
+
+}
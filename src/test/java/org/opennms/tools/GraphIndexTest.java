@@ -0,0 +1,85 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2006-2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+package org.opennms.tools;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * The Class GraphIndexTest.
+ * 
+ * @author <a href="mailto:agalue@opennms.org">Alejandro Galue</a>
+ */
+public class GraphIndexTest {
+
+    /**
+     * Test the reports.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void testReports() throws Exception {
+        GraphIndex index = new GraphIndex(createTemplates(), false);
+        Assert.assertEquals("mib2.bits&reports=mib2.traffic", index.getReports(Arrays.asList("ifInOctets"), "if"));
+        Assert.assertEquals("mib2.bits&reports=mib2.traffic&reports=disk", index.getReports(Arrays.asList("diskUsed", "ifOutOctets"), "if"));
+        Assert.assertNull(index.getReports(Arrays.asList("unknown"), "if"));
+        Assert.assertSame(index.getReports(Arrays.asList("ifInOctets", "ifOutOctets"), "if"), index.getReports(Arrays.asList("ifOutOctets", "ifInOctets"), "if"));
+    }
+
+    /**
+     * Test the reports filtered by resource type.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void testReportsByResourceType() throws Exception {
+        GraphIndex index = new GraphIndex(createTemplates(), true);
+        Assert.assertEquals("mib2.bits&reports=mib2.traffic", index.getReports(Arrays.asList("ifInOctets"), "if"));
+        Assert.assertEquals("mib2.traffic", index.getReports(Arrays.asList("ifInOctets"), "node"));
+        Assert.assertEquals("disk", index.getReports(Arrays.asList("diskUsed", "ifInOctets"), "hrStorageIndex"));
+    }
+
+    /**
+     * Creates the graph templates.
+     *
+     * @return the graph templates
+     */
+    private GraphTemplates createTemplates() {
+        List<GraphTemplate> list = new ArrayList<GraphTemplate>();
+        list.add(new GraphTemplate("mib2.bits", Arrays.asList("ifInOctets", "ifOutOctets"), Arrays.asList("interfaceSnmp")));
+        list.add(new GraphTemplate("mib2.traffic", Arrays.asList("ifInOctets", "ifOutOctets"), null));
+        list.add(new GraphTemplate("disk", Arrays.asList("diskUsed"), Arrays.asList("hrStorageIndex")));
+        return new GraphTemplates(list, new ArrayList<File>());
+    }
+
+}
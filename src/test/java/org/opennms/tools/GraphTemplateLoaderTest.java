@@ -0,0 +1,142 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2006-2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+package org.opennms.tools;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.opennms.core.test.MockLogAppender;
+import org.opennms.netmgt.dao.support.PropertiesGraphDao;
+import org.opennms.netmgt.model.PrefabGraph;
+import org.springframework.core.io.FileSystemResource;
+
+/**
+ * The Class GraphTemplateLoaderTest.
+ * 
+ * @author <a href="mailto:agalue@opennms.org">Alejandro Galue</a>
+ */
+public class GraphTemplateLoaderTest {
+
+    /** The graph templates file. */
+    private File graphTemplatesFile = new File("target/graph-templates/snmp-graph.properties");
+
+    /**
+     * Set up the test.
+     *
+     * @throws Exception the exception
+     */
+    @Before
+    public void setUp() throws Exception {
+        MockLogAppender.setupLogging();
+        FileUtils.deleteDirectory(graphTemplatesFile.getParentFile());
+        FileUtils.copyFile(new File("src/test/resources/opennms-home/etc/snmp-graph.properties"), graphTemplatesFile);
+    }
+
+    /**
+     * Tears down the test.
+     *
+     * @throws Exception the exception
+     */
+    @After
+    public void tearDown() throws Exception {
+        MockLogAppender.assertNoWarningsOrGreater();
+    }
+
+    /**
+     * Test the loader against the graph DAO.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void testLoader() throws Exception {
+        PropertiesGraphDao graphDao = new PropertiesGraphDao();
+        graphDao.loadProperties("performance", new FileSystemResource(graphTemplatesFile));
+        Map<String,PrefabGraph> expected = new HashMap<String,PrefabGraph>();
+        for (PrefabGraph g : graphDao.getAllPrefabGraphs()) {
+            expected.put(g.getName(), g);
+        }
+
+        GraphTemplates templates = new GraphTemplateLoader().load(graphTemplatesFile);
+        Assert.assertEquals(expected.size(), templates.getTemplates().size());
+        for (GraphTemplate t : templates.getTemplates()) {
+            PrefabGraph g = expected.get(t.getName());
+            Assert.assertNotNull(g);
+            Assert.assertEquals(Arrays.asList(g.getColumns()), t.getColumns());
+            Assert.assertEquals(Arrays.asList(g.getTypes()), t.getTypes());
+        }
+    }
+
+    /**
+     * Test the include directory.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void testIncludeDirectory() throws Exception {
+        File includeDir = new File(graphTemplatesFile.getParentFile(), GraphTemplateLoader.DEFAULT_INCLUDE_DIRECTORY);
+        includeDir.mkdirs();
+        FileUtils.writeStringToFile(new File(includeDir, "vendor-a.properties"),
+                "reports=vendor.a.cpu\n" +
+                "report.vendor.a.cpu.name=CPU\n" +
+                "report.vendor.a.cpu.columns=vendorCpu\n" +
+                "report.vendor.a.cpu.type=nodeSnmp\n" +
+                "report.vendor.a.cpu.command=--title=\"CPU\"\n");
+        FileUtils.writeStringToFile(new File(includeDir, "vendor-b.properties"),
+                "report.id=vendor.b.mem\n" +
+                "report.name=Memory\n" +
+                "report.columns=vendorMemUsed, vendorMemFree\n" +
+                "report.type=nodeSnmp\n" +
+                "report.command=--title=\"Memory\"\n");
+
+        GraphTemplates templates = new GraphTemplateLoader().load(graphTemplatesFile);
+        Assert.assertEquals(3, templates.getSources().size());
+        GraphTemplate cpu = null;
+        GraphTemplate mem = null;
+        for (GraphTemplate t : templates.getTemplates()) {
+            if (t.getName().equals("vendor.a.cpu")) {
+                cpu = t;
+            }
+            if (t.getName().equals("vendor.b.mem")) {
+                mem = t;
+            }
+        }
+        Assert.assertNotNull(cpu);
+        Assert.assertEquals(Arrays.asList("vendorCpu"), cpu.getColumns());
+        Assert.assertNotNull(mem);
+        Assert.assertEquals(Arrays.asList("vendorMemUsed", "vendorMemFree"), mem.getColumns());
+        Assert.assertEquals(Arrays.asList("nodeSnmp"), mem.getTypes());
+    }
+
+}
@@ -0,0 +1,84 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2006-2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+package org.opennms.tools;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * The Class InstanceResolverTest.
+ * 
+ * @author <a href="mailto:agalue@opennms.org">Alejandro Galue</a>
+ */
+public class InstanceResolverTest {
+
+    /**
+     * Test the priority of the rules.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void testPriority() throws Exception {
+        Map<String,String> rules = new LinkedHashMap<String,String>();
+        rules.put("if", "interface");
+        rules.put("ifHC", "high speed interface");
+        rules.put("Index", "index");
+        rules.put("dsk", "disk");
+        rules.put("hrStorageIndex", "storage");
+        InstanceResolver resolver = new InstanceResolver(rules, ThresholdEvent.INSTANCE_INFO);
+        Assert.assertEquals("interface", resolver.getInstanceInfo("if"));
+        Assert.assertEquals("high speed interface", resolver.getInstanceInfo("ifHC"));
+        Assert.assertEquals("storage", resolver.getInstanceInfo("hrStorageIndex"));
+        Assert.assertEquals("disk", resolver.getInstanceInfo("dsk"));
+        Assert.assertEquals("index", resolver.getInstanceInfo("dskIndex"));
+        Assert.assertEquals("index", resolver.getInstanceInfo("cpuIndex"));
+        Assert.assertEquals(ThresholdEvent.INSTANCE_INFO, resolver.getInstanceInfo("node"));
+        Assert.assertEquals(ThresholdEvent.INSTANCE_INFO, resolver.getInstanceInfo(null));
+    }
+
+    /**
+     * Test overlapping rules found through the failure links.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void testOverlapping() throws Exception {
+        Map<String,String> rules = new LinkedHashMap<String,String>();
+        rules.put("abcd", "first");
+        rules.put("bc", "second");
+        rules.put("bcx", "third");
+        InstanceResolver resolver = new InstanceResolver(rules, ThresholdEvent.INSTANCE_INFO);
+        Assert.assertEquals("third", resolver.getInstanceInfo("abcx"));
+        Assert.assertEquals("second", resolver.getInstanceInfo("abce"));
+        Assert.assertEquals("first", resolver.getInstanceInfo("zabcd"));
+    }
+
+}
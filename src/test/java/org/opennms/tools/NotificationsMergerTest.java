@@ -0,0 +1,197 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2006-2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+package org.opennms.tools;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.opennms.core.xml.CastorUtils;
+import org.opennms.netmgt.config.notifications.Notification;
+import org.opennms.netmgt.config.notifications.Notifications;
+import org.springframework.core.io.FileSystemResource;
+
+/**
+ * The Class NotificationsMergerTest.
+ * 
+ * @author <a href="mailto:agalue@opennms.org">Alejandro Galue</a>
+ */
+public class NotificationsMergerTest {
+
+    /** The notifications template. */
+    private File template = new File("src/test/resources/notifications.xml");
+
+    /** The merged notifications file. */
+    private File target = new File("target/notifications-merger-test/notifications.xml");
+
+    /** The generated notifications. */
+    private List<Notification> generated = Arrays.asList(
+            createNotification("High Threshold", "uei.opennms.org/threshold/custom/exceeded"),
+            createNotification("Interface Deleted", "uei.opennms.org/nodes/interfaceDeleted"),
+            createNotification("New Threshold", "uei.opennms.org/threshold/new/exceeded"));
+
+    /**
+     * Set up the test.
+     *
+     * @throws Exception the exception
+     */
+    @Before
+    public void setUp() throws Exception {
+        FileUtils.deleteDirectory(target.getParentFile());
+        target.getParentFile().mkdirs();
+    }
+
+    /**
+     * Test the skip policy.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void testSkip() throws Exception {
+        int templateSize = getNotifications(template).getNotificationCount();
+        NotificationsMerger merger = merge(NotificationsMerger.Policy.SKIP);
+        Assert.assertEquals(templateSize, merger.getKept());
+        Assert.assertEquals(2, merger.getSkipped());
+        Assert.assertEquals(1, merger.getAdded());
+
+        Notifications notifications = getNotifications(target);
+        Assert.assertEquals(templateSize + 1, notifications.getNotificationCount());
+        Assert.assertEquals("2014-01-01", notifications.getHeader().getCreated());
+        Assert.assertEquals("uei.opennms.org/threshold/highThresholdExceeded", findByName(notifications, "High Threshold").getUei());
+        Assert.assertNull(findByName(notifications, "Interface Deleted"));
+        Assert.assertNotNull(findByName(notifications, "New Threshold"));
+        assertUniqueUeis(notifications);
+    }
+
+    /**
+     * Test the replace policy.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void testReplace() throws Exception {
+        int templateSize = getNotifications(template).getNotificationCount();
+        NotificationsMerger merger = merge(NotificationsMerger.Policy.REPLACE);
+        Assert.assertEquals(templateSize - 2, merger.getKept());
+        Assert.assertEquals(2, merger.getReplaced());
+        Assert.assertEquals(1, merger.getAdded());
+
+        Notifications notifications = getNotifications(target);
+        Assert.assertEquals(templateSize + 1, notifications.getNotificationCount());
+        Assert.assertEquals("uei.opennms.org/threshold/custom/exceeded", findByName(notifications, "High Threshold").getUei());
+        Assert.assertEquals("uei.opennms.org/nodes/interfaceDeleted", findByName(notifications, "Interface Deleted").getUei());
+        Assert.assertNull(findByName(notifications, "interfaceDeleted"));
+        Assert.assertNotNull(findByName(notifications, "New Threshold"));
+        assertUniqueUeis(notifications);
+    }
+
+    /**
+     * Merges the generated notifications with the template.
+     *
+     * @param policy the merge policy
+     * @return the notifications merger
+     * @throws Exception the exception
+     */
+    private NotificationsMerger merge(NotificationsMerger.Policy policy) throws Exception {
+        NotificationsMerger merger = new NotificationsMerger(policy, "2014-01-01");
+        Writer writer = new OutputStreamWriter(new FileOutputStream(target), "UTF-8");
+        try {
+            merger.merge(template, generated, writer);
+        } finally {
+            writer.close();
+        }
+        return merger;
+    }
+
+    /**
+     * Asserts that there are no notifications with the same UEI.
+     *
+     * @param notifications the notifications
+     */
+    private void assertUniqueUeis(Notifications notifications) {
+        Set<String> ueis = new HashSet<String>();
+        for (Notification n : notifications.getNotificationCollection()) {
+            Assert.assertTrue(n.getUei(), ueis.add(n.getUei()));
+        }
+    }
+
+    /**
+     * Gets the notifications of a file.
+     *
+     * @param file the notifications file
+     * @return the notifications
+     * @throws Exception the exception
+     */
+    private Notifications getNotifications(File file) throws Exception {
+        return CastorUtils.unmarshal(Notifications.class, new FileSystemResource(file), true);
+    }
+
+    /**
+     * Finds a notification by name.
+     *
+     * @param notifications the notifications
+     * @param name the name
+     * @return the notification (null if it doesn't exist)
+     */
+    private Notification findByName(Notifications notifications, String name) {
+        for (Notification n : notifications.getNotificationCollection()) {
+            if (n.getName().equals(name)) {
+                return n;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Creates a notification.
+     *
+     * @param name the name
+     * @param uei the UEI
+     * @return the notification
+     */
+    private static Notification createNotification(String name, String uei) {
+        Notification n = new Notification();
+        n.setName(name);
+        n.setStatus("on");
+        n.setUei(uei);
+        n.setRule("IPADDR != '0.0.0.0'");
+        n.setDestinationPath("Email-Admin");
+        n.setTextMessage("%logmsg%");
+        return n;
+    }
+
+}
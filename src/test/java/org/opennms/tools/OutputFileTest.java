@@ -0,0 +1,95 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2006-2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+package org.opennms.tools;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.util.regex.Pattern;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * The Class OutputFileTest.
+ * 
+ * @author <a href="mailto:agalue@opennms.org">Alejandro Galue</a>
+ */
+public class OutputFileTest {
+
+    /** The target file. */
+    private File target = new File("target/output-file-test/test.xml");
+
+    /**
+     * Set up the test.
+     *
+     * @throws Exception the exception
+     */
+    @Before
+    public void setUp() throws Exception {
+        FileUtils.deleteDirectory(target.getParentFile());
+        target.getParentFile().mkdirs();
+    }
+
+    /**
+     * Test the replacement of the target file.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void testCommit() throws Exception {
+        Pattern ignored = Pattern.compile("\\s*<created>.*</created>\\s*");
+        Assert.assertEquals(OutputFile.Status.UPDATED, write("<a>\n<created>1</created>\n</a>\n", ignored));
+        Assert.assertEquals(OutputFile.Status.UNCHANGED, write("<a>\n<created>2</created>\n</a>\n", ignored));
+        Assert.assertTrue(FileUtils.readFileToString(target).contains("<created>1</created>"));
+        Assert.assertEquals(OutputFile.Status.UPDATED, write("<b>\n<created>3</created>\n</b>\n", ignored));
+        Assert.assertTrue(FileUtils.readFileToString(target).contains("<b>"));
+        Assert.assertEquals(1, target.getParentFile().list().length);
+    }
+
+    /**
+     * Writes the content through an output file.
+     *
+     * @param content the content
+     * @param ignored the pattern of the lines to ignore
+     * @return the status
+     * @throws Exception the exception
+     */
+    private OutputFile.Status write(String content, Pattern ignored) throws Exception {
+        OutputFile output = new OutputFile(target, ignored);
+        OutputStream out = output.open();
+        try {
+            out.write(content.getBytes("UTF-8"));
+        } finally {
+            out.close();
+        }
+        return output.commit();
+    }
+
+}
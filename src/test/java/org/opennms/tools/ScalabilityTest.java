@@ -0,0 +1,212 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2006-2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+package org.opennms.tools;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamReader;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * The Class ScalabilityTest.
+ * <p>Generates the events and the notifications end-to-end for a synthetic configuration at production scale,
+ * and verifies the elapsed time and the peak live heap (the tenured pools after a collection) against a budget.</p>
+ * <p>The live heap is polled on a background thread while the files are generated, so the data retained in the
+ * middle of the generation is measured even when it is released before the end.</p>
+ * <p>This test is excluded from the default build. It runs with the <code>scalability</code> profile, which also
+ * fixes the heap of the test JVM:</p>
+ * <pre>mvn test -Pscalability [-Dscalability.definitions=50000] [-Dscalability.maxSeconds=120] [-Dscalability.maxHeapMB=768]</pre>
+ *
+ * @author <a href="mailto:agalue@opennms.org">Alejandro Galue</a>
+ */
+public class ScalabilityTest {
+
+    /** The Constant SEED. */
+    private static final long SEED = 20150301L;
+
+    /** The OpenNMS home. */
+    private File onmsHome = new File("target/scalability-home");
+
+    /**
+     * Set up the test.
+     *
+     * @throws Exception the exception
+     */
+    @Before
+    public void setUp() throws Exception {
+        if (onmsHome.exists()) {
+            FileUtils.deleteDirectory(onmsHome);
+        }
+        onmsHome.mkdirs();
+    }
+
+    /**
+     * Test the generation of the events and the notifications.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void testGenerators() throws Exception {
+        int definitions = Integer.getInteger("scalability.definitions", 50000);
+        long maxSeconds = Long.getLong("scalability.maxSeconds", 120);
+        long maxHeapMB = Long.getLong("scalability.maxHeapMB", 768);
+
+        SyntheticConfigGenerator synthetic = new SyntheticConfigGenerator(SEED);
+        synthetic.setDefinitions(definitions);
+        File template = synthetic.generate(onmsHome);
+
+        HeapMonitor monitor = new HeapMonitor();
+        Thread thread = new Thread(monitor, "heap-monitor");
+        thread.setDaemon(true);
+        thread.start();
+        long start = System.nanoTime();
+
+        try {
+            ThresholdEventProcessor processor = new ThresholdEventProcessor();
+            new EventsGenerator(processor).generateThresholdEvents(onmsHome);
+            new NotificationsGenerator(processor).generateNotifications(onmsHome, template);
+        } finally {
+            thread.interrupt();
+            thread.join();
+        }
+
+        long elapsedSeconds = (System.nanoTime() - start) / 1000000000L;
+        long liveHeapMB = Math.max(monitor.getPeak(), getLiveHeapUsage()) / (1024 * 1024);
+
+        Assert.assertEquals(synthetic.getExpectedEvents(), countElements(new File(onmsHome, "etc/events/" + EventsGenerator.EVENTS_FILENAME), "event"));
+        Assert.assertEquals(synthetic.getNotifications() + synthetic.getExpectedEvents(), countElements(new File(onmsHome, "etc/notifications.xml"), "notification"));
+        Assert.assertTrue("The generation took " + elapsedSeconds + " seconds, the budget is " + maxSeconds, elapsedSeconds <= maxSeconds);
+        Assert.assertTrue("The peak live heap usage was " + liveHeapMB + " MB, the budget is " + maxHeapMB, liveHeapMB <= maxHeapMB);
+    }
+
+    /**
+     * The Class HeapMonitor.
+     * <p>Polls the usage of the tenured pools after their last collection, and keeps the largest value.</p>
+     */
+    private static class HeapMonitor implements Runnable {
+
+        /** The Constant POLL_INTERVAL (in milliseconds). */
+        private static final long POLL_INTERVAL = 20;
+
+        /** The peak usage in bytes. */
+        private volatile long peak;
+
+        /* (non-Javadoc)
+         * @see java.lang.Runnable#run()
+         */
+        public void run() {
+            try {
+                while (!Thread.currentThread().isInterrupted()) {
+                    peak = Math.max(peak, getTenuredCollectionUsage());
+                    Thread.sleep(POLL_INTERVAL);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            peak = Math.max(peak, getTenuredCollectionUsage());
+        }
+
+        /**
+         * Gets the peak usage.
+         *
+         * @return the peak usage in bytes
+         */
+        public long getPeak() {
+            return peak;
+        }
+    }
+
+    /**
+     * Gets the live heap usage at the end of the generation.
+     * <p>Only the tenured pools are measured, after the last collection that happened during the generation and
+     * after a forced collection, and the largest of both is returned. The young pools are excluded, as their
+     * usage depends on when the collector last ran rather than on the retained data.</p>
+     *
+     * @return the live heap usage in bytes
+     */
+    private static long getLiveHeapUsage() {
+        long beforeGc = getTenuredCollectionUsage();
+        System.gc();
+        return Math.max(beforeGc, getTenuredCollectionUsage());
+    }
+
+    /**
+     * Gets the usage of the tenured pools after their last collection.
+     *
+     * @return the usage in bytes
+     */
+    private static long getTenuredCollectionUsage() {
+        long used = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            // Only the tenured pools support usage thresholds
+            if (pool.getType() == MemoryType.HEAP && pool.isUsageThresholdSupported() && pool.getCollectionUsage() != null) {
+                used += pool.getCollectionUsage().getUsed();
+            }
+        }
+        return used;
+    }
+
+    /**
+     * Counts the elements with a given name on a XML file, without loading it in memory.
+     *
+     * @param file the XML file
+     * @param name the element name
+     * @return the number of elements
+     * @throws Exception the exception
+     */
+    private int countElements(File file, String name) throws Exception {
+        Assert.assertTrue(file.exists());
+        int count = 0;
+        InputStream input = new BufferedInputStream(new FileInputStream(file));
+        try {
+            XMLStreamReader reader = XMLInputFactory.newInstance().createXMLStreamReader(input);
+            while (reader.hasNext()) {
+                if (reader.next() == XMLStreamConstants.START_ELEMENT && reader.getLocalName().equals(name)) {
+                    count++;
+                }
+            }
+            reader.close();
+        } finally {
+            input.close();
+        }
+        return count;
+    }
+
+}
@@ -0,0 +1,428 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2006-2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+package org.opennms.tools;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Random;
+import java.util.Set;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+/**
+ * The Class SyntheticConfigGenerator.
+ * <p>Generates a synthetic OpenNMS home (thresholds.xml, snmp-graph.properties and a notifications template) of
+ * any size, to test the tool at production scale. The content is derived from a seed, so the same seed and sizes
+ * always produce the same files.</p>
+ * <p>The thresholds mix thresholds and expressions, use all the threshold types and resource types, and some of them
+ * don't have UEIs, so the UEI generation paths of the processor are exercised too.</p>
+ *
+ * @author <a href="mailto:agalue@opennms.org">Alejandro Galue</a>
+ */
+public class SyntheticConfigGenerator {
+
+    /** The Constant TYPES. */
+    private static final String[] TYPES = new String[] { "high", "low", "absoluteChange", "relativeChange", "rearmingAbsoluteChange" };
+
+    /** The Constant SEVERITIES. */
+    private static final String[] SEVERITIES = new String[] { "warning", "minor", "major", "critical" };
+
+    /** The Constant RESOURCES (ds-type, graph type and metric prefix). */
+    private static final String[][] RESOURCES = new String[][] {
+        { "node", "nodeSnmp", "node" },
+        { "if", "interfaceSnmp", "if" },
+        { "hrStorageIndex", "hrStorageIndex", "hrStorage" },
+        { "dskIndex", "dskIndex", "ns-dsk" },
+        { "cpqDaPhyDrvIndex", "cpqDaPhyDrvIndex", "cpqDrv" }
+    };
+
+    /** The Constant SERVERS. */
+    private static final String[] SERVERS = new String[] { "windows", "linux", "network", "storage", "apc", "cisco", "juniper" };
+
+    /** The random generator. */
+    private final Random random;
+
+    /** The number of threshold definitions. */
+    private int definitions = 1000;
+
+    /** The number of definitions per group. */
+    private int definitionsPerGroup = 25;
+
+    /** The number of metrics per resource type. */
+    private int metrics = 200;
+
+    /** The number of graph templates. */
+    private int graphTemplates = 500;
+
+    /** The number of notifications on the template. */
+    private int notifications = 50;
+
+    /** The ratio of expressions. */
+    private double expressionRatio = 0.2;
+
+    /** The ratio of definitions without UEIs. */
+    private double missingUeiRatio = 0.1;
+
+    /** The expected event UEIs. */
+    private Set<String> expectedUeis = new HashSet<String>();
+
+    /**
+     * Instantiates a new synthetic configuration generator.
+     *
+     * @param seed the seed
+     */
+    public SyntheticConfigGenerator(long seed) {
+        random = new Random(seed);
+    }
+
+    /**
+     * Sets the number of threshold definitions.
+     *
+     * @param definitions the number of threshold definitions
+     */
+    public void setDefinitions(int definitions) {
+        this.definitions = definitions;
+    }
+
+    /**
+     * Sets the number of definitions per group.
+     *
+     * @param definitionsPerGroup the number of definitions per group
+     */
+    public void setDefinitionsPerGroup(int definitionsPerGroup) {
+        this.definitionsPerGroup = definitionsPerGroup;
+    }
+
+    /**
+     * Sets the number of graph templates.
+     *
+     * @param graphTemplates the number of graph templates
+     */
+    public void setGraphTemplates(int graphTemplates) {
+        this.graphTemplates = graphTemplates;
+    }
+
+    /**
+     * Sets the number of notifications on the template.
+     *
+     * @param notifications the number of notifications
+     */
+    public void setNotifications(int notifications) {
+        this.notifications = notifications;
+    }
+
+    /**
+     * Sets the ratio of expressions.
+     *
+     * @param expressionRatio the ratio of expressions, between 0 and 1
+     */
+    public void setExpressionRatio(double expressionRatio) {
+        this.expressionRatio = expressionRatio;
+    }
+
+    /**
+     * Sets the ratio of definitions without UEIs.
+     *
+     * @param missingUeiRatio the ratio of definitions without UEIs, between 0 and 1
+     */
+    public void setMissingUeiRatio(double missingUeiRatio) {
+        this.missingUeiRatio = missingUeiRatio;
+    }
+
+    /**
+     * Gets the number of notifications on the template.
+     *
+     * @return the number of notifications
+     */
+    public int getNotifications() {
+        return notifications;
+    }
+
+    /**
+     * Gets the number of events the tool must generate for the last generated thresholds.xml.
+     *
+     * @return the number of expected events
+     */
+    public int getExpectedEvents() {
+        return expectedUeis.size();
+    }
+
+    /**
+     * Generates the files.
+     *
+     * @param onmsHome the OpenNMS home directory
+     * @return the notifications template
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public File generate(File onmsHome) throws IOException {
+        File etc = new File(onmsHome, "etc");
+        etc.mkdirs();
+        new File(etc, "events").mkdirs();
+        writeThresholds(new File(etc, "thresholds.xml"));
+        writeGraphTemplates(new File(etc, "snmp-graph.properties"));
+        File template = new File(onmsHome, "notifications-template.xml");
+        writeNotificationsTemplate(template);
+        return template;
+    }
+
+    /**
+     * Writes thresholds.xml.
+     *
+     * @param file the target file
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public void writeThresholds(File file) throws IOException {
+        expectedUeis.clear();
+        OutputStream output = new BufferedOutputStream(new FileOutputStream(file));
+        try {
+            XMLStreamWriter writer = XMLOutputFactory.newInstance().createXMLStreamWriter(output, "UTF-8");
+            writer.writeStartDocument("UTF-8", "1.0");
+            writer.writeCharacters("\n");
+            writer.writeStartElement("thresholding-config");
+            for (int i = 0; i < definitions; i++) {
+                if (i % definitionsPerGroup == 0) {
+                    if (i > 0) {
+                        writer.writeCharacters("\n    ");
+                        writer.writeEndElement();
+                    }
+                    writer.writeCharacters("\n    ");
+                    writer.writeStartElement("group");
+                    writer.writeAttribute("name", "TH-SYNTHETIC-" + (i / definitionsPerGroup));
+                    writer.writeAttribute("rrdRepository", "/var/lib/opennms/rrd/snmp/");
+                }
+                writeDefinition(writer, i, "TH-SYNTHETIC-" + (i / definitionsPerGroup));
+            }
+            if (definitions > 0) {
+                writer.writeCharacters("\n    ");
+                writer.writeEndElement();
+            }
+            writer.writeCharacters("\n");
+            writer.writeEndElement();
+            writer.writeCharacters("\n");
+            writer.writeEndDocument();
+            writer.close();
+        } catch (XMLStreamException e) {
+            throw new IOException("Can't write " + file, e);
+        } finally {
+            output.close();
+        }
+    }
+
+    /**
+     * Writes a threshold definition.
+     * <p>Records the UEIs the tool is expected to generate for it, including the UEIs it suggests when they are missing.</p>
+     *
+     * @param writer the XML writer
+     * @param index the index of the definition
+     * @param groupName the group name
+     * @throws XMLStreamException the XML stream exception
+     */
+    private void writeDefinition(XMLStreamWriter writer, int index, String groupName) throws XMLStreamException {
+        boolean isExpression = random.nextDouble() < expressionRatio;
+        boolean missingUei = random.nextDouble() < missingUeiRatio;
+        String type = TYPES[random.nextInt(TYPES.length)];
+        String[] resource = RESOURCES[random.nextInt(RESOURCES.length)];
+        String metric = resource[2] + "Metric" + random.nextInt(metrics);
+        double value = Math.round(random.nextDouble() * 10000) / 100.0;
+
+        writer.writeCharacters("\n        ");
+        writer.writeEmptyElement(isExpression ? "expression" : "threshold");
+        if (random.nextInt(3) == 0) {
+            writer.writeAttribute("description", "Synthetic " + type + " threshold " + index + " for " + metric);
+        }
+        writer.writeAttribute("type", type);
+        writer.writeAttribute("ds-type", resource[0]);
+        writer.writeAttribute("value", Double.toString(value));
+        writer.writeAttribute("rearm", Double.toString(type.endsWith("Change") ? 0.0 : Math.round(value * 90) / 100.0));
+        writer.writeAttribute("trigger", Integer.toString(1 + random.nextInt(3)));
+        if (!resource[0].equals("node")) {
+            writer.writeAttribute("ds-label", resource[0].equals("if") ? "ifName" : resource[2] + "Descr");
+        }
+
+        String triggeredUei;
+        if (missingUei) {
+            // The UEI suggested by the processor; duplicates collapse into one event, as they do on the tool.
+            triggeredUei = ThresholdEvent.BASE_UEI + "/" + type + "/" + resource[0] + "/" + (isExpression ? groupName : metric) + "/exceeded";
+        } else {
+            String server = SERVERS[random.nextInt(SERVERS.length)];
+            String severity = SEVERITIES[random.nextInt(SEVERITIES.length)];
+            String base = ThresholdEvent.BASE_UEI + "/" + server + "/" + metric.toLowerCase(Locale.ENGLISH) + "/s" + index;
+            triggeredUei = (random.nextBoolean() ? base + "/" + type + "/" + severity : base + "/" + severity + "/" + type) + "/exceeded";
+            writer.writeAttribute("triggeredUEI", triggeredUei);
+        }
+        expectedUeis.add(triggeredUei);
+        if (!type.matches("(absolute|relative)Change")) {
+            String rearmedUei = triggeredUei.replaceFirst("exceed", "rearm");
+            if (!missingUei && random.nextInt(10) > 0) {
+                writer.writeAttribute("rearmedUEI", rearmedUei);
+            }
+            expectedUeis.add(rearmedUei);
+        }
+
+        writer.writeAttribute("filterOperator", "or");
+        if (isExpression) {
+            String other = resource[2] + "Metric" + random.nextInt(metrics);
+            writer.writeAttribute("expression", random.nextBoolean() ? metric + " / " + other + " * 100.0" : "(" + metric + " - " + other + ") / 1000");
+        } else {
+            writer.writeAttribute("ds-name", metric);
+        }
+    }
+
+    /**
+     * Writes snmp-graph.properties.
+     * <p>The columns of the graph templates are taken from the same metrics used by the thresholds.</p>
+     *
+     * @param file the target file
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public void writeGraphTemplates(File file) throws IOException {
+        PrintWriter writer = new PrintWriter(new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), "ISO-8859-1")));
+        try {
+            writer.println("command.prefix=/usr/bin/rrdtool graph - --imgformat PNG --start {startTime} --end {endTime}");
+            writer.println("info.command=/usr/bin/rrdtool info");
+            writer.println("output.mime=image/png");
+            writer.println();
+            StringBuilder reports = new StringBuilder("reports=");
+            for (int i = 0; i < graphTemplates; i++) {
+                reports.append(i == 0 ? "" : ", \\\n").append("synthetic.report").append(i);
+            }
+            writer.println(reports);
+            for (int i = 0; i < graphTemplates; i++) {
+                String[] resource = RESOURCES[random.nextInt(RESOURCES.length)];
+                String column1 = resource[2] + "Metric" + random.nextInt(metrics);
+                String column2 = resource[2] + "Metric" + random.nextInt(metrics);
+                String prefix = "report.synthetic.report" + i;
+                writer.println();
+                writer.println(prefix + ".name=Synthetic Report " + i);
+                writer.println(prefix + ".columns=" + column1 + "," + column2);
+                writer.println(prefix + ".type=" + resource[1]);
+                writer.println(prefix + ".command=--title=\"Synthetic Report " + i + "\" \\");
+                writer.println(" DEF:v1={rrd1}:" + column1 + ":AVERAGE \\");
+                writer.println(" DEF:v2={rrd2}:" + column2 + ":AVERAGE \\");
+                writer.println(" LINE2:v1#0000ff:\"" + column1 + "\" \\");
+                writer.println(" LINE2:v2#ff0000:\"" + column2 + "\"");
+            }
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * Writes the notifications template.
+     *
+     * @param file the target file
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public void writeNotificationsTemplate(File file) throws IOException {
+        OutputStream output = new BufferedOutputStream(new FileOutputStream(file));
+        try {
+            XMLStreamWriter writer = XMLOutputFactory.newInstance().createXMLStreamWriter(output, "UTF-8");
+            writer.writeStartDocument("UTF-8", "1.0");
+            writer.writeCharacters("\n");
+            writer.writeStartElement("notifications");
+            writer.writeCharacters("\n    ");
+            writer.writeStartElement("header");
+            writeElement(writer, "rev", "1.2", "\n        ");
+            writeElement(writer, "created", "Sunday, March 1, 2015 12:00:00 PM GMT", "\n        ");
+            writeElement(writer, "mstation", "localhost", "\n        ");
+            writer.writeCharacters("\n    ");
+            writer.writeEndElement();
+            for (int i = 0; i < notifications; i++) {
+                writer.writeCharacters("\n    ");
+                writer.writeStartElement("notification");
+                writer.writeAttribute("name", "Synthetic Notification " + i);
+                writer.writeAttribute("status", random.nextInt(4) == 0 ? "off" : "on");
+                writer.writeAttribute("writeable", "yes");
+                writeElement(writer, "uei", "uei.opennms.org/synthetic/event" + i, "\n        ");
+                writeElement(writer, "description", "Synthetic notification " + i, "\n        ");
+                writeElement(writer, "rule", "IPADDR != '0.0.0.0'", "\n        ");
+                writeElement(writer, "destinationPath", "Email-Admin", "\n        ");
+                writeElement(writer, "text-message", "Synthetic event " + i + " received for node %nodelabel%.", "\n        ");
+                writeElement(writer, "subject", "Notice #%noticeid%: synthetic event " + i + " on node %nodelabel%.", "\n        ");
+                writer.writeCharacters("\n    ");
+                writer.writeEndElement();
+            }
+            writer.writeCharacters("\n");
+            writer.writeEndElement();
+            writer.writeCharacters("\n");
+            writer.writeEndDocument();
+            writer.close();
+        } catch (XMLStreamException e) {
+            throw new IOException("Can't write " + file, e);
+        } finally {
+            output.close();
+        }
+    }
+
+    /**
+     * Writes an element with text content.
+     *
+     * @param writer the XML writer
+     * @param name the element name
+     * @param content the element content
+     * @param indent the indentation
+     * @throws XMLStreamException the XML stream exception
+     */
+    private void writeElement(XMLStreamWriter writer, String name, String content, String indent) throws XMLStreamException {
+        writer.writeCharacters(indent);
+        writer.writeStartElement(name);
+        writer.writeCharacters(content);
+        writer.writeEndElement();
+    }
+
+    /**
+     * The main method.
+     * <p>Usage: SyntheticConfigGenerator opennms-home [definitions [seed]]</p>
+     *
+     * @param args the arguments
+     * @throws Exception the exception
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.err.println("Usage: SyntheticConfigGenerator opennms-home [definitions [seed]]");
+            System.exit(1);
+        }
+        SyntheticConfigGenerator generator = new SyntheticConfigGenerator(args.length > 2 ? Long.parseLong(args[2]) : 0);
+        if (args.length > 1) {
+            generator.setDefinitions(Integer.parseInt(args[1]));
+        }
+        File template = generator.generate(new File(args[0]));
+        System.out.println("Generated " + args[0] + " with " + generator.getExpectedEvents() + " expected events; notifications template: " + template);
+    }
+
+}
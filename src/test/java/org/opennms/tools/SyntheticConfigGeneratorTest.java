@@ -0,0 +1,121 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2006-2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+package org.opennms.tools;
+
+import java.io.File;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.opennms.core.test.MockLogAppender;
+import org.opennms.netmgt.config.threshd.Group;
+
+/**
+ * The Class SyntheticConfigGeneratorTest.
+ *
+ * @author <a href="mailto:agalue@opennms.org">Alejandro Galue</a>
+ */
+public class SyntheticConfigGeneratorTest {
+
+    /** The target directory. */
+    private File targetDir = new File("target/synthetic");
+
+    /**
+     * Set up the test.
+     *
+     * @throws Exception the exception
+     */
+    @Before
+    public void setUp() throws Exception {
+        MockLogAppender.setupLogging();
+        if (targetDir.exists()) {
+            FileUtils.deleteDirectory(targetDir);
+        }
+        targetDir.mkdirs();
+    }
+
+    /**
+     * Tears down the test.
+     *
+     * @throws Exception the exception
+     */
+    @After
+    public void tearDown() throws Exception {
+        MockLogAppender.assertNoWarningsOrGreater();
+    }
+
+    /**
+     * Test the generated files.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void testGenerator() throws Exception {
+        File home1 = new File(targetDir, "home1");
+        File home2 = new File(targetDir, "home2");
+        SyntheticConfigGenerator generator = createGenerator();
+        File template = generator.generate(home1);
+        createGenerator().generate(home2);
+
+        // Same seed, same content
+        for (String file : new String[] { "etc/thresholds.xml", "etc/snmp-graph.properties", "notifications-template.xml" }) {
+            Assert.assertEquals(FileUtils.readFileToString(new File(home1, file)), FileUtils.readFileToString(new File(home2, file)));
+        }
+
+        // Valid content
+        int definitions = 0;
+        ThresholdsReader reader = new ThresholdsReader(new File(home1, "etc/thresholds.xml"), true);
+        try {
+            Group g;
+            while ((g = reader.read()) != null) {
+                definitions += g.getThresholdCount() + g.getExpressionCount();
+            }
+        } finally {
+            reader.close();
+        }
+        Assert.assertEquals(300, definitions);
+        Assert.assertEquals(20, new GraphTemplateLoader().load(new File(home1, "etc/snmp-graph.properties")).getTemplates().size());
+        Assert.assertTrue(template.exists());
+        Assert.assertTrue(generator.getExpectedEvents() > 300);
+    }
+
+    /**
+     * Creates the generator.
+     *
+     * @return the synthetic configuration generator
+     */
+    private SyntheticConfigGenerator createGenerator() {
+        SyntheticConfigGenerator generator = new SyntheticConfigGenerator(1);
+        generator.setDefinitions(300);
+        generator.setGraphTemplates(20);
+        return generator;
+    }
+
+}
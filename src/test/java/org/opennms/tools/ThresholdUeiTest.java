@@ -0,0 +1,82 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2006-2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+package org.opennms.tools;
+
+import java.util.Arrays;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * The Class ThresholdUeiTest.
+ * 
+ * @author <a href="mailto:agalue@opennms.org">Alejandro Galue</a>
+ */
+public class ThresholdUeiTest {
+
+    /**
+     * Test the tokens.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void testTokens() throws Exception {
+        ThresholdUei uei = new ThresholdUei("uei.opennms.org/threshold/apc/ups/temperature/warning/high/exceeded", ThresholdEvent.BASE_UEI);
+        Assert.assertEquals("apc", uei.getServerType());
+        Assert.assertEquals(Arrays.asList("ups", "temperature"), uei.getPurpose());
+        Assert.assertEquals("high", uei.getThresholdType());
+        Assert.assertEquals("warning", uei.getSeverity());
+        Assert.assertEquals("exceeded", uei.getCondition());
+
+        uei = new ThresholdUei("uei.opennms.org/threshold/ifInOctets/major/rearmed", ThresholdEvent.BASE_UEI);
+        Assert.assertNull(uei.getServerType());
+        Assert.assertEquals(Arrays.asList("ifInOctets"), uei.getPurpose());
+        Assert.assertNull(uei.getThresholdType());
+        Assert.assertEquals("major", uei.getSeverity());
+        Assert.assertEquals("rearmed", uei.getCondition());
+    }
+
+    /**
+     * Test the severity and the computed expression.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void testComputedExpression() throws Exception {
+        ThresholdUei uei = new ThresholdUei("uei.opennms.org/threshold/apc/ups/load/low/warning/exceeded", ThresholdEvent.BASE_UEI);
+        Assert.assertEquals("Warning", uei.getEventSeverity(true));
+        Assert.assertEquals("APC-UPS-LOAD", uei.getComputedExpression("Warning"));
+        Assert.assertEquals("Normal", uei.getEventSeverity(false));
+        Assert.assertEquals("APC-UPS-LOAD-WARNING", uei.getComputedExpression("Normal"));
+
+        uei = new ThresholdUei("uei.opennms.org/threshold/windows/cpu/high/CRITICAL/major/exceeded", ThresholdEvent.BASE_UEI);
+        Assert.assertEquals("Major", uei.getEventSeverity(true));
+        Assert.assertEquals("WINDOWS-CPU-CRITICAL", uei.getComputedExpression("Major"));
+    }
+
+}
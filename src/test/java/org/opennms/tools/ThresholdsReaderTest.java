@@ -0,0 +1,115 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2006-2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+package org.opennms.tools;
+
+import java.io.File;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.opennms.core.test.MockLogAppender;
+import org.opennms.core.xml.CastorUtils;
+import org.opennms.netmgt.config.threshd.Expression;
+import org.opennms.netmgt.config.threshd.Group;
+import org.opennms.netmgt.config.threshd.Threshold;
+import org.opennms.netmgt.config.threshd.ThresholdingConfig;
+import org.springframework.core.io.FileSystemResource;
+
+/**
+ * The Class ThresholdsReaderTest.
+ * 
+ * @author <a href="mailto:agalue@opennms.org">Alejandro Galue</a>
+ */
+public class ThresholdsReaderTest {
+
+    /** The thresholds file. */
+    private File thresholdsFile = new File("src/test/resources/opennms-home/etc/thresholds.xml");
+
+    /**
+     * Set up the test.
+     *
+     * @throws Exception the exception
+     */
+    @Before
+    public void setUp() throws Exception {
+        MockLogAppender.setupLogging();
+    }
+
+    /**
+     * Tears down the test.
+     *
+     * @throws Exception the exception
+     */
+    @After
+    public void tearDown() throws Exception {
+        MockLogAppender.assertNoWarningsOrGreater();
+    }
+
+    /**
+     * Test the streaming reader against the Castor unmarshaller.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void testReader() throws Exception {
+        List<Group> expected = CastorUtils.unmarshal(ThresholdingConfig.class, new FileSystemResource(thresholdsFile), true).getGroupCollection();
+        ThresholdsReader reader = new ThresholdsReader(thresholdsFile, true);
+        try {
+            for (Group e : expected) {
+                Group g = reader.read();
+                Assert.assertNotNull(g);
+                Assert.assertEquals(e.getName(), g.getName());
+                Assert.assertEquals(e.getRrdRepository(), g.getRrdRepository());
+                Assert.assertEquals(e.getThresholdCount(), g.getThresholdCount());
+                Assert.assertEquals(e.getExpressionCount(), g.getExpressionCount());
+                for (int i = 0; i < e.getThresholdCount(); i++) {
+                    Threshold et = e.getThreshold(i);
+                    Threshold t = g.getThreshold(i);
+                    Assert.assertEquals(et.getDsName(), t.getDsName());
+                    Assert.assertEquals(et.getTriggeredUEI(), t.getTriggeredUEI());
+                    Assert.assertEquals(et.getRearmedUEI(), t.getRearmedUEI());
+                    Assert.assertEquals(et.getValue(), t.getValue(), 0.0);
+                    Assert.assertEquals(et.getResourceFilterCount(), t.getResourceFilterCount());
+                }
+                for (int i = 0; i < e.getExpressionCount(); i++) {
+                    Expression ex = e.getExpression(i);
+                    Expression x = g.getExpression(i);
+                    Assert.assertEquals(ex.getExpression(), x.getExpression());
+                    Assert.assertEquals(ex.getTriggeredUEI(), x.getTriggeredUEI());
+                    Assert.assertEquals(ex.getResourceFilterCount(), x.getResourceFilterCount());
+                }
+            }
+            Assert.assertNull(reader.read());
+        } finally {
+            reader.close();
+        }
+    }
+
+}
@@ -0,0 +1,171 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2006-2013 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2013 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+package org.opennms.tools;
+
+import java.io.File;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.opennms.core.test.MockLogAppender;
+
+/**
+ * The Class ThresholdsWatcherTest.
+ * 
+ * @author <a href="mailto:agalue@opennms.org">Alejandro Galue</a>
+ */
+public class ThresholdsWatcherTest {
+
+    /** The OpenNMS home. */
+    private File onmsHome = new File("target/thresholds-watcher-test/opennms-home");
+
+    /** The events file. */
+    private File eventsFile = new File(onmsHome, "etc/events/" + EventsGenerator.EVENTS_FILENAME);
+
+    /** The configuration file. */
+    private File configFile = new File(onmsHome, "etc/" + FleetGenerator.CONFIG_FILENAME);
+
+    /**
+     * Set up the test.
+     *
+     * @throws Exception the exception
+     */
+    @Before
+    public void setUp() throws Exception {
+        MockLogAppender.setupLogging();
+        if (onmsHome.exists()) {
+            FileUtils.deleteDirectory(onmsHome);
+        }
+        new File(onmsHome, "etc/events").mkdirs();
+        FileUtils.copyFile(new File("src/test/resources/opennms-home/etc/thresholds.xml"), new File(onmsHome, "etc/thresholds.xml"));
+        FileUtils.copyFile(new File("src/test/resources/opennms-home/etc/snmp-graph.properties"), new File(onmsHome, "etc/snmp-graph.properties"));
+    }
+
+    /**
+     * Tears down the test.
+     *
+     * @throws Exception the exception
+     */
+    @After
+    public void tearDown() throws Exception {
+        MockLogAppender.assertNoWarningsOrGreater();
+    }
+
+    /**
+     * Test the regeneration after changing the input files, including an event templates file set by a new configuration.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void testWatch() throws Exception {
+        File firstTemplates = new File(onmsHome, "etc/first-templates.xml");
+        File secondTemplates = new File(onmsHome, "etc/second-templates.xml");
+        writeTemplates(firstTemplates, "First label");
+        writeConfig(firstTemplates);
+
+        GenerationSession session = new GenerationSession(ConfigGenerator.createEventProcessor(configFile), onmsHome);
+        final ThresholdsWatcher watcher = new ThresholdsWatcher(session, configFile, null);
+        watcher.setQuietPeriod(100);
+        Thread thread = new Thread(new Runnable() {
+            public void run() {
+                try {
+                    watcher.watch();
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        });
+        thread.start();
+        try {
+            waitForLabel("First label");
+
+            // The new templates file must be watched after loading the configuration again
+            writeTemplates(secondTemplates, "Second label");
+            writeConfig(secondTemplates);
+            waitForLabel("Second label");
+            writeTemplates(secondTemplates, "Third label");
+            waitForLabel("Third label");
+
+            File thresholdsFile = new File(onmsHome, "etc/thresholds.xml");
+            String thresholds = FileUtils.readFileToString(thresholdsFile);
+            String modified = thresholds.replace("value=\"40.0\" rearm=\"40.0\"", "value=\"45.0\" rearm=\"45.0\"");
+            Assert.assertFalse(thresholds.equals(modified));
+            String events = FileUtils.readFileToString(eventsFile);
+            FileUtils.writeStringToFile(thresholdsFile, modified);
+            long timeout = System.currentTimeMillis() + 20000;
+            while (events.equals(FileUtils.readFileToString(eventsFile)) && System.currentTimeMillis() < timeout) {
+                Thread.sleep(100);
+            }
+            Assert.assertFalse(events.equals(FileUtils.readFileToString(eventsFile)));
+        } finally {
+            thread.interrupt();
+            thread.join(10000);
+        }
+        Assert.assertFalse(thread.isAlive());
+    }
+
+    /**
+     * Waits until the events file contains a label.
+     *
+     * @param label the label
+     * @throws Exception the exception
+     */
+    private void waitForLabel(String label) throws Exception {
+        long timeout = System.currentTimeMillis() + 20000;
+        while (!(eventsFile.isFile() && FileUtils.readFileToString(eventsFile).contains(label)) && System.currentTimeMillis() < timeout) {
+            Thread.sleep(100);
+        }
+        Assert.assertTrue("Can't find " + label + " on " + eventsFile, FileUtils.readFileToString(eventsFile).contains(label));
+    }
+
+    /**
+     * Writes the configuration file.
+     *
+     * @param templatesFile the event templates file
+     * @throws Exception the exception
+     */
+    private void writeConfig(File templatesFile) throws Exception {
+        FileUtils.writeStringToFile(configFile, "eventTemplates = " + templatesFile.getAbsolutePath() + "\n", "UTF-8");
+    }
+
+    /**
+     * Writes an event templates file.
+     *
+     * @param templatesFile the event templates file
+     * @param label the label of the events
+     * @throws Exception the exception
+     */
+    private void writeTemplates(File templatesFile, String label) throws Exception {
+        FileUtils.writeStringToFile(templatesFile, "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                + "<!DOCTYPE properties SYSTEM \"http://java.sun.com/dtd/properties.dtd\">\n"
+                + "<properties>\n  <entry key=\"label\">" + label + " for ${expression}</entry>\n</properties>\n", "UTF-8");
+    }
+
+}